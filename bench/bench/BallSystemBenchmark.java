@@ -0,0 +1,65 @@
+package bench;
+
+import game.BallSystem;
+import game.Velocity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.Color;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks stepping balls stored in a BallSystem, serially and with parallel queries.
+ * Compare with StepBenchmark.moveOneStep for the same number of standalone balls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BallSystemBenchmark {
+    @Param({"50", "2000"})
+    private int blocks;
+
+    @Param({"100", "1000", "10000"})
+    private int balls;
+
+    @Param({"false", "true"})
+    private boolean parallel;
+
+    private BallSystem system;
+
+    /**
+     * Builds the world and fills the ball system with seeded balls below the blocks.
+     */
+    @Setup
+    public void setup() {
+        BenchWorld world = new BenchWorld(this.blocks, 0, 42);
+        this.system = new BallSystem(world.environment());
+        this.system.setParallel(this.parallel);
+        Random rand = new Random(42);
+        for (int i = 0; i < this.balls; i++) {
+            this.system.addBall(20 + rand.nextInt(760), 420 + rand.nextInt(160), 5, Color.BLUE,
+                    Velocity.fromAngleAndSpeed(rand.nextInt(360), 3));
+        }
+    }
+
+    /**
+     * Steps all balls once.
+     */
+    @Benchmark
+    public void step() {
+        this.system.step();
+    }
+}
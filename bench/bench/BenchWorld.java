@@ -0,0 +1,148 @@
+package bench;
+
+import game.Ball;
+import game.Block;
+import game.GameEnvironment;
+import game.SpriteCollection;
+import game.Velocity;
+import shapes.Line;
+import shapes.Point;
+import shapes.Rectangle;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Builds seeded worlds of a given size for the benchmarks.
+ * Blocks have no hit listeners, so the world stays in a steady state while it is measured.
+ */
+public final class BenchWorld {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+
+    private final GameEnvironment environment;
+    private final SpriteCollection sprites;
+    private final Ball[] balls;
+    private final Rectangle[] rectangles;
+    private final Block[] blocks;
+
+    /**
+     * Builds a world with the borders, the given number of blocks in the upper part of the
+     * screen and the given number of balls below them.
+     *
+     * @param blockCount the number of blocks
+     * @param ballCount  the number of balls
+     * @param seed       the seed for ball positions and directions
+     */
+    public BenchWorld(int blockCount, int ballCount, long seed) {
+        this(blockCount, ballCount, seed, 360);
+    }
+
+    /**
+     * Builds a world like BenchWorld(blockCount, ballCount, seed), with the blocks packed into a band
+     * of the given height starting at y = 40, for layouts that are dense in one place and empty elsewhere.
+     *
+     * @param blockCount the number of blocks
+     * @param ballCount  the number of balls
+     * @param seed       the seed for ball positions and directions
+     * @param bandHeight the height of the band of blocks
+     */
+    public BenchWorld(int blockCount, int ballCount, long seed, double bandHeight) {
+        this.environment = new GameEnvironment();
+        this.sprites = new SpriteCollection();
+        Block[] borders = {
+            new Block(new Rectangle(new Point(WIDTH, 0), 0, HEIGHT)),
+            new Block(new Rectangle(new Point(0, HEIGHT), WIDTH, 0)),
+            new Block(new Rectangle(new Point(0, 0), WIDTH, 0)),
+            new Block(new Rectangle(new Point(0, 0), 0, HEIGHT))
+        };
+        for (Block b : borders) {
+            this.environment.addCollidable(b);
+        }
+
+        // Lay the blocks out in a grid between y = 40 and y = 40 + bandHeight
+        int columns = (int) Math.ceil(Math.sqrt(blockCount * 2.0 * 360 / bandHeight));
+        int rows = (int) Math.ceil(blockCount / (double) columns);
+        double blockWidth = (WIDTH - 20) / (double) columns;
+        double blockHeight = bandHeight / rows;
+        this.rectangles = new Rectangle[blockCount];
+        this.blocks = new Block[blockCount];
+        Color[] colors = {Color.YELLOW, Color.PINK, Color.ORANGE, Color.GRAY, Color.GREEN, Color.RED};
+        for (int i = 0; i < blockCount; i++) {
+            int col = i % columns;
+            int row = i / columns;
+            Rectangle rect = new Rectangle(new Point(10 + col * blockWidth, 40 + row * blockHeight),
+                    blockWidth, blockHeight);
+            this.rectangles[i] = rect;
+            Block block = new Block(rect, colors[row % colors.length]);
+            this.blocks[i] = block;
+            this.environment.addCollidable(block);
+            this.sprites.addSprite(block);
+        }
+
+        Random rand = new Random(seed);
+        this.balls = new Ball[ballCount];
+        for (int i = 0; i < ballCount; i++) {
+            Ball ball = new Ball(20 + rand.nextInt(WIDTH - 40), 420 + rand.nextInt(160), 5, Color.BLUE);
+            ball.setVelocity(Velocity.fromAngleAndSpeed(rand.nextInt(360), 3));
+            ball.setGameEnvironment(this.environment);
+            this.balls[i] = ball;
+            this.sprites.addSprite(ball);
+        }
+    }
+
+    /**
+     * Creates seeded random short trajectories, like the ones a ball tests every tick,
+     * spread over the whole screen.
+     *
+     * @param count the number of trajectories
+     * @param seed  the seed
+     * @return the trajectories
+     */
+    public static Line[] trajectories(int count, long seed) {
+        Random rand = new Random(seed);
+        Line[] lines = new Line[count];
+        for (int i = 0; i < count; i++) {
+            double x = rand.nextDouble() * WIDTH;
+            double y = rand.nextDouble() * HEIGHT;
+            double angle = rand.nextDouble() * 2 * Math.PI;
+            lines[i] = new Line(x, y, x + 3 * Math.cos(angle), y + 3 * Math.sin(angle));
+        }
+        return lines;
+    }
+
+    /**
+     * @return the collision environment
+     */
+    public GameEnvironment environment() {
+        return this.environment;
+    }
+
+    /**
+     * @return the sprites, blocks and balls
+     */
+    public SpriteCollection sprites() {
+        return this.sprites;
+    }
+
+    /**
+     * @return the balls
+     */
+    public Ball[] balls() {
+        return this.balls;
+    }
+
+    /**
+     * @return the block rectangles
+     */
+    public Rectangle[] rectangles() {
+        return this.rectangles;
+    }
+
+    /**
+     * @return the blocks, not counting the borders, in the order they were added
+     */
+    public Block[] blocks() {
+        return this.blocks;
+    }
+}
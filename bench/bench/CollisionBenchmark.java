@@ -0,0 +1,120 @@
+package bench;
+
+import game.BoundingVolumeHierarchy;
+import game.Collidable;
+import game.GameEnvironment;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import shapes.Line;
+import shapes.Rectangle;
+import shapes.SweptCircle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks GameEnvironment collision queries over a batch of trajectories, for the grid, the
+ * bounding-volume hierarchy and the full scan, over blocks spread evenly or packed into a band.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+    private static final int BATCH = 1024;
+
+    @Param({"50", "500", "2000", "10000"})
+    private int blocks;
+
+    @Param({"grid", "bvh"})
+    private String index;
+
+    @Param({"even", "band"})
+    private String layout;
+
+    private GameEnvironment environment;
+    private Line[] trajectories;
+    private Rectangle[] rectangles;
+    private Collidable[] hits;
+
+    /**
+     * Builds the world and the trajectories.
+     */
+    @Setup
+    public void setup() {
+        BenchWorld world = new BenchWorld(this.blocks, 0, 42, this.layout.equals("band") ? 60 : 360);
+        this.environment = world.environment();
+        if (this.index.equals("bvh")) {
+            this.environment.setIndex(new BoundingVolumeHierarchy());
+        }
+        this.rectangles = world.rectangles();
+        this.trajectories = BenchWorld.trajectories(BATCH, 7);
+        this.hits = new Collidable[1];
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void getClosestCollision(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            bh.consume(this.environment.getClosestCollision(l));
+        }
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void getClosestCollisionFullScan(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            bh.consume(this.environment.getClosestCollisionFullScan(l));
+        }
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void sweptHit(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            double x0 = l.start().getX();
+            double y0 = l.start().getY();
+            bh.consume(this.environment.sweptHit(x0, y0, l.end().getX() - x0, l.end().getY() - y0, 5, this.hits, 0));
+        }
+    }
+
+    /**
+     * The swept query by testing every block, the baseline for sweptHit.
+     *
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void sweptHitFullScan(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            double x0 = l.start().getX();
+            double y0 = l.start().getY();
+            double dx = l.end().getX() - x0;
+            double dy = l.end().getY() - y0;
+            double best = SweptCircle.NO_HIT;
+            for (Rectangle r : this.rectangles) {
+                double t = r.sweptHit(x0, y0, dx, dy, 5);
+                if (t != SweptCircle.NO_HIT && (best == SweptCircle.NO_HIT || t < best)) {
+                    best = t;
+                }
+            }
+            bh.consume(best);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import shapes.Line;
+import shapes.Point;
+import shapes.Rectangle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the line and rectangle intersection primitives.
+ * Each invocation runs over a fixed set of trajectories, so the scores are per batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark {
+    private static final int BATCH = 1024;
+
+    private Line[] trajectories;
+    private Line edge;
+    private Rectangle rectangle;
+
+    /**
+     * Creates the trajectories and a block-sized rectangle in the middle of the screen.
+     */
+    @Setup
+    public void setup() {
+        this.trajectories = BenchWorld.trajectories(BATCH, 42);
+        this.rectangle = new Rectangle(new Point(375, 290), 50, 20);
+        this.edge = new Line(375, 290, 425, 290);
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void lineIntersectionWith(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            bh.consume(l.intersectionWith(this.edge));
+        }
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void rectangleIntersectionPoints(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            bh.consume(this.rectangle.intersectionPoints(l));
+        }
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void closestIntersectionToStartOfLine(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            bh.consume(l.closestIntersectionToStartOfLine(this.rectangle));
+        }
+    }
+
+    /**
+     * @param bh the blackhole
+     */
+    @Benchmark
+    public void rectangleFirstHit(Blackhole bh) {
+        for (Line l : this.trajectories) {
+            double x0 = l.start().getX();
+            double y0 = l.start().getY();
+            bh.consume(this.rectangle.firstHit(x0, y0, l.end().getX() - x0, l.end().getY() - y0));
+        }
+    }
+}
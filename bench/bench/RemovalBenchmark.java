@@ -0,0 +1,74 @@
+package bench;
+
+import game.Block;
+import game.GameEnvironment;
+import game.SpriteCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks clearing every block of a world, in random order, from the sprites and the
+ * collision environment, stepping the sprites every few removals like a game that clears its
+ * blocks quickly.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 20)
+@Fork(1)
+public class RemovalBenchmark {
+    private static final int REMOVALS_PER_TICK = 100;
+
+    @Param({"1000", "10000"})
+    private int blocks;
+
+    private GameEnvironment environment;
+    private SpriteCollection sprites;
+    private Block[] order;
+
+    /**
+     * Builds a fresh world before every clearing.
+     */
+    @Setup(Level.Invocation)
+    public void setup() {
+        BenchWorld world = new BenchWorld(this.blocks, 0, 42);
+        this.environment = world.environment();
+        this.sprites = world.sprites();
+        this.order = world.blocks().clone();
+        Random rand = new Random(7);
+        for (int i = this.order.length - 1; i > 0; i--) {
+            int j = rand.nextInt(i + 1);
+            Block swap = this.order[i];
+            this.order[i] = this.order[j];
+            this.order[j] = swap;
+        }
+    }
+
+    /**
+     * Removes every block.
+     */
+    @Benchmark
+    public void clearAll() {
+        for (int i = 0; i < this.order.length; i++) {
+            this.environment.removeCollidable(this.order[i]);
+            this.sprites.removeSprite(this.order[i]);
+            if (i % REMOVALS_PER_TICK == 0) {
+                this.sprites.notifyAllTimePassed();
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package bench;
+
+import game.Ball;
+import game.SpriteCollection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks stepping the world: every ball's moveOneStep, and a full
+ * notifyAllTimePassed() tick over all sprites, like the headless engine runs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+    @Param({"50", "500", "2000", "10000"})
+    private int blocks;
+
+    @Param({"1", "10", "100", "1000"})
+    private int balls;
+
+    private Ball[] ballArray;
+    private SpriteCollection sprites;
+
+    /**
+     * Builds the world.
+     */
+    @Setup
+    public void setup() {
+        BenchWorld world = new BenchWorld(this.blocks, this.balls, 42);
+        this.ballArray = world.balls();
+        this.sprites = world.sprites();
+    }
+
+    /**
+     * Moves every ball one step.
+     */
+    @Benchmark
+    public void moveOneStep() {
+        for (Ball ball : this.ballArray) {
+            ball.moveOneStep();
+        }
+    }
+
+    /**
+     * Runs one full tick over all sprites.
+     */
+    @Benchmark
+    public void tick() {
+        this.sprites.notifyAllTimePassed();
+    }
+}
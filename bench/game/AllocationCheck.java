@@ -0,0 +1,180 @@
+package game;
+
+import biuoop.KeyboardSensor;
+import shapes.Point;
+import shapes.Rectangle;
+
+import java.awt.Color;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+/**
+ * Checks that steady-state gameplay allocates nothing, by reading the thread allocation counter
+ * around a run of ticks. Balls bounce off the borders, the moving paddle and blocks that notify a
+ * score listener; blocks are not removed, so the world never runs out.
+ * Then a whole game is stepped in which every ball that falls out is removed and a new one spawned,
+ * which must allocate nothing either once the ball pool is warm, and must not trigger a collection.
+ * Last, balls stored in a BallSystem fall onto the bottom block of a game; the game must count them
+ * in when the system is added, and each must be removed and counted out once, as balls stepped by
+ * the game are.
+ * Exits with status 1 if any bytes were allocated.
+ */
+public final class AllocationCheck {
+    private static final int WARMUP_TICKS = 200000;
+    private static final int MEASURED_TICKS = 100000;
+
+    private AllocationCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        GameEnvironment environment = new GameEnvironment();
+        SpriteCollection sprites = new SpriteCollection();
+
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        keyboard.press(KeyboardSensor.RIGHT_KEY);
+        Paddle paddle = new Paddle(keyboard, new Rectangle(new Point(350, 560), 100, 10), 5);
+        sprites.addSprite(paddle);
+        environment.addCollidable(paddle);
+
+        Block[] borders = {
+            new Block(new Rectangle(new Point(800, 0), 0, 600)),
+            new Block(new Rectangle(new Point(0, 600), 800, 0)),
+            new Block(new Rectangle(new Point(0, 0), 800, 0)),
+            new Block(new Rectangle(new Point(0, 0), 0, 600))
+        };
+        for (Block b : borders) {
+            environment.addCollidable(b);
+        }
+        Counter score = new Counter();
+        for (int j = 0; j < 6; j++) {
+            for (int i = 0; i < 12; i++) {
+                Block block = new Block(new Rectangle(new Point(100 + i * 50, 100 + j * 20), 50, 20), Color.RED);
+                block.addHitListener(new ScoreTrackingListener(score));
+                environment.addCollidable(block);
+                sprites.addSprite(block);
+            }
+        }
+        Random rand = new Random(1);
+        for (int i = 0; i < 50; i++) {
+            Ball ball = new Ball(20 + rand.nextInt(760), 300 + rand.nextInt(200), 5, Color.BLUE);
+            ball.setVelocity(Velocity.fromAngleAndSpeed(rand.nextInt(360), 4));
+            ball.setGameEnvironment(environment);
+            sprites.addSprite(ball);
+        }
+
+        for (int i = 0; i < WARMUP_TICKS; i++) {
+            sprites.notifyAllTimePassed();
+        }
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        // The cost of reading the counter itself
+        long calibration = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_TICKS; i++) {
+            sprites.notifyAllTimePassed();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - calibration;
+
+        System.out.printf("%d bytes allocated in %d ticks (%.3f bytes/tick)%n",
+                allocated, MEASURED_TICKS, (double) allocated / MEASURED_TICKS);
+        boolean ok = allocated <= 0;
+        ok &= checkChurn(threads, threadId, calibration);
+        ok &= checkBallSystem();
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkChurn(com.sun.management.ThreadMXBean threads, long threadId, long calibration) {
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        keyboard.press(KeyboardSensor.RIGHT_KEY);
+        Game game = new Game(keyboard);
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 560, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, LevelDefinition.REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        for (int j = 0; j < 6; j++) {
+            for (int i = 0; i < 12; i++) {
+                level.addBlock(100 + i * 50, 100 + j * 20, 50, 20, Color.RED, LevelDefinition.SCORES);
+            }
+        }
+        Random rand = new Random(2);
+        for (int i = 0; i < 200; i++) {
+            level.addBall(20 + rand.nextInt(760), 300 + rand.nextInt(200), 3, Color.BLUE, rand.nextInt(360), 6);
+        }
+        game.initialize(level);
+        // More than are ever removed in one tick, so the pool doesn't grow while measuring
+        game.reserveBalls(50);
+        // Every ball that falls out is replaced by a new one shot up from the middle, after the
+        // BallRemover of the bottom block removed it. The middle is off the seam between two blocks,
+        // where a ball going straight up would get stuck bouncing between their corners
+        Velocity velocity = new Velocity(0, 0);
+        int[] spawned = new int[1];
+        game.getHitEventBus().subscribeAll((beingHit, hitter) -> {
+            if (game.getRemainingBalls() < 200) {
+                velocity.setFromAngleAndSpeed(300 + (spawned[0] * 7) % 120, 6);
+                game.spawnBall(413, 300, 3, Color.BLUE, velocity);
+                spawned[0]++;
+            }
+        });
+        for (int i = 0; i < WARMUP_TICKS / 4; i++) {
+            game.step();
+        }
+        long gcBefore = collections();
+        int spawnedBefore = spawned[0];
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < MEASURED_TICKS; i++) {
+            game.step();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - calibration;
+        long gcs = collections() - gcBefore;
+        System.out.printf("%d balls spawned and removed: %d bytes allocated in %d ticks, %d collections%n",
+                spawned[0] - spawnedBefore, allocated, MEASURED_TICKS, gcs);
+        return allocated <= 0 && gcs == 0 && game.getRemainingBalls() == 200;
+    }
+
+    private static boolean checkBallSystem() {
+        Game game = new Game(new VirtualKeyboard());
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 560, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, LevelDefinition.REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        game.initialize(level);
+        BallSystem system = new BallSystem(game.getGameEnvironment());
+        int balls = 100;
+        // Straight down, left of the paddle
+        for (int i = 0; i < balls; i++) {
+            system.addBall(20 + i * 3, 300 + i * 2, 3, Color.BLUE, new Velocity(0, 8));
+        }
+        long levelBalls = game.getRemainingBalls();
+        system.addToGame(game);
+        long remainingBefore = game.getRemainingBalls();
+        for (int i = 0; i < 100; i++) {
+            game.step();
+        }
+        long counted = remainingBefore - game.getRemainingBalls();
+        boolean ok = remainingBefore - levelBalls == balls && system.size() == 0 && counted == balls;
+        System.out.printf("%d balls of a BallSystem, %d counted in, fell out: %d left in the system, %d counted as removed%s%n",
+                balls, remainingBefore - levelBalls, system.size(), counted, ok ? "" : " (WRONG)");
+        return ok;
+    }
+
+    private static long collections() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+}
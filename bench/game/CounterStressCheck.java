@@ -0,0 +1,88 @@
+package game;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Checks that Counter loses no updates under contention.
+ * Several threads increase and decrease one counter at the same time while another thread keeps
+ * taking snapshots, and the final value is compared with the expected one.
+ * It lives in the game package because the update methods of Counter are package-private.
+ * Exits with status 1 if an update was lost or a snapshot was out of range.
+ */
+public final class CounterStressCheck {
+    private static final int THREADS = 8;
+    private static final int UPDATES_PER_THREAD = 2000000;
+
+    private CounterStressCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Counter counter = new Counter();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] writers = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            // Every thread adds 3 and takes 1 in turn, so the counter never goes down overall
+            writers[t] = new Thread(() -> {
+                awaitQuietly(start);
+                for (int i = 0; i < UPDATES_PER_THREAD; i++) {
+                    if (i % 2 == 0) {
+                        counter.increase(3);
+                    } else {
+                        counter.decrease(1);
+                    }
+                }
+            });
+            writers[t].start();
+        }
+
+        long maximum = (long) THREADS * (UPDATES_PER_THREAD / 2) * 3;
+        AtomicBoolean outOfRange = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        long[] snapshots = new long[1];
+        Thread reader = new Thread(() -> {
+            awaitQuietly(start);
+            while (!done.get()) {
+                long value = counter.snapshot();
+                if (value < -THREADS || value > maximum) {
+                    outOfRange.set(true);
+                }
+                snapshots[0]++;
+            }
+        });
+        reader.start();
+
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        done.set(true);
+        reader.join();
+
+        long expected = (long) THREADS * (UPDATES_PER_THREAD / 2) * 2;
+        long actual = counter.snapshot();
+        boolean ok = actual == expected && !outOfRange.get();
+        System.out.printf("%d threads, %d updates in %.3f s, %d snapshots: expected %d, got %d%s%n",
+                THREADS, (long) THREADS * UPDATES_PER_THREAD, seconds, snapshots[0], expected, actual,
+                outOfRange.get() ? ", a snapshot was out of range" : "");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package game;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the training environments and measures how many steps per minute a batch makes.
+ * First a batch stepped in parallel and one stepped serially are given the same seed and random
+ * actions, and every observation, reward, done and truncated flag is compared. Then one environment
+ * plays episodes from seeds in a row, and each must play exactly like it does in a new environment,
+ * whose first reset builds the game; the time of both kinds of reset is reported. Next one
+ * environment plays an episode, and its rewards must add up to the score of its game. Last, batches
+ * of growing size on the standard level are stepped with random actions, serially and in parallel.
+ * Exits with status 1 if a check fails.
+ */
+public final class EnvironmentCheck {
+    private static final int MAX_BALLS = 8;
+    private static final long MAX_TICKS = 5000;
+    private static final int COMPARED_STEPS = 20000;
+    private static final int COMPARED_ENVIRONMENTS = 32;
+    private static final int COMPARED_EPISODES = 20;
+    private static final long EPISODE_TICKS = 2000;
+    private static final int TIMED_RESETS = 2000;
+    private static final long TIMING_NANOS = 3000000000L;
+
+    private EnvironmentCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        // Batches step serially on a pool with one worker; give it two so the comparison means something
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.setProperty("java.util.concurrent.ForkJoinPool.common.parallelism",
+                Integer.toString(Math.max(2, processors - 1)));
+        LevelDefinition level = LevelDefinition.standard();
+        boolean ok = compareBatches(level);
+        ok &= compareResets(level);
+        ok &= checkRewards(level);
+        if (!ok) {
+            System.exit(1);
+        }
+        time(level, 1, false);
+        for (int count : new int[] {processors, processors * 8}) {
+            time(level, count, false);
+            time(level, count, true);
+        }
+    }
+
+    private static boolean compareBatches(LevelDefinition level) {
+        VectorEnvironment parallel = new VectorEnvironment(level, COMPARED_ENVIRONMENTS, MAX_BALLS, MAX_TICKS);
+        VectorEnvironment serial = new VectorEnvironment(level, COMPARED_ENVIRONMENTS, MAX_BALLS, MAX_TICKS);
+        serial.setParallel(false);
+        parallel.reset(42);
+        serial.reset(42);
+        int[] actions = new int[COMPARED_ENVIRONMENTS];
+        Random random = new Random(1);
+        int episodes = 0;
+        int truncated = 0;
+        for (int step = 0; step < COMPARED_STEPS; step++) {
+            for (int i = 0; i < actions.length; i++) {
+                actions[i] = random.nextInt(TrainingEnvironment.ACTION_COUNT);
+            }
+            parallel.step(actions);
+            serial.step(actions);
+            if (!Arrays.equals(parallel.observations(), serial.observations())
+                    || !Arrays.equals(parallel.rewards(), serial.rewards())
+                    || !Arrays.equals(parallel.dones(), serial.dones())
+                    || !Arrays.equals(parallel.truncateds(), serial.truncateds())) {
+                System.out.printf("Parallel and serial batches differ after step %d%n", step + 1);
+                return false;
+            }
+            for (int i = 0; i < actions.length; i++) {
+                episodes += serial.dones()[i] || serial.truncateds()[i] ? 1 : 0;
+                truncated += serial.truncateds()[i] ? 1 : 0;
+            }
+        }
+        System.out.printf("%d environments: %d steps and %d episodes (%d truncated) the same in parallel and serially%n",
+                COMPARED_ENVIRONMENTS, COMPARED_STEPS, episodes, truncated);
+        return true;
+    }
+
+    private static boolean compareResets(LevelDefinition level) {
+        TrainingEnvironment reused = new TrainingEnvironment(level, MAX_BALLS, EPISODE_TICKS);
+        float[] reusedObservation = new float[reused.observationSize()];
+        float[] freshObservation = new float[reused.observationSize()];
+        Random random = new Random(4);
+        for (int episode = 0; episode < COMPARED_EPISODES; episode++) {
+            TrainingEnvironment fresh = new TrainingEnvironment(level, MAX_BALLS, EPISODE_TICKS);
+            reused.reset(episode, reusedObservation, 0);
+            fresh.reset(episode, freshObservation, 0);
+            if (!Arrays.equals(reusedObservation, freshObservation)) {
+                System.out.printf("Episode %d starts differently after a reset than in a new environment%n", episode);
+                return false;
+            }
+            while (!fresh.isDone() && !fresh.isTruncated()) {
+                int action = random.nextInt(TrainingEnvironment.ACTION_COUNT);
+                float reward = reused.step(action, reusedObservation, 0);
+                if (reward != fresh.step(action, freshObservation, 0)
+                        || !Arrays.equals(reusedObservation, freshObservation)
+                        || reused.isDone() != fresh.isDone() || reused.isTruncated() != fresh.isTruncated()
+                        || reused.getGame().stateHash() != fresh.getGame().stateHash()) {
+                    System.out.printf("Episode %d differs from a new environment after tick %d%n",
+                            episode, fresh.getTicks());
+                    return false;
+                }
+            }
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_RESETS; i++) {
+            reused.reset(i, reusedObservation, 0);
+        }
+        long restored = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < TIMED_RESETS; i++) {
+            new TrainingEnvironment(level, MAX_BALLS, EPISODE_TICKS).reset(i, freshObservation, 0);
+        }
+        long built = System.nanoTime() - start;
+        System.out.printf("%d episodes play the same after a reset as in a new environment; a reset takes"
+                + " %.1f us, building the game %.1f us%n", COMPARED_EPISODES,
+                restored / 1e3 / TIMED_RESETS, built / 1e3 / TIMED_RESETS);
+        return true;
+    }
+
+    private static boolean checkRewards(LevelDefinition level) {
+        TrainingEnvironment environment = new TrainingEnvironment(level, MAX_BALLS, Long.MAX_VALUE);
+        float[] observation = new float[environment.observationSize()];
+        environment.reset(3, observation, 0);
+        Random random = new Random(2);
+        long total = 0;
+        while (!environment.isDone() && environment.getTicks() < 200000) {
+            total += (long) environment.step(random.nextInt(TrainingEnvironment.ACTION_COUNT), observation, 0);
+        }
+        int score = environment.getGame().getScore();
+        System.out.printf("An episode of %d ticks earned %d, the score of its game is %d%n",
+                environment.getTicks(), total, score);
+        return total == score;
+    }
+
+    private static void time(LevelDefinition level, int count, boolean parallel) {
+        VectorEnvironment batch = new VectorEnvironment(level, count, MAX_BALLS, MAX_TICKS);
+        batch.setParallel(parallel);
+        batch.reset(7);
+        int[] actions = new int[count];
+        Random random = new Random(5);
+        long steps = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (int i = 0; i < actions.length; i++) {
+                actions[i] = random.nextInt(TrainingEnvironment.ACTION_COUNT);
+            }
+            batch.step(actions);
+            steps += count;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < TIMING_NANOS);
+        System.out.printf("%4d environments, %s: %.1f million steps per minute%n", count,
+                parallel ? "parallel" : "serial  ", steps * 60e9 / elapsed / 1e6);
+    }
+}
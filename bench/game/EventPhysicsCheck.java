@@ -0,0 +1,177 @@
+package game;
+
+import java.awt.Color;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that the event-driven physics mode plays exactly like the tick mode, and measures how
+ * many collision queries it saves.
+ * A game in each mode, driven by the same controller, is stepped side by side; after every tick
+ * their state hashes and the hits delivered to the listeners so far must be the same. Halfway
+ * through, both go back to a snapshot, so predictions made before the restore are put to the test.
+ * This is done on the standard level, serially and with parallel stepping, and on a sparse level
+ * with many fast balls, which is then timed in both modes with the paddle standing still.
+ * It lives in the game package because it counts the predictions, which ImpactQueue keeps package-private.
+ * Exits with status 1 if a check fails.
+ */
+public final class EventPhysicsCheck {
+    private static final int COMPARED_TICKS = 6000;
+    private static final int SNAPSHOT_TICK = 1500;
+    private static final int RESTORE_TICK = 2500;
+    private static final int TIMED_TICKS = 20000;
+
+    private EventPhysicsCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (long seed = 1; seed <= 5; seed++) {
+            ok &= compare("standard", LevelDefinition.standard(), seed, false);
+        }
+        ok &= compare("standard parallel", LevelDefinition.standard(), 6, true);
+        for (long seed = 1; seed <= 3; seed++) {
+            ok &= compare("sparse", sparse(200, 9), seed, false);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        for (double speed : new double[] {3, 9, 20}) {
+            time(sparse(200, speed), speed);
+        }
+    }
+
+    private static boolean compare(String name, LevelDefinition level, long seed, boolean parallel) {
+        Game tick = game(level, seed, Game.PHYSICS_TICK, true);
+        Game event = game(level, seed, Game.PHYSICS_EVENT, true);
+        event.setParallelStepping(parallel);
+        HitLog tickHits = new HitLog(tick);
+        HitLog eventHits = new HitLog(event);
+        WorldSnapshot tickSnapshot = null;
+        WorldSnapshot eventSnapshot = null;
+        for (int i = 1; i <= COMPARED_TICKS; i++) {
+            tick.step(0);
+            event.step(0);
+            if (tick.stateHash() != event.stateHash() || tickHits.hash != eventHits.hash) {
+                System.out.printf("%s, seed %d: the modes differ after tick %d (WRONG)%n", name, seed, i);
+                return false;
+            }
+            if (i == SNAPSHOT_TICK) {
+                tickSnapshot = tick.snapshot();
+                eventSnapshot = event.snapshot();
+            } else if (i == RESTORE_TICK) {
+                tick.restore(tickSnapshot);
+                event.restore(eventSnapshot);
+            }
+        }
+        System.out.printf("%s, seed %d: %d ticks and %d hits the same in both modes, with a restore%n",
+                name, seed, COMPARED_TICKS, tickHits.count);
+        return true;
+    }
+
+    private static void time(LevelDefinition level, double speed) {
+        double[] tick = run(level, Game.PHYSICS_TICK);
+        double[] event = run(level, Game.PHYSICS_EVENT);
+        System.out.printf("%d balls at speed %.0f: tick mode %.0f queries and %.1f us per tick,"
+                        + " event mode %.0f queries (%.0f of them predictions) and %.1f us per tick%n",
+                level.getBallCount(), speed, tick[0], tick[2], event[0], event[1], event[2]);
+    }
+
+    /**
+     * Steps a game and returns the collision queries, the predictions and the microseconds per tick.
+     */
+    private static double[] run(LevelDefinition level, int mode) {
+        // Without the controller, whose own predictions would be counted
+        Game game = game(level, 1, mode, false);
+        GameEnvironment environment = game.getGameEnvironment();
+        // Warm up first
+        for (int i = 0; i < TIMED_TICKS / 4; i++) {
+            game.step(0);
+        }
+        ImpactQueue impacts = environment.getImpactQueue();
+        long queries = environment.getQueryCount();
+        long predictions = impacts == null ? 0 : impacts.getPredictionCount();
+        long start = System.nanoTime();
+        for (int i = 0; i < TIMED_TICKS; i++) {
+            game.step(0);
+        }
+        long elapsed = System.nanoTime() - start;
+        if (impacts != null) {
+            predictions = impacts.getPredictionCount() - predictions;
+        }
+        return new double[] {(environment.getQueryCount() - queries) / (double) TIMED_TICKS,
+            predictions / (double) TIMED_TICKS, elapsed / 1e3 / TIMED_TICKS};
+    }
+
+    private static Game game(LevelDefinition level, long seed, int mode, boolean controlled) {
+        Game game;
+        if (controlled) {
+            TrackingInput input = new TrackingInput();
+            game = new Game(input);
+            input.follow(game);
+        } else {
+            game = new Game(new VirtualKeyboard());
+        }
+        game.setSeed(seed);
+        game.setPhysicsMode(mode);
+        game.initialize(level);
+        return game;
+    }
+
+    /**
+     * A closed box with the paddle on its floor, a few blocks that stay and many balls going every way.
+     */
+    private static LevelDefinition sparse(int balls, double speed) {
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 590, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, 0);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        Random random = new Random(11);
+        for (int i = 0; i < 12; i++) {
+            level.addBlock(40 + random.nextInt(680), 40 + random.nextInt(400), 30 + random.nextInt(50), 20,
+                    Color.GRAY, LevelDefinition.SCORES);
+        }
+        for (int i = 0; i < balls; i++) {
+            level.addBall(20 + random.nextInt(760), 460 + random.nextInt(80), 3, Color.BLUE,
+                    LevelDefinition.RANDOM_ANGLE, speed);
+        }
+        return level;
+    }
+
+    /**
+     * Hashes the hits delivered to the listeners: which block of the level, by which ball, where.
+     */
+    private static final class HitLog implements HitListener {
+        private final Map<Block, Integer> blocks;
+        private long hash;
+        private int count;
+
+        HitLog(Game game) {
+            this.blocks = new IdentityHashMap<>();
+            List<Block> levelBlocks = game.getLevelBlocks();
+            for (int i = 0; i < levelBlocks.size(); i++) {
+                this.blocks.put(levelBlocks.get(i), i);
+            }
+            this.hash = StateHash.SEED;
+            game.getHitEventBus().subscribeAll(this);
+        }
+
+        @Override
+        public void hitEvent(Block beingHit, Ball hitter) {
+            this.count++;
+            this.hash = StateHash.mix(this.hash, this.blocks.get(beingHit));
+            this.hash = StateHash.mix(this.hash, hitter.getColor().getRGB());
+            this.hash = StateHash.mix(this.hash, hitter.getCenterX());
+            this.hash = StateHash.mix(this.hash, hitter.getCenterY());
+        }
+    }
+}
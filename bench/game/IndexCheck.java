@@ -0,0 +1,218 @@
+package game;
+
+import biuoop.KeyboardSensor;
+import shapes.Line;
+import shapes.Point;
+import shapes.Rectangle;
+import shapes.SweptCircle;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the grid and the bounding-volume hierarchy answer every query exactly like a full scan.
+ * Random line and swept-circle queries are run over three layouts (the standard wedge, a dense band
+ * and scattered blocks) while blocks are removed one by one and the paddle moves and wraps around,
+ * sometimes without a refit in between. Then seeded games driven by a bot are played with each index
+ * and their state hashes compared.
+ * Exits with status 1 on the first difference.
+ */
+public final class IndexCheck {
+    private static final int QUERIES = 2000;
+    private static final int GAME_TICKS = 20000;
+
+    private IndexCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (String layout : new String[] {"wedge", "band", "scattered"}) {
+            ok &= checkQueries(layout);
+        }
+        for (long seed = 1; seed <= 5; seed++) {
+            ok &= checkGame(seed);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean checkQueries(String layout) {
+        Random random = new Random(layout.hashCode());
+        List<Collidable> all = new ArrayList<>();
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        Paddle paddle = new Paddle(keyboard, new Rectangle(new Point(350, 560), 100, 10), 7);
+        all.add(paddle);
+        all.add(new Block(new Rectangle(new Point(800, 0), 0, 600)));
+        all.add(new Block(new Rectangle(new Point(0, 600), 800, 0)));
+        all.add(new Block(new Rectangle(new Point(0, 0), 800, 0)));
+        all.add(new Block(new Rectangle(new Point(0, 0), 0, 600)));
+        List<Block> blocks = layout(layout, random);
+        all.addAll(blocks);
+
+        CollidableIndex grid = new CollidableGrid(800, 600, 50);
+        BoundingVolumeHierarchy built = new BoundingVolumeHierarchy();
+        BoundingVolumeHierarchy inserted = new BoundingVolumeHierarchy();
+        grid.addAll(all);
+        built.addAll(all);
+        for (Collidable c : all) {
+            inserted.add(c);
+        }
+        CollidableIndex[] indexes = {grid, built, inserted};
+        String[] names = {"grid", "bvh (built)", "bvh (inserted)"};
+        List<Collidable> scan = new ArrayList<>(all);
+        System.out.printf("%s: %d blocks, bvh height %d built, %d inserted%n",
+                layout, blocks.size(), built.height(), inserted.height());
+
+        List<Block> toRemove = new ArrayList<>(blocks);
+        Collections.shuffle(toRemove, random);
+        int rounds = 10;
+        int perRound = toRemove.size() / 2 / rounds;
+        long tests = 0;
+        for (int round = 0; round <= rounds; round++) {
+            for (int i = 0; i < QUERIES; i++) {
+                double x0 = random.nextDouble() * 820 - 10;
+                double y0 = random.nextDouble() * 620 - 10;
+                double length = random.nextInt(10) == 0 ? random.nextDouble() * 800 : random.nextDouble() * 30;
+                double angle = random.nextDouble() * 2 * Math.PI;
+                double dx = length * Math.cos(angle);
+                double dy = length * Math.sin(angle);
+                double r = 1 + random.nextInt(8);
+                if (!same(scan, indexes, names, x0, y0, dx, dy, r)) {
+                    System.out.printf("  round %d query (%f, %f) + (%f, %f) r %f%n", round, x0, y0, dx, dy, r);
+                    return false;
+                }
+            }
+            for (int i = 0; i < perRound && round < rounds; i++) {
+                Block b = toRemove.remove(toRemove.size() - 1);
+                scan.remove(b);
+                for (CollidableIndex index : indexes) {
+                    index.remove(b);
+                }
+            }
+            // Move the paddle, wrapping around the screen, and refit only every other round
+            for (int i = 0; i < 37; i++) {
+                paddle.moveRight();
+            }
+            if (round % 2 == 0) {
+                for (CollidableIndex index : indexes) {
+                    index.refit();
+                }
+            }
+        }
+        tests = built.getTestCount();
+        System.out.printf("  %d queries per index agree with the full scan; tests per query: grid %.1f, bvh %.1f%n",
+                grid.getQueryCount(), (double) grid.getTestCount() / grid.getQueryCount(),
+                (double) tests / built.getQueryCount());
+        return true;
+    }
+
+    private static List<Block> layout(String layout, Random random) {
+        List<Block> blocks = new ArrayList<>();
+        switch (layout) {
+            case "wedge":
+                int k = 7;
+                for (int j = 0; j < 7; j++) {
+                    for (int i = 1; i <= k && k <= 12; i++) {
+                        blocks.add(block(800 - i * 50, 150 - j * 20, 50, 20));
+                    }
+                    k++;
+                }
+                break;
+            case "band":
+                for (int j = 0; j < 10; j++) {
+                    for (int i = 0; i < 100; i++) {
+                        blocks.add(block(i * 8, 60 + j * 6, 8, 6));
+                    }
+                }
+                break;
+            default:
+                for (int i = 0; i < 1000; i++) {
+                    blocks.add(block(random.nextDouble() * 780, random.nextDouble() * 500, 4 + random.nextInt(30),
+                            4 + random.nextInt(20)));
+                }
+                break;
+        }
+        return blocks;
+    }
+
+    private static Block block(double x, double y, double width, double height) {
+        return new Block(new Rectangle(new Point(x, y), width, height), Color.RED);
+    }
+
+    private static boolean same(List<Collidable> scan, CollidableIndex[] indexes, String[] names,
+                                double x0, double y0, double dx, double dy, double r) {
+        Collidable lineHit = null;
+        double lineT = -1;
+        Collidable sweptHit = null;
+        double sweptT = SweptCircle.NO_HIT;
+        for (Collidable c : scan) {
+            double t = c.getCollisionRectangle().firstHit(x0, y0, dx, dy);
+            if (t != -1 && (lineHit == null || t > lineT)) {
+                lineT = t;
+                lineHit = c;
+            }
+            t = c.getCollisionRectangle().sweptHit(x0, y0, dx, dy, r);
+            if (t != SweptCircle.NO_HIT && (sweptHit == null || t < sweptT)) {
+                sweptT = t;
+                sweptHit = c;
+            }
+        }
+        Collidable[] hits = new Collidable[1];
+        Line line = new Line(x0, y0, x0 + dx, y0 + dy);
+        for (int i = 0; i < indexes.length; i++) {
+            double t = indexes[i].closestHit(x0, y0, dx, dy, hits, 0);
+            if (hits[0] != lineHit || (lineHit != null && t != lineT)) {
+                System.out.printf("%s: line hit %s at %f, full scan %s at %f%n", names[i], hits[0], t, lineHit, lineT);
+                return false;
+            }
+            CollisionInfo info = indexes[i].closestCollision(line);
+            if ((info == null) != (lineHit == null) || (info != null && info.collisionObject() != lineHit)) {
+                System.out.printf("%s: closestCollision differs from the full scan%n", names[i]);
+                return false;
+            }
+            t = indexes[i].sweptHit(x0, y0, dx, dy, r, hits, 0);
+            if (hits[0] != sweptHit || (sweptHit != null && t != sweptT)) {
+                System.out.printf("%s: swept hit %s at %f, full scan %s at %f%n", names[i], hits[0], t, sweptHit, sweptT);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean checkGame(long seed) {
+        long[] hashes = new long[2];
+        for (int variant = 0; variant < 2; variant++) {
+            VirtualKeyboard keyboard = new VirtualKeyboard();
+            Game game = new Game(keyboard);
+            game.setSeed(seed);
+            if (variant == 1) {
+                game.setCollisionIndex(new BoundingVolumeHierarchy());
+            }
+            game.initialize();
+            Random bot = new Random(seed);
+            for (int tick = 0; tick < GAME_TICKS && !game.isOver(); tick++) {
+                if (tick % 20 == 0) {
+                    keyboard.release(KeyboardSensor.LEFT_KEY);
+                    keyboard.release(KeyboardSensor.RIGHT_KEY);
+                    int keys = bot.nextInt(3);
+                    if (keys > 0) {
+                        keyboard.press(keys == 1 ? KeyboardSensor.LEFT_KEY : KeyboardSensor.RIGHT_KEY);
+                    }
+                }
+                game.step();
+            }
+            hashes[variant] = game.stateHash();
+        }
+        System.out.printf("game seed %d: grid %016x, bvh %016x%n", seed, hashes[0], hashes[1]);
+        return hashes[0] == hashes[1];
+    }
+}
@@ -0,0 +1,192 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Checks that input sources apply input to the right ticks, and measures input latency.
+ * A tap between two ticks must move the paddle for exactly one tick, where polling a keyboard
+ * misses it; changes queued while ticks are caught up on must go to the ticks whose time they
+ * fall in; a scripted session must replay to the same state. Then a client sends keys over a
+ * socket to a game ticking at 60 ticks per second, and the time from sending a key to the tick
+ * that moves the paddle is reported.
+ * It lives in the game package because it reads the paddle, which Game keeps package-private.
+ * Exits with status 1 if a check fails.
+ */
+public final class InputCheck {
+    private static final long NANOS_PER_TICK = 1000000000L / 60;
+    private static final int LATENCY_SAMPLES = 300;
+
+    private InputCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     * @throws Exception if the socket fails or the check is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        boolean ok = checkTap();
+        ok &= checkCatchUp();
+        ok &= checkScript();
+        if (!ok) {
+            System.exit(1);
+        }
+        measureLatency();
+    }
+
+    private static boolean checkTap() {
+        QueuedInput queued = new QueuedInput();
+        Game game = game(queued);
+        VirtualKeyboard polled = new VirtualKeyboard();
+        Game pollingGame = game(polled);
+        int[] moves = new int[10];
+        int polledMoves = 0;
+        for (int tick = 1; tick <= moves.length; tick++) {
+            if (tick == 6) {
+                // Pressed and released between ticks 5 and 6
+                queued.setKeys(InputSource.LEFT, 5 * NANOS_PER_TICK + NANOS_PER_TICK / 5);
+                queued.setKeys(0, 5 * NANOS_PER_TICK + 2 * NANOS_PER_TICK / 5);
+                polled.press(KeyboardSensor.LEFT_KEY);
+                polled.release(KeyboardSensor.LEFT_KEY);
+            }
+            moves[tick - 1] = moved(game, tick * NANOS_PER_TICK);
+            polledMoves += moved(pollingGame, tick * NANOS_PER_TICK);
+        }
+        int[] expected = {0, 0, 0, 0, 0, 1, 0, 0, 0, 0};
+        boolean ok = Arrays.equals(moves, expected) && polledMoves == 0;
+        System.out.printf("A tap between two ticks: queued input moved in ticks %s, polled input moved %d times%s%n",
+                Arrays.toString(moves), polledMoves, ok ? "" : " (WRONG)");
+        return ok;
+    }
+
+    private static boolean checkCatchUp() {
+        QueuedInput queued = new QueuedInput();
+        Game game = game(queued);
+        // Both changes come in before any of the ticks they fall in runs, as when a frame stalls
+        queued.setKeys(InputSource.LEFT, 2 * NANOS_PER_TICK + NANOS_PER_TICK / 2);
+        queued.setKeys(0, 4 * NANOS_PER_TICK + NANOS_PER_TICK / 2);
+        int[] moves = new int[6];
+        for (int tick = 1; tick <= moves.length; tick++) {
+            moves[tick - 1] = moved(game, tick * NANOS_PER_TICK);
+        }
+        boolean ok = Arrays.equals(moves, new int[] {0, 0, 1, 1, 0, 0});
+        System.out.printf("Changes at 2.5 and 4.5 ticks, caught up on at once: moved in ticks %s%s%n",
+                Arrays.toString(moves), ok ? "" : " (WRONG)");
+        return ok;
+    }
+
+    private static boolean checkScript() throws IOException {
+        String script = "# taps shorter than a tick, then holds\n"
+                + "10.2 left\n10.4 none\n20 right\n35.5 none\n40.5 left\n60 none\n";
+        ScriptedInput input = ScriptedInput.read(new StringReader(script));
+        Game game = new Game(input);
+        game.setSeed(1);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        game.recordTo(log);
+        game.initialize();
+        int moves = 0;
+        for (int tick = 1; tick <= 100; tick++) {
+            moves += moved(game, 0);
+        }
+        game.stopRecording();
+        SessionReplayer replayer = new SessionReplayer(new ByteArrayInputStream(log.toByteArray()));
+        Game replayed = replayer.createGame();
+        replayer.replay(replayed);
+        // Tick 11 for the tap, ticks 20 to 35 right and ticks 41 to 59 left
+        boolean ok = moves == 1 + 16 + 19 && replayer.matches(replayed);
+        System.out.printf("A script with taps moved the paddle in %d ticks and %s%s%n", moves,
+                replayer.matches(replayed) ? "replays to the same state" : "replays to ANOTHER state",
+                ok ? "" : " (WRONG)");
+        return ok;
+    }
+
+    private static void measureLatency() throws IOException, InterruptedException {
+        SocketInput input = new SocketInput(0);
+        Game game = game(input);
+        // Written by the client; read once it has ended
+        long[] sent = new long[LATENCY_SAMPLES];
+        long[] moved = new long[LATENCY_SAMPLES];
+        long[] applied = new long[LATENCY_SAMPLES];
+        Thread client = new Thread(() -> sendKeys(input.getPort(), sent), "input-client");
+        client.start();
+        Paddle paddle = game.getPaddle();
+        long start = System.nanoTime();
+        int seen = 0;
+        boolean wasMoving = false;
+        for (long tick = 1; seen < LATENCY_SAMPLES && client.isAlive(); tick++) {
+            long tickNanos = start + tick * NANOS_PER_TICK;
+            LockSupport.parkNanos(tickNanos - System.nanoTime());
+            double before = paddle.getCollisionRectangle().getUpperLeft().getX();
+            game.step(tickNanos);
+            long event = input.getLatchedEventNanos();
+            boolean moving = paddle.getCollisionRectangle().getUpperLeft().getX() != before;
+            if (moving != wasMoving) {
+                moved[seen] = System.nanoTime();
+                applied[seen] = event;
+                seen++;
+            }
+            wasMoving = moving;
+        }
+        client.join();
+        input.close();
+        long[] endToEnd = new long[seen];
+        long[] queueing = new long[seen];
+        for (int i = 0; i < seen; i++) {
+            endToEnd[i] = moved[i] - sent[i];
+            queueing[i] = moved[i] - applied[i];
+        }
+        Arrays.sort(endToEnd);
+        Arrays.sort(queueing);
+        System.out.printf("%d key changes over a socket at 60 ticks/s: sent to paddle moved p50 %.2f ms,"
+                        + " p99 %.2f ms, max %.2f ms; arrived to paddle moved p50 %.2f ms%n", seen,
+                endToEnd[seen / 2] / 1e6, endToEnd[seen * 99 / 100] / 1e6, endToEnd[seen - 1] / 1e6,
+                queueing[seen / 2] / 1e6);
+    }
+
+    private static void sendKeys(int port, long[] sent) {
+        Random random = new Random(9);
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            socket.setTcpNoDelay(true);
+            for (int i = 0; i < sent.length; i++) {
+                // Long enough apart that every change gets a tick of its own
+                Thread.sleep(40 + random.nextInt(40));
+                sent[i] = System.nanoTime();
+                out.println(i % 2 == 0 ? "left" : "none");
+            }
+            // Until the game saw the last change
+            Thread.sleep(200);
+        } catch (IOException | InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Steps the game and tells whether the paddle moved.
+     */
+    private static int moved(Game game, long tickNanos) {
+        double before = game.getPaddle().getCollisionRectangle().getUpperLeft().getX();
+        game.step(tickNanos);
+        return game.getPaddle().getCollisionRectangle().getUpperLeft().getX() != before ? 1 : 0;
+    }
+
+    private static Game game(KeyboardSensor keyboard) {
+        Game game = new Game(keyboard);
+        game.setSeed(1);
+        game.initialize();
+        return game;
+    }
+}
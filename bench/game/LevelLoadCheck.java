@@ -0,0 +1,107 @@
+package game;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures how long a large level takes to load and build, and how much memory it takes.
+ * A layout of 100k blocks (or the count given as the first argument) is written as text and as
+ * binary; each is read back, then built into a headless game. For every step the wall time, the
+ * bytes allocated and, for the built game, the heap it keeps alive are reported.
+ */
+public final class LevelLoadCheck {
+    private static final int DEFAULT_BLOCKS = 100000;
+    private static final int RUNS = 3;
+
+    private LevelLoadCheck() {
+    }
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args the number of blocks, optionally
+     * @throws IOException if the level files can't be written or read
+     */
+    public static void main(String[] args) throws IOException {
+        int blockCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BLOCKS;
+        LevelDefinition level = generate(blockCount);
+        Path dir = Files.createTempDirectory("levels");
+        Path text = dir.resolve("level.txt");
+        Path binary = dir.resolve("level.bin");
+        LevelIO.writeText(level, text);
+        LevelIO.writeBinary(level, binary);
+        System.out.printf("%d blocks: text %d KB, binary %d KB%n",
+                level.getBlockCount(), Files.size(text) / 1024, Files.size(binary) / 1024);
+
+        LevelDefinition loaded = null;
+        for (Path file : new Path[]{text, binary}) {
+            long bestNanos = Long.MAX_VALUE;
+            long allocated = 0;
+            for (int run = 0; run < RUNS; run++) {
+                long allocatedBefore = allocatedBytes();
+                long start = System.nanoTime();
+                loaded = LevelIO.read(file);
+                bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+                allocated = allocatedBytes() - allocatedBefore;
+            }
+            System.out.printf("read %-6s %8.1f ms, %7.1f MB allocated%n", file.getFileName(),
+                    bestNanos / 1e6, allocated / 1e6);
+        }
+
+        long heapBefore = usedHeap();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        Game game = Game.headless();
+        game.initialize(loaded);
+        long buildNanos = System.nanoTime() - start;
+        long allocated = allocatedBytes() - allocatedBefore;
+        long retained = usedHeap() - heapBefore;
+        System.out.printf("build         %8.1f ms, %7.1f MB allocated, %7.1f MB retained (%d bytes per block)%n",
+                buildNanos / 1e6, allocated / 1e6, retained / 1e6, retained / level.getBlockCount());
+        System.out.printf("%d blocks in the game%n", game.getRemainingBlocks());
+
+        Files.delete(text);
+        Files.delete(binary);
+        Files.delete(dir);
+    }
+
+    /**
+     * A level with the standard paddle, borders and balls and a dense grid of small blocks.
+     */
+    private static LevelDefinition generate(int blockCount) {
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 590, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, LevelDefinition.REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        level.addBall(700, 560, 5, Color.BLUE, LevelDefinition.RANDOM_ANGLE, 3);
+        Color[] colors = {Color.YELLOW, Color.PINK, Color.ORANGE, Color.GRAY, Color.GREEN, Color.RED};
+        int columns = 400;
+        double size = 800.0 / columns;
+        for (int i = 0; i < blockCount; i++) {
+            int row = i / columns;
+            int col = i % columns;
+            level.addBlock(col * size, 20 + row * size, size, size, colors[row % colors.length],
+                    LevelDefinition.REMOVABLE | LevelDefinition.SCORES);
+        }
+        return level;
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
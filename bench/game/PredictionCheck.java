@@ -0,0 +1,141 @@
+package game;
+
+import bench.BenchWorld;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * Checks TrajectoryPredictor against stepping a ball tick by tick, and measures how much faster it is.
+ * Balls start at random places below the blocks of a world whose blocks have no listeners, so
+ * nothing breaks and a prediction should match the stepped ball exactly, however many bounces it
+ * makes. Where the stepped ball crosses the row is found by interpolating its last tick, which is
+ * only exact when it does not bounce in that tick, so the few balls that do are not compared.
+ * It lives in the game package because it reads the exact center of a ball, which Ball keeps package-private.
+ * Exits with status 1 if a check fails.
+ */
+public final class PredictionCheck {
+    private static final int BLOCKS = 200;
+    private static final int BALLS = 2000;
+    private static final int RADIUS = 5;
+    private static final double ROW_Y = 590;
+    private static final int MAX_EVENTS = 64;
+    private static final int MAX_TICKS = 100000;
+    private static final double TOLERANCE = 1e-6;
+    private static final long TIMING_NANOS = 2000000000L;
+
+    private PredictionCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        GameEnvironment environment = new BenchWorld(BLOCKS, 0, 1).environment();
+        double[][] balls = randomBalls(new Random(3));
+        TrajectoryPredictor predictor = new TrajectoryPredictor(environment);
+        int arrived = 0;
+        int compared = 0;
+        int wrong = 0;
+        long events = 0;
+        double maxError = 0;
+        for (double[] b : balls) {
+            if (!predictor.predict(b[0], b[1], b[2], b[3], RADIUS, ROW_Y, MAX_EVENTS)) {
+                continue;
+            }
+            arrived++;
+            events += predictor.getEventCount();
+            double ticks = predictor.getArrivalTicks();
+            double[] stepped = step(environment, b);
+            if (stepped[2] != 0) {
+                continue;
+            }
+            compared++;
+            double error = Math.abs(stepped[1] - predictor.getArrivalX());
+            maxError = Math.max(maxError, error);
+            if (error > TOLERANCE || stepped[0] != Math.floor(ticks) + 1) {
+                wrong++;
+            }
+        }
+        System.out.printf("%d of %d balls reach the row after %.1f bounces on average; %d compared to stepping,"
+                        + " %d differ, largest difference %.2e px%s%n", arrived, BALLS, events / (double) arrived,
+                compared, wrong, maxError, wrong == 0 ? "" : " (WRONG)");
+        if (wrong > 0 || compared < BALLS / 2) {
+            System.exit(1);
+        }
+        time(environment, balls, predictor);
+    }
+
+    /**
+     * Steps a ball until its lower edge reaches the row.
+     *
+     * @return the tick it gets there in, where its center crosses the row in that tick, and 1 if it
+     *         bounced in that tick or 0 if not
+     */
+    private static double[] step(GameEnvironment environment, double[] b) {
+        Ball ball = new Ball(b[0], b[1], RADIUS, Color.BLUE);
+        // The constructor rounds the center down
+        ball.setCenter(b[0], b[1]);
+        ball.setVelocity(b[2], b[3]);
+        ball.setGameEnvironment(environment);
+        double targetY = ROW_Y - RADIUS;
+        for (int tick = 1; tick <= MAX_TICKS; tick++) {
+            double x = ball.getCenterX();
+            double y = ball.getCenterY();
+            double dx = ball.getVelocity().getDx();
+            double dy = ball.getVelocity().getDy();
+            ball.moveOneStep();
+            if (ball.getCenterY() >= targetY) {
+                double fraction = (targetY - y) / (ball.getCenterY() - y);
+                boolean bounced = ball.getVelocity().getDx() != dx || ball.getVelocity().getDy() != dy;
+                return new double[] {tick, x + (ball.getCenterX() - x) * fraction, bounced ? 1 : 0};
+            }
+        }
+        return new double[] {-1, 0, 1};
+    }
+
+    private static void time(GameEnvironment environment, double[][] balls, TrajectoryPredictor predictor) {
+        long predictions = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (double[] b : balls) {
+                predictor.predict(b[0], b[1], b[2], b[3], RADIUS, ROW_Y, MAX_EVENTS);
+            }
+            predictions += balls.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < TIMING_NANOS);
+        double predicted = elapsed / (double) predictions;
+
+        long stepped = 0;
+        long ticks = 0;
+        start = System.nanoTime();
+        do {
+            for (double[] b : balls) {
+                ticks += (long) step(environment, b)[0];
+            }
+            stepped += balls.length;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < TIMING_NANOS);
+        double steppedNanos = elapsed / (double) stepped;
+        System.out.printf("Predicting: %.2f us per ball; stepping %.0f ticks on average: %.2f us per ball,"
+                + " %.0f times slower%n", predicted / 1e3, ticks / (double) stepped, steppedNanos / 1e3,
+                steppedNanos / predicted);
+    }
+
+    /**
+     * Balls below the blocks, going any way at a speed from 2 to 10.
+     */
+    private static double[][] randomBalls(Random random) {
+        double[][] balls = new double[BALLS][];
+        for (int i = 0; i < BALLS; i++) {
+            double angle = random.nextDouble() * 360;
+            Velocity v = Velocity.fromAngleAndSpeed(angle, 2 + random.nextDouble() * 8);
+            balls[i] = new double[] {20 + random.nextDouble() * 760, 420 + random.nextDouble() * 160,
+                v.getDx(), v.getDy()};
+        }
+        return balls;
+    }
+}
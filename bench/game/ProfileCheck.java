@@ -0,0 +1,108 @@
+package game;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures what the tick profiler costs and checks that it allocates nothing per tick.
+ * A game with 1000 blocks that are never removed and 200 balls is stepped with the profiler
+ * on and off in alternating rounds, then the profiler's summary is written as CSV and JSON.
+ * Exits with status 1 if a profiled tick allocated.
+ */
+public final class ProfileCheck {
+    private static final int BLOCKS = 1000;
+    private static final int BALLS = 200;
+    private static final int WARMUP_TICKS = 10000;
+    private static final int ROUND_TICKS = 10000;
+    private static final int ROUNDS = 5;
+
+    private ProfileCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     * @throws IOException if the metrics files can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        Game game = steadyGame();
+        TickProfiler profiler = game.getProfiler();
+        step(game, WARMUP_TICKS);
+
+        long on = 0;
+        long off = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            profiler.setEnabled(false);
+            off += step(game, ROUND_TICKS);
+            profiler.setEnabled(true);
+            on += step(game, ROUND_TICKS);
+        }
+        double offPerTick = (double) off / (ROUNDS * ROUND_TICKS);
+        double onPerTick = (double) on / (ROUNDS * ROUND_TICKS);
+        System.out.printf("profiler off %.1f us/tick, on %.1f us/tick (%+.1f%%)%n",
+                offPerTick / 1e3, onPerTick / 1e3, (onPerTick / offPerTick - 1) * 100);
+
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long calibration = -threads.getThreadAllocatedBytes(threadId) + threads.getThreadAllocatedBytes(threadId);
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ROUND_TICKS; i++) {
+            game.step();
+        }
+        long allocated = threads.getThreadAllocatedBytes(threadId) - before - calibration;
+        System.out.printf("%d bytes allocated in %d profiled ticks%n", allocated, ROUND_TICKS);
+
+        for (String suffix : new String[] {".csv", ".json"}) {
+            Path file = Files.createTempFile("metrics", suffix);
+            profiler.setWindowMillis(50);
+            profiler.writeTo(file);
+            step(game, ROUND_TICKS);
+            profiler.close();
+            List<String> lines = Files.readAllLines(file);
+            System.out.printf("%n%s: %d lines%n", file, lines.size());
+            for (String line : lines.subList(0, Math.min(2, lines.size()))) {
+                System.out.println(line);
+            }
+            Files.delete(file);
+        }
+        if (allocated > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static Game steadyGame() {
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 560, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, 0);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        int columns = 50;
+        for (int i = 0; i < BLOCKS; i++) {
+            level.addBlock(10 + (i % columns) * 15.6, 40 + (i / columns) * 15, 15.6, 15, Color.RED, LevelDefinition.SCORES);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < BALLS; i++) {
+            level.addBall(20 + random.nextInt(760), 400 + random.nextInt(150), 3, Color.BLUE, random.nextInt(360), 4);
+        }
+        Game game = Game.headless();
+        game.setSeed(1);
+        game.initialize(level);
+        return game;
+    }
+
+    private static long step(Game game, int ticks) {
+        long start = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            game.step();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,298 @@
+package game;
+
+import biuoop.KeyboardSensor;
+import shapes.Point;
+import shapes.Rectangle;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+/**
+ * Checks that frames recorded on a DrawCommandBuffer draw the same as drawing sprite by sprite,
+ * and measures what batching them by color saves.
+ * Two games with the same seed and input are stepped side by side, one drawn directly and one
+ * recorded and drawn from the buffer, and their frames are compared pixel by pixel; then the same
+ * is done with the recorded frames drawn on a RenderThread. This is done on the standard level and
+ * on a dense level with many balls. The buffer draws balls by color, so where balls of different
+ * colors overlap another one may be on top; only such pixels may differ. The color changes and the
+ * time to draw a frame both ways are reported for the default level and for 1000 blocks and 200
+ * balls that are not cached in the static layer.
+ * It lives in the game package because the frame drawing methods of Game are package-private.
+ * Exits with status 1 if a frame differs.
+ */
+public final class RenderCheck {
+    private static final int TICKS = 2000;
+    private static final int COMPARE_EVERY = 50;
+    private static final int TIMING_FRAMES = 500;
+    private static final Color[] BLOCK_COLORS = {Color.RED, Color.ORANGE, Color.YELLOW, Color.GREEN, Color.BLUE};
+
+    private RenderCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (String level : new String[] {"standard", "dense"}) {
+            ok &= compare(level, false);
+            ok &= compare(level, true);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        timeStandard();
+        time();
+    }
+
+    private static boolean compare(String level, boolean onThread) {
+        String name = level + (onThread ? " on a render thread" : " recorded");
+        VirtualKeyboard directKeys = new VirtualKeyboard();
+        VirtualKeyboard batchedKeys = new VirtualKeyboard();
+        Game direct = game(level, directKeys);
+        Game batched = game(level, batchedKeys);
+        batched.setRenderMode(Game.RENDER_THREAD);
+        BufferedImage expected = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        BufferedImage actual = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        RenderThread thread = new RenderThread(() -> new ImageDrawSurface(actual), d -> ((ImageDrawSurface) d).dispose());
+        Random bot = new Random(7);
+        int frames = 0;
+        int overlapping = 0;
+        for (int tick = 0; tick < TICKS && !direct.isOver(); tick++) {
+            if (tick % 20 == 0) {
+                int key = bot.nextInt(3);
+                press(directKeys, key);
+                press(batchedKeys, key);
+            }
+            direct.step();
+            batched.step();
+            if (tick % COMPARE_EVERY != 0 && !onThread) {
+                continue;
+            }
+            // At the end of the tick, so the balls are where getX() and getY() say
+            double alpha = 1;
+            if (onThread) {
+                thread.submit(batched.recordFrame(alpha));
+                if (tick % COMPARE_EVERY != 0) {
+                    continue;
+                }
+                thread.awaitIdle();
+            } else {
+                ImageDrawSurface surface = new ImageDrawSurface(actual);
+                batched.recordFrame(alpha).flush(surface);
+                surface.dispose();
+            }
+            ImageDrawSurface surface = new ImageDrawSurface(expected);
+            direct.drawFrame(surface, alpha);
+            surface.dispose();
+            int differing = differingPixels(expected, actual, direct.getSprites());
+            if (differing > 0) {
+                System.out.printf("%s: %d pixels differ after tick %d%n", name, differing, tick + 1);
+                thread.close();
+                return false;
+            }
+            if (!sameImage(expected, actual)) {
+                overlapping++;
+            }
+            frames++;
+        }
+        thread.close();
+        System.out.printf("%s: %d frames match the frames drawn sprite by sprite"
+                + " (%d only where balls of different colors overlap)%n", name, frames, overlapping);
+        return true;
+    }
+
+    /**
+     * Draws frames of the default level both ways and reports the color changes and the time per frame.
+     */
+    private static void timeStandard() {
+        Game game = game("standard", new VirtualKeyboard());
+        game.setRenderMode(Game.RENDER_THREAD);
+        for (int tick = 0; tick < 200; tick++) {
+            game.step();
+        }
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        CountingSurface surface = new CountingSurface(image);
+        long directNanos = 0;
+        long batchedNanos = 0;
+        int directChanges = 0;
+        int batchedChanges = 0;
+        for (int round = -1; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMING_FRAMES; i++) {
+                surface.colorChanges = 0;
+                game.drawFrame(surface, 1);
+            }
+            long drawn = System.nanoTime();
+            directChanges = surface.colorChanges;
+            for (int i = 0; i < TIMING_FRAMES; i++) {
+                surface.colorChanges = 0;
+                game.recordFrame(1).flush(surface);
+            }
+            batchedChanges = surface.colorChanges;
+            if (round >= 0) {
+                directNanos += drawn - start;
+                batchedNanos += System.nanoTime() - drawn;
+            }
+        }
+        surface.dispose();
+        System.out.printf("default level: direct %d color changes, %.1f us per frame;"
+                        + " batched %d color changes, %.1f us per frame with recording%n",
+                directChanges, directNanos / 1000.0 / (2 * TIMING_FRAMES), batchedChanges,
+                batchedNanos / 1000.0 / (2 * TIMING_FRAMES));
+    }
+
+    private static void time() {
+        // The blocks are plain sprites here, so they are drawn every frame like the balls
+        SpriteCollection sprites = new SpriteCollection();
+        Random random = new Random(3);
+        for (int i = 0; i < 1000; i++) {
+            sprites.addSprite(new Block(new Rectangle(new Point(10 + (i % 50) * 15.6, 40 + (i / 50) * 15), 15.6, 15),
+                    BLOCK_COLORS[i / 50 % BLOCK_COLORS.length]));
+        }
+        Color[] colors = {Color.BLUE, Color.RED, Color.GREEN, Color.WHITE};
+        for (int i = 0; i < 200; i++) {
+            sprites.addSprite(new Ball(20 + random.nextInt(760), 300 + random.nextInt(250), 3,
+                    colors[random.nextInt(colors.length)]));
+        }
+        BufferedImage image = new BufferedImage(800, 600, BufferedImage.TYPE_INT_RGB);
+        CountingSurface surface = new CountingSurface(image);
+        DrawCommandBuffer buffer = new DrawCommandBuffer(800, 600);
+        long directNanos = 0;
+        long batchedNanos = 0;
+        long recordNanos = 0;
+        int directChanges = 0;
+        int batchedChanges = 0;
+        for (int round = -1; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMING_FRAMES; i++) {
+                surface.colorChanges = 0;
+                sprites.drawAllOn(surface, 1);
+            }
+            long drawn = System.nanoTime();
+            directChanges = surface.colorChanges;
+            long recorded = 0;
+            for (int i = 0; i < TIMING_FRAMES; i++) {
+                long frameStart = System.nanoTime();
+                buffer.clear();
+                sprites.recordAllOn(buffer, 1);
+                recorded += System.nanoTime() - frameStart;
+                surface.colorChanges = 0;
+                buffer.flush(surface);
+            }
+            batchedChanges = surface.colorChanges;
+            if (round >= 0) {
+                directNanos += drawn - start;
+                batchedNanos += System.nanoTime() - drawn;
+                recordNanos += recorded;
+            }
+        }
+        surface.dispose();
+        System.out.printf("1000 blocks and 200 balls: direct %d color changes, %.1f us per frame;"
+                        + " batched %d commands, %d color changes, %.1f us per frame (%.1f us recording)%n",
+                directChanges, directNanos / 1000.0 / (2 * TIMING_FRAMES), buffer.size(), batchedChanges,
+                batchedNanos / 1000.0 / (2 * TIMING_FRAMES), recordNanos / 1000.0 / (2 * TIMING_FRAMES));
+    }
+
+    /**
+     * Counts the pixels that differ, leaving out those covered by two balls of different colors.
+     */
+    private static int differingPixels(BufferedImage a, BufferedImage b, SpriteCollection sprites) {
+        int differing = 0;
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y) && !underDifferentBalls(x, y, sprites)) {
+                    differing++;
+                }
+            }
+        }
+        return differing;
+    }
+
+    private static boolean underDifferentBalls(int x, int y, SpriteCollection sprites) {
+        Color first = null;
+        for (int i = 0; i < sprites.size(); i++) {
+            if (sprites.get(i) instanceof Ball) {
+                Ball ball = (Ball) sprites.get(i);
+                double dx = x - ball.getX();
+                double dy = y - ball.getY();
+                // A pixel of slack for the rasterized edge
+                if (dx * dx + dy * dy <= (ball.getSize() + 1) * (ball.getSize() + 1)) {
+                    if (first == null) {
+                        first = ball.getColor();
+                    } else if (first.getRGB() != ball.getColor().getRGB()) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean sameImage(BufferedImage a, BufferedImage b) {
+        for (int y = 0; y < a.getHeight(); y++) {
+            for (int x = 0; x < a.getWidth(); x++) {
+                if (a.getRGB(x, y) != b.getRGB(x, y)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static void press(VirtualKeyboard keyboard, int key) {
+        keyboard.releaseAll();
+        if (key == 1) {
+            keyboard.press(KeyboardSensor.LEFT_KEY);
+        } else if (key == 2) {
+            keyboard.press(KeyboardSensor.RIGHT_KEY);
+        }
+    }
+
+    private static Game game(String level, VirtualKeyboard keyboard) {
+        Game game = new Game(keyboard);
+        game.setSeed(11);
+        game.initialize("dense".equals(level) ? dense() : LevelDefinition.standard());
+        return game;
+    }
+
+    private static LevelDefinition dense() {
+        Random random = new Random(5);
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 560, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, LevelDefinition.REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        int columns = 50;
+        for (int i = 0; i < 1000; i++) {
+            level.addBlock(10 + (i % columns) * 15.6, 40 + (i / columns) * 15, 15.6, 15,
+                    BLOCK_COLORS[i / columns % BLOCK_COLORS.length],
+                    LevelDefinition.REMOVABLE | LevelDefinition.SCORES);
+        }
+        for (int i = 0; i < 200; i++) {
+            level.addBall(20 + random.nextInt(760), 400 + random.nextInt(150), 3, Color.BLUE, random.nextInt(360), 4);
+        }
+        return level;
+    }
+
+    /**
+     * An image surface that counts how often its color is set.
+     */
+    private static final class CountingSurface extends ImageDrawSurface {
+        private int colorChanges;
+
+        CountingSurface(BufferedImage image) {
+            super(image);
+        }
+
+        @Override
+        public void setColor(Color color) {
+            this.colorChanges++;
+            super.setColor(color);
+        }
+    }
+}
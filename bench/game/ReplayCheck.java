@@ -0,0 +1,70 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Checks that a recorded session replays to the same state.
+ * A bot that changes keys at random intervals plays a seeded game while it is recorded, then the
+ * log is replayed on a fresh headless game and the state hashes are compared.
+ * Exits with status 1 if they differ.
+ */
+public final class ReplayCheck {
+    private static final long DEFAULT_TICKS = 1000000;
+
+    private ReplayCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args the maximum number of ticks to record, optionally
+     * @throws IOException never, the log is kept in memory
+     */
+    public static void main(String[] args) throws IOException {
+        long maxTicks = args.length > 0 ? Long.parseLong(args[0]) : DEFAULT_TICKS;
+        Random bot = new Random(42);
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        Game recorded = new Game(keyboard);
+        recorded.setSeed(7);
+        ByteArrayOutputStream log = new ByteArrayOutputStream();
+        recorded.recordTo(log);
+        recorded.initialize();
+
+        long ticks = 0;
+        int ticksToNextChange = 0;
+        while (ticks < maxTicks && !recorded.isOver()) {
+            if (ticksToNextChange-- == 0) {
+                keyboard.releaseAll();
+                int keys = bot.nextInt(3);
+                if (keys == 1) {
+                    keyboard.press(KeyboardSensor.LEFT_KEY);
+                } else if (keys == 2) {
+                    keyboard.press(KeyboardSensor.RIGHT_KEY);
+                }
+                ticksToNextChange = bot.nextInt(60);
+            }
+            recorded.step();
+            ticks++;
+        }
+        long expected = recorded.stateHash();
+        recorded.stopRecording();
+
+        SessionReplayer replayer = new SessionReplayer(new ByteArrayInputStream(log.toByteArray()));
+        Game replayed = replayer.createGame();
+        long start = System.nanoTime();
+        long replayedTicks = replayer.replay(replayed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        boolean matches = replayer.matches(replayed) && replayed.stateHash() == expected;
+        System.out.printf("%d ticks recorded in %d bytes, replayed in %.3f s (%.0f ticks/s): %s%n",
+                ticks, log.size(), seconds, replayedTicks / seconds,
+                matches ? "state matches" : "STATE DIFFERS");
+        if (!matches) {
+            System.exit(1);
+        }
+    }
+}
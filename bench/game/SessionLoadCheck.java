@@ -0,0 +1,212 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Runs thousands of game sessions on one scheduler and reports throughput, fairness and latency.
+ * First every session runs a fixed tick budget as fast as it can while a bot changes their keys,
+ * then sessions paced at 60 ticks per second run for a while, then a session without input plays
+ * until its game is over and must end with the score runHeadless() gives, then a TCP client drives
+ * a session through a SessionServer. Exits with status 1 if a session ran the wrong number of
+ * ticks, ended with another score or was not removed, or the server answered wrongly.
+ */
+public final class SessionLoadCheck {
+    private static final int DEFAULT_SESSIONS = 2000;
+    private static final long DEFAULT_TICKS = 2000;
+    private static final int PACED_RATE = 60;
+    private static final long PACED_MILLIS = 2000;
+    private static final int ROUNDTRIPS = 10000;
+    private static final long FINISH_TICKS = 100000;
+
+    private SessionLoadCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args the number of sessions and the ticks each runs, optionally
+     * @throws Exception if the check is interrupted or the connection fails
+     */
+    public static void main(String[] args) throws Exception {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SESSIONS;
+        long ticks = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_TICKS;
+        int workers = Runtime.getRuntime().availableProcessors();
+        LevelDefinition level = LevelDefinition.standard();
+        boolean ok = true;
+
+        try (SessionScheduler scheduler = new SessionScheduler(workers, SessionScheduler.DEFAULT_QUANTUM)) {
+            System.out.printf("%d sessions of %d ticks on %d workers%n", sessionCount, ticks, workers);
+            long start = System.nanoTime();
+            List<GameSession> sessions = new ArrayList<>();
+            for (int i = 0; i < sessionCount; i++) {
+                sessions.add(scheduler.start(level, i, ticks, 0));
+            }
+            Thread bot = startBot(sessions);
+            scheduler.awaitAll();
+            long elapsed = System.nanoTime() - start;
+            bot.interrupt();
+            ok &= report(sessions, elapsed, ticks);
+            for (GameSession session : sessions) {
+                scheduler.remove(session.getId());
+            }
+
+            int pacedCount = sessionCount / 2;
+            System.out.printf("%n%d sessions paced at %d ticks/s for %d ms%n", pacedCount, PACED_RATE, PACED_MILLIS);
+            List<GameSession> paced = new ArrayList<>();
+            for (int i = 0; i < pacedCount; i++) {
+                paced.add(scheduler.start(level, i, Long.MAX_VALUE, PACED_RATE));
+            }
+            Thread.sleep(PACED_MILLIS);
+            for (GameSession session : paced) {
+                session.stop();
+            }
+            scheduler.awaitAll();
+            reportPaced(paced);
+            for (GameSession session : paced) {
+                scheduler.remove(session.getId());
+            }
+
+            System.out.println();
+            ok &= checkFinish(scheduler, level);
+            try (SessionServer server = new SessionServer(scheduler, level, 0)) {
+                ok &= checkServer(server.getPort());
+            }
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static Thread startBot(List<GameSession> sessions) {
+        Thread bot = new Thread(() -> {
+            Random random = new Random(42);
+            String[] keys = {"none", "left", "right", "both"};
+            while (!Thread.currentThread().isInterrupted()) {
+                GameSession session = sessions.get(random.nextInt(sessions.size()));
+                session.getKeyboard().setKeys(keys[random.nextInt(keys.length)]);
+                Thread.onSpinWait();
+            }
+        }, "bot");
+        bot.setDaemon(true);
+        bot.start();
+        return bot;
+    }
+
+    private static boolean report(List<GameSession> sessions, long elapsed, long ticks) {
+        long total = 0;
+        double minRate = Double.MAX_VALUE;
+        double maxRate = 0;
+        long maxTick = 0;
+        long maxLag = 0;
+        double lagSum = 0;
+        int wrong = 0;
+        for (GameSession session : sessions) {
+            SessionStats stats = session.stats();
+            total += stats.getTicks();
+            minRate = Math.min(minRate, stats.getTicksPerSecond());
+            maxRate = Math.max(maxRate, stats.getTicksPerSecond());
+            maxTick = Math.max(maxTick, stats.getMaxTickNanos());
+            maxLag = Math.max(maxLag, stats.getMaxLagNanos());
+            lagSum += stats.getMeanLagNanos();
+            // A session may end early only because its game is over
+            if (stats.getTicks() != ticks && stats.getScoreboard().getRemainingBalls() > 0
+                    && stats.getScoreboard().getRemainingBlocks() > 0) {
+                wrong++;
+            }
+        }
+        System.out.printf("%d ticks in %.0f ms: %.0f ticks/s%n", total, elapsed / 1e6, total * 1e9 / elapsed);
+        System.out.printf("per session: %.0f to %.0f ticks/s, tick %.1f us max, lag %.1f ms mean %.1f ms max%n",
+                minRate, maxRate, maxTick / 1e3, lagSum / sessions.size() / 1e6, maxLag / 1e6);
+        System.out.println(sessions.get(0).stats());
+        if (wrong > 0) {
+            System.out.println(wrong + " sessions ended before their budget");
+            return false;
+        }
+        return true;
+    }
+
+    private static void reportPaced(List<GameSession> sessions) {
+        double minRate = Double.MAX_VALUE;
+        double maxRate = 0;
+        long maxLag = 0;
+        for (GameSession session : sessions) {
+            SessionStats stats = session.stats();
+            minRate = Math.min(minRate, stats.getTicksPerSecond());
+            maxRate = Math.max(maxRate, stats.getTicksPerSecond());
+            maxLag = Math.max(maxLag, stats.getMaxLagNanos());
+        }
+        System.out.printf("per session: %.1f to %.1f ticks/s, lag %.2f ms max%n", minRate, maxRate, maxLag / 1e6);
+    }
+
+    private static boolean checkFinish(SessionScheduler scheduler, LevelDefinition level)
+            throws InterruptedException {
+        GameSession session = scheduler.start(level, 11, FINISH_TICKS, 0);
+        session.awaitFinished();
+        SessionStats stats = session.stats();
+        scheduler.remove(session.getId());
+        Game game = Game.headless();
+        game.setSeed(11);
+        game.initialize(level);
+        long ticks = game.runHeadless(FINISH_TICKS);
+        System.out.printf("session without input: %d ticks, score %d, game %s; runHeadless: %d ticks, score %d%n",
+                stats.getTicks(), stats.getScoreboard().getScore(), game.isOver() ? "over" : "not over",
+                ticks, game.getScore());
+        if (stats.getTicks() != ticks || stats.getScoreboard().getScore() != game.getScore()
+                || scheduler.get(session.getId()) != null) {
+            System.out.println("the session ended unlike runHeadless() or was not removed");
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean checkServer(int port) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            socket.setTcpNoDelay(true);
+            out.println("new 7");
+            String created = in.readLine();
+            if (!created.startsWith("ok ")) {
+                System.out.println("new failed: " + created);
+                return false;
+            }
+            String id = created.substring(3);
+            String[] keys = {"left", "none", "right"};
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDTRIPS; i++) {
+                out.println("keys " + id + " " + keys[i % keys.length]);
+                String reply = in.readLine();
+                if (!reply.equals("ok")) {
+                    System.out.println("keys failed: " + reply);
+                    return false;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("TCP: %d key commands, %.1f us per roundtrip%n", ROUNDTRIPS, elapsed / 1e3 / ROUNDTRIPS);
+            out.println("keys " + id + " sideways");
+            String bad = in.readLine();
+            out.println("stats " + id);
+            System.out.println(in.readLine());
+            out.println("stop " + id);
+            String stopped = in.readLine();
+            out.println("stats " + id);
+            String gone = in.readLine();
+            out.println("quit");
+            if (!bad.startsWith("error") || !stopped.equals("ok") || !gone.startsWith("error")) {
+                System.out.println("unexpected replies: " + bad + ", " + stopped + ", " + gone);
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,276 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.awt.Color;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that restoring a snapshot puts the world back exactly.
+ * A reference game is played with fixed input and its state hash recorded after every tick. A second
+ * game is played with the same input, taking snapshots as it goes and jumping back and forth between
+ * them at random; after every tick its hash must match the reference for the same tick. Then a
+ * snapshot taken right after initialize() is restored to replay the game from the start.
+ * This is done on the standard level and on a dense level with many balls, some of them in a
+ * BallSystem, with the grid and with the bounding-volume hierarchy, and the cost of snapshots and
+ * restores is reported. Last, the collision index must forget where a removed block was once no
+ * snapshot that has it is left.
+ * Exits with status 1 on the first difference.
+ */
+public final class SnapshotCheck {
+    private static final int TICKS = 6000;
+    private static final int SNAPSHOT_EVERY = 25;
+    private static final int JUMPS = 400;
+    private static final int TIMING_ROUNDS = 2000;
+
+    private SnapshotCheck() {
+    }
+
+    /**
+     * Runs the check.
+     *
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        boolean ok = true;
+        for (String level : new String[] {"standard", "dense"}) {
+            for (boolean bvh : new boolean[] {false, true}) {
+                ok &= check(level, bvh);
+            }
+        }
+        for (boolean bvh : new boolean[] {false, true}) {
+            ok &= checkForgetting(bvh);
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+        for (String level : new String[] {"standard", "dense"}) {
+            for (boolean bvh : new boolean[] {false, true}) {
+                time(level, bvh);
+            }
+        }
+    }
+
+    private static boolean check(String level, boolean bvh) {
+        String name = level + (bvh ? " bvh" : " grid");
+        int[] keys = keys(level.hashCode());
+        VirtualKeyboard referenceKeys = new VirtualKeyboard();
+        Game reference = game(level, bvh, referenceKeys);
+        long[] hashes = new long[TICKS + 1];
+        hashes[0] = reference.stateHash();
+        int last = 0;
+        while (last < TICKS && !reference.isOver()) {
+            play(reference, referenceKeys, keys, last, last + 1, null);
+            hashes[++last] = reference.stateHash();
+        }
+
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        Game game = game(level, bvh, keyboard);
+        WorldSnapshot start = game.snapshot();
+        if (game.stateHash() != hashes[0]) {
+            System.out.printf("%s: the games differ from the start%n", name);
+            return false;
+        }
+        // Snapshots of the timeline so far, by tick
+        List<WorldSnapshot> snapshots = new ArrayList<>();
+        List<Integer> snapshotTicks = new ArrayList<>();
+        snapshots.add(start);
+        snapshotTicks.add(0);
+        Random random = new Random(name.hashCode());
+        int tick = 0;
+        int furthest = 0;
+        for (int jump = 0; jump < JUMPS; jump++) {
+            // Play on to a later multiple of SNAPSHOT_EVERY, taking a snapshot there the first time
+            int until = Math.min(last, (tick / SNAPSHOT_EVERY + 1 + random.nextInt(4)) * SNAPSHOT_EVERY);
+            int reached = play(game, keyboard, keys, tick, until, hashes);
+            if (reached < 0) {
+                System.out.printf("%s: differs from the reference after tick %d, jump %d%n", name, -reached, jump);
+                return false;
+            }
+            if (until > furthest) {
+                snapshots.add(game.snapshot());
+                snapshotTicks.add(until);
+                furthest = until;
+            }
+            int pick = random.nextInt(snapshots.size());
+            game.restore(snapshots.get(pick));
+            tick = snapshotTicks.get(pick);
+            if (game.stateHash() != hashes[tick]) {
+                System.out.printf("%s: restoring the snapshot of tick %d gives a different state%n", name, tick);
+                return false;
+            }
+        }
+        game.restore(start);
+        int reached = play(game, keyboard, keys, 0, last, hashes);
+        if (reached < 0) {
+            System.out.printf("%s: the restarted game differs after tick %d%n", name, -reached);
+            return false;
+        }
+        System.out.printf("%s: %d jumps between %d snapshots and a restart match the reference over %d ticks%n",
+                name, JUMPS, snapshots.size(), last);
+        return true;
+    }
+
+    private static boolean checkForgetting(boolean bvh) {
+        String name = bvh ? "bvh" : "grid";
+        int[] keys = keys(name.hashCode());
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        Game game = game("standard", bvh, keyboard);
+        WorldSnapshot snapshot = game.snapshot();
+        GameEnvironment environment = game.getGameEnvironment();
+        Block removed = null;
+        for (int tick = 0; tick < TICKS && removed == null && !game.isOver(); tick++) {
+            play(game, keyboard, keys, tick, tick + 1, null);
+            for (Block block : game.getLevelBlocks()) {
+                if (!environment.contains(block)) {
+                    removed = block;
+                }
+            }
+        }
+        if (removed == null) {
+            System.out.printf("%s: no block was removed%n", name);
+            return false;
+        }
+        // Restoring the block into the index must work while the snapshot that has it is alive
+        CollidableIndex index = environment.getIndex();
+        boolean kept = index.restore(removed);
+        index.remove(removed);
+        Reference.reachabilityFence(snapshot);
+        snapshot = null;
+        boolean forgotten = false;
+        for (int attempt = 0; attempt < 20 && !forgotten; attempt++) {
+            System.gc();
+            game.step();
+            forgotten = !index.restore(removed);
+            if (!forgotten) {
+                index.remove(removed);
+            }
+        }
+        System.out.printf("%s: a removed block's place is %s while its snapshot lives and %s after%n",
+                name, kept ? "kept" : "lost", forgotten ? "forgotten" : "still kept");
+        return kept && forgotten;
+    }
+
+    private static void time(String level, boolean bvh) {
+        int[] keys = keys(level.hashCode());
+        VirtualKeyboard keyboard = new VirtualKeyboard();
+        Game game = game(level, bvh, keyboard);
+        play(game, keyboard, keys, 0, 300, null);
+        WorldSnapshot snapshot = game.snapshot();
+        WorldSnapshot reused = game.snapshot();
+        long snapshotNanos = 0;
+        long restoreNanos = 0;
+        for (int round = -1; round < 2; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMING_ROUNDS * 50; i++) {
+                game.snapshot(reused);
+            }
+            long taken = System.nanoTime();
+            for (int i = 0; i < TIMING_ROUNDS * 50; i++) {
+                game.restore(snapshot);
+            }
+            if (round >= 0) {
+                snapshotNanos += taken - start;
+                restoreNanos += System.nanoTime() - taken;
+            }
+        }
+        // Play on for up to two seconds, removing blocks and balls, then roll back over it
+        long rollbackNanos = 0;
+        int blocksBack = 0;
+        for (int round = -TIMING_ROUNDS; round < TIMING_ROUNDS; round++) {
+            play(game, keyboard, keys, 300, 301 + Math.floorMod(round, 120), null);
+            int blocks = game.getRemainingBlocks();
+            long start = System.nanoTime();
+            game.restore(snapshot);
+            if (round >= 0) {
+                rollbackNanos += System.nanoTime() - start;
+                blocksBack += game.getRemainingBlocks() - blocks;
+            }
+        }
+        System.out.printf("%s: snapshot %d bytes of state, %.2f us; restore %.2f us unchanged,"
+                        + " %.2f us after up to 120 ticks (%.1f blocks back on average)%n",
+                level + (bvh ? " bvh" : " grid"), snapshot.getStateSize(), snapshotNanos / 1000.0 / (TIMING_ROUNDS * 100),
+                restoreNanos / 1000.0 / (TIMING_ROUNDS * 100), rollbackNanos / 1000.0 / TIMING_ROUNDS,
+                (double) blocksBack / TIMING_ROUNDS);
+    }
+
+    /**
+     * Plays ticks from..until with the given keys, checking the hash after every tick if hashes is given.
+     *
+     * @return the tick reached, which is until unless the game ended first, or minus the first tick
+     * whose hash differs
+     */
+    private static int play(Game game, VirtualKeyboard keyboard, int[] keys, int from, int until,
+                            long[] hashes) {
+        for (int tick = from; tick < until; tick++) {
+            if (game.isOver()) {
+                return tick;
+            }
+            keyboard.releaseAll();
+            if (keys[tick] == 1) {
+                keyboard.press(KeyboardSensor.LEFT_KEY);
+            } else if (keys[tick] == 2) {
+                keyboard.press(KeyboardSensor.RIGHT_KEY);
+            }
+            game.step();
+            if (hashes != null && game.stateHash() != hashes[tick + 1]) {
+                return -(tick + 1);
+            }
+        }
+        return until;
+    }
+
+    private static int[] keys(long seed) {
+        Random bot = new Random(seed);
+        int[] keys = new int[TICKS];
+        int key = 0;
+        for (int tick = 0; tick < TICKS; tick++) {
+            if (tick % 20 == 0) {
+                key = bot.nextInt(3);
+            }
+            keys[tick] = key;
+        }
+        return keys;
+    }
+
+    private static Game game(String level, boolean bvh, VirtualKeyboard keyboard) {
+        Game game = new Game(keyboard);
+        game.setSeed(11);
+        if (bvh) {
+            game.setCollisionIndex(new BoundingVolumeHierarchy());
+        }
+        game.initialize("dense".equals(level) ? dense() : LevelDefinition.standard());
+        if ("dense".equals(level)) {
+            Random random = new Random(6);
+            BallSystem system = new BallSystem(game.getGameEnvironment());
+            for (int i = 0; i < 50; i++) {
+                system.addBall(20 + random.nextInt(760), 400 + random.nextInt(150), 3, Color.GREEN,
+                        Velocity.fromAngleAndSpeed(random.nextInt(360), 4));
+            }
+            system.addToGame(game);
+        }
+        return game;
+    }
+
+    private static LevelDefinition dense() {
+        Random random = new Random(5);
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 560, 100, 10, 5);
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, LevelDefinition.REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+        int columns = 50;
+        for (int i = 0; i < 1000; i++) {
+            level.addBlock(10 + (i % columns) * 15.6, 40 + (i / columns) * 15, 15.6, 15, Color.RED,
+                    LevelDefinition.REMOVABLE | LevelDefinition.SCORES);
+        }
+        for (int i = 0; i < 50; i++) {
+            level.addBall(20 + random.nextInt(760), 400 + random.nextInt(150), 3, Color.BLUE, random.nextInt(360), 4);
+        }
+        return level;
+    }
+}
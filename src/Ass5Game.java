@@ -1,4 +1,19 @@
+import game.BoundingVolumeHierarchy;
 import game.Game;
+import game.InputSource;
+import game.LevelIO;
+import game.ScriptedInput;
+import game.SessionReplayer;
+import game.SocketInput;
+import game.TrackingInput;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /**
  * The Ass5Game class is the main entry point for the game.
@@ -7,11 +22,182 @@ import game.Game;
 public class Ass5Game {
     /**
      * The main method that is executed when the program starts.
-     * @param args command-line arguments. Not used in this program.
+     * Options:
+     * "--headless [ticks]" steps the game without a window and prints the tick rate,
+     * "--seed n" fixes the seed of the game,
+     * "--level file" plays the level in the given file, text or binary,
+     * "--record file" records the session to the given file,
+     * "--replay file" replays a recorded session without a window and checks its end state,
+     * "--metrics file" writes the profiler's summary every second, as JSON lines if the file ends with .json,
+     * "--overlay" shows the profiler's summary on top of the game,
+     * "--bvh" answers collision queries with a bounding-volume hierarchy instead of a grid,
+     * "--render direct|thread" picks how frames are drawn (see Game.setRenderMode),
+     * "--physics tick|event" picks how balls find what they hit (see Game.setPhysicsMode),
+     * "--input keyboard|ai|script:file|socket:port" picks what drives the paddle: the arrow keys,
+     * a controller that goes where the balls will land, a script of timed key changes (see ScriptedInput) or a
+     * client on a local port (see SocketInput).
+     * @param args command-line arguments.
+     * @throws IOException if a session log can't be read or written, or the metrics file created.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean headless = false;
+        long maxTicks = Long.MAX_VALUE;
+        Long seed = null;
+        String record = null;
+        String levelFile = null;
+        String metrics = null;
+        boolean overlay = false;
+        boolean bvh = false;
+        int renderMode = Game.RENDER_DIRECT;
+        int physicsMode = Game.PHYSICS_TICK;
+        String input = "keyboard";
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--headless":
+                    headless = true;
+                    if (i + 1 < args.length && !args[i + 1].startsWith("--")) {
+                        maxTicks = Long.parseLong(args[++i]);
+                    }
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                case "--level":
+                    levelFile = args[++i];
+                    break;
+                case "--record":
+                    record = args[++i];
+                    break;
+                case "--metrics":
+                    metrics = args[++i];
+                    break;
+                case "--overlay":
+                    overlay = true;
+                    break;
+                case "--bvh":
+                    bvh = true;
+                    break;
+                case "--render":
+                    renderMode = renderMode(args[++i]);
+                    break;
+                case "--physics":
+                    physicsMode = physicsMode(args[++i]);
+                    break;
+                case "--input":
+                    input = args[++i];
+                    break;
+                case "--replay":
+                    replay(args[++i]);
+                    return;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        InputSource source = inputSource(input);
+        Game game;
+        if (source == null) {
+            game = headless ? Game.headless() : new Game();
+        } else {
+            game = headless ? new Game(source) : Game.windowed(source);
+        }
+        if (source instanceof TrackingInput) {
+            ((TrackingInput) source).follow(game);
+        }
+        if (seed != null) {
+            game.setSeed(seed);
+        }
+        if (bvh) {
+            game.setCollisionIndex(new BoundingVolumeHierarchy());
+        }
+        game.setRenderMode(renderMode);
+        game.setPhysicsMode(physicsMode);
+        if (record != null) {
+            game.recordTo(new FileOutputStream(record));
+        }
+        if (levelFile != null) {
+            game.initialize(LevelIO.read(Paths.get(levelFile)));
+        } else {
+            game.initialize();
+        }
+        if (metrics != null) {
+            game.getProfiler().writeTo(Paths.get(metrics));
+        }
+        if (overlay) {
+            game.showProfilerOverlay();
+        }
+        if (!headless) {
+            game.run();
+            return;
+        }
+        long start = System.nanoTime();
+        long ticks = game.runHeadless(maxTicks);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        game.stopRecording();
+        game.getProfiler().close();
+        if (source != null) {
+            source.close();
+        }
+        System.out.printf("%d ticks in %.3f s (%.0f ticks/s), score %d%n",
+                ticks, seconds, ticks / seconds, game.getScore());
+    }
+
+    private static int renderMode(String name) {
+        switch (name) {
+            case "direct":
+                return Game.RENDER_DIRECT;
+            case "thread":
+                return Game.RENDER_THREAD;
+            default:
+                throw new IllegalArgumentException("Unknown render mode " + name);
+        }
+    }
+
+    private static int physicsMode(String name) {
+        switch (name) {
+            case "tick":
+                return Game.PHYSICS_TICK;
+            case "event":
+                return Game.PHYSICS_EVENT;
+            default:
+                throw new IllegalArgumentException("Unknown physics mode " + name);
+        }
+    }
+
+    /**
+     * @return the input the option names, or null for the keyboard.
      */
-    public static void main(String[] args) {
-        Game game = new Game();
-        game.initialize();
-        game.run();
+    private static InputSource inputSource(String option) throws IOException {
+        if (option.equals("keyboard")) {
+            return null;
+        }
+        if (option.equals("ai")) {
+            return new TrackingInput();
+        }
+        if (option.startsWith("script:")) {
+            try (Reader in = Files.newBufferedReader(Paths.get(option.substring("script:".length())))) {
+                return ScriptedInput.read(in);
+            }
+        }
+        if (option.startsWith("socket:")) {
+            SocketInput socket = new SocketInput(Integer.parseInt(option.substring("socket:".length())));
+            System.out.println("Waiting for input on port " + socket.getPort());
+            return socket;
+        }
+        throw new IllegalArgumentException("Unknown input " + option);
+    }
+
+    private static void replay(String file) throws IOException {
+        SessionReplayer replayer;
+        try (InputStream in = new FileInputStream(file)) {
+            replayer = new SessionReplayer(in);
+        }
+        Game game = replayer.createGame();
+        long start = System.nanoTime();
+        long ticks = replayer.replay(game);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d ticks replayed in %.3f s (%.0f ticks/s), state %s%n",
+                ticks, seconds, ticks / seconds,
+                replayer.matches(game) ? "matches the recording" : "DIFFERS from the recording");
     }
 }
@@ -1,26 +1,39 @@
 package game;
 
 import biuoop.DrawSurface;
-import shapes.Line;
 import shapes.Point;
 import shapes.Rectangle;
+import shapes.SweptCircle;
 
 import java.awt.*;
+import java.nio.ByteBuffer;
 
 /**
  * Represents Ball with a center point, radius, color, and velocity.
  */
 
-public class Ball implements Sprite {
+public class Ball implements InterpolatedSprite, ParallelSprite {
     private Point center;
+    private Point previousCenter;
+    private boolean hasPreviousCenter;
     private int r;
     private java.awt.Color color;
     private Velocity velocity;
-    private Rectangle grayRectangle;
-    private Rectangle yellowRectangle;
     private GameEnvironment gameE;
-    private static final int WIDTH = 800;
-    private static final int HEIGHT = 600;
+    // The first hit found by planStep(), applied by commitStep()
+    private double plannedT;
+    private Collidable[] plannedHit;
+    private int plannedVersion;
+    // False when the planned step moves on the ball's predicted impact without looking for hits
+    private boolean plannedLook;
+    // The ball's predicted impact in the event-driven physics mode
+    private ImpactQueue.Entry impactEntry;
+    // Reused for the collision point passed to Collidable.hit
+    private Point collisionPoint;
+    // The number of bytes saveState writes
+    static final int STATE_BYTES = 6 * Double.BYTES + 1 + Integer.BYTES;
+    // Set while the ball waits in its game's pool to be spawned again
+    private boolean pooled;
 
     /**
      * Constructs a Ball with a center point, radius, and color.
@@ -31,12 +44,8 @@ public class Ball implements Sprite {
      */
 
     public Ball(Point center, int r, java.awt.Color color) {
-        this.center = center;
-        this.r = r;
-        this.color = color;
-        this.velocity = new Velocity(0, 0); // Default velocity
-        this.grayRectangle = new Rectangle(50, 50, 500, 500);
-        this.yellowRectangle = new Rectangle(450, 450, 600, 600);
+        this();
+        this.reset(center.getX(), center.getY(), r, color);
     }
 
     /**
@@ -57,14 +66,67 @@ public class Ball implements Sprite {
      * @param color the color of the ball
      */
     public Ball(double x, double y, int r, java.awt.Color color) {
-        this.center = new Point((int) x, (int) y);
-        this.r = r;
-        this.color = color;
+        this();
+        // This constructor has always rounded the center down; the others keep it exact
+        this.reset((int) x, (int) y, r, color);
+    }
+
+    private Ball() {
+        this.center = new Point(0, 0);
+        this.previousCenter = new Point(0, 0);
         // Default velocity
         this.velocity = new Velocity(0, 0);
+        this.plannedHit = new Collidable[1];
+        this.collisionPoint = new Point(0, 0);
+    }
+
+    /**
+     * Makes the ball like a new one, standing still, so a pooled ball can be spawned again.
+     *
+     * @param x     the x-coordinate of the center
+     * @param y     the y-coordinate of the center
+     * @param r     the radius of the ball
+     * @param color the color of the ball
+     */
+    void reset(double x, double y, int r, java.awt.Color color) {
+        this.center.set(x, y);
+        this.hasPreviousCenter = false;
+        this.r = r;
+        this.color = color;
+        this.velocity.set(0, 0);
+        this.plannedHit[0] = null;
+    }
 
-        this.grayRectangle = new Rectangle(50, 50, 500, 500);
-        this.yellowRectangle = new Rectangle(450, 450, 600, 600);
+    /**
+     * @return true if the ball waits in its game's pool.
+     */
+    boolean isPooled() {
+        return this.pooled;
+    }
+
+    /**
+     * Marks the ball as waiting in its game's pool, or as taken out of it.
+     *
+     * @param pooled true when the ball goes into the pool.
+     */
+    void setPooled(boolean pooled) {
+        this.pooled = pooled;
+    }
+
+    /**
+     * @return the ball's predicted impact, or null if it never had one.
+     */
+    ImpactQueue.Entry getImpactEntry() {
+        return this.impactEntry;
+    }
+
+    /**
+     * Sets the ball's predicted impact.
+     *
+     * @param entry the entry of the ball in its ImpactQueue.
+     */
+    void setImpactEntry(ImpactQueue.Entry entry) {
+        this.impactEntry = entry;
     }
 
     /**
@@ -126,19 +188,79 @@ public class Ball implements Sprite {
         surface.fillCircle(this.getX(), this.getY(), this.getSize());
     }
 
+    /**
+     * Draws the ball between its position before the last tick and its current position.
+     *
+     * @param surface the DrawSurface to draw the ball on
+     * @param alpha   how far to go from the previous position to the current one, between 0 and 1
+     */
+    @Override
+    public void drawOn(DrawSurface surface, double alpha) {
+        if (!this.hasPreviousCenter) {
+            this.drawOn(surface);
+            return;
+        }
+        double x = this.previousCenter.getX() + (this.center.getX() - this.previousCenter.getX()) * alpha;
+        double y = this.previousCenter.getY() + (this.center.getY() - this.previousCenter.getY()) * alpha;
+        surface.setColor(this.getColor());
+        surface.fillCircle((int) x, (int) y, this.getSize());
+    }
+
     @Override
     public void timePassed() {
+        this.rememberPreviousCenter();
         this.moveOneStep();
     }
 
+    /**
+     * Finds what the ball would hit first this step, without changing the world.
+     */
+    @Override
+    public void planStep() {
+        this.plannedVersion = this.gameE.getVersion();
+        ImpactQueue impacts = this.gameE.getImpactQueue();
+        this.plannedLook = impacts == null || impacts.mustLook(this);
+        if (!this.plannedLook) {
+            // Nothing is in the way this tick, so the ball moves as one that hits nothing
+            this.plannedT = SweptCircle.NO_HIT;
+            this.plannedHit[0] = null;
+            return;
+        }
+        Velocity v = this.getVelocity();
+        this.plannedT = this.gameE.sweptHit(this.getCenterX(), this.getCenterY(),
+                v.getDx(), v.getDy(), this.getSize(), this.plannedHit, 0);
+    }
+
+    /**
+     * Applies the planned step. If collidables were added or removed since it was planned,
+     * the step is planned again first, so the result is the same as moving the balls one by one.
+     */
+    @Override
+    public void commitStep() {
+        this.rememberPreviousCenter();
+        if (this.plannedVersion != this.gameE.getVersion()) {
+            this.planStep();
+        }
+        this.applyPlannedStep();
+    }
+
+    /**
+     * Keeps the center before the step, for drawing between ticks.
+     */
+    void rememberPreviousCenter() {
+        this.previousCenter.set(this.center.getX(), this.center.getY());
+        this.hasPreviousCenter = true;
+    }
+
     /**
      * Sets the velocity of the ball.
+     * The ball keeps its own copy, so the given velocity can be shared or reused.
      *
      * @param velocity the new velocity of the ball
      */
 
     public void setVelocity(Velocity velocity) {
-        this.velocity = velocity;
+        this.velocity.set(velocity.getDx(), velocity.getDy());
     }
 
     /**
@@ -148,11 +270,12 @@ public class Ball implements Sprite {
      * @param dy the change in y direction
      */
     public void setVelocity(double dx, double dy) {
-        this.velocity = new Velocity(dx, dy);
+        this.velocity.set(dx, dy);
     }
 
     /**
      * Returns the velocity of the ball.
+     * This is the ball's own velocity, which changes as the ball bounces; copy it to keep a value.
      *
      * @return the velocity of the ball
      */
@@ -165,176 +288,144 @@ public class Ball implements Sprite {
      * Handles collisions with other collidable objects.
      */
     public void moveOneStep() {
-        Point newCenter = this.velocity.applyToPoint(this.center);
-        Line trajectory = new Line(center, newCenter);
-        CollisionInfo collisionInfo = this.gameE.getClosestCollision(trajectory);
-        if (collisionInfo == null) {
-            this.center = newCenter;
-        } else {
-            Point collisionP = collisionInfo.collisionPoint();
-            Collidable collidable = collisionInfo.collisionObject();
-
-            double newX = collisionP.getX() - velocity.getDx() * 0.05;
-            double newY = collisionP.getY() - velocity.getDy() * 0.05;
-            this.center = new Point(newX, newY);
-
-            this.velocity = collidable.hit(this, collisionP, this.velocity);
-
-            // Check if the ball is still inside the block
-            if (collidable.getCollisionRectangle().isInside(this.center)) {
-                // If it is, move the ball is outside the block
-                this.center = this.velocity.applyToPoint(this.center);
-                // Add this line to change the direction of the ball when it is inside the paddle
-                this.velocity = new Velocity(-this.velocity.getDx(), -this.velocity.getDy());
-            }
-            if (collidable.isPaddle() && collidable.getCollisionRectangle().isInside(this.center)) {
-                this.center = new Point(newCenter.getX(), newCenter.getY() - 12);
-                this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-            }
-        }
+        this.planStep();
+        this.applyPlannedStep();
     }
 
     /**
-     * Moves the ball one step within the gray rectangle area.
-     * If the ball hits the border of the gray rectangle, its direction is reversed.
+     * Moves the ball through the planned step.
      */
-    public void moveOneStepInGrey() {
-        Point newCenter = this.velocity.applyToPoint(this.center);
-        double newX = newCenter.getX();
-        double newY = newCenter.getY();
-        // Get the boundaries of the gray rectangle
-        int minX = grayRectangle.getMinX();
-        int maxX = grayRectangle.getMaxX();
-        int minY = grayRectangle.getMinY();
-        int maxY = grayRectangle.getMaxY();
-        // Check for collision with the left edge
-        if (newX - this.r < minX) {
-            newX = minX + this.r; // Adjust position to be inside the rectangle
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Check for collision with the left edge
-        if (newX + this.r > maxX) {
-            newX = maxX - this.r; // Adjust position to be inside the rectangle
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Check for collision with the top edge
-        if (newY - this.r < minY) {
-            newY = minY + this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Check for collision with the bottom edge
-        if (newY + this.r > maxY) {
-            newY = maxY - this.r; // Adjust position to be inside the rectangle
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Update the center of the ball with the new position
-        this.center = new Point(newX, newY);
-    }
-    /**
-     * Moves the ball one step outside the gray rectangle, handling collisions
-     * with the window boundaries, the gray rectangle, and the yellow rectangle.
-     */
-    public void moveOneStepOutsideGrey() {
-        Point newCenter = this.velocity.applyToPoint(this.center);
-        double newX = newCenter.getX();
-        double newY = newCenter.getY();
-        //// Gray Arkanoid.Shapes.Shapes.Rectangle boundaries
-        int minGrayX = grayRectangle.getMinX();
-        int maxGrayX = grayRectangle.getMaxX();
-        int minGrayY = grayRectangle.getMinY();
-        int maxGrayY = grayRectangle.getMaxY();
-        //// yellow Arkanoid.Shapes.Shapes.Rectangle boundaries
-        int yellowMinX = yellowRectangle.getMinX();
-        int yellowMaxX = yellowRectangle.getMaxX();
-        int yellowMinY = yellowRectangle.getMinY();
-        int yellowMaxY = yellowRectangle.getMaxY();
-        //window boundaries
-        // Check for collision with the left or right edge
-        if (newX - this.r < 0) {
-            newX = this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        if (newX + this.r > WIDTH) {
-            newX = WIDTH - this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Check for collision with the top or bottom edge
-        if (newY - this.r < 0) {
-            newY = this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        if (newY + this.r > HEIGHT) {
-            newY = HEIGHT - this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Gray area
-        // Left Grey area
-        if (newX - this.r < minGrayX && newX + this.r > minGrayX && newY > minGrayY && newY < maxGrayY) {
-            newX = minGrayX - this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Top Grey area
-        if (newY - this.r < minGrayY && newY + this.r > minGrayY && newX > minGrayX && newX < maxGrayX) {
-            newY = minGrayY - this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Right Grey area
-        if (newX + this.r > maxGrayX && newX - this.r < maxGrayX && newY > minGrayY && newY < maxGrayY) {
-            newX = maxGrayX + this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Bottom Grey area
-        if (newY + this.r > maxGrayY && newY - this.r < maxGrayY && newX > minGrayX && newX < maxGrayX) {
-            newY = maxGrayY + this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        //yellow area
-        // Left yellow area
-        if (newX - this.r < yellowMinX && newX + this.r > yellowMinX && newY > yellowMinY && newY < yellowMaxY) {
-            newX = yellowMinX - this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
+    private void applyPlannedStep() {
+        Collidable collidable = this.plannedHit[0];
+        this.plannedHit[0] = null;
+        this.move(this.plannedT, collidable, this.gameE, this.plannedHit, 0);
+        ImpactQueue impacts = this.gameE.getImpactQueue();
+        if (impacts != null) {
+            impacts.moved(this, this.plannedLook);
         }
-        // Top yellow area
-        if (newY - this.r < yellowMinY && newY + this.r > yellowMinY && newX > yellowMinX && newX < yellowMaxX) {
-            newY = yellowMinY - this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Right yellow area
-        if (newX + this.r > yellowMaxX && newX - this.r < yellowMaxX && newY > yellowMinY && newY < yellowMaxY) {
-            newX = yellowMaxX + this.r;
-            this.velocity = new Velocity(-this.velocity.getDx(), this.velocity.getDy());
-        }
-        // Bottom yellow area
-        if (newY + this.r > yellowMaxY && newY - this.r < yellowMaxY && newX > yellowMinX && newX < yellowMaxX) {
-            newY = yellowMaxY + this.r;
-            this.velocity = new Velocity(this.velocity.getDx(), -this.velocity.getDy());
-        }
-        // Check for collision with the corners of gray and yellow rectangles
-        Point[] grayCorners = {
-                new Point(minGrayX, minGrayY),
-                new Point(minGrayX, maxGrayY),
-                new Point(maxGrayX, minGrayY),
-                new Point(maxGrayX, maxGrayY)
-            };
-        Point[] yellowCorners = {
-                new Point(yellowMinX, yellowMinY),
-                new Point(yellowMinX, yellowMaxY),
-                new Point(yellowMaxX, yellowMinY),
-                new Point(yellowMaxX, yellowMaxY)
-            };
-        for (int i = 0; i < 4; i++) {
-            Point point = new Point(newX, newY);
-            if (point.distance(grayCorners[i]) <= this.r) {
-                this.velocity = new Velocity(-this.velocity.getDx(), -this.velocity.getDy());
+    }
+
+    /**
+     * Moves the ball through one step, given the first hit along its path.
+     * The ball stops where it touches the collidable, the collidable computes the new velocity,
+     * and the ball goes on with it for the rest of the step, so a fast ball can bounce several
+     * times in one step, up to the environment's limit. The ball is treated as a circle, so it
+     * bounces off the surface instead of sinking in up to its center.
+     * Works through the center and velocity accessors, so a ball stored in a BallSystem moves
+     * exactly like a standalone one. Nothing is allocated unless the collidable does.
+     *
+     * @param t           the parameter of the first hit along the velocity, or SweptCircle.NO_HIT
+     * @param collidable  the collidable hit first, or null
+     * @param environment where to look for the next hits
+     * @param hits        scratch space for the next hits, hits[index] is overwritten
+     * @param index       the index in hits to use
+     */
+    void move(double t, Collidable collidable, GameEnvironment environment, Collidable[] hits, int index) {
+        double remaining = 1;
+        int hitsLeft = environment.getMaxHitsPerStep();
+        while (true) {
+            Velocity velocity = this.getVelocity();
+            double x = this.getCenterX();
+            double y = this.getCenterY();
+            double dx = velocity.getDx() * remaining;
+            double dy = velocity.getDy() * remaining;
+            if (collidable == null) {
+                this.setCenter(x + dx, y + dy);
+                return;
             }
-        }
-        for (int i = 0; i < 4; i++) {
-            Point point = new Point(newX, newY);
-            if (point.distance(yellowCorners[i]) <= this.r) {
-                this.velocity = new Velocity(-this.velocity.getDx(), -this.velocity.getDy());
+            x += t * dx;
+            y += t * dy;
+            this.setCenter(x, y);
+
+            // The ball touches the collidable at the point of its rectangle nearest to the center
+            Rectangle rect = collidable.getCollisionRectangle();
+            double left = rect.getUpperLeft().getX();
+            double top = rect.getUpperLeft().getY();
+            this.collisionPoint.set(SweptCircle.clamp(x, left, left + rect.getWidth()),
+                    SweptCircle.clamp(y, top, top + rect.getHeight()));
+            velocity = collidable.hit(this, this.collisionPoint, velocity);
+            this.setVelocity(velocity.getDx(), velocity.getDy());
+
+            remaining *= 1 - t;
+            hitsLeft--;
+            if (hitsLeft == 0 || remaining == 0) {
+                return;
             }
+            t = environment.sweptHit(x, y, velocity.getDx() * remaining, velocity.getDy() * remaining,
+                    this.getSize(), hits, index);
+            collidable = hits[index];
+            hits[index] = null;
         }
-        this.center = new Point(newX, newY);
+    }
+
+    /**
+     * @return the x-coordinate of the center, not rounded
+     */
+    double getCenterX() {
+        return this.center.getX();
+    }
+
+    /**
+     * @return the y-coordinate of the center, not rounded
+     */
+    double getCenterY() {
+        return this.center.getY();
+    }
+
+    /**
+     * Moves the center of the ball.
+     *
+     * @param x the new x-coordinate of the center
+     * @param y the new y-coordinate of the center
+     */
+    void setCenter(double x, double y) {
+        this.center.set(x, y);
+    }
+
+    /**
+     * Mixes the position and velocity of the ball into a hash.
+     *
+     * @param hash the hash so far
+     * @return the new hash
+     */
+    long hashState(long hash) {
+        Velocity v = this.getVelocity();
+        hash = StateHash.mix(hash, this.getCenterX());
+        hash = StateHash.mix(hash, this.getCenterY());
+        hash = StateHash.mix(hash, v.getDx());
+        return StateHash.mix(hash, v.getDy());
+    }
+
+    /**
+     * Writes the state of the ball that changes as the game is played: its center, the center it
+     * had before the last tick, its velocity and its radius, which may change when the ball is
+     * pooled and spawned again. The color is left to the caller, since blocks
+     * compare it by identity.
+     *
+     * @param out where to write the state
+     */
+    void saveState(ByteBuffer out) {
+        out.putDouble(this.center.getX());
+        out.putDouble(this.center.getY());
+        out.putDouble(this.previousCenter.getX());
+        out.putDouble(this.previousCenter.getY());
+        out.putDouble(this.velocity.getDx());
+        out.putDouble(this.velocity.getDy());
+        out.put((byte) (this.hasPreviousCenter ? 1 : 0));
+        out.putInt(this.r);
+    }
+
+    /**
+     * Reads the state written by saveState.
+     *
+     * @param in where to read the state from
+     */
+    void loadState(ByteBuffer in) {
+        this.center.set(in.getDouble(), in.getDouble());
+        this.previousCenter.set(in.getDouble(), in.getDouble());
+        this.velocity.set(in.getDouble(), in.getDouble());
+        this.hasPreviousCenter = in.get() != 0;
+        this.r = in.getInt();
     }
 
     /**
@@ -355,4 +446,15 @@ public class Ball implements Sprite {
         game.removeSprite(this);
     }
 
+    /**
+     * Takes the ball out of the game for good, as when it falls off the bottom. A ball the game
+     * pools goes back to the pool once the hits of the tick were delivered.
+     *
+     * @param game the game
+     * @return false, doing nothing, if the ball already left the game, as when it is hit twice in a tick
+     */
+    boolean leaveGame(Game game) {
+        return game.recycleBall(this);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package game;
+
+import shapes.Point;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The balls a game removed, kept to be spawned again instead of allocating new ones, so games that
+ * keep losing and spawning balls don't produce garbage.
+ * A ball can leave the pool without being taken, when a snapshot that has it is restored; such a
+ * ball is no longer marked as pooled and is skipped when its turn comes.
+ */
+final class BallPool {
+    private final List<Ball> free;
+
+    /**
+     * Constructs an empty pool.
+     */
+    BallPool() {
+        this.free = new ArrayList<>();
+    }
+
+    /**
+     * Takes a ball out of the pool, reset to the given place, size and color and standing still,
+     * or makes a new one if the pool is empty.
+     *
+     * @param x     the x-coordinate of the center.
+     * @param y     the y-coordinate of the center.
+     * @param r     the radius.
+     * @param color the color.
+     * @return the ball.
+     */
+    Ball take(double x, double y, int r, Color color) {
+        while (!this.free.isEmpty()) {
+            Ball ball = this.free.remove(this.free.size() - 1);
+            if (ball.isPooled()) {
+                ball.setPooled(false);
+                ball.reset(x, y, r, color);
+                return ball;
+            }
+        }
+        return new Ball(new Point(x, y), r, color);
+    }
+
+    /**
+     * Puts a ball that was removed from the game into the pool, unless it is there already.
+     *
+     * @param ball the ball.
+     */
+    void give(Ball ball) {
+        if (!ball.isPooled()) {
+            ball.setPooled(true);
+            this.free.add(ball);
+        }
+    }
+
+    /**
+     * @return the number of balls in the pool, counting ones that left it without being taken.
+     */
+    int size() {
+        return this.free.size();
+    }
+}
@@ -30,8 +30,9 @@ public class BallRemover implements HitListener {
     @Override
     public void hitEvent(Block beingHit, Ball hitter) {
 
-        hitter.removeFromGame(this.game);
-
-        this.remainingBalls.decrease(1);
+        // A ball can hit the bottom more than once in a tick; it is only removed and counted once
+        if (hitter.leaveGame(this.game)) {
+            this.remainingBalls.decrease(1);
+        }
     }
 }
@@ -0,0 +1,602 @@
+package game;
+
+import biuoop.DrawSurface;
+import shapes.SweptCircle;
+
+import java.awt.Color;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Stores many balls in primitive arrays (structure of arrays) and steps them together.
+ * Each ball is also reachable as a Ball, which is a view of its slot in the arrays, so hit
+ * listeners and collidables work with these balls exactly as with standalone ones. A view is
+ * only made the first time a ball hits something or is asked for with get(i), so stepping
+ * allocates nothing once every ball has hit something, unless a hit listener or a collidable does.
+ * <p>
+ * The balls always look for hits every tick: the event-driven physics mode (ImpactQueue) only
+ * predicts the impacts of standalone balls.
+ */
+public class BallSystem implements InterpolatedSprite {
+    // Below this many balls, querying on other threads costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 256;
+    // The bytes saveState writes per ball
+    private static final int BALL_STATE_BYTES = 6 * Double.BYTES + 2 * Integer.BYTES + 1;
+
+    private GameEnvironment environment;
+    // The game that counts the balls, once the system was added to one
+    private Game game;
+    private boolean parallel;
+    private int count;
+    private double[] x;
+    private double[] y;
+    private double[] dx;
+    private double[] dy;
+    private double[] previousX;
+    private double[] previousY;
+    private int[] radius;
+    private int[] colorIndex;
+    private boolean[] removed;
+    private BallView[] views;
+    // The colors are kept as a palette because blocks compare ball colors by identity
+    private List<Color> palette;
+    // The collision found for each ball in the current tick
+    private Collidable[] hits;
+    private double[] hitT;
+    private boolean anyRemoved;
+
+    /**
+     * Constructs an empty ball system whose balls collide with the given environment.
+     *
+     * @param environment the game environment.
+     */
+    public BallSystem(GameEnvironment environment) {
+        this.environment = environment;
+        this.palette = new ArrayList<>();
+        allocate(16);
+    }
+
+    /**
+     * Adds a ball.
+     *
+     * @param cx    the x-coordinate of the center.
+     * @param cy    the y-coordinate of the center.
+     * @param r     the radius.
+     * @param color the color.
+     * @param v     the velocity.
+     */
+    public void addBall(double cx, double cy, int r, Color color, Velocity v) {
+        if (this.count == this.x.length) {
+            allocate(this.count * 2);
+        }
+        int i = this.count++;
+        this.x[i] = cx;
+        this.y[i] = cy;
+        this.previousX[i] = cx;
+        this.previousY[i] = cy;
+        this.dx[i] = v.getDx();
+        this.dy[i] = v.getDy();
+        this.radius[i] = r;
+        this.colorIndex[i] = colorIndexOf(color);
+        this.removed[i] = false;
+        this.views[i] = null;
+        if (this.game != null) {
+            this.game.countBalls(1);
+        }
+    }
+
+    /**
+     * @return the number of balls.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * Returns the ball in the given slot. Slots move down as the balls before them are removed;
+     * the returned ball follows its slot.
+     *
+     * @param i the slot.
+     * @return the ball.
+     */
+    public Ball get(int i) {
+        if (i < 0 || i >= this.count) {
+            throw new IndexOutOfBoundsException("No ball in slot " + i);
+        }
+        if (this.views[i] == null) {
+            this.views[i] = new BallView(this, i);
+        }
+        return this.views[i];
+    }
+
+    /**
+     * Returns whether the ball in a slot was removed in this tick; its slot is freed at the next step.
+     *
+     * @param i the slot.
+     * @return true if it was removed.
+     */
+    boolean isRemoved(int i) {
+        return this.removed[i];
+    }
+
+    /**
+     * @param i the slot.
+     * @return the x-coordinate of the center of the ball, not rounded.
+     */
+    double centerX(int i) {
+        return this.x[i];
+    }
+
+    /**
+     * @param i the slot.
+     * @return the y-coordinate of the center of the ball, not rounded.
+     */
+    double centerY(int i) {
+        return this.y[i];
+    }
+
+    /**
+     * @param i the slot.
+     * @return the velocity of the ball along x.
+     */
+    double dx(int i) {
+        return this.dx[i];
+    }
+
+    /**
+     * @param i the slot.
+     * @return the velocity of the ball along y.
+     */
+    double dy(int i) {
+        return this.dy[i];
+    }
+
+    /**
+     * Enables or disables running the collision queries of the balls on several cores.
+     * Hits are still resolved serially in slot order.
+     *
+     * @param parallel true to query in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    @Override
+    public void timePassed() {
+        step();
+    }
+
+    /**
+     * Moves all balls one step.
+     * First every ball looks for a collision along its path, then all balls that hit nothing move
+     * in one tight loop, and then the hits are resolved one by one in slot order. A ball whose hit
+     * was found before a collidable was removed looks again, so the result is the same as
+     * moving standalone balls one after the other.
+     */
+    public void step() {
+        // Balls removed by hit listeners after the last step
+        if (this.anyRemoved) {
+            compact();
+        }
+        int n = this.count;
+        System.arraycopy(this.x, 0, this.previousX, 0, n);
+        System.arraycopy(this.y, 0, this.previousY, 0, n);
+        int version = this.environment.getVersion();
+
+        if (this.parallel && n >= PARALLEL_THRESHOLD) {
+            IntStream.range(0, n).parallel().forEach(this::query);
+        } else {
+            for (int i = 0; i < n; i++) {
+                query(i);
+            }
+        }
+
+        double[] px = this.x;
+        double[] py = this.y;
+        double[] vx = this.dx;
+        double[] vy = this.dy;
+        double[] t = this.hitT;
+        for (int i = 0; i < n; i++) {
+            if (t[i] == SweptCircle.NO_HIT) {
+                px[i] += vx[i];
+                py[i] += vy[i];
+            }
+        }
+
+        for (int i = 0; i < n; i++) {
+            if (t[i] == SweptCircle.NO_HIT || this.removed[i]) {
+                continue;
+            }
+            if (this.environment.getVersion() != version) {
+                query(i);
+            }
+            Collidable collidable = this.hits[i];
+            this.hits[i] = null;
+            get(i).move(t[i], collidable, this.environment, this.hits, i);
+        }
+
+        if (this.anyRemoved) {
+            compact();
+        }
+    }
+
+    private void query(int i) {
+        this.hitT[i] = this.environment.sweptHit(this.x[i], this.y[i], this.dx[i], this.dy[i], this.radius[i],
+                this.hits, i);
+    }
+
+    @Override
+    public void drawOn(DrawSurface d) {
+        drawOn(d, 1);
+    }
+
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        int lastColor = -1;
+        for (int i = 0; i < this.count; i++) {
+            if (this.removed[i]) {
+                continue;
+            }
+            if (this.colorIndex[i] != lastColor) {
+                lastColor = this.colorIndex[i];
+                d.setColor(this.palette.get(lastColor));
+            }
+            double cx = this.previousX[i] + (this.x[i] - this.previousX[i]) * alpha;
+            double cy = this.previousY[i] + (this.y[i] - this.previousY[i]) * alpha;
+            d.fillCircle((int) cx, (int) cy, this.radius[i]);
+        }
+    }
+
+    /**
+     * Mixes the positions and velocities of the balls into a hash, in slot order.
+     *
+     * @param hash the hash so far.
+     * @return the new hash.
+     */
+    long hashState(long hash) {
+        for (int i = 0; i < this.count; i++) {
+            if (this.removed[i]) {
+                continue;
+            }
+            hash = StateHash.mix(hash, this.x[i]);
+            hash = StateHash.mix(hash, this.y[i]);
+            hash = StateHash.mix(hash, this.dx[i]);
+            hash = StateHash.mix(hash, this.dy[i]);
+        }
+        return hash;
+    }
+
+    /**
+     * @return the number of bytes saveState writes.
+     */
+    int stateBytes() {
+        return Integer.BYTES + this.count * BALL_STATE_BYTES;
+    }
+
+    /**
+     * Writes the balls, as Game.snapshot() does: their centers, previous centers, velocities,
+     * radii and colors, and whether they were removed in the last tick. Colors are written as
+     * places in the palette, which only grows.
+     *
+     * @param out where to write the state.
+     */
+    void saveState(ByteBuffer out) {
+        out.putInt(this.count);
+        for (int i = 0; i < this.count; i++) {
+            out.putDouble(this.x[i]);
+            out.putDouble(this.y[i]);
+            out.putDouble(this.previousX[i]);
+            out.putDouble(this.previousY[i]);
+            out.putDouble(this.dx[i]);
+            out.putDouble(this.dy[i]);
+            out.putInt(this.radius[i]);
+            out.putInt(this.colorIndex[i]);
+            out.put((byte) (this.removed[i] ? 1 : 0));
+        }
+    }
+
+    /**
+     * Reads the balls written by saveState. Views stay on their slot, as they do when balls are
+     * removed; the views of slots the state doesn't have keep their ball's last state.
+     *
+     * @param in where to read the state from.
+     */
+    void loadState(ByteBuffer in) {
+        int n = in.getInt();
+        for (int i = n; i < this.count; i++) {
+            if (this.views[i] != null) {
+                this.views[i].detach();
+                this.views[i] = null;
+            }
+        }
+        if (n > this.x.length) {
+            allocate(n);
+        }
+        this.count = n;
+        this.anyRemoved = false;
+        for (int i = 0; i < n; i++) {
+            this.x[i] = in.getDouble();
+            this.y[i] = in.getDouble();
+            this.previousX[i] = in.getDouble();
+            this.previousY[i] = in.getDouble();
+            this.dx[i] = in.getDouble();
+            this.dy[i] = in.getDouble();
+            this.radius[i] = in.getInt();
+            this.colorIndex[i] = in.getInt();
+            this.removed[i] = in.get() != 0;
+            this.anyRemoved |= this.removed[i];
+        }
+    }
+
+    /**
+     * Adds this ball system to the game. The game counts its balls, and those added later, with
+     * its remaining balls.
+     *
+     * @param g the game.
+     */
+    public void addToGame(Game g) {
+        g.addSprite(this);
+        this.game = g;
+        int balls = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (!this.removed[i]) {
+                balls++;
+            }
+        }
+        g.countBalls(balls);
+    }
+
+    /**
+     * Marks a ball as removed. Its slot is freed at the end of the tick.
+     *
+     * @return false if it was already removed.
+     */
+    private boolean remove(int i) {
+        if (this.removed[i]) {
+            return false;
+        }
+        this.removed[i] = true;
+        this.anyRemoved = true;
+        return true;
+    }
+
+    /**
+     * Moves the remaining balls down over the removed ones, keeping their order.
+     */
+    private void compact() {
+        int next = 0;
+        for (int i = 0; i < this.count; i++) {
+            if (this.removed[i]) {
+                if (this.views[i] != null) {
+                    this.views[i].detach();
+                }
+                continue;
+            }
+            if (next != i) {
+                this.x[next] = this.x[i];
+                this.y[next] = this.y[i];
+                this.dx[next] = this.dx[i];
+                this.dy[next] = this.dy[i];
+                this.previousX[next] = this.previousX[i];
+                this.previousY[next] = this.previousY[i];
+                this.radius[next] = this.radius[i];
+                this.colorIndex[next] = this.colorIndex[i];
+                this.removed[next] = false;
+                this.views[next] = this.views[i];
+                if (this.views[next] != null) {
+                    this.views[next].index = next;
+                }
+            }
+            next++;
+        }
+        Arrays.fill(this.views, next, this.count, null);
+        this.count = next;
+        this.anyRemoved = false;
+    }
+
+    private int colorIndexOf(Color color) {
+        for (int i = 0; i < this.palette.size(); i++) {
+            if (this.palette.get(i) == color) {
+                return i;
+            }
+        }
+        this.palette.add(color);
+        return this.palette.size() - 1;
+    }
+
+    private void allocate(int capacity) {
+        this.x = grow(this.x, capacity);
+        this.y = grow(this.y, capacity);
+        this.dx = grow(this.dx, capacity);
+        this.dy = grow(this.dy, capacity);
+        this.previousX = grow(this.previousX, capacity);
+        this.previousY = grow(this.previousY, capacity);
+        this.hitT = grow(this.hitT, capacity);
+        this.radius = this.radius == null ? new int[capacity] : Arrays.copyOf(this.radius, capacity);
+        this.colorIndex = this.colorIndex == null ? new int[capacity] : Arrays.copyOf(this.colorIndex, capacity);
+        this.removed = this.removed == null ? new boolean[capacity] : Arrays.copyOf(this.removed, capacity);
+        this.views = this.views == null ? new BallView[capacity] : Arrays.copyOf(this.views, capacity);
+        this.hits = this.hits == null ? new Collidable[capacity] : Arrays.copyOf(this.hits, capacity);
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * A Ball that reads and writes its slot in a BallSystem. The system steps and draws it; a view
+     * added to a game on its own is stepped and drawn a second time. Once its ball is removed from
+     * the system, the view keeps the ball's last state as a standalone ball.
+     */
+    private static final class BallView extends Ball {
+        private final BallSystem system;
+        // The slot of the ball, or -1 once it was removed from the system
+        private int index;
+        // Handed out by getVelocity(), refreshed from the arrays on every call
+        private final Velocity velocity;
+
+        BallView(BallSystem system, int index) {
+            super(0, 0, 0, null);
+            this.system = system;
+            this.index = index;
+            this.velocity = new Velocity(0, 0);
+            setGameEnvironment(system.environment);
+        }
+
+        /**
+         * Copies the state of the ball out of its slot, which is about to be freed.
+         */
+        void detach() {
+            int i = this.index;
+            reset(this.system.x[i], this.system.y[i], this.system.radius[i],
+                    this.system.palette.get(this.system.colorIndex[i]));
+            super.setVelocity(this.system.dx[i], this.system.dy[i]);
+            this.index = -1;
+        }
+
+        @Override
+        public int getX() {
+            return this.index < 0 ? super.getX() : (int) this.system.x[this.index];
+        }
+
+        @Override
+        public int getY() {
+            return this.index < 0 ? super.getY() : (int) this.system.y[this.index];
+        }
+
+        @Override
+        public int getSize() {
+            return this.index < 0 ? super.getSize() : this.system.radius[this.index];
+        }
+
+        @Override
+        public Color getColor() {
+            return this.index < 0 ? super.getColor() : this.system.palette.get(this.system.colorIndex[this.index]);
+        }
+
+        @Override
+        public void setColor(Color color) {
+            if (this.index < 0) {
+                super.setColor(color);
+            } else {
+                this.system.colorIndex[this.index] = this.system.colorIndexOf(color);
+            }
+        }
+
+        @Override
+        public Velocity getVelocity() {
+            if (this.index < 0) {
+                return super.getVelocity();
+            }
+            this.velocity.set(this.system.dx[this.index], this.system.dy[this.index]);
+            return this.velocity;
+        }
+
+        @Override
+        public void setVelocity(Velocity velocity) {
+            setVelocity(velocity.getDx(), velocity.getDy());
+        }
+
+        @Override
+        public void setVelocity(double vx, double vy) {
+            if (this.index < 0) {
+                super.setVelocity(vx, vy);
+            } else {
+                this.system.dx[this.index] = vx;
+                this.system.dy[this.index] = vy;
+            }
+        }
+
+        @Override
+        double getCenterX() {
+            return this.index < 0 ? super.getCenterX() : this.system.x[this.index];
+        }
+
+        @Override
+        double getCenterY() {
+            return this.index < 0 ? super.getCenterY() : this.system.y[this.index];
+        }
+
+        @Override
+        void setCenter(double cx, double cy) {
+            if (this.index < 0) {
+                super.setCenter(cx, cy);
+            } else {
+                this.system.x[this.index] = cx;
+                this.system.y[this.index] = cy;
+            }
+        }
+
+        @Override
+        void rememberPreviousCenter() {
+            if (this.index < 0) {
+                super.rememberPreviousCenter();
+            } else {
+                this.system.previousX[this.index] = this.system.x[this.index];
+                this.system.previousY[this.index] = this.system.y[this.index];
+            }
+        }
+
+        @Override
+        public void drawOn(DrawSurface surface, double alpha) {
+            if (this.index < 0) {
+                super.drawOn(surface, alpha);
+                return;
+            }
+            int i = this.index;
+            double cx = this.system.previousX[i] + (this.system.x[i] - this.system.previousX[i]) * alpha;
+            double cy = this.system.previousY[i] + (this.system.y[i] - this.system.previousY[i]) * alpha;
+            surface.setColor(getColor());
+            surface.fillCircle((int) cx, (int) cy, getSize());
+        }
+
+        @Override
+        void saveState(ByteBuffer out) {
+            if (this.index < 0) {
+                super.saveState(out);
+                return;
+            }
+            int i = this.index;
+            out.putDouble(this.system.x[i]);
+            out.putDouble(this.system.y[i]);
+            out.putDouble(this.system.previousX[i]);
+            out.putDouble(this.system.previousY[i]);
+            out.putDouble(this.system.dx[i]);
+            out.putDouble(this.system.dy[i]);
+            out.put((byte) 1);
+            out.putInt(this.system.radius[i]);
+        }
+
+        @Override
+        void loadState(ByteBuffer in) {
+            if (this.index < 0) {
+                super.loadState(in);
+                return;
+            }
+            int i = this.index;
+            this.system.x[i] = in.getDouble();
+            this.system.y[i] = in.getDouble();
+            this.system.previousX[i] = in.getDouble();
+            this.system.previousY[i] = in.getDouble();
+            this.system.dx[i] = in.getDouble();
+            this.system.dy[i] = in.getDouble();
+            in.get();
+            this.system.radius[i] = in.getInt();
+        }
+
+        @Override
+        public void removeFromGame(Game game) {
+            leaveGame(game);
+            super.removeFromGame(game);
+        }
+
+        @Override
+        boolean leaveGame(Game game) {
+            // The system frees the slot at the end of the tick
+            return this.index >= 0 && this.system.remove(this.index);
+        }
+    }
+}
@@ -5,8 +5,7 @@ import shapes.Point;
 import shapes.Rectangle;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 
 /**
  * Represents a block in the game, which is a collidable object.
@@ -14,10 +13,14 @@ import java.util.List;
 public class Block implements Collidable, Sprite, HitNotifier {
 
 
-    private List<HitListener> hitListeners;
+    // Copy-on-write: replaced on every change, so it can be iterated and shared by snapshots as is
+    private HitListener[] hitListeners;
     private static final double EPSILON = 0.0000001;
+    private static final HitListener[] NO_LISTENERS = new HitListener[0];
     private Rectangle rectangle;
     private Color color;
+    // The bus of the game the block was added to; without one, listeners are notified right away
+    private HitEventBus eventBus;
 
     /**
      * Constructs a block with the given rectangle.
@@ -26,7 +29,7 @@ public class Block implements Collidable, Sprite, HitNotifier {
      */
     public Block(Rectangle rectangle) {
         this.rectangle = rectangle;
-        this.hitListeners = new ArrayList<>();
+        this.hitListeners = NO_LISTENERS;
     }
 
     /**
@@ -38,7 +41,7 @@ public class Block implements Collidable, Sprite, HitNotifier {
     public Block(Rectangle rectangle, Color color) {
         this.rectangle = rectangle;
         this.color = color;
-        this.hitListeners = new ArrayList<>();
+        this.hitListeners = NO_LISTENERS;
     }
 
     /**
@@ -60,6 +63,7 @@ public class Block implements Collidable, Sprite, HitNotifier {
 
     /**
      * Calculates the new velocity of an object after a collision.
+     * The given velocity is updated in place and returned.
      *
      * @param collisionPoint  The point of collision.
      * @param currentVelocity The current velocity of the colliding object.
@@ -67,9 +71,23 @@ public class Block implements Collidable, Sprite, HitNotifier {
      */
     @Override
     public Velocity hit(Ball hitter, Point collisionPoint, Velocity currentVelocity) {
+        if (!ballColorMatch(hitter)) {
+            this.notifyHit(hitter);
+        }
+        this.reflect(collisionPoint, currentVelocity);
+        return currentVelocity;
+    }
 
-        double dx = currentVelocity.getDx();
-        double dy = currentVelocity.getDy();
+    /**
+     * Bounces a velocity off the sides of the block that the collision point is on, in place,
+     * without notifying anyone.
+     *
+     * @param collisionPoint The point of collision.
+     * @param velocity       The velocity to bounce.
+     */
+    void reflect(Point collisionPoint, Velocity velocity) {
+        double dx = velocity.getDx();
+        double dy = velocity.getDy();
 
         // Check if the object was hit from left or right
         if (Math.abs(collisionPoint.getX() - rectangle.getUpperLeft().getX()) < EPSILON
@@ -83,10 +101,7 @@ public class Block implements Collidable, Sprite, HitNotifier {
                 + rectangle.getHeight())) < EPSILON) {
             dy = -dy;
         }
-        if (!ballColorMatch(hitter)) {
-            this.notifyHit(hitter);
-        }
-        return new Velocity(dx, dy);
+        velocity.set(dx, dy);
     }
 
 
@@ -122,13 +137,22 @@ public class Block implements Collidable, Sprite, HitNotifier {
      * @param g the game to which the current object is to be added.
      */
     public void addToGame(Game g) {
-        // Add the current object to the game as a sprite
-        g.addSprite(this);
+        this.setHitEventBus(g.getHitEventBus());
+        // Add the current object to the game as a static sprite, it only changes when it is removed
+        g.addStaticSprite(this);
 
         // Add the current object to the game as a collidable
         g.addCollidable(this);
     }
 
+    /**
+     * Sets the bus that delivers this block's hits at the end of the tick.
+     * @param bus the bus, or null to notify the listeners right away.
+     */
+    void setHitEventBus(HitEventBus bus) {
+        this.eventBus = bus;
+    }
+
     /**
      * This method checks if the object is a paddle.
      * @return false as the object is not a paddle.
@@ -162,7 +186,9 @@ public class Block implements Collidable, Sprite, HitNotifier {
      */
     @Override
     public void addHitListener(HitListener hl) {
-        this.hitListeners.add(hl);
+        HitListener[] listeners = Arrays.copyOf(this.hitListeners, this.hitListeners.length + 1);
+        listeners[this.hitListeners.length] = hl;
+        setHitListeners(listeners);
     }
 
     /**
@@ -171,20 +197,73 @@ public class Block implements Collidable, Sprite, HitNotifier {
      */
     @Override
     public void removeHitListener(HitListener hl) {
-        this.hitListeners.remove(hl);
+        for (int i = 0; i < this.hitListeners.length; i++) {
+            if (hl.equals(this.hitListeners[i])) {
+                if (this.hitListeners.length == 1) {
+                    setHitListeners(NO_LISTENERS);
+                    return;
+                }
+                HitListener[] listeners = new HitListener[this.hitListeners.length - 1];
+                System.arraycopy(this.hitListeners, 0, listeners, 0, i);
+                System.arraycopy(this.hitListeners, i + 1, listeners, i, listeners.length - i);
+                setHitListeners(listeners);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the listeners of the block. The array is never changed, so it can be kept, as a
+     * snapshot does, and given back to setHitListeners later.
+     *
+     * @return the listeners.
+     */
+    HitListener[] getHitListeners() {
+        return this.hitListeners;
+    }
+
+    /**
+     * Replaces the listeners of the block, as when a snapshot is restored, and tells the bus.
+     *
+     * @param listeners the listeners, an array from getHitListeners.
+     */
+    void setHitListeners(HitListener[] listeners) {
+        this.hitListeners = listeners;
+        if (this.eventBus != null) {
+            this.eventBus.listenersChanged();
+        }
+    }
+
+    /**
+     * @return the bus of the game the block was added to, or null.
+     */
+    HitEventBus getHitEventBus() {
+        return this.eventBus;
     }
 
     /**
      * This method notifies all hit listeners when a hit occurs.
+     * In a game, the hit is queued on the game's event bus and the listeners hear of it at the end
+     * of the tick; a block that is not in a game notifies them right away.
      * @param hitter The ball that hit.
      */
-
     private void notifyHit(Ball hitter) {
-        // Make a copy of the hitListeners before iterating over them.
-        List<HitListener> listeners = new ArrayList<>(this.hitListeners);
-        // Notify all listeners about a hit event:
-        for (HitListener hl : listeners) {
-            hl.hitEvent(this, hitter);
+        if (this.eventBus != null) {
+            this.eventBus.publish(this, hitter);
+        } else {
+            this.dispatchHit(hitter);
+        }
+    }
+
+    /**
+     * This method calls all hit listeners of this block.
+     * @param hitter The ball that hit.
+     */
+    void dispatchHit(Ball hitter) {
+        // The array is never changed, so listeners that add or remove listeners don't disturb the loop
+        HitListener[] listeners = this.hitListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i].hitEvent(this, hitter);
         }
     }
 }
@@ -0,0 +1,811 @@
+package game;
+
+import shapes.Line;
+import shapes.Point;
+import shapes.Rectangle;
+import shapes.SlabIntersection;
+import shapes.SweptCircle;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A bounding-volume hierarchy over the collision rectangles of collidables: a binary tree whose
+ * nodes bound their children with boxes, so a query descends only into the boxes it passes through.
+ * Unlike a uniform grid it adapts to how the collidables are spread, so a dense band of blocks next
+ * to empty space costs no more than an even layout.
+ * Collidables added together are built into a balanced tree by median splits; collidables added or
+ * removed one at a time are inserted where they grow the tree least, or unlinked, and the nodes
+ * above are rotated to keep the tree balanced, so both take O(log n).
+ * Collidables that move (the paddle) get a box with a margin, and refit() reinserts them once they
+ * leave it. A query that runs while a mover is outside its box tests the mover directly, so results
+ * are always exact.
+ * The nodes are kept in parallel arrays; a removed node's slot is reused by the next one added.
+ */
+public class BoundingVolumeHierarchy implements CollidableIndex {
+    private static final double EPSILON = 0.0000001;
+    // Boxes are padded like the grid's cells, so edge hits are never pruned
+    private static final double PAD = EPSILON * 10;
+    private static final double MIN_MARGIN = 8;
+    private static final double MAX_MARGIN = 64;
+    private static final int NONE = -1;
+
+    private double[] minX;
+    private double[] minY;
+    private double[] maxX;
+    private double[] maxY;
+    private int[] parent;
+    // NONE for a leaf
+    private int[] left;
+    private int[] right;
+    // 0 for a leaf
+    private int[] heights;
+    private Collidable[] items;
+    private int[] orders;
+    private boolean[] moving;
+    private int nodeCount;
+    private int freeList;
+    private int root;
+    private int nextOrder;
+
+    private final Map<Collidable, Integer> leaves;
+    // The orders of the collidables removed while restorable, so they can be restored to their place
+    private final Map<Collidable, Integer> removedOrders;
+    private boolean restorable;
+    private int[] movingLeaves;
+    private double[] movingLastX;
+    private double[] movingLastY;
+    private int movingCount;
+    private double margin;
+
+    // The state of a query in progress, one per thread so queries don't allocate or share state
+    private final ThreadLocal<Query> queries;
+    // Every thread's query, so their counters can be summed
+    private final List<Query> allQueries;
+
+    /**
+     * Constructs an empty hierarchy.
+     */
+    public BoundingVolumeHierarchy() {
+        this.leaves = new IdentityHashMap<>();
+        this.removedOrders = new IdentityHashMap<>();
+        this.movingLeaves = new int[2];
+        this.movingLastX = new double[2];
+        this.movingLastY = new double[2];
+        this.margin = MIN_MARGIN;
+        this.freeList = NONE;
+        this.root = NONE;
+        grow(16);
+        this.allQueries = new CopyOnWriteArrayList<>();
+        this.queries = ThreadLocal.withInitial(this::newQuery);
+    }
+
+    @Override
+    public void add(Collidable c) {
+        insertLeaf(newLeaf(c, this.nextOrder++));
+    }
+
+    @Override
+    public boolean restore(Collidable c) {
+        Integer order = this.removedOrders.remove(c);
+        if (order == null) {
+            return false;
+        }
+        insertLeaf(newLeaf(c, order));
+        return true;
+    }
+
+    /**
+     * Adds many collidables at once and rebuilds the whole tree balanced, which gives a better
+     * tree than adding them one by one.
+     *
+     * @param added the collidables to add, in order.
+     */
+    @Override
+    public void addAll(Collection<? extends Collidable> added) {
+        for (Collidable c : added) {
+            newLeaf(c, this.nextOrder++);
+        }
+        rebuild();
+    }
+
+    @Override
+    public void remove(Collidable c) {
+        Integer leaf = this.leaves.remove(c);
+        if (leaf == null) {
+            return;
+        }
+        if (this.restorable) {
+            this.removedOrders.put(c, this.orders[leaf]);
+        }
+        removeLeaf(leaf);
+        if (this.moving[leaf]) {
+            for (int i = 0; i < this.movingCount; i++) {
+                if (this.movingLeaves[i] == leaf) {
+                    this.movingCount--;
+                    this.movingLeaves[i] = this.movingLeaves[this.movingCount];
+                    this.movingLastX[i] = this.movingLastX[this.movingCount];
+                    this.movingLastY[i] = this.movingLastY[this.movingCount];
+                    break;
+                }
+            }
+        }
+        this.items[leaf] = null;
+        free(leaf);
+    }
+
+    @Override
+    public void setRestorable(boolean restorable) {
+        this.restorable = restorable;
+        if (!restorable) {
+            this.removedOrders.clear();
+        }
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.items, 0, this.nodeCount, null);
+        Arrays.fill(this.moving, 0, this.nodeCount, false);
+        this.nodeCount = 0;
+        this.freeList = NONE;
+        this.root = NONE;
+        this.leaves.clear();
+        this.removedOrders.clear();
+        this.movingCount = 0;
+        this.nextOrder = 0;
+    }
+
+    /**
+     * Reinserts the movers that left their boxes. The margin of a mover's box grows to twice the
+     * distance it moved between refits, up to a limit, so a mover that moves steadily stays inside
+     * its box for at least a tick; jumps beyond the limit are caught by the queries instead.
+     */
+    @Override
+    public void refit() {
+        for (int i = 0; i < this.movingCount; i++) {
+            int leaf = this.movingLeaves[i];
+            Rectangle rect = this.items[leaf].getCollisionRectangle();
+            double x = rect.getUpperLeft().getX();
+            double y = rect.getUpperLeft().getY();
+            double moved = Math.max(Math.abs(x - this.movingLastX[i]), Math.abs(y - this.movingLastY[i]));
+            if (moved * 2 <= MAX_MARGIN) {
+                this.margin = Math.max(this.margin, moved * 2);
+            }
+            this.movingLastX[i] = x;
+            this.movingLastY[i] = y;
+            if (!contains(leaf, rect)) {
+                removeLeaf(leaf);
+                setLeafBox(leaf, rect, this.margin);
+                insertLeaf(leaf);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the tree balanced from its leaves, splitting each node at the median of its
+     * leaves' centers along its longer side.
+     */
+    public void rebuild() {
+        int[] ids = new int[this.leaves.size()];
+        int n = 0;
+        for (int leaf : this.leaves.values()) {
+            ids[n++] = leaf;
+        }
+        // Free the inner nodes and keep the leaves
+        this.freeList = NONE;
+        for (int i = this.nodeCount - 1; i >= 0; i--) {
+            if (this.items[i] == null) {
+                free(i);
+            }
+        }
+        this.root = n == 0 ? NONE : build(ids, 0, n);
+        if (this.root != NONE) {
+            this.parent[this.root] = NONE;
+        }
+    }
+
+    /**
+     * @return the height of the tree, 0 if it is empty and 1 if it is a single leaf.
+     */
+    public int height() {
+        return this.root == NONE ? 0 : this.heights[this.root] + 1;
+    }
+
+    @Override
+    public CollisionInfo closestCollision(Line trajectory) {
+        double x0 = trajectory.start().getX();
+        double y0 = trajectory.start().getY();
+        double dx = trajectory.end().getX() - x0;
+        double dy = trajectory.end().getY() - y0;
+        Query q = lineQuery(x0, y0, dx, dy);
+        if (q.best == NONE) {
+            return null;
+        }
+        CollisionInfo info = new CollisionInfo(new Point(x0 + q.bestT * dx, y0 + q.bestT * dy), this.items[q.best]);
+        q.best = NONE;
+        return info;
+    }
+
+    @Override
+    public double closestHit(double x0, double y0, double dx, double dy, Collidable[] hits, int index) {
+        Query q = lineQuery(x0, y0, dx, dy);
+        if (q.best == NONE) {
+            hits[index] = null;
+            return SlabIntersection.NO_HIT;
+        }
+        hits[index] = this.items[q.best];
+        q.best = NONE;
+        return q.bestT;
+    }
+
+    @Override
+    public double sweptHit(double x0, double y0, double dx, double dy, double r, Collidable[] hits, int index) {
+        Query q = begin(x0, y0, dx, dy, r, SweptCircle.NO_HIT);
+        for (int i = 0; i < q.escapedCount; i++) {
+            testSwept(q, q.escaped[i]);
+        }
+        double pad = r + PAD;
+        if (this.root != NONE) {
+            double t = entry(q, this.root, pad);
+            if (t != SweptCircle.NO_HIT) {
+                q.push(this.root, t);
+            }
+        }
+        // Descend into the nearer child first; a box entered after the best contact can't beat it
+        while (q.size > 0) {
+            q.size--;
+            int node = q.stack[q.size];
+            if (q.best != NONE && q.stackT[q.size] > q.bestT) {
+                continue;
+            }
+            if (this.left[node] == NONE) {
+                if (!q.isEscaped(node)) {
+                    testSwept(q, node);
+                }
+                continue;
+            }
+            int a = this.left[node];
+            int b = this.right[node];
+            double ta = entry(q, a, pad);
+            double tb = entry(q, b, pad);
+            if (ta != SweptCircle.NO_HIT && tb != SweptCircle.NO_HIT && tb < ta) {
+                q.push(a, ta);
+                q.push(b, tb);
+            } else {
+                if (tb != SweptCircle.NO_HIT) {
+                    q.push(b, tb);
+                }
+                if (ta != SweptCircle.NO_HIT) {
+                    q.push(a, ta);
+                }
+            }
+        }
+        if (q.best == NONE) {
+            hits[index] = null;
+            return SweptCircle.NO_HIT;
+        }
+        hits[index] = this.items[q.best];
+        q.best = NONE;
+        return q.bestT;
+    }
+
+    @Override
+    public long getQueryCount() {
+        long total = 0;
+        for (Query q : this.allQueries) {
+            total += q.count;
+        }
+        return total;
+    }
+
+    @Override
+    public long getTestCount() {
+        long total = 0;
+        for (Query q : this.allQueries) {
+            total += q.tests;
+        }
+        return total;
+    }
+
+    /**
+     * Runs a line query. The farthest hit wins, so every box the segment passes through is visited.
+     */
+    private Query lineQuery(double x0, double y0, double dx, double dy) {
+        Query q = begin(x0, y0, dx, dy, 0, SlabIntersection.NO_HIT);
+        for (int i = 0; i < q.escapedCount; i++) {
+            test(q, q.escaped[i]);
+        }
+        if (this.root != NONE) {
+            q.push(this.root, 0);
+        }
+        while (q.size > 0) {
+            int node = q.stack[--q.size];
+            if (entry(q, node, PAD) == SlabIntersection.NO_HIT) {
+                continue;
+            }
+            if (this.left[node] == NONE) {
+                if (!q.isEscaped(node)) {
+                    test(q, node);
+                }
+            } else {
+                q.push(this.right[node], 0);
+                q.push(this.left[node], 0);
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Starts a query and finds the movers that are outside their boxes, which the tree can't find.
+     */
+    private Query begin(double x0, double y0, double dx, double dy, double r, double noHit) {
+        Query q = this.queries.get();
+        q.count++;
+        q.x0 = x0;
+        q.y0 = y0;
+        q.dx = dx;
+        q.dy = dy;
+        q.radius = r;
+        q.best = NONE;
+        q.bestT = noHit;
+        q.size = 0;
+        q.escapedCount = 0;
+        for (int i = 0; i < this.movingCount; i++) {
+            int leaf = this.movingLeaves[i];
+            if (!contains(leaf, this.items[leaf].getCollisionRectangle())) {
+                q.escape(leaf);
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Tests the segment of the query against a leaf, keeping the hit farthest along the segment
+     * and, on a tie, the one that was added first.
+     */
+    private void test(Query q, int leaf) {
+        q.tests++;
+        double t = this.items[leaf].getCollisionRectangle().firstHit(q.x0, q.y0, q.dx, q.dy);
+        if (t == SlabIntersection.NO_HIT) {
+            return;
+        }
+        if (q.best == NONE || t > q.bestT || (t == q.bestT && this.orders[leaf] < this.orders[q.best])) {
+            q.bestT = t;
+            q.best = leaf;
+        }
+    }
+
+    /**
+     * Tests the swept circle of the query against a leaf, keeping the earliest contact and,
+     * on a tie, the collidable that was added first.
+     */
+    private void testSwept(Query q, int leaf) {
+        q.tests++;
+        double t = this.items[leaf].getCollisionRectangle().sweptHit(q.x0, q.y0, q.dx, q.dy, q.radius);
+        if (t == SweptCircle.NO_HIT) {
+            return;
+        }
+        if (q.best == NONE || t < q.bestT || (t == q.bestT && this.orders[leaf] < this.orders[q.best])) {
+            q.bestT = t;
+            q.best = leaf;
+        }
+    }
+
+    /**
+     * Returns where the segment of the query enters the box of a node grown by pad,
+     * 0 if it starts inside, or NO_HIT if it misses it.
+     */
+    private double entry(Query q, int node, double pad) {
+        double tEnter = 0;
+        double tExit = 1;
+        double lo = this.minX[node] - pad;
+        double hi = this.maxX[node] + pad;
+        if (q.dx == 0) {
+            if (q.x0 < lo || q.x0 > hi) {
+                return SweptCircle.NO_HIT;
+            }
+        } else {
+            double t1 = (lo - q.x0) / q.dx;
+            double t2 = (hi - q.x0) / q.dx;
+            tEnter = Math.max(tEnter, Math.min(t1, t2));
+            tExit = Math.min(tExit, Math.max(t1, t2));
+        }
+        lo = this.minY[node] - pad;
+        hi = this.maxY[node] + pad;
+        if (q.dy == 0) {
+            if (q.y0 < lo || q.y0 > hi) {
+                return SweptCircle.NO_HIT;
+            }
+        } else {
+            double t1 = (lo - q.y0) / q.dy;
+            double t2 = (hi - q.y0) / q.dy;
+            tEnter = Math.max(tEnter, Math.min(t1, t2));
+            tExit = Math.min(tExit, Math.max(t1, t2));
+        }
+        return tEnter <= tExit ? tEnter : SweptCircle.NO_HIT;
+    }
+
+    private boolean contains(int leaf, Rectangle rect) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        return x >= this.minX[leaf] && y >= this.minY[leaf]
+                && x + rect.getWidth() <= this.maxX[leaf] && y + rect.getHeight() <= this.maxY[leaf];
+    }
+
+    private int newLeaf(Collidable c, int order) {
+        int leaf = allocate();
+        this.items[leaf] = c;
+        this.orders[leaf] = order;
+        this.moving[leaf] = c.isPaddle();
+        this.heights[leaf] = 0;
+        Rectangle rect = c.getCollisionRectangle();
+        setLeafBox(leaf, rect, this.moving[leaf] ? this.margin : 0);
+        if (this.moving[leaf]) {
+            if (this.movingCount == this.movingLeaves.length) {
+                this.movingLeaves = Arrays.copyOf(this.movingLeaves, this.movingCount * 2);
+                this.movingLastX = Arrays.copyOf(this.movingLastX, this.movingCount * 2);
+                this.movingLastY = Arrays.copyOf(this.movingLastY, this.movingCount * 2);
+            }
+            this.movingLeaves[this.movingCount] = leaf;
+            this.movingLastX[this.movingCount] = rect.getUpperLeft().getX();
+            this.movingLastY[this.movingCount] = rect.getUpperLeft().getY();
+            this.movingCount++;
+        }
+        this.leaves.put(c, leaf);
+        return leaf;
+    }
+
+    private void setLeafBox(int leaf, Rectangle rect, double grow) {
+        double x = rect.getUpperLeft().getX();
+        double y = rect.getUpperLeft().getY();
+        this.minX[leaf] = x - grow;
+        this.minY[leaf] = y - grow;
+        this.maxX[leaf] = x + rect.getWidth() + grow;
+        this.maxY[leaf] = y + rect.getHeight() + grow;
+    }
+
+    /**
+     * Inserts a leaf next to the node where the tree's total perimeter grows least, then
+     * grows the boxes above it.
+     */
+    private void insertLeaf(int leaf) {
+        if (this.root == NONE) {
+            this.root = leaf;
+            this.parent[leaf] = NONE;
+            return;
+        }
+        int node = this.root;
+        while (this.left[node] != NONE) {
+            double perimeter = perimeter(node);
+            double combined = unionPerimeter(node, leaf);
+            // Pairing the leaf with this node costs the new parent; descending costs growing this node
+            double cost = 2 * combined;
+            double inherited = 2 * (combined - perimeter);
+            double costLeft = descentCost(this.left[node], leaf) + inherited;
+            double costRight = descentCost(this.right[node], leaf) + inherited;
+            if (cost < costLeft && cost < costRight) {
+                break;
+            }
+            node = costLeft < costRight ? this.left[node] : this.right[node];
+        }
+        int sibling = node;
+        int oldParent = this.parent[sibling];
+        int newParent = allocate();
+        this.items[newParent] = null;
+        this.parent[newParent] = oldParent;
+        this.left[newParent] = sibling;
+        this.right[newParent] = leaf;
+        this.parent[sibling] = newParent;
+        this.parent[leaf] = newParent;
+        if (oldParent == NONE) {
+            this.root = newParent;
+        } else if (this.left[oldParent] == sibling) {
+            this.left[oldParent] = newParent;
+        } else {
+            this.right[oldParent] = newParent;
+        }
+        refitUp(newParent);
+    }
+
+    private double descentCost(int child, int leaf) {
+        double combined = unionPerimeter(child, leaf);
+        return this.left[child] == NONE ? combined : combined - perimeter(child);
+    }
+
+    /**
+     * Unlinks a leaf: its sibling takes its parent's place, and the boxes above shrink.
+     */
+    private void removeLeaf(int leaf) {
+        if (leaf == this.root) {
+            this.root = NONE;
+            return;
+        }
+        int oldParent = this.parent[leaf];
+        int grandParent = this.parent[oldParent];
+        int sibling = this.left[oldParent] == leaf ? this.right[oldParent] : this.left[oldParent];
+        if (grandParent == NONE) {
+            this.root = sibling;
+            this.parent[sibling] = NONE;
+        } else {
+            if (this.left[grandParent] == oldParent) {
+                this.left[grandParent] = sibling;
+            } else {
+                this.right[grandParent] = sibling;
+            }
+            this.parent[sibling] = grandParent;
+            refitUp(grandParent);
+        }
+        free(oldParent);
+    }
+
+    /**
+     * Rebalances and refits the boxes and heights from a node up to the root.
+     */
+    private void refitUp(int node) {
+        while (node != NONE) {
+            node = balance(node);
+            setFromChildren(node);
+            node = this.parent[node];
+        }
+    }
+
+    private void setFromChildren(int node) {
+        int a = this.left[node];
+        int b = this.right[node];
+        this.minX[node] = Math.min(this.minX[a], this.minX[b]);
+        this.minY[node] = Math.min(this.minY[a], this.minY[b]);
+        this.maxX[node] = Math.max(this.maxX[a], this.maxX[b]);
+        this.maxY[node] = Math.max(this.maxY[a], this.maxY[b]);
+        this.heights[node] = 1 + Math.max(this.heights[a], this.heights[b]);
+    }
+
+    /**
+     * If one child of a node is more than one level taller than the other, rotates the taller
+     * child up in the node's place, keeping the taller of its children under it.
+     *
+     * @return the node now in the place of the given node.
+     */
+    private int balance(int a) {
+        if (this.left[a] == NONE || this.heights[a] < 2) {
+            return a;
+        }
+        int b = this.left[a];
+        int c = this.right[a];
+        int difference = this.heights[c] - this.heights[b];
+        if (difference > 1) {
+            rotateUp(a, c, true);
+            return c;
+        }
+        if (difference < -1) {
+            rotateUp(a, b, false);
+            return b;
+        }
+        return a;
+    }
+
+    /**
+     * Puts child in the place of node. The shorter child of child moves down under node, in
+     * the place child had.
+     */
+    private void rotateUp(int node, int child, boolean fromRight) {
+        int f = this.left[child];
+        int g = this.right[child];
+        int oldParent = this.parent[node];
+        this.parent[child] = oldParent;
+        this.parent[node] = child;
+        if (oldParent == NONE) {
+            this.root = child;
+        } else if (this.left[oldParent] == node) {
+            this.left[oldParent] = child;
+        } else {
+            this.right[oldParent] = child;
+        }
+        int kept = this.heights[f] > this.heights[g] ? f : g;
+        int moved = kept == f ? g : f;
+        this.left[child] = node;
+        this.right[child] = kept;
+        if (fromRight) {
+            this.right[node] = moved;
+        } else {
+            this.left[node] = moved;
+        }
+        this.parent[moved] = node;
+        setFromChildren(node);
+        setFromChildren(child);
+    }
+
+    /**
+     * Builds a subtree over ids[from, to) and returns its root.
+     */
+    private int build(int[] ids, int from, int to) {
+        if (to - from == 1) {
+            return ids[from];
+        }
+        double cMinX = Double.POSITIVE_INFINITY;
+        double cMinY = Double.POSITIVE_INFINITY;
+        double cMaxX = Double.NEGATIVE_INFINITY;
+        double cMaxY = Double.NEGATIVE_INFINITY;
+        for (int i = from; i < to; i++) {
+            int id = ids[i];
+            double cx = this.minX[id] + this.maxX[id];
+            double cy = this.minY[id] + this.maxY[id];
+            cMinX = Math.min(cMinX, cx);
+            cMaxX = Math.max(cMaxX, cx);
+            cMinY = Math.min(cMinY, cy);
+            cMaxY = Math.max(cMaxY, cy);
+        }
+        boolean alongX = cMaxX - cMinX >= cMaxY - cMinY;
+        int mid = (from + to) >>> 1;
+        select(ids, from, to - 1, mid, alongX);
+        int a = build(ids, from, mid);
+        int b = build(ids, mid, to);
+        int node = allocate();
+        this.items[node] = null;
+        this.left[node] = a;
+        this.right[node] = b;
+        this.parent[a] = node;
+        this.parent[b] = node;
+        setFromChildren(node);
+        return node;
+    }
+
+    /**
+     * Reorders ids[lo, hi] so that ids[k] has the k-th smallest center along the axis,
+     * with smaller centers before it and larger ones after it (quickselect).
+     */
+    private void select(int[] ids, int lo, int hi, int k, boolean alongX) {
+        while (lo < hi) {
+            double pivot = center(ids[(lo + hi) >>> 1], alongX);
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (center(ids[i], alongX) < pivot) {
+                    i++;
+                }
+                while (center(ids[j], alongX) > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int swap = ids[i];
+                    ids[i] = ids[j];
+                    ids[j] = swap;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private double center(int node, boolean alongX) {
+        return alongX ? this.minX[node] + this.maxX[node] : this.minY[node] + this.maxY[node];
+    }
+
+    private double perimeter(int node) {
+        return this.maxX[node] - this.minX[node] + this.maxY[node] - this.minY[node];
+    }
+
+    private double unionPerimeter(int a, int b) {
+        return Math.max(this.maxX[a], this.maxX[b]) - Math.min(this.minX[a], this.minX[b])
+                + Math.max(this.maxY[a], this.maxY[b]) - Math.min(this.minY[a], this.minY[b]);
+    }
+
+    private int allocate() {
+        if (this.freeList == NONE) {
+            if (this.nodeCount == this.parent.length) {
+                grow(this.nodeCount * 2);
+            }
+            int node = this.nodeCount++;
+            this.left[node] = NONE;
+            this.right[node] = NONE;
+            return node;
+        }
+        int node = this.freeList;
+        this.freeList = this.parent[node];
+        this.left[node] = NONE;
+        this.right[node] = NONE;
+        return node;
+    }
+
+    /**
+     * Puts a node on the free list, which is linked through the parent array.
+     */
+    private void free(int node) {
+        this.left[node] = NONE;
+        this.right[node] = NONE;
+        this.moving[node] = false;
+        this.parent[node] = this.freeList;
+        this.freeList = node;
+    }
+
+    private void grow(int capacity) {
+        if (this.parent == null) {
+            this.minX = new double[capacity];
+            this.minY = new double[capacity];
+            this.maxX = new double[capacity];
+            this.maxY = new double[capacity];
+            this.parent = new int[capacity];
+            this.left = new int[capacity];
+            this.right = new int[capacity];
+            this.heights = new int[capacity];
+            this.items = new Collidable[capacity];
+            this.orders = new int[capacity];
+            this.moving = new boolean[capacity];
+            return;
+        }
+        this.minX = Arrays.copyOf(this.minX, capacity);
+        this.minY = Arrays.copyOf(this.minY, capacity);
+        this.maxX = Arrays.copyOf(this.maxX, capacity);
+        this.maxY = Arrays.copyOf(this.maxY, capacity);
+        this.parent = Arrays.copyOf(this.parent, capacity);
+        this.left = Arrays.copyOf(this.left, capacity);
+        this.right = Arrays.copyOf(this.right, capacity);
+        this.heights = Arrays.copyOf(this.heights, capacity);
+        this.items = Arrays.copyOf(this.items, capacity);
+        this.orders = Arrays.copyOf(this.orders, capacity);
+        this.moving = Arrays.copyOf(this.moving, capacity);
+    }
+
+    private Query newQuery() {
+        Query q = new Query();
+        this.allQueries.add(q);
+        return q;
+    }
+
+    /**
+     * The segment of a query, the best hit found so far and the stack of nodes to visit.
+     */
+    private static final class Query {
+        private double x0;
+        private double y0;
+        private double dx;
+        private double dy;
+        private double radius;
+        private int best;
+        private double bestT;
+        private int[] stack = new int[64];
+        private double[] stackT = new double[64];
+        private int size;
+        private int[] escaped = new int[2];
+        private int escapedCount;
+        // Written only by the owning thread
+        private long count;
+        private long tests;
+
+        void push(int node, double t) {
+            if (this.size == this.stack.length) {
+                this.stack = Arrays.copyOf(this.stack, this.size * 2);
+                this.stackT = Arrays.copyOf(this.stackT, this.size * 2);
+            }
+            this.stack[this.size] = node;
+            this.stackT[this.size] = t;
+            this.size++;
+        }
+
+        void escape(int leaf) {
+            if (this.escapedCount == this.escaped.length) {
+                this.escaped = Arrays.copyOf(this.escaped, this.escapedCount * 2);
+            }
+            this.escaped[this.escapedCount++] = leaf;
+        }
+
+        boolean isEscaped(int leaf) {
+            for (int i = 0; i < this.escapedCount; i++) {
+                if (this.escaped[i] == leaf) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
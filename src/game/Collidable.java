@@ -16,6 +16,7 @@ public interface Collidable {
 
         /**
          * This method calculates the new velocity of the ball after it hits.
+         * Implementations may update currentVelocity in place and return it, so a hit doesn't allocate.
          * @param hitter The ball that hits.
          * @param collisionPoint The point at which the ball collides.
          * @param currentVelocity The current velocity of the ball.
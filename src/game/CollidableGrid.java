@@ -0,0 +1,540 @@
+package game;
+
+import shapes.Line;
+import shapes.Point;
+import shapes.Rectangle;
+import shapes.SlabIntersection;
+import shapes.SweptCircle;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A uniform grid that buckets collidables by the cells their collision rectangles cover.
+ * A trajectory is only tested against the collidables in the cells it passes through.
+ * Collidables that move (the paddle) or that reach outside the grid are kept in a separate
+ * list that is tested on every query.
+ * Queries may run concurrently from several threads as long as nothing is added or removed meanwhile.
+ */
+public class CollidableGrid implements CollidableIndex {
+    private static final double EPSILON = 0.0000001;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<List<Entry>> cells;
+    private final List<Entry> unbounded;
+    private final Map<Collidable, Entry> entries;
+    // The orders of the collidables removed while restorable, so they can be restored to their place
+    private final Map<Collidable, Integer> removedOrders;
+    private boolean restorable;
+    // The state of a query in progress, one per thread so queries don't allocate or share state
+    private final ThreadLocal<Query> queries;
+    // Every thread's query, so their counters can be summed
+    private final List<Query> allQueries;
+    private int nextOrder;
+
+    /**
+     * Constructs a grid covering the area from (0, 0) to (width, height), inclusive.
+     *
+     * @param width    the width of the covered area
+     * @param height   the height of the covered area
+     * @param cellSize the side length of a single cell
+     */
+    public CollidableGrid(double width, double height, double cellSize) {
+        this.cellSize = cellSize;
+        this.columns = (int) Math.floor(width / cellSize) + 1;
+        this.rows = (int) Math.floor(height / cellSize) + 1;
+        this.cells = new ArrayList<>(this.columns * this.rows);
+        for (int i = 0; i < this.columns * this.rows; i++) {
+            this.cells.add(new ArrayList<>());
+        }
+        this.unbounded = new ArrayList<>();
+        this.entries = new IdentityHashMap<>();
+        this.removedOrders = new IdentityHashMap<>();
+        this.allQueries = new CopyOnWriteArrayList<>();
+        this.queries = ThreadLocal.withInitial(this::newQuery);
+    }
+
+    /**
+     * Adds a collidable to the grid cells covered by its collision rectangle.
+     *
+     * @param c the collidable to add
+     */
+    @Override
+    public void add(Collidable c) {
+        add(c, this.nextOrder++);
+    }
+
+    /**
+     * Adds back a collidable that was removed, with the order it had before.
+     *
+     * @param c the collidable to add back
+     * @return false if it was never removed
+     */
+    @Override
+    public boolean restore(Collidable c) {
+        Integer order = this.removedOrders.remove(c);
+        if (order == null) {
+            return false;
+        }
+        add(c, order);
+        return true;
+    }
+
+    private void add(Collidable c, int order) {
+        Entry entry = new Entry(c, order);
+        this.entries.put(c, entry);
+        Rectangle rect = c.getCollisionRectangle();
+        double minX = rect.getUpperLeft().getX() - EPSILON;
+        double minY = rect.getUpperLeft().getY() - EPSILON;
+        double maxX = rect.getUpperLeft().getX() + rect.getWidth() + EPSILON;
+        double maxY = rect.getUpperLeft().getY() + rect.getHeight() + EPSILON;
+        if (c.isPaddle() || minX < -EPSILON * 2 || minY < -EPSILON * 2
+                || cellOf(maxX) >= this.columns || cellOf(maxY) >= this.rows) {
+            this.unbounded.add(entry);
+            return;
+        }
+        entry.minCol = Math.max(0, cellOf(minX));
+        entry.minRow = Math.max(0, cellOf(minY));
+        entry.maxCol = cellOf(maxX);
+        entry.maxRow = cellOf(maxY);
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                this.cells.get(row * this.columns + col).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Adds many collidables to the grid, in order.
+     *
+     * @param added the collidables to add
+     */
+    @Override
+    public void addAll(Collection<? extends Collidable> added) {
+        for (Collidable c : added) {
+            add(c);
+        }
+    }
+
+    /**
+     * Removes a collidable from the grid.
+     *
+     * @param c the collidable to remove
+     */
+    @Override
+    public void remove(Collidable c) {
+        Entry entry = this.entries.remove(c);
+        if (entry == null) {
+            return;
+        }
+        if (this.restorable) {
+            this.removedOrders.put(c, entry.order);
+        }
+        if (entry.minCol < 0) {
+            this.unbounded.remove(entry);
+            return;
+        }
+        for (int row = entry.minRow; row <= entry.maxRow; row++) {
+            for (int col = entry.minCol; col <= entry.maxCol; col++) {
+                this.cells.get(row * this.columns + col).remove(entry);
+            }
+        }
+    }
+
+    @Override
+    public void setRestorable(boolean restorable) {
+        this.restorable = restorable;
+        if (!restorable) {
+            this.removedOrders.clear();
+        }
+    }
+
+    /**
+     * Removes every collidable from the grid.
+     */
+    @Override
+    public void clear() {
+        for (List<Entry> cell : this.cells) {
+            cell.clear();
+        }
+        this.unbounded.clear();
+        this.entries.clear();
+        this.removedOrders.clear();
+        this.nextOrder = 0;
+    }
+
+    /**
+     * Finds the collision along the trajectory the same way a full scan over the collidables
+     * would: the intersection farthest from the start of the trajectory wins, and ties go to
+     * the collidable that was added first.
+     *
+     * @param trajectory the trajectory to check
+     * @return the collision info, or null if the trajectory hits nothing
+     */
+    @Override
+    public CollisionInfo closestCollision(Line trajectory) {
+        double x0 = trajectory.start().getX();
+        double y0 = trajectory.start().getY();
+        double dx = trajectory.end().getX() - x0;
+        double dy = trajectory.end().getY() - y0;
+        Query q = query(x0, y0, dx, dy);
+        if (q.best == null) {
+            return null;
+        }
+        Point collisionP = new Point(x0 + q.bestT * dx, y0 + q.bestT * dy);
+        CollisionInfo info = new CollisionInfo(collisionP, q.best.collidable);
+        q.best = null;
+        return info;
+    }
+
+    /**
+     * Finds the collision along the segment (x0 + t * dx, y0 + t * dy), t in [0, 1], without allocating.
+     * The collidable that is hit is written to hits[index].
+     *
+     * @param x0    the x-coordinate of the start of the segment
+     * @param y0    the y-coordinate of the start of the segment
+     * @param dx    the x-extent of the segment
+     * @param dy    the y-extent of the segment
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the collision point, or SlabIntersection.NO_HIT
+     */
+    @Override
+    public double closestHit(double x0, double y0, double dx, double dy, Collidable[] hits, int index) {
+        Query q = query(x0, y0, dx, dy);
+        if (q.best == null) {
+            hits[index] = null;
+            return SlabIntersection.NO_HIT;
+        }
+        hits[index] = q.best.collidable;
+        q.best = null;
+        return q.bestT;
+    }
+
+    /**
+     * Finds the first contact of a circle of radius r whose center moves along the segment
+     * (x0 + t * dx, y0 + t * dy), t in [0, 1], without allocating. Unlike closestHit, the hit
+     * nearest to the start wins, and ties go to the collidable that was added first.
+     * The collidable that is hit is written to hits[index].
+     *
+     * @param x0    the x-coordinate of the center at the start
+     * @param y0    the y-coordinate of the center at the start
+     * @param dx    the x-extent of the motion
+     * @param dy    the y-extent of the motion
+     * @param r     the radius of the circle
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the first contact, or SweptCircle.NO_HIT
+     */
+    @Override
+    public double sweptHit(double x0, double y0, double dx, double dy, double r, Collidable[] hits, int index) {
+        Query q = this.queries.get();
+        q.count++;
+        q.x0 = x0;
+        q.y0 = y0;
+        q.dx = dx;
+        q.dy = dy;
+        q.radius = r;
+        q.best = null;
+        q.bestT = SweptCircle.NO_HIT;
+        q.visitedMaxCol = -1;
+        for (int i = 0; i < this.unbounded.size(); i++) {
+            q.testSwept(this.unbounded.get(i));
+        }
+        // A path longer than a cell is visited a cell's length at a time, nearest first. Once a
+        // contact is found within the part visited so far, nothing further on can be touched sooner
+        int pieces = (int) Math.ceil(Math.max(Math.abs(dx), Math.abs(dy)) / this.cellSize);
+        if (pieces <= 1) {
+            visitBox(q, Math.min(x0, x0 + dx) - r, Math.min(y0, y0 + dy) - r,
+                    Math.max(x0, x0 + dx) + r, Math.max(y0, y0 + dy) + r);
+        } else {
+            double startX = x0;
+            double startY = y0;
+            for (int piece = 1; piece <= pieces; piece++) {
+                double t = piece / (double) pieces;
+                double endX = x0 + t * dx;
+                double endY = y0 + t * dy;
+                visitBox(q, Math.min(startX, endX) - r, Math.min(startY, endY) - r,
+                        Math.max(startX, endX) + r, Math.max(startY, endY) + r);
+                if (q.best != null && q.bestT <= t) {
+                    break;
+                }
+                startX = endX;
+                startY = endY;
+            }
+        }
+        if (q.best == null) {
+            hits[index] = null;
+            return SweptCircle.NO_HIT;
+        }
+        hits[index] = q.best.collidable;
+        q.best = null;
+        return q.bestT;
+    }
+
+    /**
+     * Does nothing: collidables that move are kept out of the cells and tested on every query.
+     */
+    @Override
+    public void refit() {
+    }
+
+    /**
+     * Returns the number of queries made so far, from all threads. The counts of other threads
+     * are only up to date once their queries have been joined, as after a parallel step.
+     *
+     * @return the number of queries.
+     */
+    @Override
+    public long getQueryCount() {
+        long total = 0;
+        for (Query q : this.allQueries) {
+            total += q.count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of collidables tested against a query so far, from all threads,
+     * with the same caveat as getQueryCount.
+     *
+     * @return the number of narrow-phase tests.
+     */
+    @Override
+    public long getTestCount() {
+        long total = 0;
+        for (Query q : this.allQueries) {
+            total += q.tests;
+        }
+        return total;
+    }
+
+    private Query newQuery() {
+        Query q = new Query();
+        this.allQueries.add(q);
+        return q;
+    }
+
+    /**
+     * Tests the swept circle of the query against the collidables in all cells that overlap the box.
+     * A collidable is tested only in the first of its cells inside the box, so it is tested once,
+     * and not at all if it is in the cells of the box visited just before, as it was tested then.
+     * The cells of the box are kept for the next visit; sweptHit() starts every query with none.
+     */
+    private void visitBox(Query q, double minX, double minY, double maxX, double maxY) {
+        int minCol = clampColumn(cellOf(minX));
+        int minRow = clampRow(cellOf(minY));
+        int maxCol = clampColumn(cellOf(maxX));
+        int maxRow = clampRow(cellOf(maxY));
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                List<Entry> cell = this.cells.get(row * this.columns + col);
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry entry = cell.get(i);
+                    if (col == Math.max(entry.minCol, minCol) && row == Math.max(entry.minRow, minRow)
+                            && !q.visited(entry)) {
+                        q.testSwept(entry);
+                    }
+                }
+            }
+        }
+        q.visitedMinCol = minCol;
+        q.visitedMinRow = minRow;
+        q.visitedMaxCol = maxCol;
+        q.visitedMaxRow = maxRow;
+    }
+
+    private Query query(double x0, double y0, double dx, double dy) {
+        Query q = this.queries.get();
+        q.count++;
+        q.x0 = x0;
+        q.y0 = y0;
+        q.dx = dx;
+        q.dy = dy;
+        q.best = null;
+        q.bestT = SlabIntersection.NO_HIT;
+        for (int i = 0; i < this.unbounded.size(); i++) {
+            q.test(this.unbounded.get(i));
+        }
+        walk(q);
+        return q;
+    }
+
+    /**
+     * Visits the cells the trajectory of the query passes through, clipped to the grid area.
+     * The walk is monotone in both axes, so a collidable whose cell range contains the previously
+     * visited cell has already been tested.
+     */
+    private void walk(Query q) {
+        double x0 = q.x0;
+        double y0 = q.y0;
+        double dx = q.dx;
+        double dy = q.dy;
+
+        // Clip the segment to the grid area (Liang-Barsky), with a margin for the padded edges
+        double margin = EPSILON * 10;
+        double maxX = this.columns * this.cellSize + margin;
+        double maxY = this.rows * this.cellSize + margin;
+        double tEnter = 0;
+        double tExit = 1;
+        if (dx == 0) {
+            if (x0 < -margin || x0 > maxX) {
+                return;
+            }
+        } else {
+            double t1 = (-margin - x0) / dx;
+            double t2 = (maxX - x0) / dx;
+            tEnter = Math.max(tEnter, Math.min(t1, t2));
+            tExit = Math.min(tExit, Math.max(t1, t2));
+        }
+        if (dy == 0) {
+            if (y0 < -margin || y0 > maxY) {
+                return;
+            }
+        } else {
+            double t1 = (-margin - y0) / dy;
+            double t2 = (maxY - y0) / dy;
+            tEnter = Math.max(tEnter, Math.min(t1, t2));
+            tExit = Math.min(tExit, Math.max(t1, t2));
+        }
+        if (tEnter > tExit) {
+            return;
+        }
+        int col = clampColumn(cellOf(x0 + tEnter * dx));
+        int row = clampRow(cellOf(y0 + tEnter * dy));
+        int endCol = clampColumn(cellOf(x0 + tExit * dx));
+        int endRow = clampRow(cellOf(y0 + tExit * dy));
+
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        double tDeltaX = stepX != 0 ? this.cellSize / Math.abs(dx) : Double.POSITIVE_INFINITY;
+        double tDeltaY = stepY != 0 ? this.cellSize / Math.abs(dy) : Double.POSITIVE_INFINITY;
+        double tMaxX = stepX > 0 ? ((col + 1) * this.cellSize - x0) / dx
+                : (stepX < 0 ? (col * this.cellSize - x0) / dx : Double.POSITIVE_INFINITY);
+        double tMaxY = stepY > 0 ? ((row + 1) * this.cellSize - y0) / dy
+                : (stepY < 0 ? (row * this.cellSize - y0) / dy : Double.POSITIVE_INFINITY);
+
+        visit(q, col, row, -1, -1);
+        int steps = Math.abs(endCol - col) + Math.abs(endRow - row);
+        for (int i = 0; i < steps; i++) {
+            int previousCol = col;
+            int previousRow = row;
+            if (row == endRow || (col != endCol && tMaxX < tMaxY)) {
+                col = clampColumn(col + stepX);
+                tMaxX += tDeltaX;
+            } else {
+                row = clampRow(row + stepY);
+                tMaxY += tDeltaY;
+            }
+            visit(q, col, row, previousCol, previousRow);
+        }
+    }
+
+    private void visit(Query q, int col, int row, int previousCol, int previousRow) {
+        List<Entry> cell = this.cells.get(row * this.columns + col);
+        for (int i = 0; i < cell.size(); i++) {
+            Entry entry = cell.get(i);
+            if (previousCol < entry.minCol || previousCol > entry.maxCol
+                    || previousRow < entry.minRow || previousRow > entry.maxRow) {
+                q.test(entry);
+            }
+        }
+    }
+
+    private int cellOf(double coordinate) {
+        return (int) Math.floor(coordinate / this.cellSize);
+    }
+
+    private int clampColumn(int col) {
+        return Math.max(0, Math.min(this.columns - 1, col));
+    }
+
+    private int clampRow(int row) {
+        return Math.max(0, Math.min(this.rows - 1, row));
+    }
+
+    /**
+     * A collidable together with the cells it occupies and the order it was added in.
+     */
+    private static final class Entry {
+        private final Collidable collidable;
+        private final int order;
+        private int minCol = -1;
+        private int minRow = -1;
+        private int maxCol = -1;
+        private int maxRow = -1;
+
+        Entry(Collidable collidable, int order) {
+            this.collidable = collidable;
+            this.order = order;
+        }
+    }
+
+    /**
+     * The trajectory of a query and the best hit found so far.
+     */
+    private static final class Query {
+        private double x0;
+        private double y0;
+        private double dx;
+        private double dy;
+        private double radius;
+        private Entry best;
+        private double bestT;
+        // Written only by the owning thread
+        private long count;
+        private long tests;
+        // The cells of the box a swept query visited last, none while maxCol is -1
+        private int visitedMinCol;
+        private int visitedMinRow;
+        private int visitedMaxCol;
+        private int visitedMaxRow;
+
+        /**
+         * Tells whether an entry is in the cells of the box visited last.
+         */
+        boolean visited(Entry entry) {
+            return this.visitedMaxCol >= 0
+                    && entry.maxCol >= this.visitedMinCol && entry.minCol <= this.visitedMaxCol
+                    && entry.maxRow >= this.visitedMinRow && entry.minRow <= this.visitedMaxRow;
+        }
+
+        /**
+         * Tests the trajectory against an entry, keeping the hit farthest along the trajectory
+         * and, on a tie, the one that was added first.
+         */
+        void test(Entry entry) {
+            this.tests++;
+            double t = entry.collidable.getCollisionRectangle().firstHit(this.x0, this.y0, this.dx, this.dy);
+            if (t == SlabIntersection.NO_HIT) {
+                return;
+            }
+            if (this.best == null || t > this.bestT || (t == this.bestT && entry.order < this.best.order)) {
+                this.bestT = t;
+                this.best = entry;
+            }
+        }
+
+        /**
+         * Tests the swept circle against an entry, keeping the earliest contact and,
+         * on a tie, the collidable that was added first.
+         */
+        void testSwept(Entry entry) {
+            this.tests++;
+            double t = entry.collidable.getCollisionRectangle().sweptHit(this.x0, this.y0, this.dx, this.dy,
+                    this.radius);
+            if (t == SweptCircle.NO_HIT) {
+                return;
+            }
+            if (this.best == null || t < this.bestT || (t == this.bestT && entry.order < this.best.order)) {
+                this.bestT = t;
+                this.best = entry;
+            }
+        }
+    }
+}
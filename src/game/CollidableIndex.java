@@ -0,0 +1,122 @@
+package game;
+
+import shapes.Line;
+
+import java.util.Collection;
+
+/**
+ * A spatial index over the collision rectangles of collidables, used by GameEnvironment to answer
+ * collision queries without testing every collidable.
+ * Every implementation must answer exactly like a full scan, including how ties are broken, so the
+ * choice of index never changes how the game plays.
+ * Queries may run concurrently from several threads as long as nothing is added, removed or refit meanwhile.
+ */
+public interface CollidableIndex {
+    /**
+     * Adds a collidable. Collidables added earlier win ties.
+     *
+     * @param c the collidable to add
+     */
+    void add(Collidable c);
+
+    /**
+     * Adds many collidables at once, in order.
+     *
+     * @param added the collidables to add
+     */
+    void addAll(Collection<? extends Collidable> added);
+
+    /**
+     * Removes a collidable, if it is in the index.
+     *
+     * @param c the collidable to remove
+     */
+    void remove(Collidable c);
+
+    /**
+     * Adds back a collidable that was removed from this index, breaking ties by the place it had
+     * before instead of as the newest, as when a snapshot is restored.
+     *
+     * @param c the collidable to add back
+     * @return false, adding nothing, if the index doesn't remember the collidable's place: it was
+     * not removed while the index was restorable, or the index was cleared since
+     */
+    boolean restore(Collidable c);
+
+    /**
+     * Sets whether the index remembers the place of the collidables it removes, which restore()
+     * needs. Off for a new index, so one that is only added to and removed from doesn't hold on to
+     * every collidable it ever had; turning it off forgets the places remembered so far.
+     *
+     * @param restorable true to remember the places of removed collidables
+     */
+    void setRestorable(boolean restorable);
+
+    /**
+     * Removes every collidable, and forgets the ones removed before. Collidables added afterwards
+     * break ties as if the index were new.
+     */
+    void clear();
+
+    /**
+     * Brings the index up to date with collidables that move, like the paddle.
+     * Called once per tick, before anything moves.
+     */
+    void refit();
+
+    /**
+     * Finds the collision along the trajectory: the intersection farthest from the start of the
+     * trajectory wins, and ties go to the collidable that was added first.
+     *
+     * @param trajectory the trajectory to check
+     * @return the collision info, or null if the trajectory hits nothing
+     */
+    CollisionInfo closestCollision(Line trajectory);
+
+    /**
+     * Finds the collision along the segment (x0 + t * dx, y0 + t * dy), t in [0, 1], like
+     * closestCollision, without allocating. The collidable that is hit is written to hits[index].
+     *
+     * @param x0    the x-coordinate of the start of the segment
+     * @param y0    the y-coordinate of the start of the segment
+     * @param dx    the x-extent of the segment
+     * @param dy    the y-extent of the segment
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the collision point, or SlabIntersection.NO_HIT
+     */
+    double closestHit(double x0, double y0, double dx, double dy, Collidable[] hits, int index);
+
+    /**
+     * Finds the first contact of a circle of radius r whose center moves along the segment
+     * (x0 + t * dx, y0 + t * dy), t in [0, 1], without allocating. The hit nearest to the start
+     * wins, and ties go to the collidable that was added first.
+     * The collidable that is hit is written to hits[index].
+     *
+     * @param x0    the x-coordinate of the center at the start
+     * @param y0    the y-coordinate of the center at the start
+     * @param dx    the x-extent of the motion
+     * @param dy    the y-extent of the motion
+     * @param r     the radius of the circle
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the first contact, or SweptCircle.NO_HIT
+     */
+    double sweptHit(double x0, double y0, double dx, double dy, double r, Collidable[] hits, int index);
+
+    /**
+     * Returns the number of queries made so far, from all threads. The counts of other threads
+     * are only up to date once their queries have been joined, as after a parallel step.
+     *
+     * @return the number of queries.
+     */
+    long getQueryCount();
+
+    /**
+     * Returns the number of collidables tested against a query so far, from all threads,
+     * with the same caveat as getQueryCount.
+     *
+     * @return the number of narrow-phase tests.
+     */
+    long getTestCount();
+}
@@ -4,6 +4,8 @@ import shapes.Point;
 
 /**
  * Represents information about a collision.
+ * One made with the no-argument constructor can be passed to GameEnvironment.getClosestCollision
+ * to be filled in again and again, instead of a new one being allocated for every query.
  */
 
 public class CollisionInfo {
@@ -22,6 +24,27 @@ public class CollisionInfo {
         this.collidableObject = collidableObject;
     }
 
+    /**
+     * Constructs an empty CollisionInfo, to be filled in by a collision query.
+     */
+    public CollisionInfo() {
+        this(new Point(0, 0), null);
+    }
+
+    /**
+     * Fills in the collision, moving the collision point in place.
+     *
+     * @param x                the x-coordinate of the collision point.
+     * @param y                the y-coordinate of the collision point.
+     * @param collidableObject the collidable object involved in the collision.
+     * @return this.
+     */
+    CollisionInfo set(double x, double y, Collidable collidableObject) {
+        this.collisionPoint.set(x, y);
+        this.collidableObject = collidableObject;
+        return this;
+    }
+
     /**
      * Returns the collision point.
      *
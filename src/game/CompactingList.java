@@ -0,0 +1,314 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A list of distinct objects that keeps them in the order they were added, with constant-time add,
+ * remove and contains. Every object has a handle with its slot; removing it only marks the handle,
+ * so the list can be changed while it is walked slot by slot, and a removed object can be restored
+ * to its slot until the list is compacted. The empty slots are squeezed out by compact(), which
+ * does so only once they make up a quarter of the slots, so removing many objects costs constant
+ * time each overall, not a search and shift each.
+ *
+ * @param <T> the type of the objects.
+ */
+final class CompactingList<T> {
+    // The handle in every slot, null once a removed object was added again elsewhere
+    private Handle[] handles;
+    private int slots;
+    private int size;
+    private final Map<T, Handle> handleOf;
+    // Handles squeezed out, reused so adding and removing in turn allocates nothing
+    private final List<Handle> freeHandles;
+    private int walking;
+    // Reused by setAll() to hold the handles that were in the list
+    private Handle[] previous;
+
+    /**
+     * Where an object is in the list.
+     */
+    private static final class Handle {
+        private Object item;
+        private int slot;
+        private boolean present;
+    }
+
+    /**
+     * Constructs an empty list.
+     */
+    CompactingList() {
+        this.handles = new Handle[16];
+        this.handleOf = new IdentityHashMap<>();
+        this.freeHandles = new ArrayList<>();
+        this.previous = new Handle[0];
+    }
+
+    /**
+     * Adds an object at the end.
+     *
+     * @param item the object, which must not be in the list.
+     */
+    void add(T item) {
+        Handle handle = this.handleOf.get(item);
+        if (handle == null) {
+            handle = newHandle(item);
+            this.handleOf.put(item, handle);
+        } else if (handle.present) {
+            throw new IllegalArgumentException("The object is already in the list");
+        } else {
+            // Removed but not squeezed out yet; its old slot stays empty
+            this.handles[handle.slot] = null;
+        }
+        if (this.slots == this.handles.length) {
+            this.handles = Arrays.copyOf(this.handles, this.slots * 2);
+        }
+        handle.slot = this.slots;
+        handle.present = true;
+        this.handles[this.slots++] = handle;
+        this.size++;
+    }
+
+    /**
+     * Makes handles ahead of time for the given number of objects that are not in the list yet,
+     * so adding them allocates nothing.
+     *
+     * @param count the number of objects.
+     */
+    void reserve(int count) {
+        while (this.freeHandles.size() < count) {
+            this.freeHandles.add(new Handle());
+        }
+    }
+
+    /**
+     * Adds many objects at the end, in order.
+     *
+     * @param added the objects.
+     */
+    void addAll(Collection<? extends T> added) {
+        for (T item : added) {
+            add(item);
+        }
+    }
+
+    /**
+     * Removes an object, leaving its slot empty until the list is compacted.
+     *
+     * @param item the object.
+     * @return true if it was in the list.
+     */
+    boolean remove(T item) {
+        Handle handle = this.handleOf.get(item);
+        if (handle == null || !handle.present) {
+            return false;
+        }
+        handle.present = false;
+        this.size--;
+        return true;
+    }
+
+    /**
+     * Puts a removed object back in the slot it had, as when a snapshot is restored.
+     *
+     * @param item the object.
+     * @return false, doing nothing, if the object was not removed or its slot was squeezed out.
+     */
+    boolean restore(T item) {
+        Handle handle = this.handleOf.get(item);
+        if (handle == null || handle.present || this.handles[handle.slot] != handle) {
+            return false;
+        }
+        handle.present = true;
+        this.size++;
+        return true;
+    }
+
+    /**
+     * @param item an object.
+     * @return true if it is in the list.
+     */
+    boolean contains(T item) {
+        Handle handle = this.handleOf.get(item);
+        return handle != null && handle.present;
+    }
+
+    /**
+     * Removes every object.
+     */
+    void clear() {
+        for (int i = 0; i < this.slots; i++) {
+            if (this.handles[i] != null) {
+                freeHandle(this.handles[i]);
+                this.handles[i] = null;
+            }
+        }
+        this.handleOf.clear();
+        this.slots = 0;
+        this.size = 0;
+    }
+
+    /**
+     * Makes the list hold exactly the given objects, in the given order, as when a snapshot is
+     * restored. Objects that stay keep their handles.
+     *
+     * @param present the objects, distinct.
+     */
+    void setAll(List<? extends T> present) {
+        if (this.walking != 0) {
+            throw new IllegalStateException("The list can't be replaced while its slots are walked");
+        }
+        int oldSlots = this.slots;
+        if (this.previous.length < oldSlots) {
+            this.previous = new Handle[this.handles.length];
+        }
+        System.arraycopy(this.handles, 0, this.previous, 0, oldSlots);
+        for (int i = 0; i < oldSlots; i++) {
+            if (this.handles[i] != null) {
+                this.handles[i].slot = -1;
+            }
+        }
+        int count = present.size();
+        if (this.handles.length < count) {
+            this.handles = Arrays.copyOf(this.handles, count);
+        }
+        for (int i = 0; i < count; i++) {
+            T item = present.get(i);
+            Handle handle = this.handleOf.get(item);
+            if (handle == null) {
+                handle = newHandle(item);
+                this.handleOf.put(item, handle);
+            }
+            handle.slot = i;
+            handle.present = true;
+            this.handles[i] = handle;
+        }
+        if (oldSlots > count) {
+            Arrays.fill(this.handles, count, oldSlots, null);
+        }
+        // The handles that were in the list and got no slot belong to objects that left it
+        for (int i = 0; i < oldSlots; i++) {
+            Handle handle = this.previous[i];
+            if (handle != null && handle.slot == -1) {
+                this.handleOf.remove(handle.item);
+                freeHandle(handle);
+            }
+            this.previous[i] = null;
+        }
+        this.slots = count;
+        this.size = count;
+    }
+
+    /**
+     * @return the number of objects in the list.
+     */
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of slots, full or empty; objects added while walking the slots go after them.
+     */
+    int slots() {
+        return this.slots;
+    }
+
+    /**
+     * @param slot a slot, less than slots().
+     * @return the object in it, or null if it is empty.
+     */
+    @SuppressWarnings("unchecked")
+    T inSlot(int slot) {
+        Handle handle = this.handles[slot];
+        return handle != null && handle.present ? (T) handle.item : null;
+    }
+
+    /**
+     * Returns the i-th object, squeezing out all empty slots first.
+     *
+     * @param i the position of the object among the objects in the list.
+     * @return the object.
+     */
+    T get(int i) {
+        if (this.size != this.slots) {
+            squeeze();
+        }
+        return inSlot(i);
+    }
+
+    /**
+     * Marks the start of a walk over the slots, during which the list is not compacted.
+     */
+    void beginWalk() {
+        this.walking++;
+    }
+
+    /**
+     * Marks the end of a walk over the slots.
+     */
+    void endWalk() {
+        this.walking--;
+    }
+
+    /**
+     * Squeezes out the empty slots, keeping the order, if they make up a quarter of the slots
+     * and the slots are not being walked.
+     */
+    void compact() {
+        if (this.walking == 0 && (this.slots - this.size) * 4 > this.slots) {
+            squeeze();
+        }
+    }
+
+    /**
+     * @return the objects, in order.
+     */
+    List<T> toList() {
+        List<T> list = new ArrayList<>(this.size);
+        for (int i = 0; i < this.slots; i++) {
+            T item = inSlot(i);
+            if (item != null) {
+                list.add(item);
+            }
+        }
+        return list;
+    }
+
+    private void squeeze() {
+        if (this.walking != 0) {
+            throw new IllegalStateException("The list can't be compacted while its slots are walked");
+        }
+        int to = 0;
+        for (int from = 0; from < this.slots; from++) {
+            Handle handle = this.handles[from];
+            if (handle == null) {
+                continue;
+            }
+            if (!handle.present) {
+                this.handleOf.remove(handle.item);
+                freeHandle(handle);
+                continue;
+            }
+            handle.slot = to;
+            this.handles[to++] = handle;
+        }
+        Arrays.fill(this.handles, to, this.slots, null);
+        this.slots = to;
+    }
+
+    private Handle newHandle(T item) {
+        Handle handle = this.freeHandles.isEmpty() ? new Handle() : this.freeHandles.remove(this.freeHandles.size() - 1);
+        handle.item = item;
+        return handle;
+    }
+
+    private void freeHandle(Handle handle) {
+        handle.item = null;
+        handle.present = false;
+        this.freeHandles.add(handle);
+    }
+}
@@ -1,18 +1,23 @@
 package game;
 
+import java.util.concurrent.atomic.LongAdder;
+
 /**
  * Counter is a simple class that is used for counting things.
+ * It is safe to change from several threads at once without locks: updates go to a LongAdder,
+ * which spreads contended updates over separate cells, and no update is lost.
+ * Reads add the cells up, so they are exact whenever no update is in progress.
  */
 public class Counter {
 
-    private int value;
+    private final LongAdder value;
 
     /**
      * Default constructor for Counter.
      * Initializes the counter to zero.
      */
     public Counter() {
-        this.value = 0;
+        this.value = new LongAdder();
     }
 
     /**
@@ -21,7 +26,8 @@ public class Counter {
      * @param counter the initial value for the counter
      */
     public Counter(int counter) {
-        this.value = counter;
+        this();
+        this.value.add(counter);
     }
 
     /**
@@ -30,7 +36,7 @@ public class Counter {
      * @param number the number to be added
      */
     void increase(int number) {
-        this.value = this.value + number;
+        this.value.add(number);
     }
 
     /**
@@ -39,7 +45,17 @@ public class Counter {
      * @param number the number to be subtracted
      */
     void decrease(int number) {
-        this.value = this.value - number;
+        this.value.add(-number);
+    }
+
+    /**
+     * Sets the count, as when a snapshot is restored. Not safe while other threads update it.
+     *
+     * @param number the new count
+     */
+    void set(int number) {
+        this.value.reset();
+        this.value.add(number);
     }
 
     /**
@@ -48,6 +64,17 @@ public class Counter {
      * @return the current count
      */
     int getValue() {
-        return this.value;
+        return (int) this.value.sum();
+    }
+
+    /**
+     * Returns the current count, for readers outside the game such as the renderer or a metrics
+     * exporter. It may be called from any thread; updates made concurrently may or may not be
+     * included, but every update that finished before the call is.
+     *
+     * @return the current count
+     */
+    public long snapshot() {
+        return this.value.sum();
     }
 }
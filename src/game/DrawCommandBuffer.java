@@ -0,0 +1,347 @@
+package game;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.util.Arrays;
+
+/**
+ * A DrawSurface that records what is drawn on it as compact commands, and later draws them on
+ * another surface with as few color changes as possible.
+ * The commands are kept in layers. Commands of different layers are drawn in the order they were
+ * recorded; within a layer, all fills are drawn before all outlines, and each kind of shape is
+ * drawn one color after another. So the sprites of a layer should not overlap each other; a new
+ * layer is started with nextLayer(), or by beginSprite() whenever the class of the sprite changes.
+ * Text and images always keep their place: each gets a layer of its own.
+ * A buffer can be recorded on one thread and flushed on another, but not both at once.
+ */
+public class DrawCommandBuffer implements DrawSurface {
+    // The kinds of command, in the order they are drawn within a layer
+    private static final int FILL_RECTANGLE = 0;
+    private static final int FILL_OVAL = 1;
+    private static final int FILL_CIRCLE = 2;
+    private static final int FILL_POLYGON = 3;
+    private static final int DRAW_RECTANGLE = 4;
+    private static final int DRAW_OVAL = 5;
+    private static final int DRAW_CIRCLE = 6;
+    private static final int DRAW_LINE = 7;
+    private static final int DRAW_POLYGON = 8;
+    private static final int TEXT = 9;
+    private static final int IMAGE = 10;
+    // The palette is started over once it holds this many colors
+    private static final int MAX_COLORS = 4096;
+
+    private int width;
+    private int height;
+    // One entry per command
+    private int[] kinds;
+    private int[] colors;
+    private int[] args;
+    private Object[] objects;
+    private int count;
+    // Where each layer starts; the last one ends at count
+    private int[] layerStarts;
+    private int layers;
+    private Class<?> lastSpriteClass;
+    // The colors used so far, by index; index 0 means no color was set
+    private Color[] palette;
+    private int paletteSize;
+    // Open-addressing table from RGB value to palette index, 0 for an empty slot
+    private int[] paletteTable;
+    private int color;
+    // Reused by flush() to sort the commands of a layer
+    private long[] keys;
+    private int colorChanges;
+
+    /**
+     * Constructs an empty buffer for a surface of the given size.
+     *
+     * @param width  the width reported by getWidth().
+     * @param height the height reported by getHeight().
+     */
+    public DrawCommandBuffer(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.kinds = new int[256];
+        this.colors = new int[256];
+        this.args = new int[256 * 4];
+        this.objects = new Object[256];
+        this.layerStarts = new int[16];
+        this.palette = new Color[16];
+        this.paletteTable = new int[2 * MAX_COLORS];
+        this.keys = new long[256];
+        clear();
+    }
+
+    /**
+     * Removes all commands, so the buffer can record the next frame.
+     */
+    public void clear() {
+        Arrays.fill(this.objects, 0, this.count, null);
+        this.count = 0;
+        this.layerStarts[0] = 0;
+        this.layers = 1;
+        this.lastSpriteClass = null;
+        this.color = 0;
+        if (this.paletteSize >= MAX_COLORS) {
+            Arrays.fill(this.palette, null);
+            this.paletteTable = new int[2 * MAX_COLORS];
+            this.paletteSize = 0;
+        }
+    }
+
+    /**
+     * Starts a new layer, so what is recorded next is drawn over everything recorded so far.
+     */
+    public void nextLayer() {
+        if (this.layerStarts[this.layers - 1] == this.count) {
+            return;
+        }
+        if (this.layers == this.layerStarts.length) {
+            this.layerStarts = Arrays.copyOf(this.layerStarts, this.layers * 2);
+        }
+        this.layerStarts[this.layers++] = this.count;
+    }
+
+    /**
+     * Starts a new layer if the sprite is of another class than the one before it, so that runs of
+     * sprites of one kind, like blocks or balls, are batched together.
+     *
+     * @param s the sprite about to be drawn on the buffer.
+     */
+    public void beginSprite(Sprite s) {
+        if (s.getClass() != this.lastSpriteClass) {
+            this.lastSpriteClass = s.getClass();
+            nextLayer();
+        }
+    }
+
+    /**
+     * @return the number of commands recorded.
+     */
+    public int size() {
+        return this.count;
+    }
+
+    /**
+     * @return the number of times the last flush() set the color of the surface.
+     */
+    public int getColorChanges() {
+        return this.colorChanges;
+    }
+
+    /**
+     * Draws the recorded commands on a surface, layer by layer. The commands stay in the buffer.
+     *
+     * @param d the surface to draw on.
+     */
+    public void flush(DrawSurface d) {
+        int current = -1;
+        int changes = 0;
+        for (int layer = 0; layer < this.layers; layer++) {
+            int from = this.layerStarts[layer];
+            int to = layer + 1 < this.layers ? this.layerStarts[layer + 1] : this.count;
+            if (to - from > 1) {
+                sortLayer(from, to);
+            }
+            for (int i = from; i < to; i++) {
+                int command = to - from > 1 ? (int) this.keys[i - from] : i;
+                int c = this.colors[command];
+                if (c != current && c != 0) {
+                    d.setColor(this.palette[c]);
+                    current = c;
+                    changes++;
+                }
+                draw(d, command);
+            }
+        }
+        this.colorChanges = changes;
+    }
+
+    private void sortLayer(int from, int to) {
+        if (this.keys.length < to - from) {
+            this.keys = new long[Math.max(to - from, this.keys.length * 2)];
+        }
+        // Kind, then color, then the order of recording, which is the command itself
+        for (int i = from; i < to; i++) {
+            this.keys[i - from] = (long) this.kinds[i] << 56 | (long) this.colors[i] << 32 | i;
+        }
+        Arrays.sort(this.keys, 0, to - from);
+    }
+
+    private void draw(DrawSurface d, int command) {
+        int a = command * 4;
+        int x = this.args[a];
+        int y = this.args[a + 1];
+        int w = this.args[a + 2];
+        int h = this.args[a + 3];
+        switch (this.kinds[command]) {
+            case FILL_RECTANGLE:
+                d.fillRectangle(x, y, w, h);
+                break;
+            case FILL_OVAL:
+                d.fillOval(x, y, w, h);
+                break;
+            case FILL_CIRCLE:
+                d.fillCircle(x, y, w);
+                break;
+            case FILL_POLYGON:
+                d.fillPolygon((Polygon) this.objects[command]);
+                break;
+            case DRAW_RECTANGLE:
+                d.drawRectangle(x, y, w, h);
+                break;
+            case DRAW_OVAL:
+                d.drawOval(x, y, w, h);
+                break;
+            case DRAW_CIRCLE:
+                d.drawCircle(x, y, w);
+                break;
+            case DRAW_LINE:
+                d.drawLine(x, y, w, h);
+                break;
+            case DRAW_POLYGON:
+                d.drawPolygon((Polygon) this.objects[command]);
+                break;
+            case TEXT:
+                d.drawText(x, y, (String) this.objects[command], w);
+                break;
+            default:
+                d.drawImage(x, y, (Image) this.objects[command]);
+                break;
+        }
+    }
+
+    private void add(int kind, int x, int y, int w, int h, Object object) {
+        if (this.count == this.kinds.length) {
+            int length = this.count * 2;
+            this.kinds = Arrays.copyOf(this.kinds, length);
+            this.colors = Arrays.copyOf(this.colors, length);
+            this.args = Arrays.copyOf(this.args, length * 4);
+            this.objects = Arrays.copyOf(this.objects, length);
+        }
+        int i = this.count++;
+        this.kinds[i] = kind;
+        this.colors[i] = this.color;
+        this.args[i * 4] = x;
+        this.args[i * 4 + 1] = y;
+        this.args[i * 4 + 2] = w;
+        this.args[i * 4 + 3] = h;
+        this.objects[i] = object;
+    }
+
+    private void addAlone(int kind, int x, int y, int w, Object object) {
+        nextLayer();
+        add(kind, x, y, w, 0, object);
+        nextLayer();
+    }
+
+    @Override
+    public int getWidth() {
+        return this.width;
+    }
+
+    @Override
+    public int getHeight() {
+        return this.height;
+    }
+
+    @Override
+    public void setColor(Color c) {
+        if (c == null) {
+            this.color = 0;
+            return;
+        }
+        // Colors with the same RGB value share an index, so they are batched together
+        int rgb = c.getRGB();
+        int mask = this.paletteTable.length - 1;
+        int slot = (rgb * 0x9E3779B9 >>> 16) & mask;
+        while (this.paletteTable[slot] != 0) {
+            int index = this.paletteTable[slot];
+            if (this.palette[index].getRGB() == rgb) {
+                this.color = index;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        int index = ++this.paletteSize;
+        if (index == this.palette.length) {
+            this.palette = Arrays.copyOf(this.palette, index * 2);
+        }
+        this.palette[index] = c;
+        this.paletteTable[slot] = index;
+        this.color = index;
+        if (index * 2 > this.paletteTable.length) {
+            growPaletteTable();
+        }
+    }
+
+    private void growPaletteTable() {
+        this.paletteTable = new int[this.paletteTable.length * 2];
+        int mask = this.paletteTable.length - 1;
+        for (int index = 1; index <= this.paletteSize; index++) {
+            int slot = (this.palette[index].getRGB() * 0x9E3779B9 >>> 16) & mask;
+            while (this.paletteTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            this.paletteTable[slot] = index;
+        }
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        add(DRAW_LINE, x1, y1, x2, y2, null);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        add(DRAW_OVAL, x, y, width, height, null);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        add(FILL_OVAL, x, y, width, height, null);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        add(DRAW_RECTANGLE, x, y, width, height, null);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        add(FILL_RECTANGLE, x, y, width, height, null);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image img) {
+        addAlone(IMAGE, x, y, 0, img);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        add(DRAW_CIRCLE, x, y, r, 0, null);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        add(FILL_CIRCLE, x, y, r, 0, null);
+    }
+
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        addAlone(TEXT, x, y, fontSize, text);
+    }
+
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        add(DRAW_POLYGON, 0, 0, 0, 0, polygon);
+    }
+
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        add(FILL_POLYGON, 0, 0, 0, 0, polygon);
+    }
+}
@@ -0,0 +1,100 @@
+package game;
+
+/**
+ * Timings of the frames of the game loop, for monitoring.
+ * Holds the update, render and sleep time of the last frame, and totals since the loop started.
+ */
+public class FrameTimings {
+    private long lastUpdateNanos;
+    private long lastRenderNanos;
+    private long lastSleepNanos;
+    private int lastTicks;
+    private long frames;
+    private long ticks;
+    private long totalUpdateNanos;
+    private long totalRenderNanos;
+    private long totalSleepNanos;
+
+    /**
+     * Records a finished frame.
+     *
+     * @param updateNanos the time spent stepping the physics
+     * @param renderNanos the time spent drawing
+     * @param sleepNanos  the time spent sleeping until the next frame
+     * @param frameTicks  the number of physics ticks that ran in the frame
+     */
+    void record(long updateNanos, long renderNanos, long sleepNanos, int frameTicks) {
+        this.lastUpdateNanos = updateNanos;
+        this.lastRenderNanos = renderNanos;
+        this.lastSleepNanos = sleepNanos;
+        this.lastTicks = frameTicks;
+        this.frames++;
+        this.ticks += frameTicks;
+        this.totalUpdateNanos += updateNanos;
+        this.totalRenderNanos += renderNanos;
+        this.totalSleepNanos += sleepNanos;
+    }
+
+    /**
+     * @return the time the last frame spent stepping the physics, in nanoseconds
+     */
+    public long getLastUpdateNanos() {
+        return this.lastUpdateNanos;
+    }
+
+    /**
+     * @return the time the last frame spent drawing, in nanoseconds
+     */
+    public long getLastRenderNanos() {
+        return this.lastRenderNanos;
+    }
+
+    /**
+     * @return the time the last frame spent sleeping, in nanoseconds
+     */
+    public long getLastSleepNanos() {
+        return this.lastSleepNanos;
+    }
+
+    /**
+     * @return the number of physics ticks in the last frame
+     */
+    public int getLastTicks() {
+        return this.lastTicks;
+    }
+
+    /**
+     * @return the number of frames recorded
+     */
+    public long getFrames() {
+        return this.frames;
+    }
+
+    /**
+     * @return the number of physics ticks recorded
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * @return the total time spent stepping the physics, in nanoseconds
+     */
+    public long getTotalUpdateNanos() {
+        return this.totalUpdateNanos;
+    }
+
+    /**
+     * @return the total time spent drawing, in nanoseconds
+     */
+    public long getTotalRenderNanos() {
+        return this.totalRenderNanos;
+    }
+
+    /**
+     * @return the total time spent sleeping, in nanoseconds
+     */
+    public long getTotalSleepNanos() {
+        return this.totalSleepNanos;
+    }
+}
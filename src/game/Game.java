@@ -3,37 +3,190 @@ package game;
 import biuoop.DrawSurface;
 import biuoop.GUI;
 import biuoop.KeyboardSensor;
-import biuoop.Sleeper;
 import shapes.Point;
 import shapes.Rectangle;
 
 import java.awt.Color;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
  * Represents the main game class.
  */
 public class Game {
+    /**
+     * Render mode: every sprite draws straight on the window's surface.
+     */
+    public static final int RENDER_DIRECT = 0;
+    /**
+     * Render mode: sprites are recorded on a DrawCommandBuffer, which is drawn, batched by color,
+     * and shown on a render thread while the game steps the next ticks.
+     */
+    public static final int RENDER_THREAD = 1;
+    /**
+     * Physics mode: every ball looks for hits along its path every tick.
+     */
+    public static final int PHYSICS_TICK = 0;
+    /**
+     * Physics mode: the times of the balls' next impacts are predicted and kept in a priority
+     * queue, and a ball only looks for hits in the ticks around its next impact (see ImpactQueue).
+     */
+    public static final int PHYSICS_EVENT = 1;
+    private static final long NANOS_PER_SECOND = 1000000000L;
+    // Longest frame time the loop catches up on, so a stall doesn't cause a burst of ticks
+    private static final long MAX_FRAME_NANOS = NANOS_PER_SECOND / 4;
+    // The counters, the version of the environment and the finished flag at the start of a snapshot
+    private static final int SNAPSHOT_HEADER_BYTES = 4 * Integer.BYTES + 1;
     private SpriteCollection sprites;
+    private StaticLayer staticLayer;
     private GameEnvironment gameEnvironment;
+    private HitEventBus hitEventBus;
     private GUI gui;
-    private biuoop.Sleeper sleeper;
+    private KeyboardSensor keyboard;
+    // Set when the keyboard only changes between ticks and has to be told when one starts
+    private LatchingKeyboard latchingKeyboard;
+    // Set when the keyboard is also told the time of the tick, and reports when its input happened
+    private InputSource inputSource;
+    // When the first input not yet shown by a frame, and that of the frame on the render thread, happened
+    private long unshownInputNanos;
+    private long inFlightInputNanos;
+    private SessionRecorder recorder;
+    private long seed;
+    private boolean initialized;
+    private int ticksPerSecond;
+    private int framesPerSecond;
+    private FrameTimings frameTimings;
+    private TickProfiler profiler;
+    private int renderMode;
+    // Recorded in turn, so one can be drawn by the render thread while the other is recorded
+    private DrawCommandBuffer[] drawBuffers;
+    private int frames;
+    private RenderThread renderThread;
     private Counter remainingBlocks;
     private Counter remainingBalls;
     private Counter score;
+    // The counters as of the end of the last tick, published for other threads. The sequence is
+    // odd while they are being written, so a reader can tell it saw all three from one tick
+    private volatile long scoreboardSequence;
+    private volatile long publishedScore;
+    private volatile long publishedBlocks;
+    private volatile long publishedBalls;
+    private boolean finished;
+    private Paddle paddle;
+    // The blocks of the level, in the order of the level definition
+    private List<Block> levelBlocks;
+    private BallPool ballPool;
+    // Balls removed in the current tick, pooled once its hits were delivered
+    private List<Ball> removedBalls;
+    // Every sprite, static sprite and collidable ever added, so snapshots can record which are in the game
+    private Roster<Sprite> spriteRoster;
+    private Roster<Sprite> staticRoster;
+    private Roster<Collidable> collidableRoster;
+    // Every color a ball had in a snapshot, so the snapshot can refer to it by number
+    private Roster<Color> colorRoster;
+    // The slots of the sprites in the order they are stepped, or null after a sprite was added or removed
+    private int[] spriteOrder;
+    // False once a collidable was added again after being removed, so the slots no longer give the order
+    private boolean collidablesInSlotOrder;
+    // The listeners of the blocks as of the last snapshot or restore, still right while the bus
+    // counts no listener change and every block is on the bus
+    private HitListener[][] listenerTable;
+    private int listenerTableChanges;
+    private boolean blocksOnBus;
+    // The snapshots that may still be restored, held weakly; while there are none, the collision
+    // index needn't remember where removed blocks were
+    private final Set<Reference<WorldSnapshot>> liveSnapshots;
+    private final ReferenceQueue<WorldSnapshot> collectedSnapshots;
 
     /**
-     * Constructs a Game instance.
+     * Constructs a Game instance, with the paddle driven by the arrow keys.
      */
     public Game() {
+        this(new GUI("Game", 800, 600), null);
+    }
+
+    /**
+     * Constructs a Game instance that draws to the given GUI.
+     *
+     * @param gui      the window to draw the game on.
+     * @param keyboard what drives the paddle, or null for the key events of the window.
+     */
+    private Game(GUI gui, KeyboardSensor keyboard) {
+        this(keyboard == null ? new KeyboardInput() : keyboard);
+        this.gui = gui;
+    }
+
+    /**
+     * Creates a game that draws to a window, with the paddle driven by the given input instead of
+     * the keyboard.
+     *
+     * @param keyboard what drives the paddle, such as an InputSource.
+     * @return the new game.
+     */
+    public static Game windowed(KeyboardSensor keyboard) {
+        return new Game(new GUI("Game", 800, 600), keyboard);
+    }
+
+    /**
+     * Constructs a headless Game instance with no window.
+     * The world is stepped with step() or runHeadless() instead of run().
+     *
+     * @param keyboard the keyboard sensor that drives the paddle.
+     */
+    public Game(KeyboardSensor keyboard) {
         this.sprites = new SpriteCollection();
+        this.staticLayer = new StaticLayer(800, 600, this::drawBackground);
         this.gameEnvironment = new GameEnvironment();
-        this.gui = new GUI("Game", 800, 600);
-        this.sleeper = new Sleeper();
+        this.hitEventBus = new HitEventBus();
+        this.keyboard = keyboard;
+        if (keyboard instanceof LatchingKeyboard) {
+            this.latchingKeyboard = (LatchingKeyboard) keyboard;
+        }
+        if (keyboard instanceof InputSource) {
+            this.inputSource = (InputSource) keyboard;
+        }
+        this.unshownInputNanos = InputSource.NO_EVENT;
+        this.inFlightInputNanos = InputSource.NO_EVENT;
+        this.seed = new Random().nextLong();
         this.remainingBlocks = new Counter();
         this.remainingBalls = new Counter();
         this.score = new Counter();
+        this.ticksPerSecond = 60;
+        this.framesPerSecond = 60;
+        this.frameTimings = new FrameTimings();
+        this.profiler = new TickProfiler(this.gameEnvironment, this.hitEventBus);
+        this.ballPool = new BallPool();
+        this.removedBalls = new ArrayList<>();
+        this.spriteRoster = new Roster<>();
+        this.staticRoster = new Roster<>();
+        this.collidableRoster = new Roster<>();
+        this.colorRoster = new Roster<>();
+        this.collidablesInSlotOrder = true;
+        this.blocksOnBus = true;
+        this.liveSnapshots = new HashSet<>();
+        this.collectedSnapshots = new ReferenceQueue<>();
+    }
+
+    /**
+     * Creates a headless game whose paddle is driven by a VirtualKeyboard.
+     *
+     * @return the new headless game.
+     */
+    public static Game headless() {
+        return new Game(new VirtualKeyboard());
     }
 
 
@@ -43,9 +196,38 @@ public class Game {
      * @param c The collidable object to add.
      */
     public void addCollidable(Collidable c) {
+        rosterCollidable(c);
         this.gameEnvironment.addCollidable(c);
     }
 
+    private void rosterCollidable(Collidable c) {
+        if (this.collidableRoster.slotOf(c) != -1) {
+            this.collidablesInSlotOrder = false;
+        }
+        if (c instanceof Block && ((Block) c).getHitEventBus() != this.hitEventBus) {
+            this.blocksOnBus = false;
+        }
+        this.collidableRoster.add(c);
+    }
+
+
+    /**
+     * Returns the environment of the collidables, which balls are created with.
+     *
+     * @return the game environment.
+     */
+    public GameEnvironment getGameEnvironment() {
+        return this.gameEnvironment;
+    }
+
+    /**
+     * Returns the bus that delivers the hits of a tick to the hit listeners at the end of the tick.
+     *
+     * @return the hit event bus.
+     */
+    public HitEventBus getHitEventBus() {
+        return this.hitEventBus;
+    }
 
     /**
      * Adds a sprite object to the game.
@@ -54,79 +236,268 @@ public class Game {
      */
     public void addSprite(Sprite s) {
         this.sprites.addSprite(s);
+        this.spriteRoster.add(s);
+        this.spriteOrder = null;
+    }
+
+    /**
+     * Adds a sprite that never changes on its own, like a block.
+     * It is drawn once into the cached static layer and is not stepped.
+     *
+     * @param s The sprite object to add.
+     */
+    public void addStaticSprite(Sprite s) {
+        this.staticLayer.addSprite(s);
+        this.staticRoster.add(s);
+    }
+
+    /**
+     * Sets the seed of the random choices made by initialize(), like the directions of the balls.
+     * By default every game gets a different seed.
+     *
+     * @param seed the seed.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @return the seed of the random choices made by initialize().
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * Records this session: the seed and the keys pressed in every tick are written to the given
+     * stream, so SessionReplayer can play the session again. Must be called before initialize().
+     * The recording ends when the game ends, or on stopRecording().
+     *
+     * @param out where to write the log.
+     * @throws IOException if the log can't be written.
+     */
+    public void recordTo(OutputStream out) throws IOException {
+        if (this.initialized) {
+            throw new IllegalStateException("A session must be recorded from before initialize()");
+        }
+        if (this.recorder != null) {
+            throw new IllegalStateException("The session is already being recorded");
+        }
+        this.recorder = new SessionRecorder(this.keyboard, this.seed, out);
+        this.keyboard = this.recorder;
+        this.latchingKeyboard = this.recorder;
+        this.inputSource = this.recorder;
+    }
+
+    /**
+     * Ends the recording started by recordTo(), writing the state hash of the game to the log.
+     * Does nothing if the session is not being recorded.
+     */
+    public void stopRecording() {
+        if (this.recorder == null) {
+            return;
+        }
+        try {
+            this.recorder.close(stateHash());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns a hash of the state of the world: the positions and velocities of the balls,
+     * the position of the paddle, the score and the counters.
+     * Two runs from the same seed and input have the same hash after the same number of ticks,
+     * so replays and physics changes can be checked by comparing it.
+     *
+     * @return the state hash.
+     */
+    public long stateHash() {
+        long hash = StateHash.SEED;
+        hash = StateHash.mix(hash, this.score.getValue());
+        hash = StateHash.mix(hash, this.remainingBlocks.getValue());
+        hash = StateHash.mix(hash, this.remainingBalls.getValue());
+        hash = StateHash.mix(hash, this.gameEnvironment.getVersion());
+        return this.sprites.hashState(hash);
     }
 
     /**
      * Initializes the game by setting up the environment, creating objects, and adding them to the game.
      */
     public void initialize() {
+        initialize(LevelDefinition.standard());
+    }
+
+    /**
+     * Initializes the game with the given level. The blocks are created and added in bulk, and the
+     * directions of balls with a random angle are drawn from the seed.
+     *
+     * @param level the level to build.
+     */
+    public void initialize(LevelDefinition level) {
+        this.initialized = true;
+        List<Color> palette = level.getPalette();
+
         // Create Paddle
-        KeyboardSensor keyboard = gui.getKeyboardSensor();
-        Paddle paddle = new Paddle(keyboard, new Rectangle(new Point(350, 590), 100, 10), 5);
-        paddle.addToGame(this);
-
-
-        // Create the borders
-        Block borderTop = new Block(new Rectangle(new Point(0, 0), 800, 0));
-        Block borderBottom = new Block(new Rectangle(new Point(0, 600), 800, 0));
-        Block borderLeft = new Block(new Rectangle(new Point(0, 0), 0, 600));
-        Block borderRight = new Block(new Rectangle(new Point(800, 0), 0, 600));
-
-
-        // Add the borders to the game
-        Block[] borders = {borderRight, borderBottom, borderTop, borderLeft};
-        for (Block b :borders) {
-            b.addToGame(this);
-        }
-        BallRemover bl = new BallRemover(this, this.remainingBalls);
-        borderBottom.addHitListener(bl);
-
-
-        Random rand = new Random();
-        Ball ball1 = new Ball(700, 10, 5, Color.DARK_GRAY);
-        Ball ball2 = new Ball(700, 10, 5, Color.BLUE);
-        Ball ball3 = new Ball(700, 10, 5, Color.YELLOW);
-        Ball[] balls = {ball1, ball2, ball3};
-        for (Ball ball:balls) {
-            int angle = rand.nextInt(360);
-            ball.setVelocity(Velocity.fromAngleAndSpeed(angle, 3));
-            ball.setGameEnvironment(this.gameEnvironment);
-            ball.addToGame(this);
-            this.remainingBalls.increase(1);
-        }
-
-
-
-        // Generate block
-        Color color1 = Color.YELLOW;
-        Color color2 = Color.PINK;
-        Color color3 = Color.ORANGE;
-        Color color4 = Color.GRAY;
-        Color color5 = Color.GREEN;
-        Color color6 = Color.RED;
-        int blockWidth = 50;
-        int blockHeight = 20;
-        int k = 7;
-        Color[] colors = {color1, color2, color3, color4, color5, color6};
-        for (int j = 0; j < 7; j++) {
-            Color rowColor = colors[j % colors.length];
-            for (int i = 1; i <= k && k <= 12; i++) {
-                Block block = new Block(new Rectangle(new Point(800 - (i * blockWidth),
-                        150 - (j * blockHeight)), blockWidth, blockHeight), rowColor);
-                block.addToGame(this);
-
-                // Add BlockRemover as a listener
-                BlockRemover blockRemover = new BlockRemover(this, this.remainingBlocks);
+        if (level.hasPaddle()) {
+            this.paddle = new Paddle(this.keyboard, new Rectangle(new Point(level.getPaddleX(),
+                    level.getPaddleY()), level.getPaddleWidth(), level.getPaddleHeight()), level.getPaddleSpeed());
+            this.paddle.addToGame(this);
+        }
+
+        // Create the blocks, the borders included. The listeners keep no state of their own,
+        // so one of each serves all blocks.
+        BlockRemover blockRemover = new BlockRemover(this, this.remainingBlocks);
+        ScoreTrackingListener scoreTrackingListener = new ScoreTrackingListener(this.score);
+        BallRemover ballRemover = new BallRemover(this, this.remainingBalls);
+        List<Block> blocks = new ArrayList<>(level.getBlockCount());
+        for (int i = 0; i < level.getBlockCount(); i++) {
+            int color = level.getBlockColor(i);
+            Block block = new Block(new Rectangle(new Point(level.getBlockX(i), level.getBlockY(i)),
+                    level.getBlockWidth(i), level.getBlockHeight(i)),
+                    color == LevelDefinition.NO_COLOR ? null : palette.get(color));
+            int flags = level.getBlockFlags(i);
+            if ((flags & LevelDefinition.REMOVABLE) != 0) {
                 block.addHitListener(blockRemover);
-                ScoreTrackingListener scoreTrackingListener = new ScoreTrackingListener(this.score);
-                block.addHitListener(scoreTrackingListener);
                 this.remainingBlocks.increase(1);
             }
-            k++;
+            if ((flags & LevelDefinition.SCORES) != 0) {
+                block.addHitListener(scoreTrackingListener);
+            }
+            if ((flags & LevelDefinition.REMOVES_BALLS) != 0) {
+                block.addHitListener(ballRemover);
+            }
+            blocks.add(block);
+        }
+        addBlocks(blocks);
+        this.levelBlocks = blocks;
+
+        // Create the balls
+        Random rand = new Random(this.seed);
+        Velocity velocity = new Velocity(0, 0);
+        for (int i = 0; i < level.getBallCount(); i++) {
+            double angle = level.getBallAngle(i);
+            if (Double.isNaN(angle)) {
+                angle = rand.nextInt(360);
+            }
+            velocity.setFromAngleAndSpeed(angle, level.getBallSpeed(i));
+            spawnBall(level.getBallX(i), level.getBallY(i), level.getBallRadius(i),
+                    palette.get(level.getBallColor(i)), velocity);
         }
+
         // Create the ScoreIndicator
         ScoreIndicator scoreIndicator = new ScoreIndicator(this.score);
         scoreIndicator.addToGame(this);
+        publishScoreboard();
+    }
+
+    /**
+     * Draws the directions of the level's balls with a random angle from the seed again, the way
+     * initialize() does, for a game restored to a snapshot taken right after initialize() and then
+     * given another seed. The balls are found in the order they were added; nothing else changes.
+     *
+     * @param level the level the game was initialized with.
+     */
+    void redrawBallDirections(LevelDefinition level) {
+        Random rand = new Random(this.seed);
+        Velocity velocity = new Velocity(0, 0);
+        int i = 0;
+        for (int k = 0; k < this.sprites.size() && i < level.getBallCount(); k++) {
+            Sprite s = this.sprites.get(k);
+            if (s instanceof Ball) {
+                double angle = level.getBallAngle(i);
+                if (Double.isNaN(angle)) {
+                    velocity.setFromAngleAndSpeed(rand.nextInt(360), level.getBallSpeed(i));
+                    ((Ball) s).setVelocity(velocity);
+                }
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Adds a ball to the game and counts it among the remaining balls. The ball is taken from the
+     * pool of removed balls if there is one, so spawning balls during play allocates nothing.
+     *
+     * @param x        the x-coordinate of the center.
+     * @param y        the y-coordinate of the center.
+     * @param r        the radius.
+     * @param color    the color.
+     * @param velocity the velocity, copied.
+     * @return the ball.
+     */
+    public Ball spawnBall(double x, double y, int r, Color color, Velocity velocity) {
+        Ball ball = this.ballPool.take(x, y, r, color);
+        ball.setVelocity(velocity);
+        ball.setGameEnvironment(this.gameEnvironment);
+        ball.addToGame(this);
+        this.remainingBalls.increase(1);
+        return ball;
+    }
+
+    /**
+     * Counts balls that join the game other than through spawnBall() or the level, as the balls
+     * of a BallSystem do, so the game is only over once they are gone too.
+     *
+     * @param n the number of balls.
+     */
+    void countBalls(int n) {
+        this.remainingBalls.increase(n);
+    }
+
+    /**
+     * Fills the pool spawnBall() takes from up to the given number of balls, so that many balls
+     * can be spawned before the first one is removed without allocating.
+     *
+     * @param count the number of balls.
+     */
+    public void reserveBalls(int count) {
+        this.sprites.reserve(count);
+        while (this.ballPool.size() < count) {
+            Ball ball = new Ball(0, 0, 1, null);
+            // Give it a slot now rather than when it is first spawned
+            this.spriteRoster.register(ball);
+            this.ballPool.give(ball);
+        }
+    }
+
+    /**
+     * Removes a ball from the game and returns it to the pool spawnBall() takes from, once the
+     * hits of the current tick were delivered, so later hits of the tick still see the same ball.
+     * The ball must not be used after that. The count of remaining balls is left to the caller.
+     *
+     * @param ball the ball.
+     * @return false, doing nothing, if the ball was not in the game, as when it is hit twice in a tick.
+     */
+    public boolean recycleBall(Ball ball) {
+        if (!this.spriteRoster.contains(ball)) {
+            return false;
+        }
+        ball.removeFromGame(this);
+        this.removedBalls.add(ball);
+        return true;
+    }
+
+    private void poolRemovedBalls() {
+        for (int i = 0; i < this.removedBalls.size(); i++) {
+            this.ballPool.give(this.removedBalls.get(i));
+        }
+        this.removedBalls.clear();
+    }
+
+    /**
+     * Adds many blocks at once, as static sprites and collidables, in order.
+     *
+     * @param blocks the blocks to add.
+     */
+    public void addBlocks(List<Block> blocks) {
+        for (Block block : blocks) {
+            block.setHitEventBus(this.hitEventBus);
+            this.staticRoster.add(block);
+            rosterCollidable(block);
+        }
+        this.staticLayer.addSprites(blocks);
+        this.gameEnvironment.addCollidables(blocks);
     }
 
     /**
@@ -139,35 +510,371 @@ public class Game {
         d.fillRectangle(0, 0, d.getWidth(), d.getHeight()); // Fill the background
     }
 
+    /**
+     * Sets the rate at which the physics is stepped. Defaults to 60.
+     *
+     * @param ticksPerSecond the number of physics ticks per second.
+     */
+    public void setTicksPerSecond(int ticksPerSecond) {
+        this.ticksPerSecond = ticksPerSecond;
+    }
+
+    /**
+     * Sets the rate at which frames are drawn. Defaults to 60.
+     *
+     * @param framesPerSecond the number of frames per second.
+     */
+    public void setFramesPerSecond(int framesPerSecond) {
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    /**
+     * Replaces the index that answers the collision queries, for example with a
+     * BoundingVolumeHierarchy for levels whose blocks are bunched together.
+     *
+     * @param index the new, empty index.
+     */
+    public void setCollisionIndex(CollidableIndex index) {
+        this.gameEnvironment.setIndex(index);
+    }
+
+    /**
+     * Enables or disables planning the balls' steps on several cores.
+     * Hits are still applied serially in a fixed order, so runs stay reproducible.
+     *
+     * @param parallel true to step the balls in parallel.
+     */
+    public void setParallelStepping(boolean parallel) {
+        this.sprites.setParallel(parallel);
+    }
+
+    /**
+     * Sets how the balls find what they hit: PHYSICS_TICK (the default) or PHYSICS_EVENT.
+     * Both modes move the balls the same way and deliver the same hits; the event mode makes far
+     * fewer collision queries when the balls have long paths between hits.
+     *
+     * @param mode the physics mode.
+     */
+    public void setPhysicsMode(int mode) {
+        if (mode != PHYSICS_TICK && mode != PHYSICS_EVENT) {
+            throw new IllegalArgumentException("Unknown physics mode " + mode);
+        }
+        boolean event = this.gameEnvironment.getImpactQueue() != null;
+        if (event != (mode == PHYSICS_EVENT)) {
+            this.gameEnvironment.setImpactQueue(mode == PHYSICS_EVENT ? new ImpactQueue(this.gameEnvironment) : null);
+        }
+    }
+
+    /**
+     * Sets how run() draws the frames: RENDER_DIRECT (the default) or RENDER_THREAD.
+     * The render thread draws the sprites of one class by primitive and color rather than one
+     * sprite after another, so it assumes such sprites don't overlap; the blocks of the cached
+     * static layer are then batched too. Batching alone is no mode of its own: on the game thread
+     * it saves only a color change per frame on the default level.
+     *
+     * @param mode the render mode.
+     */
+    public void setRenderMode(int mode) {
+        if (mode != RENDER_DIRECT && mode != RENDER_THREAD) {
+            throw new IllegalArgumentException("Unknown render mode " + mode);
+        }
+        this.renderMode = mode;
+        this.staticLayer.setBatched(mode != RENDER_DIRECT);
+        if (mode != RENDER_DIRECT && this.drawBuffers == null) {
+            this.drawBuffers = new DrawCommandBuffer[] {
+                new DrawCommandBuffer(800, 600), new DrawCommandBuffer(800, 600)
+            };
+        }
+    }
+
+    /**
+     * @return the sprites that are stepped and drawn every frame.
+     */
+    SpriteCollection getSprites() {
+        return this.sprites;
+    }
+
+    /**
+     * Draws the world on a surface, the moving sprites interpolated between their last two ticks.
+     *
+     * @param d     the surface.
+     * @param alpha How far to go from the previous position to the current one, between 0 and 1.
+     */
+    void drawFrame(DrawSurface d, double alpha) {
+        this.staticLayer.drawOn(d);
+        this.sprites.drawAllOn(d, alpha);
+    }
+
+    /**
+     * Records the world on the next of the two command buffers, the moving sprites interpolated
+     * between their last two ticks. Needs a render mode other than RENDER_DIRECT.
+     *
+     * @param alpha How far to go from the previous position to the current one, between 0 and 1.
+     * @return the buffer, which stays valid until the next frame but one is recorded.
+     */
+    DrawCommandBuffer recordFrame(double alpha) {
+        DrawCommandBuffer buffer = this.drawBuffers[this.frames++ & 1];
+        buffer.clear();
+        this.staticLayer.drawOn(buffer);
+        this.sprites.recordAllOn(buffer, alpha);
+        return buffer;
+    }
+
+    /**
+     * @return the timings of the frames drawn by run().
+     */
+    public FrameTimings getFrameTimings() {
+        return this.frameTimings;
+    }
+
+    /**
+     * @return the profiler that measures the ticks and frames of the game.
+     */
+    public TickProfiler getProfiler() {
+        return this.profiler;
+    }
+
+    /**
+     * Shows the measurements of the profiler on top of the game. Call it after initialize(),
+     * so the overlay is drawn over the other sprites.
+     */
+    public void showProfilerOverlay() {
+        addSprite(new ProfilerOverlay(this.profiler));
+    }
+
     /**
      * Runs the game's animation loop.
+     * The physics is stepped at a fixed rate from a time accumulator, independent of the frame rate,
+     * and moving sprites are drawn interpolated between their last two ticks.
      */
     public void run() {
-        int framesPerSecond = 60;
-        int millisecondsPerFrame = 1000 / framesPerSecond;
+        if (this.gui == null) {
+            throw new IllegalStateException("A headless game has no window to run in, use runHeadless()");
+        }
+        long nanosPerTick = NANOS_PER_SECOND / this.ticksPerSecond;
+        long nanosPerFrame = NANOS_PER_SECOND / this.framesPerSecond;
+        long accumulator = 0;
+        long previousFrameStart = System.nanoTime();
 
         while (true) {
-            if (this.remainingBlocks.getValue() == 0 || this.remainingBalls.getValue() == 0) {
-                this.score.increase(100);
+            if (isOver()) {
+                finish();
+                if (this.renderThread != null) {
+                    this.renderThread.close();
+                    this.renderThread = null;
+                }
+                if (this.inputSource != null) {
+                    this.inputSource.close();
+                }
                 gui.close();
                 return;
             }
-            long startTime = System.currentTimeMillis(); // timing
-            DrawSurface d = gui.getDrawSurface();
-            drawBackground(d);
+            long frameStart = System.nanoTime();
+            accumulator += Math.min(frameStart - previousFrameStart, MAX_FRAME_NANOS);
+            previousFrameStart = frameStart;
+
+            // Step the physics for every whole tick that has accumulated. Each tick takes the input
+            // up to the time its end stands for, so input that came in between ticks goes to the
+            // tick it fell in even when several are caught up on.
+            int ticks = 0;
+            while (accumulator >= nanosPerTick && !isOver()) {
+                step(frameStart - accumulator + nanosPerTick);
+                accumulator -= nanosPerTick;
+                ticks++;
+            }
+            long updateEnd = System.nanoTime();
+
+            double alpha = (double) accumulator / nanosPerTick;
+            if (this.renderMode == RENDER_THREAD) {
+                // Only the recording is timed here, the drawing happens while the next ticks run
+                if (this.renderThread == null) {
+                    this.renderThread = new RenderThread(this.gui::getDrawSurface, this.gui::show);
+                }
+                DrawCommandBuffer frame = recordFrame(alpha);
+                this.renderThread.awaitIdle();
+                if (this.inFlightInputNanos != InputSource.NO_EVENT) {
+                    this.profiler.recordInputShown(this.renderThread.getShownNanos() - this.inFlightInputNanos);
+                }
+                this.inFlightInputNanos = this.unshownInputNanos;
+                this.unshownInputNanos = InputSource.NO_EVENT;
+                this.renderThread.submit(frame);
+            } else {
+                DrawSurface d = gui.getDrawSurface();
+                drawFrame(d, alpha);
+                this.gui.show(d);
+            }
+            long renderEnd = System.nanoTime();
+            if (this.unshownInputNanos != InputSource.NO_EVENT && this.renderMode != RENDER_THREAD) {
+                this.profiler.recordInputShown(renderEnd - this.unshownInputNanos);
+                this.unshownInputNanos = InputSource.NO_EVENT;
+            }
+
+            long sleepNanos = nanosPerFrame - (renderEnd - frameStart);
+            if (sleepNanos > 0) {
+                LockSupport.parkNanos(sleepNanos);
+            }
+            this.frameTimings.record(updateEnd - frameStart, renderEnd - updateEnd,
+                    System.nanoTime() - renderEnd, ticks);
+            this.profiler.recordFrame(renderEnd - updateEnd, renderEnd - frameStart);
+        }
+    }
+
+    /**
+     * Advances the world by a single tick, without drawing anything, with the input up to now.
+     * The hits of the tick are delivered to the hit listeners after all sprites moved.
+     */
+    public void step() {
+        step(this.inputSource == null ? 0 : System.nanoTime());
+    }
+
+    /**
+     * Advances the world by a single tick, without drawing anything, with the input an
+     * InputSource has up to the given time. Other keyboards are read as they are.
+     * The hits of the tick are delivered to the hit listeners after all sprites moved.
+     *
+     * @param inputNanos the time the tick stands for, on the System.nanoTime() clock.
+     */
+    public void step(long inputNanos) {
+        this.profiler.beginTick();
+        if (!this.liveSnapshots.isEmpty()) {
+            releaseCollectedSnapshots();
+        }
+        this.gameEnvironment.refit();
+        ImpactQueue impacts = this.gameEnvironment.getImpactQueue();
+        if (impacts != null) {
+            impacts.beginTick();
+        }
+        if (this.inputSource != null) {
+            this.inputSource.latch(inputNanos);
+            long event = this.inputSource.getLatchedEventNanos();
+            if (event != InputSource.NO_EVENT) {
+                this.profiler.recordInput(System.nanoTime() - event);
+                if (this.unshownInputNanos == InputSource.NO_EVENT) {
+                    this.unshownInputNanos = event;
+                }
+            }
+        } else if (this.latchingKeyboard != null) {
+            this.latchingKeyboard.latch();
+        }
+        this.sprites.notifyAllTimePassed();
+        this.profiler.endSprites();
+        this.hitEventBus.dispatch();
+        poolRemovedBalls();
+        // Removals only empty their places; they are squeezed out here, once enough pile up
+        this.sprites.compact();
+        this.gameEnvironment.compact();
+        publishScoreboard();
+        this.profiler.endTick();
+    }
+
+    /**
+     * Steps the world as fast as possible until the game is over or the tick limit is reached.
+     * When the game ends the score gets the same bonus run() gives.
+     *
+     * @param maxTicks the maximum number of ticks to run.
+     * @return the number of ticks that were run.
+     */
+    public long runHeadless(long maxTicks) {
+        long ticks = 0;
+        while (ticks < maxTicks && !isOver()) {
+            step();
+            ticks++;
+        }
+        if (isOver()) {
+            finish();
+        }
+        return ticks;
+    }
+
+    /**
+     * Checks whether the game has ended, either because all blocks or all balls are gone.
+     *
+     * @return true if the game is over.
+     */
+    public boolean isOver() {
+        return this.remainingBlocks.getValue() == 0 || this.remainingBalls.getValue() == 0;
+    }
+
+    /**
+     * Ends the recording, if any, closes the metrics file, if any, and gives the end of game bonus, once.
+     * Called once the game is over by run(), runHeadless() and GameSession, so all end the same way.
+     */
+    void finish() {
+        if (!this.finished) {
+            this.finished = true;
+            stopRecording();
+            this.profiler.close();
+            this.score.increase(100);
+            publishScoreboard();
+        }
+    }
 
+    /**
+     * @return the current score.
+     */
+    public int getScore() {
+        return this.score.getValue();
+    }
 
-            this.sprites.drawAllOn(d);
-            this.gui.show(d);
-            this.sprites.notifyAllTimePassed();
-            long usedTime = System.currentTimeMillis() - startTime;
-            long milliSecondLeftToSleep = millisecondsPerFrame - usedTime;
-            if (milliSecondLeftToSleep > 0) {
-                this.sleeper.sleepFor(milliSecondLeftToSleep);
+    /**
+     * Takes a snapshot of the score and the counters as of the end of the last tick, or of the
+     * last initialize or restore. Safe to call from any thread: the three always come from the
+     * same tick, even while hits of the next one are being delivered.
+     *
+     * @return the snapshot.
+     */
+    public Scoreboard scoreboard() {
+        while (true) {
+            long sequence = this.scoreboardSequence;
+            long score = this.publishedScore;
+            long blocks = this.publishedBlocks;
+            long balls = this.publishedBalls;
+            if ((sequence & 1) == 0 && sequence == this.scoreboardSequence) {
+                return new Scoreboard(score, blocks, balls);
             }
+            Thread.onSpinWait();
         }
     }
 
+    /**
+     * Publishes the counters for scoreboard(). Only the game thread writes them, so nothing is locked.
+     */
+    private void publishScoreboard() {
+        this.scoreboardSequence++;
+        this.publishedScore = this.score.snapshot();
+        this.publishedBlocks = this.remainingBlocks.snapshot();
+        this.publishedBalls = this.remainingBalls.snapshot();
+        this.scoreboardSequence++;
+    }
+
+    /**
+     * @return the paddle, or null if the level has none or the game was not initialized.
+     */
+    Paddle getPaddle() {
+        return this.paddle;
+    }
+
+    /**
+     * @return the blocks initialize() built, in the order of the level, including those removed since.
+     */
+    List<Block> getLevelBlocks() {
+        return this.levelBlocks;
+    }
+
+    /**
+     * @return the number of blocks left in the game.
+     */
+    public int getRemainingBlocks() {
+        return this.remainingBlocks.getValue();
+    }
+
+    /**
+     * @return the number of balls left in the game.
+     */
+    public int getRemainingBalls() {
+        return this.remainingBalls.getValue();
+    }
+
     /**
      * Removes a collidable object from the game environment.
      *
@@ -175,15 +882,250 @@ public class Game {
      */
     public void removeCollidable(Collidable c) {
         this.gameEnvironment.removeCollidable(c);
+        this.collidableRoster.remove(c);
     }
 
     /**
-     * Removes a sprite from the sprite collection.
+     * Removes a sprite from the sprite collection or from the static layer.
      *
      * @param s the sprite to be removed
      */
     public void removeSprite(Sprite s) {
         this.sprites.removeSprite(s);
+        this.staticLayer.removeSprite(s);
+        if (this.spriteRoster.slotOf(s) != -1) {
+            this.spriteRoster.remove(s);
+            this.spriteOrder = null;
+        }
+        this.staticRoster.remove(s);
+    }
+
+    /**
+     * Takes a snapshot of the world: the counters, the position, velocity and color of every ball,
+     * including those of a BallSystem, the position of the paddle, and which blocks, sprites and collidables are in the game, with
+     * the listeners of the blocks. Must be called between ticks.
+     * Only what was added through the game is covered, not collidables added to the environment directly.
+     *
+     * @return the snapshot.
+     */
+    public WorldSnapshot snapshot() {
+        return snapshot(null);
+    }
+
+    /**
+     * Takes a snapshot of the world like snapshot(), writing it over an older snapshot of this game
+     * to save allocating a new one, as a rollback buffer that keeps the last few ticks would.
+     *
+     * @param reuse the snapshot to overwrite, or null to allocate a new one.
+     * @return the snapshot, reuse if it was given.
+     */
+    public WorldSnapshot snapshot(WorldSnapshot reuse) {
+        if (this.hitEventBus.pending() != 0) {
+            throw new IllegalStateException("A snapshot can only be taken between ticks");
+        }
+        WorldSnapshot snapshot = reuse == null ? new WorldSnapshot(this) : reuse;
+        if (snapshot.owner != this) {
+            throw new IllegalArgumentException("The snapshot was taken by another game");
+        }
+        if (reuse == null) {
+            this.liveSnapshots.add(new WeakReference<>(snapshot, this.collectedSnapshots));
+            this.gameEnvironment.setRestorable(true);
+        }
+        int[] order = spriteOrder();
+        int size = SNAPSHOT_HEADER_BYTES;
+        for (int slot : order) {
+            Sprite s = this.spriteRoster.get(slot);
+            if (s instanceof Ball) {
+                size += Ball.STATE_BYTES + Integer.BYTES;
+            } else if (s instanceof Paddle) {
+                size += Paddle.STATE_BYTES;
+            } else if (s instanceof BallSystem) {
+                size += ((BallSystem) s).stateBytes();
+            }
+        }
+        if (snapshot.state.length < size) {
+            snapshot.state = new byte[size];
+        }
+        ByteBuffer out = ByteBuffer.wrap(snapshot.state);
+        out.putInt(this.score.getValue());
+        out.putInt(this.remainingBlocks.getValue());
+        out.putInt(this.remainingBalls.getValue());
+        out.putInt(this.gameEnvironment.getVersion());
+        out.put((byte) (this.finished ? 1 : 0));
+        for (int slot : order) {
+            Sprite s = this.spriteRoster.get(slot);
+            if (s instanceof Ball) {
+                ((Ball) s).saveState(out);
+                out.putInt(this.colorRoster.add(((Ball) s).getColor()));
+            } else if (s instanceof Paddle) {
+                ((Paddle) s).saveState(out);
+            } else if (s instanceof BallSystem) {
+                ((BallSystem) s).saveState(out);
+            }
+        }
+        snapshot.stateLength = size;
+        snapshot.collidables = this.collidableRoster.share();
+        snapshot.statics = this.staticRoster.share();
+        snapshot.sprites = this.spriteRoster.share();
+        snapshot.spriteOrder = order;
+        snapshot.collidableOrder = this.collidablesInSlotOrder ? null : this.gameEnvironment.toArray();
+        snapshot.listeners = listenerTable();
+        return snapshot;
+    }
+
+    /**
+     * Returns the world to a snapshot taken by this game. Only what changed since is touched: blocks
+     * the snapshot doesn't have are removed from the collision index, and blocks that come back are
+     * restored to their old place in it, so ties are still broken in the order they were added.
+     * The keyboard, the profiler and the frame timings are not part of the world and are left alone.
+     * Must be called between ticks, and not while the session is recorded.
+     *
+     * @param snapshot the snapshot.
+     */
+    public void restore(WorldSnapshot snapshot) {
+        if (snapshot.owner != this) {
+            throw new IllegalArgumentException("The snapshot was taken by another game");
+        }
+        if (this.recorder != null) {
+            throw new IllegalStateException("A recorded session can't be restored to a snapshot");
+        }
+        if (this.hitEventBus.pending() != 0) {
+            throw new IllegalStateException("A snapshot can only be restored between ticks");
+        }
+        poolRemovedBalls();
+        long[] collidables = snapshot.collidables;
+        if (snapshot.collidableOrder != null) {
+            this.gameEnvironment.restore(Arrays.asList(snapshot.collidableOrder));
+        } else if (!this.collidablesInSlotOrder) {
+            this.gameEnvironment.restore(this.collidableRoster.presentIn(collidables));
+        } else if (!this.collidableRoster.isCurrent(collidables)) {
+            this.gameEnvironment.restore(this.collidableRoster.presentIn(collidables),
+                    this.collidableRoster.presentOnlyNow(collidables),
+                    this.collidableRoster.presentOnlyIn(collidables));
+        }
+        this.collidableRoster.restore(collidables);
+        this.collidablesInSlotOrder = snapshot.collidableOrder == null;
+        HitListener[][] listeners = snapshot.listeners;
+        if (!listenerTableIsCurrent() || listeners != this.listenerTable) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] != null) {
+                    Block block = (Block) this.collidableRoster.get(i);
+                    if (block.getHitListeners() != listeners[i]) {
+                        block.setHitListeners(listeners[i]);
+                    }
+                }
+            }
+            this.listenerTable = listeners;
+            this.listenerTableChanges = this.hitEventBus.getListenerChanges();
+        }
+        if (!this.staticRoster.isCurrent(snapshot.statics)) {
+            this.staticLayer.setSprites(this.staticRoster.presentIn(snapshot.statics),
+                    this.staticRoster.presentOnlyNow(snapshot.statics), this.staticRoster.presentOnlyIn(snapshot.statics));
+            this.staticRoster.restore(snapshot.statics);
+        }
+        int[] order = snapshot.spriteOrder;
+        if (!Arrays.equals(spriteOrder(), order)) {
+            for (Sprite s : this.spriteRoster.presentOnlyNow(snapshot.sprites)) {
+                if (s instanceof Ball) {
+                    this.ballPool.give((Ball) s);
+                }
+            }
+            List<Sprite> present = new ArrayList<>(order.length);
+            for (int slot : order) {
+                present.add(this.spriteRoster.get(slot));
+            }
+            this.sprites.setSprites(present);
+            this.spriteRoster.restore(snapshot.sprites);
+        }
+        this.spriteOrder = order;
+
+        ByteBuffer in = ByteBuffer.wrap(snapshot.state, 0, snapshot.stateLength);
+        this.score.set(in.getInt());
+        this.remainingBlocks.set(in.getInt());
+        this.remainingBalls.set(in.getInt());
+        this.gameEnvironment.setVersion(in.getInt());
+        this.finished = in.get() != 0;
+        for (int slot : order) {
+            Sprite s = this.spriteRoster.get(slot);
+            if (s instanceof Ball) {
+                ((Ball) s).setPooled(false);
+                ((Ball) s).loadState(in);
+                ((Ball) s).setColor(this.colorRoster.get(in.getInt()));
+            } else if (s instanceof Paddle) {
+                ((Paddle) s).loadState(in);
+            } else if (s instanceof BallSystem) {
+                ((BallSystem) s).loadState(in);
+            }
+        }
+        publishScoreboard();
+    }
+
+    /**
+     * Forgets the snapshots that were garbage collected. Once none is left, the collision index
+     * stops remembering where removed blocks were, since no snapshot can bring them back.
+     */
+    private void releaseCollectedSnapshots() {
+        Reference<? extends WorldSnapshot> collected;
+        while ((collected = this.collectedSnapshots.poll()) != null) {
+            this.liveSnapshots.remove(collected);
+        }
+        if (this.liveSnapshots.isEmpty()) {
+            this.gameEnvironment.setRestorable(false);
+        }
+    }
+
+    /**
+     * @return the slots of the sprites, in the order they are stepped.
+     */
+    private int[] spriteOrder() {
+        if (this.spriteOrder == null) {
+            int[] order = new int[this.sprites.size()];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = this.spriteRoster.slotOf(this.sprites.get(i));
+            }
+            this.spriteOrder = order;
+        }
+        return this.spriteOrder;
+    }
+
+    /**
+     * Returns the listeners of every block by collidable slot, the same table as the last snapshot
+     * if no block's listeners changed since.
+     *
+     * @return the table.
+     */
+    private HitListener[][] listenerTable() {
+        if (listenerTableIsCurrent()) {
+            return this.listenerTable;
+        }
+        HitListener[][] table = this.listenerTable;
+        int slots = this.collidableRoster.size();
+        boolean same = table != null && table.length == slots;
+        for (int i = 0; same && i < slots; i++) {
+            Collidable c = this.collidableRoster.get(i);
+            same = !(c instanceof Block) || ((Block) c).getHitListeners() == table[i];
+        }
+        if (!same) {
+            table = new HitListener[slots][];
+            for (int i = 0; i < slots; i++) {
+                Collidable c = this.collidableRoster.get(i);
+                if (c instanceof Block) {
+                    table[i] = ((Block) c).getHitListeners();
+                }
+            }
+            this.listenerTable = table;
+        }
+        this.listenerTableChanges = this.hitEventBus.getListenerChanges();
+        return table;
+    }
+
+    /**
+     * @return true if the listener table is known to match the listeners of the blocks.
+     */
+    private boolean listenerTableIsCurrent() {
+        return this.listenerTable != null && this.blocksOnBus
+                && this.listenerTable.length == this.collidableRoster.size()
+                && this.listenerTableChanges == this.hitEventBus.getListenerChanges();
     }
 
 }
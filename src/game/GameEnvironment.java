@@ -2,29 +2,89 @@ package game;
 
 import shapes.Line;
 import shapes.Point;
+import shapes.SlabIntersection;
 
 
 /**
  * Represents the game environment that manages collidable objects.
+ * Collision queries are answered by a CollidableIndex: a uniform grid by default, or any other
+ * index set with setIndex, such as a BoundingVolumeHierarchy.
  */
 public class GameEnvironment {
+    private static final int WIDTH = 800;
+    private static final int HEIGHT = 600;
+    private static final int CELL_SIZE = 50;
+    private static final int DEFAULT_MAX_HITS_PER_STEP = 8;
 
-    private java.util.List<Collidable> collidables;
+    // In the order they were added, which breaks ties in the full scan like the index does
+    private CompactingList<Collidable> collidables;
+    private CollidableIndex index;
+    // Whether the index remembers the place of removed collidables, for restoring snapshots
+    private boolean restorable;
+    private int version;
+    // The predicted impacts of the balls in the event-driven mode, or null in the tick mode
+    private ImpactQueue impacts;
+    private int maxHitsPerStep = DEFAULT_MAX_HITS_PER_STEP;
+    // Where getClosestCollision(trajectory, result) has the index write the collidable it finds, one per thread
+    private final ThreadLocal<Collidable[]> hits = ThreadLocal.withInitial(() -> new Collidable[1]);
 
     /**
      * Constructs a new game environment with an empty list of collidables.
      */
     public GameEnvironment() {
-        this.collidables = new java.util.ArrayList<>();
+        this.collidables = new CompactingList<>();
+        this.index = new CollidableGrid(WIDTH, HEIGHT, CELL_SIZE);
     }
 
     /**
-     * Constructs a GameEnvironment with the given list of collidable objects.
+     * Constructs a GameEnvironment with the given collidable objects. The list is copied.
      *
      * @param c The list of collidable objects.
      */
     public GameEnvironment(java.util.List<Collidable> c) {
-        this.collidables = c;
+        this.collidables = new CompactingList<>();
+        this.collidables.addAll(c);
+        this.index = new CollidableGrid(WIDTH, HEIGHT, CELL_SIZE);
+        this.index.addAll(c);
+    }
+
+    /**
+     * Replaces the index that answers collision queries. The collidables are added to the new index
+     * in the order they were added to the environment, so ties are broken the same way.
+     *
+     * @param index the new, empty index.
+     */
+    public void setIndex(CollidableIndex index) {
+        index.addAll(this.collidables.toList());
+        index.setRestorable(this.restorable);
+        this.index = index;
+    }
+
+    /**
+     * Sets whether the index remembers the place of the collidables removed from now on, so
+     * restoring a snapshot can put them back without rebuilding it. The game turns it on while it
+     * has snapshots that may still be restored.
+     *
+     * @param restorable true to remember the places of removed collidables.
+     */
+    void setRestorable(boolean restorable) {
+        this.restorable = restorable;
+        this.index.setRestorable(restorable);
+    }
+
+    /**
+     * @return the index that answers collision queries.
+     */
+    public CollidableIndex getIndex() {
+        return this.index;
+    }
+
+    /**
+     * Brings the index up to date with the collidables that move. Called once per tick,
+     * before anything moves.
+     */
+    public void refit() {
+        this.index.refit();
     }
 
     /**
@@ -34,36 +94,278 @@ public class GameEnvironment {
      */
     public void addCollidable(Collidable c) {
         this.collidables.add(c);
+        this.index.add(c);
+        this.version++;
+        if (this.impacts != null) {
+            this.impacts.added(c);
+        }
     }
 
     /**
-     * Removes a collidable object from the list of collidables.
+     * Adds many collidable objects to the environment at once, in order.
+     *
+     * @param added The collidable objects to add.
+     */
+    public void addCollidables(java.util.Collection<? extends Collidable> added) {
+        this.collidables.addAll(added);
+        this.index.addAll(added);
+        this.version++;
+        if (this.impacts != null) {
+            for (Collidable c : added) {
+                this.impacts.added(c);
+            }
+        }
+    }
+
+    /**
+     * Removes a collidable object from the list of collidables, in constant time; its place in
+     * the list is squeezed out later by compact().
      *
      * @param c the collidable object to remove
      */
     public void removeCollidable(Collidable c) {
         this.collidables.remove(c);
+        this.index.remove(c);
+        this.version++;
+        if (this.impacts != null) {
+            this.impacts.removed(c);
+        }
+    }
+
+    /**
+     * @param c a collidable.
+     * @return true if it is in the environment.
+     */
+    boolean contains(Collidable c) {
+        return this.collidables.contains(c);
+    }
+
+    /**
+     * Squeezes out the places of removed collidables once there are enough of them. Called at the
+     * end of every tick.
+     */
+    void compact() {
+        this.collidables.compact();
+    }
+
+    /**
+     * Replaces the collidables with the given ones, as when a snapshot is restored. The collidables
+     * that leave are removed from the index and the ones that come back are restored to their
+     * place in it, and in the list; if the index doesn't know a collidable that comes back, it is
+     * rebuilt instead, and if the list squeezed out its place, the list is.
+     *
+     * @param present   all the collidables, in the order they were added.
+     * @param leaving   the collidables to remove.
+     * @param returning the collidables that were removed before and come back.
+     */
+    void restore(java.util.List<? extends Collidable> present, java.util.List<? extends Collidable> leaving,
+                 java.util.List<? extends Collidable> returning) {
+        if (this.impacts != null) {
+            this.impacts.clear();
+        }
+        for (int i = 0; i < leaving.size(); i++) {
+            this.index.remove(leaving.get(i));
+            this.collidables.remove(leaving.get(i));
+        }
+        boolean indexed = true;
+        boolean listed = true;
+        for (int i = 0; i < returning.size() && indexed; i++) {
+            indexed = this.index.restore(returning.get(i));
+            listed = listed && this.collidables.restore(returning.get(i));
+        }
+        if (!indexed) {
+            restore(present);
+        } else if (!listed) {
+            this.collidables.setAll(present);
+        }
+    }
+
+    /**
+     * Replaces the collidables with the given ones and rebuilds the index from them, in order,
+     * as when a snapshot is restored.
+     *
+     * @param present the collidables, in the order they were added.
+     */
+    void restore(java.util.List<? extends Collidable> present) {
+        if (this.impacts != null) {
+            this.impacts.clear();
+        }
+        this.collidables.setAll(present);
+        this.index.clear();
+        this.index.addAll(present);
+    }
+
+    /**
+     * Switches the balls of this environment to the event-driven physics mode, or back to the tick mode.
+     *
+     * @param impacts the queue of predicted impacts, or null for the tick mode.
+     */
+    void setImpactQueue(ImpactQueue impacts) {
+        this.impacts = impacts;
+    }
+
+    /**
+     * @return the queue of predicted impacts, or null in the tick mode.
+     */
+    ImpactQueue getImpactQueue() {
+        return this.impacts;
+    }
+
+    /**
+     * @return the collidables, in the order they were added.
+     */
+    Collidable[] toArray() {
+        return this.collidables.toList().toArray(new Collidable[0]);
+    }
+
+    /**
+     * Sets the version of the set of collidables, as when a snapshot is restored.
+     *
+     * @param version the version.
+     */
+    void setVersion(int version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns a number that changes whenever a collidable is added or removed, so a collision
+     * query made earlier can be checked for being stale.
+     *
+     * @return the version of the set of collidables.
+     */
+    public int getVersion() {
+        return this.version;
     }
 
     /**
      * Finds the closest collision point between a trajectory and the collidables.
+     * It is safe to call from several threads at once while no collidable is added or removed.
+     * Only the collidables the index finds near the trajectory are tested.
      *
      * @param trajectory The trajectory (line) to check for collisions.
      * @return A CollisionInfo object containing information about the closest collision,
      * or null if no collision occurs.
      */
     public CollisionInfo getClosestCollision(Line trajectory) {
-        Point closestCollisionPoint = null;
+        return this.index.closestCollision(trajectory);
+    }
+
+    /**
+     * Finds the closest collision like getClosestCollision(trajectory), but fills in the given
+     * CollisionInfo instead of allocating a new one.
+     *
+     * @param trajectory The trajectory (line) to check for collisions.
+     * @param result     where to put the collision, made with the no-argument constructor.
+     * @return result, or null if no collision occurs.
+     */
+    public CollisionInfo getClosestCollision(Line trajectory, CollisionInfo result) {
+        double x0 = trajectory.start().getX();
+        double y0 = trajectory.start().getY();
+        double dx = trajectory.end().getX() - x0;
+        double dy = trajectory.end().getY() - y0;
+        Collidable[] found = this.hits.get();
+        double t = this.index.closestHit(x0, y0, dx, dy, found, 0);
+        Collidable collidable = found[0];
+        if (collidable == null) {
+            return null;
+        }
+        found[0] = null;
+        return result.set(x0 + t * dx, y0 + t * dy, collidable);
+    }
+
+    /**
+     * Finds the collision along the segment (x0 + t * dx, y0 + t * dy), t in [0, 1], the same way
+     * getClosestCollision does, but on raw coordinates and without allocating.
+     *
+     * @param x0    the x-coordinate of the start of the segment
+     * @param y0    the y-coordinate of the start of the segment
+     * @param dx    the x-extent of the segment
+     * @param dy    the y-extent of the segment
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the collision point, or SlabIntersection.NO_HIT
+     */
+    public double closestHit(double x0, double y0, double dx, double dy, Collidable[] hits, int index) {
+        return this.index.closestHit(x0, y0, dx, dy, hits, index);
+    }
+
+    /**
+     * Finds the first contact of a ball of radius r whose center moves along the segment
+     * (x0 + t * dx, y0 + t * dy), t in [0, 1], without allocating.
+     * It is safe to call from several threads at once while no collidable is added or removed.
+     *
+     * @param x0    the x-coordinate of the center at the start
+     * @param y0    the y-coordinate of the center at the start
+     * @param dx    the x-extent of the motion
+     * @param dy    the y-extent of the motion
+     * @param r     the radius of the ball
+     * @param hits  where to write the collidable that is hit, or null if there is none
+     * @param index the index in hits to write to
+     * @return the parameter t of the first contact, or SweptCircle.NO_HIT
+     */
+    public double sweptHit(double x0, double y0, double dx, double dy, double r, Collidable[] hits, int index) {
+        return this.index.sweptHit(x0, y0, dx, dy, r, hits, index);
+    }
+
+    /**
+     * @return the number of collision queries made so far.
+     */
+    public long getQueryCount() {
+        return this.index.getQueryCount();
+    }
+
+    /**
+     * @return the number of collidables tested by collision queries so far.
+     */
+    public long getTestCount() {
+        return this.index.getTestCount();
+    }
+
+    /**
+     * @return the most hits a ball resolves in one step.
+     */
+    public int getMaxHitsPerStep() {
+        return this.maxHitsPerStep;
+    }
+
+    /**
+     * Sets the most hits a ball resolves in one step. A ball that reaches the limit
+     * stays where its last hit left it until the next step.
+     *
+     * @param maxHitsPerStep the limit, at least 1.
+     */
+    public void setMaxHitsPerStep(int maxHitsPerStep) {
+        if (maxHitsPerStep < 1) {
+            throw new IllegalArgumentException("maxHitsPerStep must be at least 1");
+        }
+        this.maxHitsPerStep = maxHitsPerStep;
+    }
+
+    /**
+     * Finds the closest collision by testing the trajectory against every collidable.
+     * This is the reference the index lookup in getClosestCollision must agree with.
+     *
+     * @param trajectory The trajectory (line) to check for collisions.
+     * @return A CollisionInfo object containing information about the closest collision,
+     * or null if no collision occurs.
+     */
+    public CollisionInfo getClosestCollisionFullScan(Line trajectory) {
+        double x0 = trajectory.start().getX();
+        double y0 = trajectory.start().getY();
+        double dx = trajectory.end().getX() - x0;
+        double dy = trajectory.end().getY() - y0;
         Collidable closestCollidable = null;
-        double closestDistance = -1;
-
-        for (Collidable collidable : collidables) {
-            Point collisionP = trajectory.closestIntersectionToStartOfLine(collidable.getCollisionRectangle());
-            if (collisionP != null) {
-                double d = trajectory.start().distance(collisionP);
-                if (d > closestDistance || closestDistance == -1) {
-                    closestDistance = d;
-                    closestCollisionPoint = collisionP;
+        double closestT = SlabIntersection.NO_HIT;
+
+        for (int i = 0; i < this.collidables.slots(); i++) {
+            Collidable collidable = this.collidables.inSlot(i);
+            if (collidable == null) {
+                continue;
+            }
+            double t = collidable.getCollisionRectangle().firstHit(x0, y0, dx, dy);
+            if (t != SlabIntersection.NO_HIT) {
+                if (t > closestT || closestCollidable == null) {
+                    closestT = t;
                     closestCollidable = collidable;
                 }
             }
@@ -71,6 +373,6 @@ public class GameEnvironment {
         if (closestCollidable == null) {
             return null;
         }
-        return new CollisionInfo(closestCollisionPoint, closestCollidable);
+        return new CollisionInfo(new Point(x0 + closestT * dx, y0 + closestT * dy), closestCollidable);
     }
 }
\ No newline at end of file
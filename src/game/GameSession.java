@@ -0,0 +1,179 @@
+package game;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A headless game hosted by a SessionScheduler.
+ * The session runs its game in slices of a few ticks on whichever worker picks it up, never on two
+ * workers at once, until the game is over, its tick budget is spent or it is stopped. A game that
+ * is over ends as in runHeadless(), with the end of game bonus. Once the session has ended it lets
+ * go of its game and keeps only its final stats.
+ * A session can be paced to a tick rate or run as fast as its share of the workers allows.
+ * Input comes from a RemoteKeyboard, which clients may set from any thread.
+ */
+public class GameSession implements Delayed {
+    private final int id;
+    // Null once the session has ended
+    private Game game;
+    private final RemoteKeyboard keyboard;
+    private final long maxTicks;
+    // 0 for a session that runs as fast as it can
+    private final long nanosPerTick;
+    private final CountDownLatch done;
+    private volatile boolean stopRequested;
+    private volatile boolean finished;
+    // When the session may run next; only changed while it is not queued
+    private long dueNanos;
+    private long startNanos;
+    // Guarded by this; only the worker running the session writes them
+    private long ticks;
+    private long slices;
+    private long stepNanos;
+    private long maxTickNanos;
+    private long lagNanos;
+    private long maxLagNanos;
+    // Set when the session ends
+    private SessionStats finalStats;
+
+    /**
+     * Constructs a session and builds its game.
+     *
+     * @param id             the id of the session.
+     * @param level          the level to play.
+     * @param seed           the seed of the game.
+     * @param maxTicks       the tick budget: the session ends after this many ticks.
+     * @param ticksPerSecond the tick rate, or 0 to run as fast as possible.
+     */
+    GameSession(int id, LevelDefinition level, long seed, long maxTicks, int ticksPerSecond) {
+        this.id = id;
+        this.keyboard = new RemoteKeyboard();
+        this.game = new Game(this.keyboard);
+        this.game.setSeed(seed);
+        this.game.initialize(level);
+        this.maxTicks = maxTicks;
+        this.nanosPerTick = ticksPerSecond > 0 ? 1000000000L / ticksPerSecond : 0;
+        this.done = new CountDownLatch(1);
+        this.startNanos = System.nanoTime();
+        this.dueNanos = this.startNanos;
+    }
+
+    /**
+     * @return the id of the session.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the keyboard that drives the paddle of the session.
+     */
+    public RemoteKeyboard getKeyboard() {
+        return this.keyboard;
+    }
+
+    /**
+     * Asks the session to end before its next slice.
+     */
+    public void stop() {
+        this.stopRequested = true;
+    }
+
+    /**
+     * @return true once the session has ended.
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * Waits until the session has ended.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitFinished() throws InterruptedException {
+        this.done.await();
+    }
+
+    /**
+     * Takes a snapshot of the statistics of the session. May be called from any thread.
+     *
+     * @return the statistics.
+     */
+    public synchronized SessionStats stats() {
+        if (this.finalStats != null) {
+            return this.finalStats;
+        }
+        return new SessionStats(this.id, this.ticks, false, System.nanoTime() - this.startNanos, this.slices,
+                this.stepNanos, this.maxTickNanos, this.lagNanos, this.maxLagNanos, this.game.scoreboard());
+    }
+
+    /**
+     * Runs the next slice of the session: up to quantum ticks, or for a paced session the ticks
+     * that are due, up to quantum. Called by one worker at a time.
+     *
+     * @param quantum the most ticks to run.
+     * @return true if the session should run again, false if it has ended.
+     */
+    boolean runSlice(int quantum) {
+        long start = System.nanoTime();
+        long lag = Math.max(0, start - this.dueNanos);
+        int count = quantum;
+        if (this.nanosPerTick > 0) {
+            long owed = (start - this.startNanos) / this.nanosPerTick + 1 - this.ticks;
+            count = (int) Math.max(0, Math.min(quantum, owed));
+        }
+        count = (int) Math.min(count, this.maxTicks - this.ticks);
+
+        long maxTick = 0;
+        int ran = 0;
+        while (ran < count && !this.stopRequested && !this.game.isOver()) {
+            long tickStart = System.nanoTime();
+            this.game.step();
+            maxTick = Math.max(maxTick, System.nanoTime() - tickStart);
+            ran++;
+        }
+        if (this.game.isOver()) {
+            this.game.finish();
+        }
+        long end = System.nanoTime();
+        boolean over = this.stopRequested || this.game.isOver() || this.ticks + ran >= this.maxTicks;
+
+        synchronized (this) {
+            this.ticks += ran;
+            this.slices++;
+            this.stepNanos += end - start;
+            this.maxTickNanos = Math.max(this.maxTickNanos, maxTick);
+            this.lagNanos += lag;
+            this.maxLagNanos = Math.max(this.maxLagNanos, lag);
+            if (over) {
+                this.finalStats = new SessionStats(this.id, this.ticks, true, end - this.startNanos, this.slices,
+                        this.stepNanos, this.maxTickNanos, this.lagNanos, this.maxLagNanos, this.game.scoreboard());
+                this.game = null;
+                this.finished = true;
+            }
+        }
+        if (over) {
+            this.done.countDown();
+            return false;
+        }
+        this.dueNanos = this.nanosPerTick > 0 ? this.startNanos + this.ticks * this.nanosPerTick : end;
+        return true;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(this.dueNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other instanceof GameSession) {
+            GameSession session = (GameSession) other;
+            int byDue = Long.compare(this.dueNanos, session.dueNanos);
+            return byDue != 0 ? byDue : Integer.compare(this.id, session.id);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
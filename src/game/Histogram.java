@@ -0,0 +1,125 @@
+package game;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size histogram of non-negative values for percentiles, such as tick times in nanoseconds.
+ * Each power of two is split into 8 buckets, so a percentile is within 12.5% of the exact value,
+ * and recording is a few arithmetic operations with no allocation. Values of 2^40 and above are
+ * counted in the last bucket; the maximum is kept exactly.
+ */
+final class Histogram {
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final int[] counts;
+    private long count;
+    private long total;
+    private long max;
+
+    /**
+     * Constructs an empty histogram.
+     */
+    Histogram() {
+        this.counts = new int[BUCKETS];
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, negative values count as 0.
+     */
+    void record(long value) {
+        long v = Math.max(0, value);
+        this.counts[bucketOf(v)]++;
+        this.count++;
+        this.total += v;
+        if (v > this.max) {
+            this.max = v;
+        }
+    }
+
+    /**
+     * Returns the value below which the given fraction of the recorded values fall,
+     * as the upper end of its bucket but no more than the maximum.
+     *
+     * @param fraction the fraction, between 0 and 1.
+     * @return the percentile, or 0 if nothing was recorded.
+     */
+    long percentile(double fraction) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * this.count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += this.counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    /**
+     * @return the number of values recorded.
+     */
+    long count() {
+        return this.count;
+    }
+
+    /**
+     * @return the largest value recorded.
+     */
+    long max() {
+        return this.max;
+    }
+
+    /**
+     * @return the mean of the values recorded, or 0 if there are none.
+     */
+    double mean() {
+        return this.count == 0 ? 0 : (double) this.total / this.count;
+    }
+
+    /**
+     * @return the sum of the values recorded.
+     */
+    long total() {
+        return this.total;
+    }
+
+    /**
+     * Forgets every value recorded.
+     */
+    void reset() {
+        Arrays.fill(this.counts, 0);
+        this.count = 0;
+        this.total = 0;
+        this.max = 0;
+    }
+
+    private static int bucketOf(long v) {
+        if (v < SUB_BUCKETS) {
+            return (int) v;
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(v), MAX_EXPONENT - 1);
+        if (exponent == MAX_EXPONENT - 1 && v >= 1L << MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (v >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return ((exponent - SUB_BITS + 1) << SUB_BITS) + sub;
+    }
+
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket >> SUB_BITS) + SUB_BITS - 1;
+        int sub = bucket & (SUB_BUCKETS - 1);
+        long width = 1L << (exponent - SUB_BITS);
+        return (SUB_BUCKETS + sub) * width + width - 1;
+    }
+}
@@ -0,0 +1,172 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects the hits of a tick and delivers them to the listeners in one batch at the end of it.
+ * While the balls move, a block that is hit only appends the hit to a ring buffer, so no listener
+ * changes the world in the middle of collision resolution. dispatch() then hands the hits, in the
+ * order they happened, to the listeners of the block that was hit and to the listeners subscribed
+ * to all hits. The buffer is allocated up front and only grows if a tick has more hits than fit.
+ */
+public class HitEventBus {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private Block[] blocks;
+    private Ball[] balls;
+    private int head;
+    private int size;
+    private List<HitListener> allHitsListeners;
+    private boolean dispatching;
+    private int lastDispatchCount;
+    private long lastDispatchNanos;
+    private long totalDispatchCount;
+    // Bumped whenever the listeners of a block on this bus change, so snapshots can tell they didn't
+    private int listenerChanges;
+
+    /**
+     * Constructs an empty event bus.
+     */
+    public HitEventBus() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructs an empty event bus with room for the given number of hits per tick.
+     *
+     * @param capacity the number of hits that fit before the buffer grows.
+     */
+    public HitEventBus(int capacity) {
+        this.blocks = new Block[Math.max(1, capacity)];
+        this.balls = new Ball[this.blocks.length];
+        this.allHitsListeners = new ArrayList<>();
+    }
+
+    /**
+     * Subscribes a listener to the hits on every block.
+     *
+     * @param hl the listener.
+     */
+    public void subscribeAll(HitListener hl) {
+        this.allHitsListeners.add(hl);
+    }
+
+    /**
+     * Unsubscribes a listener added with subscribeAll().
+     *
+     * @param hl the listener.
+     */
+    public void unsubscribeAll(HitListener hl) {
+        this.allHitsListeners.remove(hl);
+    }
+
+    /**
+     * Queues a hit until the next dispatch().
+     *
+     * @param beingHit the block that was hit.
+     * @param hitter   the ball that hit it.
+     */
+    public void publish(Block beingHit, Ball hitter) {
+        if (this.size == this.blocks.length) {
+            grow();
+        }
+        int tail = (this.head + this.size) % this.blocks.length;
+        this.blocks[tail] = beingHit;
+        this.balls[tail] = hitter;
+        this.size++;
+    }
+
+    /**
+     * Delivers all queued hits, oldest first. Hits queued by the listeners themselves are delivered
+     * in the same call. Calling it from a listener does nothing.
+     */
+    public void dispatch() {
+        if (this.dispatching || this.size == 0) {
+            this.lastDispatchCount = 0;
+            this.lastDispatchNanos = 0;
+            return;
+        }
+        this.dispatching = true;
+        long start = System.nanoTime();
+        int count = 0;
+        try {
+            while (this.size > 0) {
+                Block beingHit = this.blocks[this.head];
+                Ball hitter = this.balls[this.head];
+                this.blocks[this.head] = null;
+                this.balls[this.head] = null;
+                this.head = (this.head + 1) % this.blocks.length;
+                this.size--;
+                count++;
+                beingHit.dispatchHit(hitter);
+                for (int i = 0; i < this.allHitsListeners.size(); i++) {
+                    this.allHitsListeners.get(i).hitEvent(beingHit, hitter);
+                }
+            }
+        } finally {
+            this.dispatching = false;
+            this.lastDispatchCount = count;
+            this.lastDispatchNanos = System.nanoTime() - start;
+            this.totalDispatchCount += count;
+        }
+    }
+
+    /**
+     * Notes that the listeners of a block on this bus changed.
+     */
+    void listenersChanged() {
+        this.listenerChanges++;
+    }
+
+    /**
+     * @return a number that changes whenever the listeners of a block on this bus change.
+     */
+    int getListenerChanges() {
+        return this.listenerChanges;
+    }
+
+    /**
+     * @return the number of hits waiting for dispatch().
+     */
+    public int pending() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of hits delivered by the last dispatch().
+     */
+    public int getLastDispatchCount() {
+        return this.lastDispatchCount;
+    }
+
+    /**
+     * @return the time the listeners took in the last dispatch(), in nanoseconds.
+     */
+    public long getLastDispatchNanos() {
+        return this.lastDispatchNanos;
+    }
+
+    /**
+     * @return the number of hits delivered since the bus was created.
+     */
+    public long getTotalDispatchCount() {
+        return this.totalDispatchCount;
+    }
+
+    /**
+     * Doubles the buffer, moving the queued hits to its start.
+     */
+    private void grow() {
+        int capacity = this.blocks.length;
+        Block[] newBlocks = new Block[capacity * 2];
+        Ball[] newBalls = new Ball[capacity * 2];
+        for (int i = 0; i < this.size; i++) {
+            newBlocks[i] = this.blocks[(this.head + i) % capacity];
+            newBalls[i] = this.balls[(this.head + i) % capacity];
+        }
+        this.blocks = newBlocks;
+        this.balls = newBalls;
+        this.head = 0;
+    }
+}
@@ -0,0 +1,106 @@
+package game;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.Polygon;
+import java.awt.image.BufferedImage;
+
+/**
+ * A DrawSurface that draws into an offscreen image, with the same shapes a biuoop GUI surface draws.
+ */
+public class ImageDrawSurface implements DrawSurface {
+    private BufferedImage image;
+    private Graphics2D graphics;
+
+    /**
+     * Constructs a surface that draws into the given image.
+     *
+     * @param image the image to draw into.
+     */
+    public ImageDrawSurface(BufferedImage image) {
+        this.image = image;
+        this.graphics = image.createGraphics();
+    }
+
+    /**
+     * Releases the graphics context. The surface can't be drawn on afterwards.
+     */
+    public void dispose() {
+        this.graphics.dispose();
+    }
+
+    @Override
+    public int getWidth() {
+        return this.image.getWidth();
+    }
+
+    @Override
+    public int getHeight() {
+        return this.image.getHeight();
+    }
+
+    @Override
+    public void setColor(Color color) {
+        this.graphics.setColor(color);
+    }
+
+    @Override
+    public void drawLine(int x1, int y1, int x2, int y2) {
+        this.graphics.drawLine(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawOval(int x, int y, int width, int height) {
+        this.graphics.drawOval(x, y, width, height);
+    }
+
+    @Override
+    public void fillOval(int x, int y, int width, int height) {
+        this.graphics.fillOval(x, y, width, height);
+    }
+
+    @Override
+    public void drawRectangle(int x, int y, int width, int height) {
+        this.graphics.drawRect(x, y, width, height);
+    }
+
+    @Override
+    public void fillRectangle(int x, int y, int width, int height) {
+        this.graphics.fillRect(x, y, width, height);
+    }
+
+    @Override
+    public void drawImage(int x, int y, Image img) {
+        this.graphics.drawImage(img, x, y, null);
+    }
+
+    @Override
+    public void drawCircle(int x, int y, int r) {
+        this.graphics.drawOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void fillCircle(int x, int y, int r) {
+        this.graphics.fillOval(x - r, y - r, 2 * r, 2 * r);
+    }
+
+    @Override
+    public void drawText(int x, int y, String text, int fontSize) {
+        this.graphics.setFont(new Font("Dialog", Font.PLAIN, fontSize));
+        this.graphics.drawString(text, x, y);
+    }
+
+    @Override
+    public void drawPolygon(Polygon polygon) {
+        this.graphics.drawPolygon(polygon);
+    }
+
+    @Override
+    public void fillPolygon(Polygon polygon) {
+        this.graphics.fillPolygon(polygon);
+    }
+}
@@ -0,0 +1,301 @@
+package game;
+
+import shapes.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ * The event-driven physics mode: a priority queue of the times the balls will next hit something.
+ * After a ball looks for hits along its path, as it does every tick in the tick mode, the queue
+ * predicts its next impact with one query along the rest of its path. Until the tick before that
+ * impact, the ball moves without looking, exactly as a ball that hits nothing moves, so the balls
+ * end every tick where the tick mode puts them and hit the same blocks in the same order.
+ * Predictions are dropped only for what an event touches: the ball that hit something, whose
+ * velocity was set from outside, or whose predicted block was removed. A collidable added to the
+ * world could be in any ball's way, so it drops them all.
+ * The paddle moves, so no prediction reaches past the rows it covers; a ball there looks for hits
+ * every tick. Paddles only move sideways.
+ */
+public class ImpactQueue {
+    // How far a prediction looks; a ball that hits nothing that far is predicted again there
+    private static final double REACH = 2048;
+    // Predictions use a slightly larger ball, so rounding in the steps can't bring a hit sooner
+    private static final double SLACK = 0.000001;
+    // How far above and below the paddle balls look for hits every tick
+    private static final double PADDLE_MARGIN = 1;
+    // How many ticks before its predicted impact a ball starts looking for hits
+    private static final double TICKS_EARLY = 1;
+
+    private final GameEnvironment environment;
+    private final Collidable[] hits;
+    private Entry[] heap;
+    private int size;
+    // The time the tick being run starts at, in ticks
+    private long now;
+    private double paddleTop;
+    private double paddleBottom;
+    private long predictions;
+
+    /**
+     * Constructs a queue for the balls of the given environment, with no predictions yet.
+     *
+     * @param environment the environment.
+     */
+    ImpactQueue(GameEnvironment environment) {
+        this.environment = environment;
+        this.hits = new Collidable[1];
+        this.heap = new Entry[16];
+        this.paddleTop = Double.POSITIVE_INFINITY;
+        this.paddleBottom = Double.NEGATIVE_INFINITY;
+        for (Collidable c : environment.toArray()) {
+            added(c);
+        }
+    }
+
+    /**
+     * Starts a tick: the balls whose predicted impact comes before the end of the next tick look for hits in it.
+     */
+    void beginTick() {
+        this.now++;
+        while (this.size > 0 && this.heap[0].time < this.now + 1 + TICKS_EARLY) {
+            unschedule(this.heap[0]);
+        }
+    }
+
+    /**
+     * Tells whether a ball has to look for hits this tick, because it has no prediction or its
+     * prediction no longer fits it. Only reads, so balls may ask from several threads at once.
+     *
+     * @param ball the ball, before it moves.
+     * @return true if the ball has to look for hits.
+     */
+    boolean mustLook(Ball ball) {
+        Entry entry = ball.getImpactEntry();
+        if (entry == null || entry.slot < 0) {
+            return true;
+        }
+        Velocity v = ball.getVelocity();
+        return entry.x != ball.getCenterX() || entry.y != ball.getCenterY()
+                || entry.dx != v.getDx() || entry.dy != v.getDy() || entry.radius != ball.getSize();
+    }
+
+    /**
+     * Updates a ball's prediction after it moved.
+     *
+     * @param ball   the ball.
+     * @param looked true if it looked for hits, false if it moved on its prediction.
+     */
+    void moved(Ball ball, boolean looked) {
+        Entry entry = ball.getImpactEntry();
+        if (entry == null) {
+            entry = new Entry(ball);
+            ball.setImpactEntry(entry);
+        }
+        if (!looked) {
+            entry.x = ball.getCenterX();
+            entry.y = ball.getCenterY();
+            return;
+        }
+        predict(entry);
+    }
+
+    /**
+     * Notes that a collidable was added; any ball may hit it, so every ball looks again.
+     *
+     * @param c the collidable.
+     */
+    void added(Collidable c) {
+        if (c.isPaddle()) {
+            Rectangle rect = c.getCollisionRectangle();
+            this.paddleTop = Math.min(this.paddleTop, rect.getUpperLeft().getY() - PADDLE_MARGIN);
+            this.paddleBottom = Math.max(this.paddleBottom,
+                    rect.getUpperLeft().getY() + rect.getHeight() + PADDLE_MARGIN);
+        }
+        clear();
+    }
+
+    /**
+     * Notes that a collidable was removed; only the balls predicted to hit it look again.
+     *
+     * @param c the collidable.
+     */
+    void removed(Collidable c) {
+        int kept = 0;
+        for (int i = 0; i < this.size; i++) {
+            Entry entry = this.heap[i];
+            if (entry.target == c) {
+                entry.slot = -1;
+            } else {
+                this.heap[kept++] = entry;
+            }
+        }
+        if (kept == this.size) {
+            return;
+        }
+        Arrays.fill(this.heap, kept, this.size, null);
+        this.size = kept;
+        for (int i = 0; i < kept; i++) {
+            this.heap[i].slot = i;
+        }
+        for (int i = kept / 2 - 1; i >= 0; i--) {
+            siftDown(i);
+        }
+    }
+
+    /**
+     * Drops every prediction, as when the world is replaced.
+     */
+    void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.heap[i].slot = -1;
+            this.heap[i] = null;
+        }
+        this.size = 0;
+    }
+
+    /**
+     * @return the number of balls with a prediction.
+     */
+    int scheduled() {
+        return this.size;
+    }
+
+    /**
+     * @return the number of predictions made so far.
+     */
+    long getPredictionCount() {
+        return this.predictions;
+    }
+
+    /**
+     * Predicts the next impact of a ball where it stands now, at the end of the current tick.
+     * A ball in the paddle's rows gets no prediction.
+     */
+    private void predict(Entry entry) {
+        Ball ball = entry.ball;
+        Velocity v = ball.getVelocity();
+        double x = ball.getCenterX();
+        double y = ball.getCenterY();
+        double dx = v.getDx();
+        double dy = v.getDy();
+        int radius = ball.getSize();
+        entry.x = x;
+        entry.y = y;
+        entry.dx = dx;
+        entry.dy = dy;
+        entry.radius = radius;
+        entry.target = null;
+        double top = this.paddleTop - radius;
+        double bottom = this.paddleBottom + radius;
+        if (y >= top && y <= bottom) {
+            unschedule(entry);
+            return;
+        }
+        this.predictions++;
+        double speed = Math.sqrt(dx * dx + dy * dy);
+        double horizon = REACH / speed;
+        if (dy > 0 && y < top) {
+            horizon = Math.min(horizon, (top - y) / dy);
+        } else if (dy < 0 && y > bottom) {
+            horizon = Math.min(horizon, (bottom - y) / dy);
+        }
+        double ticks = horizon;
+        if (speed > 0) {
+            double t = this.environment.sweptHit(x, y, dx * horizon, dy * horizon, radius + SLACK, this.hits, 0);
+            entry.target = this.hits[0];
+            this.hits[0] = null;
+            if (entry.target != null) {
+                ticks = t * horizon;
+            }
+        }
+        // The ball stands where the next tick starts
+        schedule(entry, this.now + 1 + ticks);
+    }
+
+    private void schedule(Entry entry, double time) {
+        entry.time = time;
+        if (entry.slot < 0) {
+            if (this.size == this.heap.length) {
+                this.heap = Arrays.copyOf(this.heap, this.size * 2);
+            }
+            entry.slot = this.size;
+            this.heap[this.size++] = entry;
+        }
+        siftUp(entry.slot);
+        siftDown(entry.slot);
+    }
+
+    private void unschedule(Entry entry) {
+        int slot = entry.slot;
+        if (slot < 0) {
+            return;
+        }
+        entry.slot = -1;
+        this.size--;
+        Entry last = this.heap[this.size];
+        this.heap[this.size] = null;
+        if (slot < this.size) {
+            this.heap[slot] = last;
+            last.slot = slot;
+            siftUp(slot);
+            siftDown(last.slot);
+        }
+    }
+
+    private void siftUp(int slot) {
+        Entry entry = this.heap[slot];
+        while (slot > 0) {
+            int parent = (slot - 1) / 2;
+            if (this.heap[parent].time <= entry.time) {
+                break;
+            }
+            place(this.heap[parent], slot);
+            slot = parent;
+        }
+        place(entry, slot);
+    }
+
+    private void siftDown(int slot) {
+        Entry entry = this.heap[slot];
+        while (true) {
+            int child = 2 * slot + 1;
+            if (child >= this.size) {
+                break;
+            }
+            if (child + 1 < this.size && this.heap[child + 1].time < this.heap[child].time) {
+                child++;
+            }
+            if (entry.time <= this.heap[child].time) {
+                break;
+            }
+            place(this.heap[child], slot);
+            slot = child;
+        }
+        place(entry, slot);
+    }
+
+    private void place(Entry entry, int slot) {
+        this.heap[slot] = entry;
+        entry.slot = slot;
+    }
+
+    /**
+     * A ball's prediction: when it hits what, and the state it was made for.
+     */
+    static final class Entry {
+        private final Ball ball;
+        private double time;
+        private int slot;
+        private Collidable target;
+        private double x;
+        private double y;
+        private double dx;
+        private double dy;
+        private int radius;
+
+        Entry(Ball ball) {
+            this.ball = ball;
+            this.slot = -1;
+        }
+    }
+}
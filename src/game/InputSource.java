@@ -0,0 +1,53 @@
+package game;
+
+/**
+ * Something that drives the paddle: the keyboard, a script, a replayed session, a controller or a
+ * network client. The game latches the source at the start of every tick with the time the tick
+ * stands for, and the paddle reads the latched keys through isPressed() for the rest of the tick.
+ * Sources whose input comes in as timestamped events apply each event to the tick whose time it
+ * falls in, and report when the event that changed the keys happened, so the game can measure
+ * the latency from input to paddle.
+ */
+public interface InputSource extends LatchingKeyboard {
+    /**
+     * The bit of the left key in a key mask.
+     */
+    int LEFT = 1;
+    /**
+     * The bit of the right key in a key mask.
+     */
+    int RIGHT = 2;
+    /**
+     * What getLatchedEventNanos() returns when the last latch took no timed event.
+     */
+    long NO_EVENT = Long.MIN_VALUE;
+
+    /**
+     * Takes the keys for the tick that is about to run, from the input up to the given time.
+     *
+     * @param tickNanos the time the tick stands for, on the System.nanoTime() clock.
+     */
+    void latch(long tickNanos);
+
+    /**
+     * Takes the keys for the tick that is about to run, from the input up to now.
+     */
+    @Override
+    default void latch() {
+        latch(System.nanoTime());
+    }
+
+    /**
+     * @return when the first event that changed the keys in the last latch happened, on the
+     *         System.nanoTime() clock, or NO_EVENT if there was none or the source has no such times.
+     */
+    default long getLatchedEventNanos() {
+        return NO_EVENT;
+    }
+
+    /**
+     * Stops taking input, releasing what the source holds, such as a listener or a socket.
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,18 @@
+package game;
+
+import biuoop.DrawSurface;
+
+/**
+ * A sprite that moves between ticks and can be drawn between its previous and current position,
+ * so motion looks smooth when the render rate differs from the physics rate.
+ */
+public interface InterpolatedSprite extends Sprite {
+
+    /**
+     * Draws the sprite at a position between the one it had before the last tick and the current one.
+     *
+     * @param d     The drawing surface to draw on.
+     * @param alpha How far to go from the previous position to the current one, between 0 and 1.
+     */
+    void drawOn(DrawSurface d, double alpha);
+}
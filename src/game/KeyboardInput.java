@@ -0,0 +1,61 @@
+package game;
+
+import java.awt.KeyboardFocusManager;
+import java.awt.KeyEventDispatcher;
+import java.awt.event.KeyEvent;
+
+/**
+ * Takes the arrow keys from the key events of the window that has the focus, as they happen,
+ * instead of polling the keyboard once per tick. Each press and release is queued with the time
+ * the key went down or up (see QueuedInput), so a tap shorter than a tick is not lost, and the
+ * time it spent in the event queue counts towards the measured latency.
+ * The events still reach the window's own KeyboardSensor.
+ */
+public class KeyboardInput extends QueuedInput {
+    private static final long NANOS_PER_MILLI = 1000000L;
+    // Event times further back than this are taken to be clock trouble, not queueing
+    private static final long MAX_QUEUED_NANOS = 1000 * NANOS_PER_MILLI;
+
+    private final KeyEventDispatcher dispatcher;
+    // Only used on the event dispatch thread
+    private int held;
+
+    /**
+     * Constructs an input that listens to the key events of the application.
+     */
+    public KeyboardInput() {
+        this.dispatcher = this::dispatch;
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().addKeyEventDispatcher(this.dispatcher);
+    }
+
+    private boolean dispatch(KeyEvent e) {
+        int key;
+        if (e.getKeyCode() == KeyEvent.VK_LEFT) {
+            key = LEFT;
+        } else if (e.getKeyCode() == KeyEvent.VK_RIGHT) {
+            key = RIGHT;
+        } else {
+            return false;
+        }
+        int keys;
+        if (e.getID() == KeyEvent.KEY_PRESSED) {
+            keys = this.held | key;
+        } else if (e.getID() == KeyEvent.KEY_RELEASED) {
+            keys = this.held & ~key;
+        } else {
+            return false;
+        }
+        // Held keys repeat their presses; only changes are queued
+        if (keys != this.held) {
+            this.held = keys;
+            long queued = (System.currentTimeMillis() - e.getWhen()) * NANOS_PER_MILLI;
+            setKeys(keys, System.nanoTime() - Math.max(0, Math.min(queued, MAX_QUEUED_NANOS)));
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        KeyboardFocusManager.getCurrentKeyboardFocusManager().removeKeyEventDispatcher(this.dispatcher);
+    }
+}
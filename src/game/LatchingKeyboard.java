@@ -0,0 +1,16 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+/**
+ * A KeyboardSensor whose state only changes between ticks.
+ * The game calls latch() at the start of every tick, and isPressed() answers from the latched state
+ * for the rest of the tick, so everything that reads the keyboard during a tick sees the same keys.
+ */
+public interface LatchingKeyboard extends KeyboardSensor {
+
+    /**
+     * Takes the state of the keys for the tick that is about to run.
+     */
+    void latch();
+}
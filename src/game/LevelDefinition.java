@@ -0,0 +1,378 @@
+package game;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Describes a level: the paddle, the balls and the blocks, with their colors and listeners.
+ * Game.initialize(LevelDefinition) builds the level; LevelIO reads and writes it as text or binary.
+ * The blocks are kept in primitive arrays rather than objects, so a layout of 100k blocks takes a
+ * few megabytes until it is built.
+ */
+public class LevelDefinition {
+    /**
+     * The block is removed when hit and counts towards the blocks left.
+     */
+    public static final int REMOVABLE = 1;
+    /**
+     * Hitting the block adds to the score.
+     */
+    public static final int SCORES = 2;
+    /**
+     * A ball that hits the block is removed, like at the bottom border.
+     */
+    public static final int REMOVES_BALLS = 4;
+    /**
+     * The angle of a ball whose direction is drawn from the game's seed.
+     */
+    public static final double RANDOM_ANGLE = Double.NaN;
+    /**
+     * The color index of a block without a color, like a border.
+     */
+    public static final int NO_COLOR = -1;
+
+    private List<Color> palette;
+    private boolean hasPaddle;
+    private double paddleX;
+    private double paddleY;
+    private double paddleWidth;
+    private double paddleHeight;
+    private int paddleSpeed;
+
+    private int ballCount;
+    private double[] ballX;
+    private double[] ballY;
+    private int[] ballRadius;
+    private int[] ballColor;
+    private double[] ballAngle;
+    private double[] ballSpeed;
+
+    private int blockCount;
+    private double[] blockX;
+    private double[] blockY;
+    private double[] blockWidth;
+    private double[] blockHeight;
+    private int[] blockColor;
+    private byte[] blockFlags;
+
+    /**
+     * Constructs an empty level.
+     */
+    public LevelDefinition() {
+        this.palette = new ArrayList<>();
+        this.ballX = new double[4];
+        this.ballY = new double[4];
+        this.ballRadius = new int[4];
+        this.ballColor = new int[4];
+        this.ballAngle = new double[4];
+        this.ballSpeed = new double[4];
+        ensureBlockCapacity(16);
+    }
+
+    /**
+     * Returns the level the game has always had: the paddle at the bottom, three balls in the top
+     * right corner, and seven rows of blocks that grow from 7 to 12 blocks long towards the top.
+     *
+     * @return the standard level.
+     */
+    public static LevelDefinition standard() {
+        LevelDefinition level = new LevelDefinition();
+        level.setPaddle(350, 590, 100, 10, 5);
+
+        // The borders, in the order they have always been added in
+        level.addBlock(800, 0, 0, 600, null, 0);
+        level.addBlock(0, 600, 800, 0, null, REMOVES_BALLS);
+        level.addBlock(0, 0, 800, 0, null, 0);
+        level.addBlock(0, 0, 0, 600, null, 0);
+
+        level.addBall(700, 10, 5, Color.DARK_GRAY, RANDOM_ANGLE, 3);
+        level.addBall(700, 10, 5, Color.BLUE, RANDOM_ANGLE, 3);
+        level.addBall(700, 10, 5, Color.YELLOW, RANDOM_ANGLE, 3);
+
+        Color[] colors = {Color.YELLOW, Color.PINK, Color.ORANGE, Color.GRAY, Color.GREEN, Color.RED};
+        int blockWidth = 50;
+        int blockHeight = 20;
+        int k = 7;
+        for (int j = 0; j < 7; j++) {
+            Color rowColor = colors[j % colors.length];
+            for (int i = 1; i <= k && k <= 12; i++) {
+                level.addBlock(800 - (i * blockWidth), 150 - (j * blockHeight), blockWidth, blockHeight,
+                        rowColor, REMOVABLE | SCORES);
+            }
+            k++;
+        }
+        return level;
+    }
+
+    /**
+     * Sets the paddle.
+     *
+     * @param x      the x-coordinate of the upper-left corner.
+     * @param y      the y-coordinate of the upper-left corner.
+     * @param width  the width.
+     * @param height the height.
+     * @param speed  how far the paddle moves in a tick.
+     */
+    public void setPaddle(double x, double y, double width, double height, int speed) {
+        this.hasPaddle = true;
+        this.paddleX = x;
+        this.paddleY = y;
+        this.paddleWidth = width;
+        this.paddleHeight = height;
+        this.paddleSpeed = speed;
+    }
+
+    /**
+     * Adds a ball.
+     *
+     * @param x      the x-coordinate of the center.
+     * @param y      the y-coordinate of the center.
+     * @param radius the radius.
+     * @param color  the color.
+     * @param angle  the direction in degrees, or RANDOM_ANGLE.
+     * @param speed  the speed.
+     */
+    public void addBall(double x, double y, int radius, Color color, double angle, double speed) {
+        if (this.ballCount == this.ballX.length) {
+            int capacity = this.ballCount * 2;
+            this.ballX = Arrays.copyOf(this.ballX, capacity);
+            this.ballY = Arrays.copyOf(this.ballY, capacity);
+            this.ballRadius = Arrays.copyOf(this.ballRadius, capacity);
+            this.ballColor = Arrays.copyOf(this.ballColor, capacity);
+            this.ballAngle = Arrays.copyOf(this.ballAngle, capacity);
+            this.ballSpeed = Arrays.copyOf(this.ballSpeed, capacity);
+        }
+        int i = this.ballCount++;
+        this.ballX[i] = x;
+        this.ballY[i] = y;
+        this.ballRadius[i] = radius;
+        this.ballColor[i] = colorIndexOf(color);
+        this.ballAngle[i] = angle;
+        this.ballSpeed[i] = speed;
+    }
+
+    /**
+     * Adds a block.
+     *
+     * @param x      the x-coordinate of the upper-left corner.
+     * @param y      the y-coordinate of the upper-left corner.
+     * @param width  the width.
+     * @param height the height.
+     * @param color  the color, or null for a block without one.
+     * @param flags  REMOVABLE, SCORES and REMOVES_BALLS, combined with |.
+     */
+    public void addBlock(double x, double y, double width, double height, Color color, int flags) {
+        addBlock(x, y, width, height, color == null ? NO_COLOR : colorIndexOf(color), flags);
+    }
+
+    /**
+     * Adds a ball whose color is already in the palette.
+     */
+    void addBall(double x, double y, int radius, int colorIndex, double angle, double speed) {
+        addBall(x, y, radius, this.palette.get(colorIndex), angle, speed);
+    }
+
+    /**
+     * Adds a block whose color is already in the palette.
+     */
+    void addBlock(double x, double y, double width, double height, int colorIndex, int flags) {
+        if (this.blockCount == this.blockX.length) {
+            ensureBlockCapacity(this.blockCount * 2);
+        }
+        int i = this.blockCount++;
+        this.blockX[i] = x;
+        this.blockY[i] = y;
+        this.blockWidth[i] = width;
+        this.blockHeight[i] = height;
+        this.blockColor[i] = colorIndex;
+        this.blockFlags[i] = (byte) flags;
+    }
+
+    /**
+     * Makes room for the given number of blocks, so a loader that knows the count up front
+     * fills the arrays without growing them.
+     *
+     * @param capacity the number of blocks.
+     */
+    void ensureBlockCapacity(int capacity) {
+        if (this.blockX != null && this.blockX.length >= capacity) {
+            return;
+        }
+        this.blockX = grow(this.blockX, capacity);
+        this.blockY = grow(this.blockY, capacity);
+        this.blockWidth = grow(this.blockWidth, capacity);
+        this.blockHeight = grow(this.blockHeight, capacity);
+        this.blockColor = this.blockColor == null ? new int[capacity] : Arrays.copyOf(this.blockColor, capacity);
+        this.blockFlags = this.blockFlags == null ? new byte[capacity] : Arrays.copyOf(this.blockFlags, capacity);
+    }
+
+    private static double[] grow(double[] array, int capacity) {
+        return array == null ? new double[capacity] : Arrays.copyOf(array, capacity);
+    }
+
+    /**
+     * Returns the palette index of a color, adding it if needed.
+     * Colors are matched by identity, because blocks compare ball colors by identity.
+     *
+     * @param color the color.
+     * @return the index.
+     */
+    int colorIndexOf(Color color) {
+        for (int i = 0; i < this.palette.size(); i++) {
+            if (this.palette.get(i) == color) {
+                return i;
+            }
+        }
+        this.palette.add(color);
+        return this.palette.size() - 1;
+    }
+
+    /**
+     * @return the colors used by the level.
+     */
+    List<Color> getPalette() {
+        return this.palette;
+    }
+
+    /**
+     * @return true if the level has a paddle.
+     */
+    boolean hasPaddle() {
+        return this.hasPaddle;
+    }
+
+    /**
+     * @return the x-coordinate of the paddle.
+     */
+    double getPaddleX() {
+        return this.paddleX;
+    }
+
+    /**
+     * @return the y-coordinate of the paddle.
+     */
+    double getPaddleY() {
+        return this.paddleY;
+    }
+
+    /**
+     * @return the width of the paddle.
+     */
+    double getPaddleWidth() {
+        return this.paddleWidth;
+    }
+
+    /**
+     * @return the height of the paddle.
+     */
+    double getPaddleHeight() {
+        return this.paddleHeight;
+    }
+
+    /**
+     * @return the speed of the paddle.
+     */
+    int getPaddleSpeed() {
+        return this.paddleSpeed;
+    }
+
+    /**
+     * @return the number of balls.
+     */
+    public int getBallCount() {
+        return this.ballCount;
+    }
+
+    /**
+     * @return the x-coordinate of the center of ball i.
+     */
+    double getBallX(int i) {
+        return this.ballX[i];
+    }
+
+    /**
+     * @return the y-coordinate of the center of ball i.
+     */
+    double getBallY(int i) {
+        return this.ballY[i];
+    }
+
+    /**
+     * @return the radius of ball i.
+     */
+    int getBallRadius(int i) {
+        return this.ballRadius[i];
+    }
+
+    /**
+     * @return the palette index of the color of ball i.
+     */
+    int getBallColor(int i) {
+        return this.ballColor[i];
+    }
+
+    /**
+     * @return the direction of ball i in degrees, or RANDOM_ANGLE.
+     */
+    double getBallAngle(int i) {
+        return this.ballAngle[i];
+    }
+
+    /**
+     * @return the speed of ball i.
+     */
+    double getBallSpeed(int i) {
+        return this.ballSpeed[i];
+    }
+
+    /**
+     * @return the number of blocks, including the borders.
+     */
+    public int getBlockCount() {
+        return this.blockCount;
+    }
+
+    /**
+     * @return the x-coordinate of the upper-left corner of block i.
+     */
+    double getBlockX(int i) {
+        return this.blockX[i];
+    }
+
+    /**
+     * @return the y-coordinate of the upper-left corner of block i.
+     */
+    double getBlockY(int i) {
+        return this.blockY[i];
+    }
+
+    /**
+     * @return the width of block i.
+     */
+    double getBlockWidth(int i) {
+        return this.blockWidth[i];
+    }
+
+    /**
+     * @return the height of block i.
+     */
+    double getBlockHeight(int i) {
+        return this.blockHeight[i];
+    }
+
+    /**
+     * @return the palette index of the color of block i, or NO_COLOR.
+     */
+    int getBlockColor(int i) {
+        return this.blockColor[i];
+    }
+
+    /**
+     * @return the flags of block i.
+     */
+    int getBlockFlags(int i) {
+        return this.blockFlags[i];
+    }
+}
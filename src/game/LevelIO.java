@@ -0,0 +1,375 @@
+package game;
+
+import java.awt.Color;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reads and writes level definitions, as text or in a compact binary form.
+ * <p>
+ * The text form has one item per line; empty lines and lines starting with # are ignored:
+ * <pre>
+ * paddle x y width height speed
+ * ball x y radius color angle|random speed
+ * block x y width height color|none [removable] [scores] [removes-balls]
+ * </pre>
+ * Colors are names of java.awt.Color constants, like red or dark_gray, or #rrggbb.
+ * <p>
+ * The binary form starts with MAGIC and VERSION, followed by the palette (a count and an RGB int
+ * per color), the paddle (a presence byte, four floats and an int speed), the balls (a count, then
+ * x, y, radius, color, angle and speed each) and the blocks (a count, then x, y, width and height
+ * as floats, a short color index and a flags byte each, 19 bytes per block). Big-endian throughout.
+ * Binary levels are read through a memory-mapped file, so a large one is not copied
+ * through a stream first.
+ */
+public final class LevelIO {
+    /**
+     * "ARKL" in ASCII.
+     */
+    public static final int MAGIC = 0x41524B4C;
+    /**
+     * The version of the binary form.
+     */
+    public static final int VERSION = 1;
+    private static final int BLOCK_BYTES = 4 * 4 + 2 + 1;
+    private static final int BALL_BYTES = 4 * 2 + 2 + 2 + 4 * 2;
+    private static final String[] COLOR_NAMES = {
+        "black", "blue", "cyan", "dark_gray", "gray", "green", "light_gray",
+        "magenta", "orange", "pink", "red", "white", "yellow"
+    };
+    private static final Color[] NAMED_COLORS = {
+        Color.BLACK, Color.BLUE, Color.CYAN, Color.DARK_GRAY, Color.GRAY, Color.GREEN, Color.LIGHT_GRAY,
+        Color.MAGENTA, Color.ORANGE, Color.PINK, Color.RED, Color.WHITE, Color.YELLOW
+    };
+
+    private LevelIO() {
+    }
+
+    /**
+     * Reads a level, in the binary form if the file starts with MAGIC and as text otherwise.
+     *
+     * @param file the level file.
+     * @return the level.
+     * @throws IOException if the file can't be read or is not a valid level.
+     */
+    public static LevelDefinition read(Path file) throws IOException {
+        byte[] start = new byte[4];
+        int read;
+        try (InputStream in = Files.newInputStream(file)) {
+            read = in.readNBytes(start, 0, 4);
+        }
+        if (read == 4 && ByteBuffer.wrap(start).getInt() == MAGIC) {
+            return readBinary(file);
+        }
+        return readText(file);
+    }
+
+    /**
+     * Reads a level in the text form.
+     *
+     * @param file the level file.
+     * @return the level.
+     * @throws IOException if the file can't be read or a line is not valid.
+     */
+    public static LevelDefinition readText(Path file) throws IOException {
+        LevelDefinition level = new LevelDefinition();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                try {
+                    parseLine(level, line.split("\\s+"));
+                } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                    throw new IOException(file + ":" + lineNumber + ": " + e.getMessage(), e);
+                }
+            }
+        }
+        return level;
+    }
+
+    private static void parseLine(LevelDefinition level, String[] words) {
+        switch (words[0]) {
+            case "paddle":
+                level.setPaddle(Double.parseDouble(words[1]), Double.parseDouble(words[2]),
+                        Double.parseDouble(words[3]), Double.parseDouble(words[4]), Integer.parseInt(words[5]));
+                break;
+            case "ball":
+                level.addBall(Double.parseDouble(words[1]), Double.parseDouble(words[2]),
+                        Integer.parseInt(words[3]), parseColor(level, words[4]),
+                        words[5].equals("random") ? LevelDefinition.RANDOM_ANGLE : Double.parseDouble(words[5]),
+                        Double.parseDouble(words[6]));
+                break;
+            case "block":
+                int flags = 0;
+                for (int i = 6; i < words.length; i++) {
+                    flags |= parseFlag(words[i]);
+                }
+                level.addBlock(Double.parseDouble(words[1]), Double.parseDouble(words[2]),
+                        Double.parseDouble(words[3]), Double.parseDouble(words[4]),
+                        words[5].equals("none") ? null : parseColor(level, words[5]), flags);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown item " + words[0]);
+        }
+    }
+
+    private static int parseFlag(String word) {
+        switch (word) {
+            case "removable":
+                return LevelDefinition.REMOVABLE;
+            case "scores":
+                return LevelDefinition.SCORES;
+            case "removes-balls":
+                return LevelDefinition.REMOVES_BALLS;
+            default:
+                throw new IllegalArgumentException("unknown block flag " + word);
+        }
+    }
+
+    private static Color parseColor(LevelDefinition level, String word) {
+        if (word.startsWith("#")) {
+            // The same color given twice must be the same object, blocks compare ball colors by identity
+            int rgb = Integer.parseInt(word.substring(1), 16) & 0xFFFFFF;
+            for (Color color : level.getPalette()) {
+                if ((color.getRGB() & 0xFFFFFF) == rgb) {
+                    return color;
+                }
+            }
+            return colorOf(rgb);
+        }
+        for (int i = 0; i < COLOR_NAMES.length; i++) {
+            if (COLOR_NAMES[i].equals(word)) {
+                return NAMED_COLORS[i];
+            }
+        }
+        throw new IllegalArgumentException("unknown color " + word);
+    }
+
+    /**
+     * Returns the java.awt.Color constant with the given RGB value, or a new color if there is none,
+     * so a color read from a file is the same object as the constant the code uses.
+     */
+    private static Color colorOf(int rgb) {
+        for (Color named : NAMED_COLORS) {
+            if ((named.getRGB() & 0xFFFFFF) == (rgb & 0xFFFFFF)) {
+                return named;
+            }
+        }
+        return new Color(rgb & 0xFFFFFF);
+    }
+
+    private static String colorName(Color color) {
+        for (int i = 0; i < NAMED_COLORS.length; i++) {
+            if (NAMED_COLORS[i] == color) {
+                return COLOR_NAMES[i];
+            }
+        }
+        return String.format("#%06x", color.getRGB() & 0xFFFFFF);
+    }
+
+    /**
+     * Writes a level in the text form.
+     *
+     * @param level the level.
+     * @param file  the file to write.
+     * @throws IOException if the file can't be written.
+     */
+    public static void writeText(LevelDefinition level, Path file) throws IOException {
+        List<Color> palette = level.getPalette();
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (level.hasPaddle()) {
+                out.write(String.format(Locale.ROOT, "paddle %s %s %s %s %d%n", number(level.getPaddleX()),
+                        number(level.getPaddleY()), number(level.getPaddleWidth()),
+                        number(level.getPaddleHeight()), level.getPaddleSpeed()));
+            }
+            for (int i = 0; i < level.getBallCount(); i++) {
+                double angle = level.getBallAngle(i);
+                out.write(String.format(Locale.ROOT, "ball %s %s %d %s %s %s%n", number(level.getBallX(i)),
+                        number(level.getBallY(i)), level.getBallRadius(i),
+                        colorName(palette.get(level.getBallColor(i))),
+                        Double.isNaN(angle) ? "random" : number(angle), number(level.getBallSpeed(i))));
+            }
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < level.getBlockCount(); i++) {
+                int color = level.getBlockColor(i);
+                int flags = level.getBlockFlags(i);
+                line.setLength(0);
+                line.append("block ").append(number(level.getBlockX(i)))
+                        .append(' ').append(number(level.getBlockY(i)))
+                        .append(' ').append(number(level.getBlockWidth(i)))
+                        .append(' ').append(number(level.getBlockHeight(i)))
+                        .append(' ').append(color == LevelDefinition.NO_COLOR ? "none" : colorName(palette.get(color)));
+                if ((flags & LevelDefinition.REMOVABLE) != 0) {
+                    line.append(" removable");
+                }
+                if ((flags & LevelDefinition.SCORES) != 0) {
+                    line.append(" scores");
+                }
+                if ((flags & LevelDefinition.REMOVES_BALLS) != 0) {
+                    line.append(" removes-balls");
+                }
+                out.write(line.append(System.lineSeparator()).toString());
+            }
+        }
+    }
+
+    private static String number(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    /**
+     * Writes a level in the binary form. Coordinates are stored as floats.
+     *
+     * @param level the level.
+     * @param file  the file to write.
+     * @throws IOException if the file can't be written.
+     * @throws IllegalArgumentException if the palette has more colors than a color index can hold.
+     */
+    public static void writeBinary(LevelDefinition level, Path file) throws IOException {
+        List<Color> palette = level.getPalette();
+        // Color indices are stored as shorts
+        if (palette.size() > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("The palette has " + palette.size() + " colors, at most "
+                    + Short.MAX_VALUE + " can be written");
+        }
+        int size = 4 + 1 + 4 + 4 * palette.size() + 1 + 4 * 4 + 4
+                + 4 + BALL_BYTES * level.getBallCount() + 4 + BLOCK_BYTES * level.getBlockCount();
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC);
+        buffer.put((byte) VERSION);
+        buffer.putInt(palette.size());
+        for (Color color : palette) {
+            buffer.putInt(color.getRGB());
+        }
+        buffer.put((byte) (level.hasPaddle() ? 1 : 0));
+        buffer.putFloat((float) level.getPaddleX());
+        buffer.putFloat((float) level.getPaddleY());
+        buffer.putFloat((float) level.getPaddleWidth());
+        buffer.putFloat((float) level.getPaddleHeight());
+        buffer.putInt(level.getPaddleSpeed());
+        buffer.putInt(level.getBallCount());
+        for (int i = 0; i < level.getBallCount(); i++) {
+            buffer.putFloat((float) level.getBallX(i));
+            buffer.putFloat((float) level.getBallY(i));
+            buffer.putShort((short) level.getBallRadius(i));
+            buffer.putShort((short) level.getBallColor(i));
+            buffer.putFloat((float) level.getBallAngle(i));
+            buffer.putFloat((float) level.getBallSpeed(i));
+        }
+        buffer.putInt(level.getBlockCount());
+        for (int i = 0; i < level.getBlockCount(); i++) {
+            buffer.putFloat((float) level.getBlockX(i));
+            buffer.putFloat((float) level.getBlockY(i));
+            buffer.putFloat((float) level.getBlockWidth(i));
+            buffer.putFloat((float) level.getBlockHeight(i));
+            buffer.putShort((short) level.getBlockColor(i));
+            buffer.put((byte) level.getBlockFlags(i));
+        }
+        buffer.flip();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a level in the binary form through a memory-mapped view of the file.
+     *
+     * @param file the level file.
+     * @return the level.
+     * @throws IOException if the file can't be read or is not a valid binary level.
+     */
+    public static LevelDefinition readBinary(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return readBinary(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new IOException(file + ": the level is truncated", e);
+        }
+    }
+
+    private static LevelDefinition readBinary(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a binary level");
+        }
+        int version = buffer.get() & 0xFF;
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary level version " + version);
+        }
+        LevelDefinition level = new LevelDefinition();
+        // Two palette entries may map to the same color object, so file indices are translated
+        int colorCount = buffer.getInt();
+        if (colorCount < 0 || colorCount * 4L > buffer.remaining()) {
+            throw new IOException("The level is truncated");
+        }
+        int[] colors = new int[colorCount];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = level.colorIndexOf(colorOf(buffer.getInt()));
+        }
+        boolean hasPaddle = buffer.get() != 0;
+        double paddleX = buffer.getFloat();
+        double paddleY = buffer.getFloat();
+        double paddleWidth = buffer.getFloat();
+        double paddleHeight = buffer.getFloat();
+        int paddleSpeed = buffer.getInt();
+        if (hasPaddle) {
+            level.setPaddle(paddleX, paddleY, paddleWidth, paddleHeight, paddleSpeed);
+        }
+        int ballCount = buffer.getInt();
+        if (ballCount < 0 || (long) ballCount * BALL_BYTES > buffer.remaining()) {
+            throw new IOException("The level is truncated");
+        }
+        for (int i = 0; i < ballCount; i++) {
+            double x = buffer.getFloat();
+            double y = buffer.getFloat();
+            int radius = buffer.getShort();
+            int color = colorAt(colors, buffer.getShort());
+            double angle = buffer.getFloat();
+            double speed = buffer.getFloat();
+            level.addBall(x, y, radius, color, angle, speed);
+        }
+        int blockCount = buffer.getInt();
+        if (blockCount < 0 || (long) blockCount * BLOCK_BYTES > buffer.remaining()) {
+            throw new IOException("The level is truncated");
+        }
+        level.ensureBlockCapacity(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            double x = buffer.getFloat();
+            double y = buffer.getFloat();
+            double width = buffer.getFloat();
+            double height = buffer.getFloat();
+            int color = buffer.getShort();
+            int flags = buffer.get();
+            level.addBlock(x, y, width, height,
+                    color == LevelDefinition.NO_COLOR ? LevelDefinition.NO_COLOR : colorAt(colors, color), flags);
+        }
+        return level;
+    }
+
+    private static int colorAt(int[] colors, int index) throws IOException {
+        if (index < 0 || index >= colors.length) {
+            throw new IOException("Color index " + index + " is not in the palette");
+        }
+        return colors[index];
+    }
+}
@@ -6,14 +6,19 @@ import shapes.Point;
 import shapes.Rectangle;
 
 import java.awt.*;
+import java.nio.ByteBuffer;
 
 /**
  * The Paddle class represents a paddle controlled by the player.
  */
-public class Paddle implements Sprite, Collidable {
+public class Paddle implements InterpolatedSprite, Collidable {
+    // The number of bytes saveState writes
+    static final int STATE_BYTES = 3 * Double.BYTES + 1;
     private static final double EPSILON = 0.0000001;
     private biuoop.KeyboardSensor keyboard;
     private Rectangle rectangle;
+    private double previousX;
+    private boolean hasPreviousX;
     private int speed;
 
     /**
@@ -37,8 +42,7 @@ public class Paddle implements Sprite, Collidable {
         if (newX < 0) {
             newX = 800;
         }
-        this.rectangle = new Rectangle(new Point(newX, rectangle.getUpperLeft().getY()), rectangle.getWidth(),
-                rectangle.getHeight());
+        this.rectangle.moveTo(newX, rectangle.getUpperLeft().getY());
     }
 
     /**
@@ -49,8 +53,7 @@ public class Paddle implements Sprite, Collidable {
         if (newX + rectangle.getWidth() > 800) {
             newX = 0 - rectangle.getWidth();
         }
-        this.rectangle = new Rectangle(new Point(newX, rectangle.getUpperLeft().getY()), rectangle.getWidth(),
-                rectangle.getHeight());
+        this.rectangle.moveTo(newX, rectangle.getUpperLeft().getY());
     }
 
     /**
@@ -59,6 +62,8 @@ public class Paddle implements Sprite, Collidable {
     // Arkanoid.Sprites.arkanoid.Game.arkanoid.Sprite
     @Override
     public void timePassed() {
+        this.previousX = this.rectangle.getUpperLeft().getX();
+        this.hasPreviousX = true;
         if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
             moveLeft();
         }
@@ -81,6 +86,38 @@ public class Paddle implements Sprite, Collidable {
         d.fillRectangle((int) p1.getX(), (int) p1.getY(), (int) width, (int) height);
     }
 
+    /**
+     * Draws the paddle between its position before the last tick and its current position.
+     * When the paddle wrapped around the screen it is drawn where it is now.
+     *
+     * @param d     The draw surface.
+     * @param alpha How far to go from the previous position to the current one, between 0 and 1.
+     */
+    @Override
+    public void drawOn(DrawSurface d, double alpha) {
+        if (!this.hasPreviousX) {
+            this.drawOn(d);
+            return;
+        }
+        double previousX = this.previousX;
+        double currentX = this.rectangle.getUpperLeft().getX();
+        if (Math.abs(currentX - previousX) > this.speed) {
+            this.drawOn(d);
+            return;
+        }
+        double x = previousX + (currentX - previousX) * alpha;
+        d.setColor(Color.yellow);
+        d.fillRectangle((int) x, (int) this.rectangle.getUpperLeft().getY(), (int) this.rectangle.getWidth(),
+                (int) this.rectangle.getHeight());
+    }
+
+    /**
+     * @return how far the paddle moves in a tick.
+     */
+    int getSpeed() {
+        return this.speed;
+    }
+
     /**
      * Gets the collision rectangle of the paddle.
      *
@@ -93,6 +130,7 @@ public class Paddle implements Sprite, Collidable {
 
     /**
      * Handles the ball hitting the paddle.
+     * The given velocity is updated in place and returned.
      *
      * @param collisionPoint  The point of collision.
      * @param currentVelocity The current velocity of the ball.
@@ -113,22 +151,21 @@ public class Paddle implements Sprite, Collidable {
         double dy = currentVelocity.getDy();
 
         // Calculate the new velocity based on the region of the paddle hit
-        Velocity newVelocity;
         if (collisionX > startX && collisionX < startX + regionWidth) {
-            newVelocity = Velocity.fromAngleAndSpeed(300, currentVelocity.getSpeed());
-            return newVelocity;
+            currentVelocity.setFromAngleAndSpeed(300, currentVelocity.getSpeed());
+            return currentVelocity;
         } else if (collisionX > startX + regionWidth && collisionX < startX + (2 * regionWidth)) {
-            newVelocity = Velocity.fromAngleAndSpeed(360, currentVelocity.getSpeed());
-            return newVelocity;
+            currentVelocity.setFromAngleAndSpeed(360, currentVelocity.getSpeed());
+            return currentVelocity;
         } else if (collisionX > startX + (2 * regionWidth) && collisionX < startX + (3 * regionWidth)) {
-            newVelocity = new Velocity(dx, -dy);
-            return newVelocity;
+            currentVelocity.set(dx, -dy);
+            return currentVelocity;
         } else if (collisionX > startX + (3 * regionWidth) && collisionX < startX + (4 * regionWidth)) {
-            newVelocity = Velocity.fromAngleAndSpeed(30, currentVelocity.getSpeed());
-            return newVelocity;
+            currentVelocity.setFromAngleAndSpeed(30, currentVelocity.getSpeed());
+            return currentVelocity;
         } else if (collisionX > startX + (4 * regionWidth) && collisionX < startX + (5 * regionWidth)) {
-            newVelocity = Velocity.fromAngleAndSpeed(60, currentVelocity.getSpeed());
-            return newVelocity;
+            currentVelocity.setFromAngleAndSpeed(60, currentVelocity.getSpeed());
+            return currentVelocity;
         } else
             if ((Math.abs(collisionX - startX) < EPSILON && Math.abs(collisionY - startY) < EPSILON)
                 || (Math.abs(collisionX - (startX + width)) < EPSILON && Math.abs(collisionY - startY) < EPSILON)
@@ -138,7 +175,8 @@ public class Paddle implements Sprite, Collidable {
             // Handle corner cases
             dx = -dx;
             dy = -dy;
-            return new Velocity(dx, dy);
+            currentVelocity.set(dx, dy);
+            return currentVelocity;
         } else {
             // Handle edge cases more precisely
             if (Math.abs(collisionPoint.getX() - this.rectangle.getUpperLeft().getX()) < EPSILON
@@ -146,9 +184,44 @@ public class Paddle implements Sprite, Collidable {
                     + this.rectangle.getWidth())) < EPSILON) {
                 dx = -dx;
             }
-            return new Velocity(dx, dy);
+            currentVelocity.set(dx, dy);
+            return currentVelocity;
         }
     }
+    /**
+     * Mixes the position of the paddle into a hash.
+     *
+     * @param hash the hash so far.
+     * @return the new hash.
+     */
+    long hashState(long hash) {
+        return StateHash.mix(hash, this.rectangle.getUpperLeft().getX());
+    }
+
+    /**
+     * Writes the state of the paddle that changes as the game is played: its position and the
+     * position it had before the last tick.
+     *
+     * @param out where to write the state.
+     */
+    void saveState(ByteBuffer out) {
+        out.putDouble(this.rectangle.getUpperLeft().getX());
+        out.putDouble(this.rectangle.getUpperLeft().getY());
+        out.putDouble(this.previousX);
+        out.put((byte) (this.hasPreviousX ? 1 : 0));
+    }
+
+    /**
+     * Reads the state written by saveState.
+     *
+     * @param in where to read the state from.
+     */
+    void loadState(ByteBuffer in) {
+        this.rectangle.moveTo(in.getDouble(), in.getDouble());
+        this.previousX = in.getDouble();
+        this.hasPreviousX = in.get() != 0;
+    }
+
     /**
      * Adds the paddle to the game.
      *
@@ -0,0 +1,20 @@
+package game;
+
+/**
+ * A sprite whose step can be split into a planning part, which only reads the world and can run
+ * in parallel with other sprites, and a commit part, which changes the world and runs serially.
+ * Running planStep() and then commitStep() has the same effect as timePassed().
+ */
+public interface ParallelSprite extends Sprite {
+
+    /**
+     * Plans the next step against the current world without changing anything outside this sprite.
+     * May be called from any thread, concurrently with the planStep() of other sprites.
+     */
+    void planStep();
+
+    /**
+     * Applies the planned step. Called serially, on the game thread, after all sprites planned.
+     */
+    void commitStep();
+}
@@ -0,0 +1,71 @@
+package game;
+
+import biuoop.DrawSurface;
+
+import java.awt.Color;
+import java.util.Locale;
+
+/**
+ * A debug overlay that shows the last summary of a TickProfiler in the top-left corner.
+ * The text is rebuilt only when a new summary is ready, once per profiler window.
+ */
+public class ProfilerOverlay implements Sprite {
+    private static final int X = 10;
+    private static final int Y = 40;
+    private static final int LINE_HEIGHT = 14;
+    private static final int FONT_SIZE = 12;
+    private static final int WIDTH = 330;
+    private static final int[] TIMED = {TickProfiler.FRAME, TickProfiler.TICK, TickProfiler.SPRITES,
+        TickProfiler.HITS, TickProfiler.DRAW};
+
+    private TickProfiler profiler;
+    private String[] lines;
+    private long shownSummary;
+
+    /**
+     * Constructs an overlay for a profiler.
+     *
+     * @param profiler the profiler to show.
+     */
+    public ProfilerOverlay(TickProfiler profiler) {
+        this.profiler = profiler;
+        this.lines = new String[0];
+        this.shownSummary = -1;
+    }
+
+    @Override
+    public void drawOn(DrawSurface d) {
+        if (this.shownSummary != this.profiler.getSummaryCount()) {
+            this.shownSummary = this.profiler.getSummaryCount();
+            this.lines = format(this.profiler);
+        }
+        d.setColor(Color.WHITE);
+        d.fillRectangle(X - 4, Y - LINE_HEIGHT, WIDTH, LINE_HEIGHT * this.lines.length + 6);
+        d.setColor(Color.BLACK);
+        for (int i = 0; i < this.lines.length; i++) {
+            d.drawText(X, Y + i * LINE_HEIGHT, this.lines[i], FONT_SIZE);
+        }
+    }
+
+    @Override
+    public void timePassed() {
+    }
+
+    private static String[] format(TickProfiler p) {
+        String[] lines = new String[TIMED.length + 4];
+        lines[0] = String.format(Locale.ROOT, "%d ticks, %d frames in the last window", p.getTicks(), p.getFrames());
+        for (int i = 0; i < TIMED.length; i++) {
+            int m = TIMED[i];
+            lines[i + 1] = String.format(Locale.ROOT, "%-8s p50 %7.1f  p99 %7.1f  max %7.1f us",
+                    TickProfiler.nameOf(m).replace("_ns", ""), p.getP50(m) / 1e3, p.getP99(m) / 1e3, p.getMax(m) / 1e3);
+        }
+        lines[TIMED.length + 1] = String.format(Locale.ROOT, "queries/tick %.1f, tests/query %.1f, events/tick %.2f",
+                p.getMean(TickProfiler.QUERIES), p.getTestsPerQuery(), p.getMean(TickProfiler.EVENTS));
+        lines[TIMED.length + 2] = String.format(Locale.ROOT, "allocated/tick p50 %d  p99 %d  max %d bytes",
+                p.getP50(TickProfiler.ALLOCATED), p.getP99(TickProfiler.ALLOCATED), p.getMax(TickProfiler.ALLOCATED));
+        lines[TIMED.length + 3] = String.format(Locale.ROOT, "input to tick p50 %.1f ms, to screen p50 %.1f  p99 %.1f ms",
+                p.getP50(TickProfiler.INPUT) / 1e6, p.getP50(TickProfiler.INPUT_SHOWN) / 1e6,
+                p.getP99(TickProfiler.INPUT_SHOWN) / 1e6);
+        return lines;
+    }
+}
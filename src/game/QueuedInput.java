@@ -0,0 +1,132 @@
+package game;
+
+/**
+ * An input source fed with timestamped key changes from any thread.
+ * Changes wait in a queue until a tick whose time is at or after theirs latches them, so changes
+ * that come in while several ticks are caught up on go to the ticks they belong to. A key that
+ * was pressed at any time since the last tick counts as pressed in the next one, even if it was
+ * released again, so a tap shorter than a tick still moves the paddle for a tick.
+ */
+public class QueuedInput implements InputSource {
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Guarded by this: the changes not latched yet, oldest first, in a ring
+    private long[] times;
+    private int[] masks;
+    private int head;
+    private int count;
+    private long lastTime;
+    private int newest;
+    // Only used by the thread that steps the game
+    private int state;
+    private int latched;
+    private long latchedEventNanos;
+
+    /**
+     * Constructs an input with no keys pressed.
+     */
+    public QueuedInput() {
+        this.times = new long[INITIAL_CAPACITY];
+        this.masks = new int[INITIAL_CAPACITY];
+        this.latchedEventNanos = NO_EVENT;
+    }
+
+    /**
+     * Returns the key mask of a name: none, left, right or both.
+     *
+     * @param name the name of the keys.
+     * @return the key mask, of InputSource.LEFT and InputSource.RIGHT.
+     */
+    public static int keysOf(String name) {
+        switch (name) {
+            case "none":
+                return 0;
+            case "left":
+                return LEFT;
+            case "right":
+                return RIGHT;
+            case "both":
+                return LEFT | RIGHT;
+            default:
+                throw new IllegalArgumentException("Unknown keys " + name + ", expected none, left, right or both");
+        }
+    }
+
+    /**
+     * Sets which keys are pressed from now on. May be called from any thread.
+     *
+     * @param keys the key mask, of InputSource.LEFT and InputSource.RIGHT.
+     */
+    public void setKeys(int keys) {
+        setKeys(keys, System.nanoTime());
+    }
+
+    /**
+     * Sets which keys are pressed from the given time on. May be called from any thread. A time
+     * before that of the change set last counts as the same time.
+     *
+     * @param keys  the key mask, of InputSource.LEFT and InputSource.RIGHT.
+     * @param nanos when the keys changed, on the System.nanoTime() clock.
+     */
+    public synchronized void setKeys(int keys, long nanos) {
+        if (this.count == this.times.length) {
+            grow();
+        }
+        long time = this.count > 0 && nanos - this.lastTime < 0 ? this.lastTime : nanos;
+        int tail = (this.head + this.count) & (this.times.length - 1);
+        this.times[tail] = time;
+        this.masks[tail] = keys;
+        this.count++;
+        this.lastTime = time;
+        this.newest = keys;
+    }
+
+    /**
+     * @return the keys set last, whether or not a tick took them yet.
+     */
+    public synchronized int getKeys() {
+        return this.newest;
+    }
+
+    @Override
+    public synchronized void latch(long tickNanos) {
+        int tapped = 0;
+        long first = NO_EVENT;
+        int ring = this.times.length - 1;
+        while (this.count > 0 && this.times[this.head] - tickNanos <= 0) {
+            int keys = this.masks[this.head];
+            if (keys != this.state && first == NO_EVENT) {
+                first = this.times[this.head];
+            }
+            tapped |= keys & ~this.state;
+            this.state = keys;
+            this.head = (this.head + 1) & ring;
+            this.count--;
+        }
+        this.latched = this.state | tapped;
+        this.latchedEventNanos = first;
+    }
+
+    @Override
+    public long getLatchedEventNanos() {
+        return this.latchedEventNanos;
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return SessionLog.isPressed(this.latched, key);
+    }
+
+    private void grow() {
+        int length = this.times.length;
+        long[] times = new long[length * 2];
+        int[] masks = new int[length * 2];
+        for (int i = 0; i < this.count; i++) {
+            times[i] = this.times[(this.head + i) & (length - 1)];
+            masks[i] = this.masks[(this.head + i) & (length - 1)];
+        }
+        this.times = times;
+        this.masks = masks;
+        this.head = 0;
+    }
+}
@@ -0,0 +1,42 @@
+package game;
+
+/**
+ * A keyboard whose keys are set from other threads, for example by a network client or a bot.
+ * Changes are queued with the time they were made and taken by the ticks they fall in, so a tap
+ * between two ticks still moves the paddle for one tick (see QueuedInput).
+ */
+public class RemoteKeyboard extends QueuedInput {
+
+    /**
+     * Sets which keys are pressed. May be called from any thread.
+     *
+     * @param left  true if the left key is pressed.
+     * @param right true if the right key is pressed.
+     */
+    public void setKeys(boolean left, boolean right) {
+        setKeys((left ? LEFT : 0) | (right ? RIGHT : 0));
+    }
+
+    /**
+     * Sets which keys are pressed from a name: none, left, right or both.
+     *
+     * @param name the name of the keys.
+     */
+    public void setKeys(String name) {
+        setKeys(keysOf(name));
+    }
+
+    /**
+     * @return true if the left key is set, whether or not a tick took it yet.
+     */
+    public boolean isLeftSet() {
+        return (getKeys() & LEFT) != 0;
+    }
+
+    /**
+     * @return true if the right key is set, whether or not a tick took it yet.
+     */
+    public boolean isRightSet() {
+        return (getKeys() & RIGHT) != 0;
+    }
+}
@@ -0,0 +1,135 @@
+package game;
+
+import biuoop.DrawSurface;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Draws recorded frames on a thread of its own, so the game thread can step the next ticks
+ * while a frame is being drawn and shown.
+ * One frame is drawn at a time: submit() waits until the previous frame is done, so the game
+ * records each frame into one of two buffers in turn while the other one is drawn.
+ */
+final class RenderThread {
+    private final Supplier<DrawSurface> surfaces;
+    private final Consumer<DrawSurface> show;
+    private Thread thread;
+    // Guarded by this
+    private DrawCommandBuffer pending;
+    private boolean drawing;
+    private boolean closed;
+    private long drawNanos;
+    private long shownNanos;
+
+    /**
+     * Constructs a render thread, started on the first submitted frame.
+     *
+     * @param surfaces gives the surface to draw each frame on.
+     * @param show     shows a surface once the frame is drawn on it.
+     */
+    RenderThread(Supplier<DrawSurface> surfaces, Consumer<DrawSurface> show) {
+        this.surfaces = surfaces;
+        this.show = show;
+    }
+
+    /**
+     * Hands a recorded frame to the thread, waiting while another frame is waiting or being drawn.
+     * The buffer must not be changed until the next call returns.
+     *
+     * @param buffer the frame.
+     */
+    synchronized void submit(DrawCommandBuffer buffer) {
+        if (this.thread == null) {
+            this.thread = new Thread(this::loop, "render");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+        awaitIdle();
+        this.pending = buffer;
+        notifyAll();
+    }
+
+    /**
+     * Waits until every submitted frame was drawn.
+     */
+    synchronized void awaitIdle() {
+        boolean interrupted = false;
+        while (this.pending != null || this.drawing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return how long the last frame took to draw and show, in nanoseconds.
+     */
+    synchronized long getDrawNanos() {
+        return this.drawNanos;
+    }
+
+    /**
+     * @return when the last frame was shown, on the System.nanoTime() clock.
+     */
+    synchronized long getShownNanos() {
+        return this.shownNanos;
+    }
+
+    /**
+     * Draws the frames that were submitted and stops the thread.
+     */
+    void close() {
+        synchronized (this) {
+            awaitIdle();
+            this.closed = true;
+            notifyAll();
+        }
+        if (this.thread != null) {
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void loop() {
+        while (true) {
+            DrawCommandBuffer buffer;
+            synchronized (this) {
+                while (this.pending == null && !this.closed) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                if (this.pending == null) {
+                    return;
+                }
+                buffer = this.pending;
+                this.pending = null;
+                this.drawing = true;
+            }
+            long start = System.nanoTime();
+            try {
+                DrawSurface d = this.surfaces.get();
+                buffer.flush(d);
+                this.show.accept(d);
+            } finally {
+                synchronized (this) {
+                    this.drawing = false;
+                    this.shownNanos = System.nanoTime();
+                    this.drawNanos = this.shownNanos - start;
+                    notifyAll();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Every object ever added to one part of a game, each with a fixed slot, and a bit set of the
+ * slots that are in the game now. Snapshots record the bit set instead of the objects.
+ * The bit set is copy-on-write: share() hands it out and the next change copies it first, so a
+ * snapshot costs nothing while nothing is added or removed.
+ *
+ * @param <T> the type of the objects.
+ */
+final class Roster<T> {
+    private final List<T> items;
+    private final Map<T, Integer> slots;
+    private long[] present;
+    private boolean shared;
+
+    /**
+     * Constructs an empty roster.
+     */
+    Roster() {
+        this.items = new ArrayList<>();
+        this.slots = new IdentityHashMap<>();
+        this.present = new long[1];
+    }
+
+    /**
+     * Marks an object as present, giving it a slot if it has none yet.
+     *
+     * @param item the object.
+     * @return its slot.
+     */
+    int add(T item) {
+        int slot = register(item);
+        set(slot, true);
+        return slot;
+    }
+
+    /**
+     * Gives an object a slot if it has none yet, without marking it as present.
+     *
+     * @param item the object.
+     * @return its slot.
+     */
+    int register(T item) {
+        Integer slot = this.slots.get(item);
+        if (slot == null) {
+            slot = this.items.size();
+            this.items.add(item);
+            this.slots.put(item, slot);
+        }
+        return slot;
+    }
+
+    /**
+     * Marks an object as not present, if it is in the roster.
+     *
+     * @param item the object.
+     */
+    void remove(T item) {
+        Integer slot = this.slots.get(item);
+        if (slot != null) {
+            set(slot, false);
+        }
+    }
+
+    /**
+     * @param item an object.
+     * @return true if it is present now.
+     */
+    boolean contains(T item) {
+        Integer slot = this.slots.get(item);
+        return slot != null && (this.present[slot >>> 6] & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param item an object.
+     * @return its slot, or -1 if it was never added.
+     */
+    int slotOf(T item) {
+        Integer slot = this.slots.get(item);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * @param slot a slot.
+     * @return the object in the slot.
+     */
+    T get(int slot) {
+        return this.items.get(slot);
+    }
+
+    /**
+     * @return the number of slots.
+     */
+    int size() {
+        return this.items.size();
+    }
+
+    /**
+     * Hands out the bit set of present slots. It must not be changed; the roster copies it
+     * before its next change.
+     *
+     * @return the bit set.
+     */
+    long[] share() {
+        this.shared = true;
+        return this.present;
+    }
+
+    /**
+     * Makes a shared bit set the set of present slots, as when a snapshot is restored.
+     *
+     * @param bits the bit set.
+     */
+    void restore(long[] bits) {
+        this.present = bits;
+        this.shared = true;
+    }
+
+    /**
+     * @param bits a bit set.
+     * @return true if it is the roster's current bit set, or equal to it.
+     */
+    boolean isCurrent(long[] bits) {
+        return bits == this.present || Arrays.equals(bits, this.present);
+    }
+
+    /**
+     * Returns the objects present now but not in a bit set.
+     *
+     * @param bits a bit set.
+     * @return the objects, in slot order.
+     */
+    List<T> presentOnlyNow(long[] bits) {
+        return difference(this.present, bits);
+    }
+
+    /**
+     * Returns the objects present in a bit set but not now.
+     *
+     * @param bits a bit set.
+     * @return the objects, in slot order.
+     */
+    List<T> presentOnlyIn(long[] bits) {
+        return difference(bits, this.present);
+    }
+
+    /**
+     * Returns the objects present in a bit set.
+     *
+     * @param bits a bit set.
+     * @return the objects, in slot order.
+     */
+    List<T> presentIn(long[] bits) {
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < bits.length; i++) {
+            long word = bits[i];
+            while (word != 0) {
+                result.add(this.items.get(i * 64 + Long.numberOfTrailingZeros(word)));
+                word &= word - 1;
+            }
+        }
+        return result;
+    }
+
+    private List<T> difference(long[] bits, long[] minus) {
+        List<T> result = new ArrayList<>();
+        for (int i = 0; i < bits.length; i++) {
+            long only = bits[i] & ~(i < minus.length ? minus[i] : 0);
+            while (only != 0) {
+                result.add(this.items.get(i * 64 + Long.numberOfTrailingZeros(only)));
+                only &= only - 1;
+            }
+        }
+        return result;
+    }
+
+    private void set(int slot, boolean value) {
+        int word = slot >>> 6;
+        if (this.shared || word >= this.present.length) {
+            int length = word < this.present.length ? this.present.length : Math.max(word + 1, this.present.length * 2);
+            this.present = Arrays.copyOf(this.present, length);
+            this.shared = false;
+        }
+        if (value) {
+            this.present[word] |= 1L << slot;
+        } else {
+            this.present[word] &= ~(1L << slot);
+        }
+    }
+}
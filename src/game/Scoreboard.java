@@ -0,0 +1,51 @@
+package game;
+
+/**
+ * An immutable snapshot of a game's counters: the score, the blocks left and the balls left.
+ * The game publishes its counters at the end of every tick and a snapshot reads the published
+ * values, so a renderer or a stats thread taking one while the game runs sees a single tick.
+ */
+public final class Scoreboard {
+    private final long score;
+    private final long remainingBlocks;
+    private final long remainingBalls;
+
+    /**
+     * Constructs a snapshot of the given counts.
+     *
+     * @param score           the score.
+     * @param remainingBlocks the number of blocks left.
+     * @param remainingBalls  the number of balls left.
+     */
+    Scoreboard(long score, long remainingBlocks, long remainingBalls) {
+        this.score = score;
+        this.remainingBlocks = remainingBlocks;
+        this.remainingBalls = remainingBalls;
+    }
+
+    /**
+     * @return the score.
+     */
+    public long getScore() {
+        return this.score;
+    }
+
+    /**
+     * @return the number of blocks left.
+     */
+    public long getRemainingBlocks() {
+        return this.remainingBlocks;
+    }
+
+    /**
+     * @return the number of balls left.
+     */
+    public long getRemainingBalls() {
+        return this.remainingBalls;
+    }
+
+    @Override
+    public String toString() {
+        return "score " + this.score + ", blocks " + this.remainingBlocks + ", balls " + this.remainingBalls;
+    }
+}
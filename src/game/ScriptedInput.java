@@ -0,0 +1,93 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Plays a script of key changes, each at a time counted in ticks: tick n takes the changes at
+ * times after n - 1 and up to n, so "0 left" holds the left key from the first tick, and
+ * "10.2 left" followed by "10.4 none" taps it for the eleventh tick only. The script keeps its
+ * own clock, one tick per latch, so it plays the same however fast the game is stepped.
+ */
+public class ScriptedInput implements InputSource {
+    // The script's clock on the queue's clock
+    private static final long NANOS_PER_TICK = 1L << 20;
+
+    private final QueuedInput queue;
+    private double lastTime;
+    private long ticks;
+
+    /**
+     * Constructs an empty script, with no keys pressed.
+     */
+    public ScriptedInput() {
+        this.queue = new QueuedInput();
+    }
+
+    /**
+     * Reads a script: one change per line, the time in ticks and the keys (none, left, right or
+     * both), such as "10.5 left". Blank lines and lines starting with # are skipped.
+     *
+     * @param in the script. It is read to the end but not closed.
+     * @return the script.
+     * @throws IOException if the script can't be read or a line is malformed.
+     */
+    public static ScriptedInput read(Reader in) throws IOException {
+        ScriptedInput script = new ScriptedInput();
+        BufferedReader lines = new BufferedReader(in);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] words = line.split("\\s+");
+            try {
+                if (words.length != 2) {
+                    throw new IllegalArgumentException("expected a time and keys");
+                }
+                script.at(Double.parseDouble(words[0]), QueuedInput.keysOf(words[1]));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Line " + number + " of the script: " + e.getMessage(), e);
+            }
+        }
+        return script;
+    }
+
+    /**
+     * Adds a change to the script, after the changes added before it.
+     *
+     * @param tick when the keys change, in ticks, not before the change added last.
+     * @param keys the key mask, of InputSource.LEFT and InputSource.RIGHT.
+     * @return this script.
+     */
+    public ScriptedInput at(double tick, int keys) {
+        if (tick < this.lastTime || Double.isNaN(tick)) {
+            throw new IllegalArgumentException("The changes of a script must be in order of time");
+        }
+        this.lastTime = tick;
+        this.queue.setKeys(keys, (long) Math.ceil(tick * NANOS_PER_TICK));
+        return this;
+    }
+
+    /**
+     * @return the ticks played so far.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    @Override
+    public void latch(long tickNanos) {
+        this.ticks++;
+        this.queue.latch(this.ticks * NANOS_PER_TICK);
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return this.queue.isPressed(key);
+    }
+}
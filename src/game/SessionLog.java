@@ -0,0 +1,61 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+/**
+ * The binary format of a recorded game session.
+ * A log starts with a header (the magic number, the format version and the seed of the game),
+ * followed by the input of every tick as runs of ticks with the same keys pressed: a key mask
+ * byte and the length of the run as a variable-length integer. The log ends with END_OF_INPUT,
+ * the number of ticks and the state hash of the game after the last tick.
+ */
+final class SessionLog {
+    /**
+     * "ARKR" in ASCII.
+     */
+    static final int MAGIC = 0x41524B52;
+    static final int VERSION = 1;
+    /**
+     * Marks the end of the runs, where no key mask can be.
+     */
+    static final int END_OF_INPUT = 0xFF;
+    static final int LEFT = InputSource.LEFT;
+    static final int RIGHT = InputSource.RIGHT;
+
+    private SessionLog() {
+    }
+
+    /**
+     * Returns the mask of the recorded keys that are pressed.
+     *
+     * @param keyboard the keyboard to read.
+     * @return the key mask.
+     */
+    static int maskOf(KeyboardSensor keyboard) {
+        int mask = 0;
+        if (keyboard.isPressed(KeyboardSensor.LEFT_KEY)) {
+            mask |= LEFT;
+        }
+        if (keyboard.isPressed(KeyboardSensor.RIGHT_KEY)) {
+            mask |= RIGHT;
+        }
+        return mask;
+    }
+
+    /**
+     * Checks whether a key is pressed in a key mask. Keys that are not recorded are never pressed.
+     *
+     * @param mask the key mask.
+     * @param key  the key.
+     * @return true if the key is pressed.
+     */
+    static boolean isPressed(int mask, String key) {
+        if (KeyboardSensor.LEFT_KEY.equals(key)) {
+            return (mask & LEFT) != 0;
+        }
+        if (KeyboardSensor.RIGHT_KEY.equals(key)) {
+            return (mask & RIGHT) != 0;
+        }
+        return false;
+    }
+}
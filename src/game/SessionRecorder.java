@@ -0,0 +1,124 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Records a game session: the seed of the game and the keys pressed in every tick.
+ * It sits between the real keyboard and the game, latching the keys once per tick, so the paddle
+ * sees exactly the input that is written to the log. A keyboard that latches is latched first, so
+ * the taps an input source applies to a tick are recorded in it. See SessionLog for the format.
+ */
+public class SessionRecorder implements InputSource {
+    private KeyboardSensor source;
+    private DataOutputStream out;
+    private int mask;
+    private int runMask;
+    private int runLength;
+    private long ticks;
+    private boolean closed;
+
+    /**
+     * Constructs a recorder and writes the header of the log.
+     *
+     * @param source the keyboard whose keys are recorded.
+     * @param seed   the seed of the recorded game.
+     * @param out    where to write the log.
+     * @throws IOException if the header can't be written.
+     */
+    public SessionRecorder(KeyboardSensor source, long seed, OutputStream out) throws IOException {
+        this.source = source;
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.out.writeInt(SessionLog.MAGIC);
+        this.out.writeByte(SessionLog.VERSION);
+        this.out.writeLong(seed);
+    }
+
+    @Override
+    public void latch(long tickNanos) {
+        if (this.closed) {
+            throw new IllegalStateException("The recording has already ended");
+        }
+        if (this.source instanceof InputSource) {
+            ((InputSource) this.source).latch(tickNanos);
+        } else if (this.source instanceof LatchingKeyboard) {
+            ((LatchingKeyboard) this.source).latch();
+        }
+        this.mask = SessionLog.maskOf(this.source);
+        if (this.runLength > 0 && (this.mask != this.runMask || this.runLength == Integer.MAX_VALUE)) {
+            writeRun();
+        }
+        this.runMask = this.mask;
+        this.runLength++;
+        this.ticks++;
+    }
+
+    @Override
+    public long getLatchedEventNanos() {
+        return this.source instanceof InputSource ? ((InputSource) this.source).getLatchedEventNanos() : NO_EVENT;
+    }
+
+    /**
+     * Closes the recorded keyboard if it is an input source. The recording itself is ended by
+     * close(stateHash).
+     */
+    @Override
+    public void close() {
+        if (this.source instanceof InputSource) {
+            ((InputSource) this.source).close();
+        }
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return SessionLog.isPressed(this.mask, key);
+    }
+
+    /**
+     * @return the number of ticks recorded so far.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * Ends the recording: writes the last run, the number of ticks and the state hash, and closes
+     * the log. Calling it again does nothing.
+     *
+     * @param stateHash the state hash of the game after the last recorded tick.
+     * @throws IOException if the log can't be written.
+     */
+    public void close(long stateHash) throws IOException {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+        if (this.runLength > 0) {
+            writeRun();
+        }
+        this.out.writeByte(SessionLog.END_OF_INPUT);
+        this.out.writeLong(this.ticks);
+        this.out.writeLong(stateHash);
+        this.out.close();
+    }
+
+    private void writeRun() {
+        try {
+            this.out.writeByte(this.runMask);
+            int length = this.runLength;
+            while ((length & ~0x7F) != 0) {
+                this.out.writeByte((length & 0x7F) | 0x80);
+                length >>>= 7;
+            }
+            this.out.writeByte(length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.runLength = 0;
+    }
+}
@@ -0,0 +1,161 @@
+package game;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Replays a session recorded by SessionRecorder.
+ * The whole log is read up front; the replayer then acts as the keyboard of a headless game,
+ * handing out the recorded keys one tick at a time, whatever time the ticks stand for.
+ */
+public class SessionReplayer implements InputSource {
+    private long seed;
+    private long recordedTicks;
+    private long recordedHash;
+    // The input as runs of ticks with the same key mask
+    private byte[] runMasks;
+    private int[] runLengths;
+    private int runCount;
+    private int run;
+    private int usedOfRun;
+    private long ticks;
+    private int mask;
+
+    /**
+     * Reads a recorded session.
+     *
+     * @param in the log to read. It is read to the end but not closed.
+     * @throws IOException if the log can't be read or is not a session log.
+     */
+    public SessionReplayer(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != SessionLog.MAGIC) {
+            throw new IOException("Not a session log");
+        }
+        int version = data.readUnsignedByte();
+        if (version != SessionLog.VERSION) {
+            throw new IOException("Unsupported session log version " + version);
+        }
+        this.seed = data.readLong();
+        this.runMasks = new byte[16];
+        this.runLengths = new int[16];
+        long total = 0;
+        int mask = data.readUnsignedByte();
+        while (mask != SessionLog.END_OF_INPUT) {
+            int length = readVarInt(data);
+            if (this.runCount == this.runMasks.length) {
+                this.runMasks = Arrays.copyOf(this.runMasks, this.runCount * 2);
+                this.runLengths = Arrays.copyOf(this.runLengths, this.runCount * 2);
+            }
+            this.runMasks[this.runCount] = (byte) mask;
+            this.runLengths[this.runCount] = length;
+            this.runCount++;
+            total += length;
+            mask = data.readUnsignedByte();
+        }
+        this.recordedTicks = data.readLong();
+        this.recordedHash = data.readLong();
+        if (total != this.recordedTicks) {
+            throw new IOException("The session log holds " + total + " ticks of input but says "
+                    + this.recordedTicks);
+        }
+    }
+
+    /**
+     * Creates a headless game driven by this replayer, initialized with the recorded seed.
+     *
+     * @return the game, ready to be stepped.
+     */
+    public Game createGame() {
+        Game game = new Game(this);
+        game.setSeed(this.seed);
+        game.initialize();
+        return game;
+    }
+
+    /**
+     * Steps the game through all the remaining recorded ticks, as fast as possible.
+     *
+     * @param game a game created by createGame().
+     * @return the number of ticks that were run.
+     */
+    public long replay(Game game) {
+        long start = this.ticks;
+        while (hasNextTick()) {
+            game.step();
+        }
+        return this.ticks - start;
+    }
+
+    /**
+     * Checks whether a game replayed to the end is in the state it was recorded in.
+     *
+     * @param game the replayed game.
+     * @return true if the state hash of the game matches the recorded one.
+     */
+    public boolean matches(Game game) {
+        return !hasNextTick() && game.stateHash() == this.recordedHash;
+    }
+
+    /**
+     * @return true if there are recorded ticks that were not replayed yet.
+     */
+    public boolean hasNextTick() {
+        return this.ticks < this.recordedTicks;
+    }
+
+    /**
+     * @return the seed of the recorded game.
+     */
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @return the number of recorded ticks.
+     */
+    public long getRecordedTicks() {
+        return this.recordedTicks;
+    }
+
+    /**
+     * @return the state hash of the game after the last recorded tick.
+     */
+    public long getRecordedHash() {
+        return this.recordedHash;
+    }
+
+    @Override
+    public void latch(long tickNanos) {
+        if (!hasNextTick()) {
+            throw new IllegalStateException("The recorded session has no more ticks");
+        }
+        if (this.usedOfRun == this.runLengths[this.run]) {
+            this.run++;
+            this.usedOfRun = 0;
+        }
+        this.mask = this.runMasks[this.run];
+        this.usedOfRun++;
+        this.ticks++;
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return SessionLog.isPressed(this.mask, key);
+    }
+
+    private static int readVarInt(DataInputStream data) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed run length");
+    }
+}
@@ -0,0 +1,160 @@
+package game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs many headless game sessions on a fixed pool of worker threads.
+ * Sessions wait in a queue ordered by when they are due. A worker takes the session that has been
+ * due the longest, runs one slice of at most quantum ticks and puts it back, so no session holds a
+ * worker for longer than a slice and every session gets its turn. A session is never run by two
+ * workers at once, so its game needs no locking; only its keyboard and stats are shared.
+ */
+public class SessionScheduler implements AutoCloseable {
+    /**
+     * The ticks a session runs before it yields its worker, unless set otherwise.
+     */
+    public static final int DEFAULT_QUANTUM = 16;
+
+    private final DelayQueue<GameSession> ready;
+    private final Map<Integer, GameSession> sessions;
+    private final List<Thread> workers;
+    private final AtomicInteger nextId;
+    private final int quantum;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a scheduler with one worker per processor and the default quantum.
+     */
+    public SessionScheduler() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_QUANTUM);
+    }
+
+    /**
+     * Constructs a scheduler and starts its workers.
+     *
+     * @param workerCount the number of worker threads.
+     * @param quantum     the most ticks a session runs before it yields its worker.
+     */
+    public SessionScheduler(int workerCount, int quantum) {
+        if (workerCount < 1 || quantum < 1) {
+            throw new IllegalArgumentException("Worker count and quantum must be at least 1");
+        }
+        this.ready = new DelayQueue<>();
+        this.sessions = new ConcurrentHashMap<>();
+        this.workers = new ArrayList<>();
+        this.nextId = new AtomicInteger(1);
+        this.quantum = quantum;
+        for (int i = 0; i < workerCount; i++) {
+            Thread worker = new Thread(this::work, "session-worker-" + i);
+            worker.setDaemon(true);
+            this.workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Starts a session.
+     *
+     * @param level          the level to play.
+     * @param seed           the seed of the game.
+     * @param maxTicks       the tick budget of the session.
+     * @param ticksPerSecond the tick rate, or 0 to run as fast as the workers allow.
+     * @return the session.
+     */
+    public GameSession start(LevelDefinition level, long seed, long maxTicks, int ticksPerSecond) {
+        if (this.closed) {
+            throw new IllegalStateException("The scheduler is closed");
+        }
+        GameSession session = new GameSession(this.nextId.getAndIncrement(), level, seed, maxTicks, ticksPerSecond);
+        this.sessions.put(session.getId(), session);
+        this.ready.put(session);
+        return session;
+    }
+
+    /**
+     * Returns a session by id. Finished sessions stay, with only their final stats, until they are removed.
+     *
+     * @param id the id of the session.
+     * @return the session, or null if there is none.
+     */
+    public GameSession get(int id) {
+        return this.sessions.get(id);
+    }
+
+    /**
+     * Forgets a finished session, stopping it first if it is still running.
+     *
+     * @param id the id of the session.
+     */
+    public void remove(int id) {
+        GameSession session = this.sessions.remove(id);
+        if (session != null) {
+            session.stop();
+        }
+    }
+
+    /**
+     * @return the sessions started and not removed.
+     */
+    public Collection<GameSession> sessions() {
+        return Collections.unmodifiableCollection(this.sessions.values());
+    }
+
+    /**
+     * Waits until every session has ended.
+     *
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public void awaitAll() throws InterruptedException {
+        for (GameSession session : this.sessions.values()) {
+            session.awaitFinished();
+        }
+    }
+
+    /**
+     * Stops the workers. Sessions that have not ended are left unfinished.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        for (Thread worker : this.workers) {
+            worker.interrupt();
+        }
+        for (Thread worker : this.workers) {
+            try {
+                worker.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        while (!this.closed) {
+            GameSession session;
+            try {
+                session = this.ready.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                if (session.runSlice(this.quantum)) {
+                    this.ready.put(session);
+                }
+            } catch (RuntimeException e) {
+                // End the broken session on its next slice instead of losing the worker
+                System.err.println("Session " + session.getId() + " failed: " + e);
+                session.stop();
+                this.ready.put(session);
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A local TCP front end for a SessionScheduler.
+ * Clients send one command per line and get one line back:
+ * <pre>
+ * new [seed] [ticks] [ticksPerSecond]   ok &lt;id&gt;
+ * keys &lt;id&gt; none|left|right|both         ok
+ * stats &lt;id&gt;                            the stats of the session
+ * stop &lt;id&gt;                             ok, and the session is forgotten
+ * quit                                  closes the connection
+ * </pre>
+ * A command that fails gets a line starting with "error". Each connection has its own thread;
+ * the games themselves run on the scheduler's workers.
+ */
+public class SessionServer implements AutoCloseable {
+    private static final long DEFAULT_TICKS = Long.MAX_VALUE;
+    private static final int DEFAULT_TICKS_PER_SECOND = 60;
+
+    private final SessionScheduler scheduler;
+    private final LevelDefinition level;
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    /**
+     * Constructs a server on the loopback address and starts accepting connections.
+     *
+     * @param scheduler the scheduler that runs the sessions.
+     * @param level     the level new sessions play.
+     * @param port      the port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public SessionServer(SessionScheduler scheduler, LevelDefinition level, int port) throws IOException {
+        this.scheduler = scheduler;
+        this.level = level;
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "session-server");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * @return the port the server listens on.
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting connections. Open connections end when their clients quit.
+     */
+    @Override
+    public void close() {
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = this.serverSocket.accept();
+            } catch (SocketException e) {
+                // The server was closed
+                return;
+            } catch (IOException e) {
+                System.err.println("Accept failed: " + e);
+                continue;
+            }
+            Thread connection = new Thread(() -> serve(socket), "session-client-" + socket.getPort());
+            connection.setDaemon(true);
+            connection.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(
+                     new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+             PrintWriter out = new PrintWriter(s.getOutputStream(), true, StandardCharsets.US_ASCII)) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] words = line.trim().split("\\s+");
+                if (words[0].equals("quit")) {
+                    return;
+                }
+                try {
+                    out.println(handle(words));
+                } catch (RuntimeException e) {
+                    out.println("error " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Connection failed: " + e);
+        }
+    }
+
+    /**
+     * Runs one command.
+     *
+     * @param words the command and its arguments.
+     * @return the reply.
+     */
+    String handle(String[] words) {
+        switch (words[0]) {
+            case "new":
+                long seed = words.length > 1 ? Long.parseLong(words[1]) : System.nanoTime();
+                long ticks = words.length > 2 ? Long.parseLong(words[2]) : DEFAULT_TICKS;
+                int rate = words.length > 3 ? Integer.parseInt(words[3]) : DEFAULT_TICKS_PER_SECOND;
+                return "ok " + this.scheduler.start(this.level, seed, ticks, rate).getId();
+            case "keys":
+                session(words).getKeyboard().setKeys(argument(words, 2));
+                return "ok";
+            case "stats":
+                return session(words).stats().toString();
+            case "stop":
+                this.scheduler.remove(session(words).getId());
+                return "ok";
+            default:
+                throw new IllegalArgumentException("unknown command " + words[0]);
+        }
+    }
+
+    private GameSession session(String[] words) {
+        int id = Integer.parseInt(argument(words, 1));
+        GameSession session = this.scheduler.get(id);
+        if (session == null) {
+            throw new IllegalArgumentException("no session " + id);
+        }
+        return session;
+    }
+
+    private static String argument(String[] words, int index) {
+        if (words.length <= index) {
+            throw new IllegalArgumentException("missing argument to " + words[0]);
+        }
+        return words[index];
+    }
+}
@@ -0,0 +1,120 @@
+package game;
+
+/**
+ * An immutable snapshot of the statistics of a GameSession.
+ * Throughput is ticks per second of wall time since the session started. Latency is measured two
+ * ways: how long a tick took to step, and how late a slice started after the session was due,
+ * which is the time the session waited for a free worker.
+ */
+public final class SessionStats {
+    private final int id;
+    private final long ticks;
+    private final boolean finished;
+    private final long elapsedNanos;
+    private final long slices;
+    private final long stepNanos;
+    private final long maxTickNanos;
+    private final long lagNanos;
+    private final long maxLagNanos;
+    private final Scoreboard scoreboard;
+
+    /**
+     * Constructs a snapshot.
+     *
+     * @param id           the id of the session.
+     * @param ticks        the ticks run.
+     * @param finished     whether the session has ended.
+     * @param elapsedNanos the wall time since the session started, or until it ended.
+     * @param slices       the number of slices run.
+     * @param stepNanos    the total time spent stepping.
+     * @param maxTickNanos the longest single tick.
+     * @param lagNanos     the total time slices started late.
+     * @param maxLagNanos  the latest a slice started.
+     * @param scoreboard   the counters of the game.
+     */
+    SessionStats(int id, long ticks, boolean finished, long elapsedNanos, long slices, long stepNanos,
+                 long maxTickNanos, long lagNanos, long maxLagNanos, Scoreboard scoreboard) {
+        this.id = id;
+        this.ticks = ticks;
+        this.finished = finished;
+        this.elapsedNanos = elapsedNanos;
+        this.slices = slices;
+        this.stepNanos = stepNanos;
+        this.maxTickNanos = maxTickNanos;
+        this.lagNanos = lagNanos;
+        this.maxLagNanos = maxLagNanos;
+        this.scoreboard = scoreboard;
+    }
+
+    /**
+     * @return the id of the session.
+     */
+    public int getId() {
+        return this.id;
+    }
+
+    /**
+     * @return the ticks run.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * @return true if the session has ended.
+     */
+    public boolean isFinished() {
+        return this.finished;
+    }
+
+    /**
+     * @return the ticks run per second of wall time.
+     */
+    public double getTicksPerSecond() {
+        return this.elapsedNanos > 0 ? this.ticks * 1e9 / this.elapsedNanos : 0;
+    }
+
+    /**
+     * @return the mean time to step a tick, in nanoseconds.
+     */
+    public double getMeanTickNanos() {
+        return this.ticks > 0 ? (double) this.stepNanos / this.ticks : 0;
+    }
+
+    /**
+     * @return the longest single tick, in nanoseconds.
+     */
+    public long getMaxTickNanos() {
+        return this.maxTickNanos;
+    }
+
+    /**
+     * @return how late a slice started on average, in nanoseconds.
+     */
+    public double getMeanLagNanos() {
+        return this.slices > 0 ? (double) this.lagNanos / this.slices : 0;
+    }
+
+    /**
+     * @return the latest a slice started, in nanoseconds.
+     */
+    public long getMaxLagNanos() {
+        return this.maxLagNanos;
+    }
+
+    /**
+     * @return the counters of the game.
+     */
+    public Scoreboard getScoreboard() {
+        return this.scoreboard;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("session %d: %d ticks%s, %.0f ticks/s, tick %.1f us mean %.1f us max,"
+                        + " lag %.1f us mean %.1f us max, %s",
+                this.id, this.ticks, this.finished ? " (finished)" : "", getTicksPerSecond(),
+                getMeanTickNanos() / 1e3, this.maxTickNanos / 1e3, getMeanLagNanos() / 1e3,
+                this.maxLagNanos / 1e3, this.scoreboard);
+    }
+}
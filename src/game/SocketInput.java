@@ -0,0 +1,86 @@
+package game;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Takes the keys from a client on a local TCP port. The client sends a line whenever the keys
+ * change, with the keys that are pressed from then on: none, left, right or both. Each change is
+ * queued with the time it arrived (see QueuedInput). One client is served at a time; when it
+ * disconnects the keys are released and the next client is accepted.
+ */
+public class SocketInput extends QueuedInput {
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+
+    /**
+     * Constructs an input on the loopback address and starts accepting a client.
+     *
+     * @param port the port, or 0 for any free port.
+     * @throws IOException if the port cannot be bound.
+     */
+    public SocketInput(int port) throws IOException {
+        this.serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "input-socket");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    /**
+     * @return the port the input listens on.
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting clients and disconnects the current one.
+     */
+    @Override
+    public void close() {
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.acceptor.interrupt();
+    }
+
+    private void accept() {
+        while (!this.serverSocket.isClosed()) {
+            try (Socket socket = this.serverSocket.accept();
+                 BufferedReader in = new BufferedReader(
+                         new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))) {
+                socket.setTcpNoDelay(true);
+                read(in);
+            } catch (SocketException e) {
+                if (this.serverSocket.isClosed()) {
+                    return;
+                }
+                System.err.println("Input client failed: " + e);
+            } catch (IOException e) {
+                System.err.println("Input client failed: " + e);
+            }
+            setKeys(0);
+        }
+    }
+
+    private void read(BufferedReader in) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null && !this.serverSocket.isClosed()) {
+            long arrived = System.nanoTime();
+            try {
+                setKeys(keysOf(line.trim()), arrived);
+            } catch (IllegalArgumentException e) {
+                System.err.println("Input client sent a bad line: " + e.getMessage());
+            }
+        }
+    }
+}
@@ -9,28 +9,35 @@ import java.util.List;
  * A class that represents a collection of sprites.
  */
 public class SpriteCollection {
-    // List to store all the sprites
-    private java.util.List<Sprite> spriteList;
+    // The sprites, which can be added and removed while they are stepped
+    private CompactingList<Sprite> spriteList;
+    // Below this many parallel sprites, planning them on other threads costs more than it saves
+    private static final int PARALLEL_THRESHOLD = 64;
+    private boolean parallel;
+    private List<ParallelSprite> parallelSprites;
 
     /**
      * Constructor arkanoid.Game.arkanoid.SpriteCollection.
      * Initializes an empty list of sprites.
      */
     public SpriteCollection() {
-        this.spriteList = new java.util.ArrayList<>();
+        this.spriteList = new CompactingList<>();
+        this.parallelSprites = new ArrayList<>();
     }
 
     /**
-     * Adds a sprite to the collection.
+     * Adds a sprite to the collection. A sprite added while the sprites are stepped is first
+     * stepped in the next tick.
      *
-     * @param s The sprite to be added.
+     * @param s The sprite to be added, which must not be in the collection.
      */
     public void addSprite(Sprite s) {
         this.spriteList.add(s);
     }
 
     /**
-     * Removes a sprite from the list of sprites.
+     * Removes a sprite from the list of sprites, in constant time. A sprite removed while the
+     * sprites are stepped is not stepped after that.
      *
      * @param s the sprite to remove
      */
@@ -38,14 +45,128 @@ public class SpriteCollection {
         this.spriteList.remove(s);
     }
 
+    /**
+     * @return the number of sprites.
+     */
+    int size() {
+        return this.spriteList.size();
+    }
+
+    /**
+     * @param i the position of a sprite in the collection.
+     * @return the sprite.
+     */
+    Sprite get(int i) {
+        return this.spriteList.get(i);
+    }
+
+    /**
+     * Prepares room for the given number of sprites that will be added, so adding them allocates
+     * nothing.
+     *
+     * @param count the number of sprites.
+     */
+    void reserve(int count) {
+        this.spriteList.reserve(count);
+    }
+
+    /**
+     * Squeezes out the places of removed sprites once there are enough of them. Called at the end
+     * of every tick.
+     */
+    void compact() {
+        this.spriteList.compact();
+    }
+
+    /**
+     * @return the sprites, in the order they are stepped.
+     */
+    List<Sprite> toList() {
+        return this.spriteList.toList();
+    }
+
+    /**
+     * Replaces the sprites with the given ones, as when a snapshot is restored.
+     *
+     * @param sprites the sprites, in the order they are stepped.
+     */
+    void setSprites(List<? extends Sprite> sprites) {
+        this.spriteList.setAll(sprites);
+    }
+
+    /**
+     * Enables or disables stepping ParallelSprites (the balls) on several cores.
+     *
+     * @param parallel true to plan the steps of ParallelSprites in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
     /**
      * Calls the timePassed method for all sprites in the collection.
+     * In parallel mode, the other sprites are stepped first, then all ParallelSprites plan their step
+     * on the common ForkJoin pool, and then they commit their steps one by one in collection order.
+     * Hits are applied only in the serial commit, so the result does not depend on thread scheduling.
      */
     public void notifyAllTimePassed() {
-        List<Sprite> spriteListCopy = new ArrayList<>(this.spriteList);
-        for (Sprite s : spriteListCopy) {
-            s.timePassed();
+        // Sprites added on the way go after the slots counted here and wait for the next tick
+        CompactingList<Sprite> sprites = this.spriteList;
+        int count = sprites.slots();
+        sprites.beginWalk();
+        try {
+            if (!this.parallel) {
+                for (int i = 0; i < count; i++) {
+                    Sprite s = sprites.inSlot(i);
+                    if (s != null) {
+                        s.timePassed();
+                    }
+                }
+                return;
+            }
+            List<ParallelSprite> stepped = this.parallelSprites;
+            stepped.clear();
+            for (int i = 0; i < count; i++) {
+                Sprite s = sprites.inSlot(i);
+                if (s instanceof ParallelSprite) {
+                    stepped.add((ParallelSprite) s);
+                } else if (s != null) {
+                    s.timePassed();
+                }
+            }
+            if (stepped.size() >= PARALLEL_THRESHOLD) {
+                stepped.parallelStream().forEach(ParallelSprite::planStep);
+            } else {
+                for (int i = 0; i < stepped.size(); i++) {
+                    stepped.get(i).planStep();
+                }
+            }
+            for (int i = 0; i < stepped.size(); i++) {
+                stepped.get(i).commitStep();
+            }
+        } finally {
+            sprites.endWalk();
+        }
+    }
+
+    /**
+     * Mixes the state of the moving sprites into a hash, in collection order.
+     *
+     * @param hash the hash so far.
+     * @return the new hash.
+     */
+    long hashState(long hash) {
+        for (int i = 0; i < this.spriteList.slots(); i++) {
+            Sprite s = this.spriteList.inSlot(i);
+            if (s instanceof Ball) {
+                hash = ((Ball) s).hashState(hash);
+            } else if (s instanceof Paddle) {
+                hash = ((Paddle) s).hashState(hash);
+            } else if (s instanceof BallSystem) {
+                hash = ((BallSystem) s).hashState(hash);
+            }
         }
+        return hash;
     }
 
     /**
@@ -54,8 +175,51 @@ public class SpriteCollection {
      * @param d The surface on which the sprites should be drawn.
      */
     public void drawAllOn(DrawSurface d) {
-        for (Sprite s : spriteList) {
-            s.drawOn(d);
+        for (int i = 0; i < this.spriteList.slots(); i++) {
+            Sprite s = this.spriteList.inSlot(i);
+            if (s != null) {
+                s.drawOn(d);
+            }
+        }
+    }
+
+    /**
+     * Draws all sprites, with the moving ones interpolated between their last two ticks.
+     *
+     * @param d     The surface on which the sprites should be drawn.
+     * @param alpha How far to go from the previous position to the current one, between 0 and 1.
+     */
+    public void drawAllOn(DrawSurface d, double alpha) {
+        for (int i = 0; i < this.spriteList.slots(); i++) {
+            Sprite s = this.spriteList.inSlot(i);
+            if (s instanceof InterpolatedSprite) {
+                ((InterpolatedSprite) s).drawOn(d, alpha);
+            } else if (s != null) {
+                s.drawOn(d);
+            }
+        }
+    }
+
+    /**
+     * Records all sprites on a command buffer, interpolated like drawAllOn(d, alpha), with a new
+     * layer for every run of sprites of one class.
+     *
+     * @param buffer the buffer to record on.
+     * @param alpha  How far to go from the previous position to the current one, between 0 and 1.
+     */
+    public void recordAllOn(DrawCommandBuffer buffer, double alpha) {
+        for (int i = 0; i < this.spriteList.slots(); i++) {
+            Sprite s = this.spriteList.inSlot(i);
+            if (s == null) {
+                continue;
+            }
+            buffer.beginSprite(s);
+            if (s instanceof InterpolatedSprite) {
+                ((InterpolatedSprite) s).drawOn(buffer, alpha);
+            } else {
+                s.drawOn(buffer);
+            }
         }
+        buffer.nextLayer();
     }
 }
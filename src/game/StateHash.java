@@ -0,0 +1,37 @@
+package game;
+
+/**
+ * Builds the hash of a game's state that replays and regression runs are compared by.
+ * Every value is mixed in exactly, so two states hash the same only if they are bit for bit equal
+ * (up to collisions).
+ */
+final class StateHash {
+    static final long SEED = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+
+    private StateHash() {
+    }
+
+    /**
+     * Mixes a value into a hash.
+     *
+     * @param hash  the hash so far.
+     * @param value the value.
+     * @return the new hash.
+     */
+    static long mix(long hash, long value) {
+        long h = (hash ^ value) * PRIME;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Mixes the exact bits of a value into a hash.
+     *
+     * @param hash  the hash so far.
+     * @param value the value.
+     * @return the new hash.
+     */
+    static long mix(long hash, double value) {
+        return mix(hash, Double.doubleToLongBits(value));
+    }
+}
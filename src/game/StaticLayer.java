@@ -0,0 +1,156 @@
+package game;
+
+import biuoop.DrawSurface;
+
+import java.awt.image.BufferedImage;
+import java.util.function.Consumer;
+
+/**
+ * A cached image of the background and the sprites that don't move, like the blocks.
+ * The image is only redrawn after such a sprite is added or removed, so a frame costs one image
+ * draw no matter how many blocks there are.
+ */
+public class StaticLayer {
+    private int width;
+    private int height;
+    private Consumer<DrawSurface> background;
+    private CompactingList<Sprite> sprites;
+    // Two images drawn in turn, so the one the GUI may still be painting is never redrawn
+    private BufferedImage[] images;
+    private int current;
+    private boolean dirty;
+    // Set when the image is redrawn through a command buffer, batching the blocks by color
+    private DrawCommandBuffer buffer;
+
+    /**
+     * Constructs a static layer.
+     *
+     * @param width      the width of the layer.
+     * @param height     the height of the layer.
+     * @param background draws the background under the sprites.
+     */
+    public StaticLayer(int width, int height, Consumer<DrawSurface> background) {
+        this.width = width;
+        this.height = height;
+        this.background = background;
+        this.sprites = new CompactingList<>();
+        this.dirty = true;
+    }
+
+    /**
+     * Adds a sprite that is drawn into the cached image.
+     *
+     * @param s the sprite.
+     */
+    public void addSprite(Sprite s) {
+        this.sprites.add(s);
+        this.dirty = true;
+    }
+
+    /**
+     * Adds many sprites that are drawn into the cached image.
+     *
+     * @param added the sprites.
+     */
+    public void addSprites(java.util.Collection<? extends Sprite> added) {
+        this.sprites.addAll(added);
+        this.dirty = true;
+    }
+
+    /**
+     * Removes a sprite from the cached image, if it is in the layer, in constant time.
+     *
+     * @param s the sprite.
+     */
+    public void removeSprite(Sprite s) {
+        if (this.sprites.remove(s)) {
+            this.dirty = true;
+        }
+    }
+
+    /**
+     * Replaces the sprites of the layer, as when a snapshot is restored.
+     *
+     * @param present the sprites.
+     */
+    void setSprites(java.util.List<? extends Sprite> present) {
+        this.sprites.setAll(present);
+        this.dirty = true;
+    }
+
+    /**
+     * Replaces the sprites of the layer, as when a snapshot is restored, removing the ones that
+     * leave and putting the ones that come back in their old places, if those are still there.
+     *
+     * @param present   the sprites, in the order they were added.
+     * @param leaving   the sprites to remove.
+     * @param returning the sprites that were removed before and come back.
+     */
+    void setSprites(java.util.List<? extends Sprite> present, java.util.List<? extends Sprite> leaving,
+                    java.util.List<? extends Sprite> returning) {
+        for (int i = 0; i < leaving.size(); i++) {
+            this.sprites.remove(leaving.get(i));
+        }
+        for (int i = 0; i < returning.size(); i++) {
+            if (!this.sprites.restore(returning.get(i))) {
+                setSprites(present);
+                return;
+            }
+        }
+        this.dirty = true;
+    }
+
+    /**
+     * Sets whether the cached image is redrawn through a DrawCommandBuffer, which sets the color
+     * once per color instead of once or twice per block. The sprites should not overlap.
+     *
+     * @param batched true to batch the redraws.
+     */
+    public void setBatched(boolean batched) {
+        this.buffer = batched ? new DrawCommandBuffer(this.width, this.height) : null;
+    }
+
+    /**
+     * Draws the layer, redrawing the cached image first if sprites were added or removed.
+     *
+     * @param d the surface to draw on.
+     */
+    public void drawOn(DrawSurface d) {
+        if (this.images == null) {
+            // Created on first use, so headless games don't pay for them
+            this.images = new BufferedImage[] {
+                new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB),
+                new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_RGB)
+            };
+        }
+        if (this.dirty) {
+            this.sprites.compact();
+            this.current = 1 - this.current;
+            ImageDrawSurface surface = new ImageDrawSurface(this.images[this.current]);
+            if (this.buffer == null) {
+                this.background.accept(surface);
+                for (int i = 0; i < this.sprites.slots(); i++) {
+                    Sprite s = this.sprites.inSlot(i);
+                    if (s != null) {
+                        s.drawOn(surface);
+                    }
+                }
+            } else {
+                this.buffer.clear();
+                this.background.accept(this.buffer);
+                for (int i = 0; i < this.sprites.slots(); i++) {
+                    Sprite s = this.sprites.inSlot(i);
+                    if (s != null) {
+                        this.buffer.beginSprite(s);
+                        s.drawOn(this.buffer);
+                    }
+                }
+                this.buffer.flush(surface);
+                this.buffer.clear();
+            }
+            surface.dispose();
+            this.dirty = false;
+        }
+        d.drawImage(0, 0, this.images[this.current]);
+    }
+}
@@ -0,0 +1,416 @@
+package game;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Measures where the time of the game loop goes, cheaply enough to stay on.
+ * Every tick records its time, the time spent moving the sprites and delivering hits, the number of
+ * collision queries and narrow-phase tests, the hit events delivered and the bytes allocated;
+ * every drawn frame records its draw time and its busy time (update and draw, without the sleep).
+ * Input from an InputSource records its latency, from when it happened to the tick that applied it
+ * and to the end of showing the first frame drawn after that tick.
+ * Values go into histograms that are summarized and cleared once per window, one second by default.
+ * The summary of the last window is what the overlay shows and what is written to the metrics file.
+ * A tick costs a few clock and counter reads; nothing is allocated except when a summary is written.
+ * Allocations are counted on the game thread only, so those of parallel ball steps are missed.
+ */
+public class TickProfiler {
+    /**
+     * Nanoseconds per tick.
+     */
+    public static final int TICK = 0;
+    /**
+     * Nanoseconds per tick spent moving the sprites, including the collision queries.
+     */
+    public static final int SPRITES = 1;
+    /**
+     * Nanoseconds per tick spent delivering hit events to the listeners.
+     */
+    public static final int HITS = 2;
+    /**
+     * Nanoseconds per frame spent drawing.
+     */
+    public static final int DRAW = 3;
+    /**
+     * Nanoseconds per frame spent stepping and drawing, without the sleep.
+     */
+    public static final int FRAME = 4;
+    /**
+     * Collision queries per tick.
+     */
+    public static final int QUERIES = 5;
+    /**
+     * Collidables tested by collision queries per tick.
+     */
+    public static final int TESTS = 6;
+    /**
+     * Hit events delivered per tick.
+     */
+    public static final int EVENTS = 7;
+    /**
+     * Bytes allocated by the game thread per tick.
+     */
+    public static final int ALLOCATED = 8;
+    /**
+     * Nanoseconds from an input event to the start of the tick that applied it.
+     */
+    public static final int INPUT = 9;
+    /**
+     * Nanoseconds from an input event to the end of showing the first frame that reflects it.
+     */
+    public static final int INPUT_SHOWN = 10;
+    /**
+     * The number of metrics.
+     */
+    public static final int METRICS = 11;
+
+    private static final String[] NAMES = {
+        "tick_ns", "sprites_ns", "hits_ns", "draw_ns", "frame_ns", "queries", "tests", "events", "allocated_bytes",
+        "input_ns", "input_shown_ns"
+    };
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long DEFAULT_WINDOW_MILLIS = 1000;
+
+    private final GameEnvironment environment;
+    private final HitEventBus hitEventBus;
+    // Null if the JVM can't count allocated bytes per thread
+    private final com.sun.management.ThreadMXBean threads;
+    private final Histogram[] window;
+    private final long[] p50;
+    private final long[] p99;
+    private final long[] max;
+    private final double[] mean;
+    private boolean enabled;
+    private long windowNanos;
+    private long windowStart;
+    private long summaries;
+    private long summaryTime;
+    private long summaryTicks;
+    private long summaryFrames;
+    private double summaryTestsPerQuery;
+    private Writer out;
+    private boolean json;
+
+    // The tick in progress
+    private long tickStart;
+    private long spritesEnd;
+    private long allocatedAtStart;
+    private long queriesAtStart;
+    private long testsAtStart;
+
+    /**
+     * Constructs an enabled profiler.
+     *
+     * @param environment the environment whose queries are counted.
+     * @param hitEventBus the bus whose events are counted.
+     */
+    TickProfiler(GameEnvironment environment, HitEventBus hitEventBus) {
+        this.environment = environment;
+        this.hitEventBus = hitEventBus;
+        this.threads = allocationCounter();
+        this.window = new Histogram[METRICS];
+        for (int i = 0; i < METRICS; i++) {
+            this.window[i] = new Histogram();
+        }
+        this.p50 = new long[METRICS];
+        this.p99 = new long[METRICS];
+        this.max = new long[METRICS];
+        this.mean = new double[METRICS];
+        this.enabled = true;
+        this.windowNanos = DEFAULT_WINDOW_MILLIS * NANOS_PER_MILLI;
+        this.windowStart = System.nanoTime();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param metric a metric, such as TICK.
+     * @return the name of the metric, as used in the metrics file.
+     */
+    public static String nameOf(int metric) {
+        return NAMES[metric];
+    }
+
+    /**
+     * Turns measuring on or off. While off, the game loop pays only a few branches.
+     *
+     * @param enabled true to measure.
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return true if the profiler is measuring.
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Sets how often the histograms are summarized and cleared.
+     *
+     * @param millis the length of a window in milliseconds, at least 1.
+     */
+    public void setWindowMillis(long millis) {
+        if (millis < 1) {
+            throw new IllegalArgumentException("The window must be at least 1 ms");
+        }
+        this.windowNanos = millis * NANOS_PER_MILLI;
+    }
+
+    /**
+     * Writes the summary of every window to a file, as JSON lines if its name ends with .json and as
+     * CSV otherwise. The file is replaced.
+     *
+     * @param path the file.
+     * @throws IOException if the file can't be created.
+     */
+    public void writeTo(Path path) throws IOException {
+        close();
+        this.json = path.toString().endsWith(".json");
+        this.out = Files.newBufferedWriter(path);
+        if (!this.json) {
+            StringBuilder header = new StringBuilder("time_ms,ticks,frames,tests_per_query");
+            for (String name : NAMES) {
+                header.append(',').append(name).append("_p50,").append(name).append("_p99,")
+                        .append(name).append("_max,").append(name).append("_mean");
+            }
+            this.out.write(header.append('\n').toString());
+            this.out.flush();
+        }
+    }
+
+    /**
+     * Summarizes the window in progress and closes the metrics file, if any.
+     */
+    public void close() {
+        if (this.out == null) {
+            return;
+        }
+        summarize(System.nanoTime());
+        try {
+            this.out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            this.out = null;
+        }
+    }
+
+    /**
+     * Marks the start of a tick.
+     */
+    void beginTick() {
+        if (!this.enabled) {
+            return;
+        }
+        this.tickStart = System.nanoTime();
+        this.allocatedAtStart = allocatedBytes();
+        this.queriesAtStart = this.environment.getQueryCount();
+        this.testsAtStart = this.environment.getTestCount();
+    }
+
+    /**
+     * Marks the end of moving the sprites, and the start of delivering hits.
+     */
+    void endSprites() {
+        if (this.enabled) {
+            this.spritesEnd = System.nanoTime();
+        }
+    }
+
+    /**
+     * Marks the end of a tick and records it.
+     */
+    void endTick() {
+        if (!this.enabled) {
+            return;
+        }
+        long end = System.nanoTime();
+        this.window[TICK].record(end - this.tickStart);
+        this.window[SPRITES].record(this.spritesEnd - this.tickStart);
+        this.window[HITS].record(end - this.spritesEnd);
+        this.window[QUERIES].record(this.environment.getQueryCount() - this.queriesAtStart);
+        this.window[TESTS].record(this.environment.getTestCount() - this.testsAtStart);
+        this.window[EVENTS].record(this.hitEventBus.getLastDispatchCount());
+        if (this.threads != null) {
+            this.window[ALLOCATED].record(allocatedBytes() - this.allocatedAtStart);
+        }
+        if (end - this.windowStart >= this.windowNanos) {
+            summarize(end);
+        }
+    }
+
+    /**
+     * Records a drawn frame.
+     *
+     * @param drawNanos the time spent drawing.
+     * @param busyNanos the time spent stepping and drawing.
+     */
+    void recordFrame(long drawNanos, long busyNanos) {
+        if (!this.enabled) {
+            return;
+        }
+        this.window[DRAW].record(drawNanos);
+        this.window[FRAME].record(busyNanos);
+        long now = System.nanoTime();
+        if (now - this.windowStart >= this.windowNanos) {
+            summarize(now);
+        }
+    }
+
+    /**
+     * Records the latency from an input event to the tick that applied it.
+     *
+     * @param nanos the latency.
+     */
+    void recordInput(long nanos) {
+        if (this.enabled) {
+            this.window[INPUT].record(nanos);
+        }
+    }
+
+    /**
+     * Records the latency from an input event to the frame that shows it.
+     *
+     * @param nanos the latency.
+     */
+    void recordInputShown(long nanos) {
+        if (this.enabled) {
+            this.window[INPUT_SHOWN].record(nanos);
+        }
+    }
+
+    private long allocatedBytes() {
+        return this.threads == null ? 0 : this.threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Turns the window into the summary, writes it out and starts a new window.
+     */
+    private void summarize(long now) {
+        for (int i = 0; i < METRICS; i++) {
+            Histogram h = this.window[i];
+            this.p50[i] = h.percentile(0.5);
+            this.p99[i] = h.percentile(0.99);
+            this.max[i] = h.max();
+            this.mean[i] = h.mean();
+        }
+        this.summaryTicks = this.window[TICK].count();
+        this.summaryFrames = this.window[FRAME].count();
+        long queries = this.window[QUERIES].total();
+        this.summaryTestsPerQuery = queries == 0 ? 0 : (double) this.window[TESTS].total() / queries;
+        this.summaryTime = System.currentTimeMillis();
+        this.summaries++;
+        for (Histogram h : this.window) {
+            h.reset();
+        }
+        this.windowStart = now;
+        if (this.out != null) {
+            write();
+        }
+    }
+
+    private void write() {
+        StringBuilder line = new StringBuilder();
+        if (this.json) {
+            line.append(String.format(Locale.ROOT, "{\"time_ms\":%d,\"ticks\":%d,\"frames\":%d,\"tests_per_query\":%.3f",
+                    this.summaryTime, this.summaryTicks, this.summaryFrames, this.summaryTestsPerQuery));
+            for (int i = 0; i < METRICS; i++) {
+                line.append(String.format(Locale.ROOT, ",\"%s\":{\"p50\":%d,\"p99\":%d,\"max\":%d,\"mean\":%.1f}",
+                        NAMES[i], this.p50[i], this.p99[i], this.max[i], this.mean[i]));
+            }
+            line.append('}');
+        } else {
+            line.append(String.format(Locale.ROOT, "%d,%d,%d,%.3f",
+                    this.summaryTime, this.summaryTicks, this.summaryFrames, this.summaryTestsPerQuery));
+            for (int i = 0; i < METRICS; i++) {
+                line.append(String.format(Locale.ROOT, ",%d,%d,%d,%.1f",
+                        this.p50[i], this.p99[i], this.max[i], this.mean[i]));
+            }
+        }
+        try {
+            this.out.write(line.append('\n').toString());
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return how many windows have been summarized, so a reader can tell when the summary changed.
+     */
+    public long getSummaryCount() {
+        return this.summaries;
+    }
+
+    /**
+     * @return the number of ticks in the last window.
+     */
+    public long getTicks() {
+        return this.summaryTicks;
+    }
+
+    /**
+     * @return the number of frames drawn in the last window.
+     */
+    public long getFrames() {
+        return this.summaryFrames;
+    }
+
+    /**
+     * @return the mean number of collidables tested per collision query in the last window.
+     */
+    public double getTestsPerQuery() {
+        return this.summaryTestsPerQuery;
+    }
+
+    /**
+     * @param metric a metric, such as TICK.
+     * @return the median of the metric in the last window.
+     */
+    public long getP50(int metric) {
+        return this.p50[metric];
+    }
+
+    /**
+     * @param metric a metric, such as TICK.
+     * @return the 99th percentile of the metric in the last window.
+     */
+    public long getP99(int metric) {
+        return this.p99[metric];
+    }
+
+    /**
+     * @param metric a metric, such as TICK.
+     * @return the maximum of the metric in the last window.
+     */
+    public long getMax(int metric) {
+        return this.max[metric];
+    }
+
+    /**
+     * @param metric a metric, such as TICK.
+     * @return the mean of the metric in the last window.
+     */
+    public double getMean(int metric) {
+        return this.mean[metric];
+    }
+}
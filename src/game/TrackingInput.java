@@ -0,0 +1,68 @@
+package game;
+
+import shapes.Rectangle;
+
+/**
+ * A simple controller that plays the game: every tick it predicts where each ball will reach the
+ * paddle's row and moves the paddle towards the place the first one arrives, and holds it still
+ * when no ball is predicted to arrive. It reads the game it plays directly, so it must be told
+ * which one with follow() before the first tick.
+ */
+public class TrackingInput implements InputSource {
+    // Enough bounces for a ball on its way down; the prediction is made again every tick anyway
+    private static final int MAX_EVENTS = 16;
+
+    private Game game;
+    private TrajectoryPredictor predictor;
+    private int latched;
+
+    /**
+     * Sets the game whose paddle this input drives.
+     *
+     * @param game the game.
+     */
+    public void follow(Game game) {
+        this.game = game;
+        this.predictor = new TrajectoryPredictor(game.getGameEnvironment());
+    }
+
+    @Override
+    public void latch(long tickNanos) {
+        this.latched = 0;
+        Paddle paddle = this.game == null ? null : this.game.getPaddle();
+        if (paddle == null) {
+            return;
+        }
+        Rectangle rectangle = paddle.getCollisionRectangle();
+        double rowY = rectangle.getUpperLeft().getY();
+        boolean found = false;
+        double targetTicks = 0;
+        double targetX = 0;
+        SpriteCollection sprites = this.game.getSprites();
+        for (int i = 0; i < sprites.size(); i++) {
+            if (sprites.get(i) instanceof Ball
+                    && this.predictor.predict((Ball) sprites.get(i), rowY, MAX_EVENTS)
+                    && (!found || this.predictor.getArrivalTicks() < targetTicks)) {
+                found = true;
+                targetTicks = this.predictor.getArrivalTicks();
+                targetX = this.predictor.getArrivalX();
+            }
+        }
+        if (!found) {
+            return;
+        }
+        double offset = targetX - (rectangle.getUpperLeft().getX() + rectangle.getWidth() / 2);
+        // Within half a move the paddle is as close as it gets; moving would only overshoot
+        double deadZone = paddle.getSpeed() / 2.0;
+        if (offset < -deadZone) {
+            this.latched = LEFT;
+        } else if (offset > deadZone) {
+            this.latched = RIGHT;
+        }
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return SessionLog.isPressed(this.latched, key);
+    }
+}
@@ -0,0 +1,236 @@
+package game;
+
+import biuoop.KeyboardSensor;
+import shapes.Rectangle;
+
+import java.util.Arrays;
+
+/**
+ * A headless game with a gym-style interface for training agents that control the paddle.
+ * reset(seed) starts an episode and step(action) plays one tick with the paddle held still,
+ * moved left or moved right. The reward of a step is what the score gained in it. The episode is
+ * done when no blocks or no balls remain, and truncated when its tick budget is spent first; either
+ * way it needs a reset. The game is built and initialized once: a snapshot taken then is restored
+ * by every later reset, which only draws the directions of the balls from the new seed.
+ * Observations are written into a float array given by the caller, so stepping allocates nothing:
+ * <ul>
+ * <li>the x-coordinate of the center of the paddle, the balls left and the blocks left;</li>
+ * <li>for each of the first maxBalls balls, in the order they are stepped and including those of
+ * a BallSystem: 1, the x and y of its center and its dx and dy; all 0 for a missing ball;</li>
+ * <li>for each removable block of the level, in the order of the level: 1 if it is still in the
+ * game, 0 if it was removed.</li>
+ * </ul>
+ * Coordinates are in pixels and velocities in pixels per tick.
+ */
+public class TrainingEnvironment {
+    /**
+     * Action: the paddle stays where it is.
+     */
+    public static final int ACTION_STAY = 0;
+    /**
+     * Action: the paddle moves left.
+     */
+    public static final int ACTION_LEFT = 1;
+    /**
+     * Action: the paddle moves right.
+     */
+    public static final int ACTION_RIGHT = 2;
+    /**
+     * The number of actions.
+     */
+    public static final int ACTION_COUNT = 3;
+    private static final int HEADER_SIZE = 3;
+    private static final int BALL_SIZE = 5;
+
+    private final LevelDefinition level;
+    private final int maxBalls;
+    private final long maxTicks;
+    // The level indices of the removable blocks, which the observation reports on
+    private final int[] watched;
+    private final ActionKeyboard keyboard;
+    private final Block[] watchedBlocks;
+    private Game game;
+    private WorldSnapshot start;
+    private long ticks;
+    private int score;
+
+    /**
+     * Constructs an environment. reset() must be called before the first step.
+     *
+     * @param level    the level every episode plays.
+     * @param maxBalls the number of balls the observation has room for.
+     * @param maxTicks the tick budget of an episode, after which it is truncated.
+     */
+    public TrainingEnvironment(LevelDefinition level, int maxBalls, long maxTicks) {
+        if (maxBalls < 0 || maxTicks < 1) {
+            throw new IllegalArgumentException("The ball count can't be negative and the tick budget must be at least 1");
+        }
+        this.level = level;
+        this.maxBalls = maxBalls;
+        this.maxTicks = maxTicks;
+        int count = 0;
+        for (int i = 0; i < level.getBlockCount(); i++) {
+            if ((level.getBlockFlags(i) & LevelDefinition.REMOVABLE) != 0) {
+                count++;
+            }
+        }
+        this.watched = new int[count];
+        count = 0;
+        for (int i = 0; i < level.getBlockCount(); i++) {
+            if ((level.getBlockFlags(i) & LevelDefinition.REMOVABLE) != 0) {
+                this.watched[count++] = i;
+            }
+        }
+        this.watchedBlocks = new Block[count];
+        this.keyboard = new ActionKeyboard();
+    }
+
+    /**
+     * @return the number of floats an observation takes.
+     */
+    public int observationSize() {
+        return HEADER_SIZE + this.maxBalls * BALL_SIZE + this.watched.length;
+    }
+
+    /**
+     * Starts a new episode. The first reset builds and initializes the game; later ones restore it
+     * to how it was then.
+     *
+     * @param seed        the seed of the game, which draws the directions of the balls.
+     * @param observation where to write the first observation.
+     * @param offset      where in the array the observation starts.
+     */
+    public void reset(long seed, float[] observation, int offset) {
+        this.keyboard.action = ACTION_STAY;
+        if (this.game == null) {
+            this.game = new Game(this.keyboard);
+            this.game.setSeed(seed);
+            this.game.initialize(this.level);
+            this.start = this.game.snapshot();
+            for (int i = 0; i < this.watched.length; i++) {
+                this.watchedBlocks[i] = this.game.getLevelBlocks().get(this.watched[i]);
+            }
+        } else {
+            this.game.restore(this.start);
+            this.game.setSeed(seed);
+            this.game.redrawBallDirections(this.level);
+        }
+        this.ticks = 0;
+        this.score = this.game.getScore();
+        observe(observation, offset);
+    }
+
+    /**
+     * Plays one tick.
+     *
+     * @param action      ACTION_STAY, ACTION_LEFT or ACTION_RIGHT.
+     * @param observation where to write the observation after the tick.
+     * @param offset      where in the array the observation starts.
+     * @return the reward: how much the score went up in the tick.
+     */
+    public float step(int action, float[] observation, int offset) {
+        if (this.game == null) {
+            throw new IllegalStateException("reset() must be called before step()");
+        }
+        if (isDone() || isTruncated()) {
+            throw new IllegalStateException("The episode is over; call reset() to start another");
+        }
+        if (action < 0 || action >= ACTION_COUNT) {
+            throw new IllegalArgumentException("Unknown action " + action);
+        }
+        this.keyboard.action = action;
+        this.game.step();
+        this.ticks++;
+        int gained = this.game.getScore() - this.score;
+        this.score += gained;
+        observe(observation, offset);
+        return gained;
+    }
+
+    /**
+     * @return true if the episode ended in the game: no blocks or no balls are left.
+     */
+    public boolean isDone() {
+        return this.game.isOver();
+    }
+
+    /**
+     * @return true if the tick budget of the episode is spent while the game goes on.
+     */
+    public boolean isTruncated() {
+        return !this.game.isOver() && this.ticks >= this.maxTicks;
+    }
+
+    /**
+     * @return the ticks played in the current episode.
+     */
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    /**
+     * @return the game, for example to draw or snapshot it. The same game plays every episode.
+     */
+    public Game getGame() {
+        return this.game;
+    }
+
+    private void observe(float[] out, int offset) {
+        int at = offset;
+        Paddle paddle = this.game.getPaddle();
+        if (paddle != null) {
+            Rectangle rectangle = paddle.getCollisionRectangle();
+            out[at] = (float) (rectangle.getUpperLeft().getX() + rectangle.getWidth() / 2);
+        } else {
+            out[at] = 0;
+        }
+        out[at + 1] = this.game.getRemainingBalls();
+        out[at + 2] = this.game.getRemainingBlocks();
+        at += HEADER_SIZE;
+        int end = at + this.maxBalls * BALL_SIZE;
+        SpriteCollection sprites = this.game.getSprites();
+        for (int i = 0; i < sprites.size() && at < end; i++) {
+            Sprite s = sprites.get(i);
+            if (s instanceof Ball) {
+                Ball ball = (Ball) s;
+                Velocity v = ball.getVelocity();
+                at = observeBall(out, at, ball.getCenterX(), ball.getCenterY(), v.getDx(), v.getDy());
+            } else if (s instanceof BallSystem) {
+                BallSystem system = (BallSystem) s;
+                for (int j = 0; j < system.size() && at < end; j++) {
+                    if (!system.isRemoved(j)) {
+                        at = observeBall(out, at, system.centerX(j), system.centerY(j), system.dx(j), system.dy(j));
+                    }
+                }
+            }
+        }
+        Arrays.fill(out, at, end, 0);
+        at = end;
+        GameEnvironment environment = this.game.getGameEnvironment();
+        for (Block block : this.watchedBlocks) {
+            out[at++] = environment.contains(block) ? 1 : 0;
+        }
+    }
+
+    private static int observeBall(float[] out, int at, double x, double y, double dx, double dy) {
+        out[at] = 1;
+        out[at + 1] = (float) x;
+        out[at + 2] = (float) y;
+        out[at + 3] = (float) dx;
+        out[at + 4] = (float) dy;
+        return at + BALL_SIZE;
+    }
+
+    /**
+     * A keyboard that holds down the key of the last action.
+     */
+    private static final class ActionKeyboard implements KeyboardSensor {
+        private int action;
+
+        @Override
+        public boolean isPressed(String key) {
+            return this.action == ACTION_LEFT && KeyboardSensor.LEFT_KEY.equals(key)
+                    || this.action == ACTION_RIGHT && KeyboardSensor.RIGHT_KEY.equals(key);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package game;
+
+import shapes.Point;
+import shapes.Rectangle;
+import shapes.SweptCircle;
+
+import java.util.Arrays;
+
+/**
+ * Predicts where a ball will reach a row, such as the paddle's, without stepping the game.
+ * The path is followed from one collision to the next: every collision is found with one swept
+ * query along the rest of the path and the ball is bounced the way the block it hits bounces it,
+ * so the cost grows with the number of bounces, not with the number of ticks. The world is not
+ * changed and no hit listener is told.
+ * Blocks are taken as they are now: a block the ball breaks on the way is still there in the
+ * prediction, so a prediction is exact up to the first hit on such a block. The paddle moves, so
+ * it does not bounce the ball here: touching it counts as reaching the row.
+ * The buffers are reused from one prediction to the next, so a predictor is not thread-safe.
+ */
+public class TrajectoryPredictor {
+    // How far one query looks when the row is not ahead; a ball that hits nothing that far escaped
+    private static final double REACH = 2048;
+    private static final int INITIAL_EVENTS = 16;
+
+    private final GameEnvironment environment;
+    private final Collidable[] hits;
+    private final Point collisionPoint;
+    private final Velocity velocity;
+    private double[] eventTicks;
+    private double[] eventX;
+    private double[] eventY;
+    private Collidable[] eventCollidables;
+    private int eventCount;
+    private double arrivalTicks;
+    private double arrivalX;
+    private double arrivalY;
+
+    /**
+     * Constructs a predictor for the given world.
+     *
+     * @param environment the collidables the ball bounces off.
+     */
+    public TrajectoryPredictor(GameEnvironment environment) {
+        this.environment = environment;
+        this.hits = new Collidable[1];
+        this.collisionPoint = new Point(0, 0);
+        this.velocity = new Velocity(0, 0);
+        this.eventTicks = new double[INITIAL_EVENTS];
+        this.eventX = new double[INITIAL_EVENTS];
+        this.eventY = new double[INITIAL_EVENTS];
+        this.eventCollidables = new Collidable[INITIAL_EVENTS];
+    }
+
+    /**
+     * Predicts where the given ball reaches a row, see predict(x, y, dx, dy, radius, rowY, maxEvents).
+     *
+     * @param ball      the ball; it is not changed.
+     * @param rowY      the y-coordinate of the row.
+     * @param maxEvents the most collisions to follow.
+     * @return true if the ball reaches the row within maxEvents collisions.
+     */
+    public boolean predict(Ball ball, double rowY, int maxEvents) {
+        Velocity v = ball.getVelocity();
+        return predict(ball.getCenterX(), ball.getCenterY(), v.getDx(), v.getDy(), ball.getSize(), rowY, maxEvents);
+    }
+
+    /**
+     * Predicts where a ball reaches a row: the first time its lower edge touches the line y = rowY
+     * or it touches the paddle. The collisions on the way are kept as events, up to maxEvents of
+     * them; a ball that reaches the row after more collisions, escapes the world or hits a
+     * collidable that is not a block or the paddle has no arrival. A ball that is already at or
+     * past the row arrives at once.
+     *
+     * @param x         the x-coordinate of the ball's center.
+     * @param y         the y-coordinate of the ball's center.
+     * @param dx        the ball's motion along x in a tick.
+     * @param dy        the ball's motion along y in a tick.
+     * @param radius    the radius of the ball.
+     * @param rowY      the y-coordinate of the row.
+     * @param maxEvents the most collisions to follow.
+     * @return true if the ball reaches the row within maxEvents collisions.
+     */
+    public boolean predict(double x, double y, double dx, double dy, double radius, double rowY, int maxEvents) {
+        this.eventCount = 0;
+        this.velocity.set(dx, dy);
+        double ticks = 0;
+        double targetY = rowY - radius;
+        while (y < targetY) {
+            dx = this.velocity.getDx();
+            dy = this.velocity.getDy();
+            double speed = Math.sqrt(dx * dx + dy * dy);
+            if (speed == 0) {
+                return false;
+            }
+            double horizon = REACH / speed;
+            boolean rowAhead = dy > 0 && (targetY - y) / dy <= horizon;
+            if (rowAhead) {
+                horizon = (targetY - y) / dy;
+            }
+            double t = this.environment.sweptHit(x, y, dx * horizon, dy * horizon, radius, this.hits, 0);
+            Collidable collidable = this.hits[0];
+            this.hits[0] = null;
+            if (collidable == null) {
+                if (!rowAhead) {
+                    return false;
+                }
+                return arrive(ticks + horizon, x + dx * horizon, targetY);
+            }
+            double elapsed = t * horizon;
+            ticks += elapsed;
+            x += dx * elapsed;
+            y += dy * elapsed;
+            if (collidable.isPaddle()) {
+                return arrive(ticks, x, y);
+            }
+            if (this.eventCount == maxEvents) {
+                return false;
+            }
+            record(ticks, x, y, collidable);
+            if (!(collidable instanceof Block)) {
+                return false;
+            }
+            // The same contact point the ball computes when it really hits the block
+            Rectangle rect = collidable.getCollisionRectangle();
+            double left = rect.getUpperLeft().getX();
+            double top = rect.getUpperLeft().getY();
+            this.collisionPoint.set(SweptCircle.clamp(x, left, left + rect.getWidth()),
+                    SweptCircle.clamp(y, top, top + rect.getHeight()));
+            ((Block) collidable).reflect(this.collisionPoint, this.velocity);
+        }
+        return arrive(ticks, x, y);
+    }
+
+    /**
+     * @return the number of collisions the last prediction followed.
+     */
+    public int getEventCount() {
+        return this.eventCount;
+    }
+
+    /**
+     * @param i the number of a collision, from 0.
+     * @return how many ticks from the start of the last prediction the collision happens, with a fraction.
+     */
+    public double getEventTicks(int i) {
+        checkEvent(i);
+        return this.eventTicks[i];
+    }
+
+    /**
+     * @param i the number of a collision, from 0.
+     * @return the x-coordinate of the ball's center at the collision.
+     */
+    public double getEventX(int i) {
+        checkEvent(i);
+        return this.eventX[i];
+    }
+
+    /**
+     * @param i the number of a collision, from 0.
+     * @return the y-coordinate of the ball's center at the collision.
+     */
+    public double getEventY(int i) {
+        checkEvent(i);
+        return this.eventY[i];
+    }
+
+    /**
+     * @param i the number of a collision, from 0.
+     * @return the collidable the ball hits.
+     */
+    public Collidable getEventCollidable(int i) {
+        checkEvent(i);
+        return this.eventCollidables[i];
+    }
+
+    /**
+     * @return how many ticks from the start of the last prediction the ball reaches the row, with a fraction.
+     */
+    public double getArrivalTicks() {
+        return this.arrivalTicks;
+    }
+
+    /**
+     * @return the x-coordinate of the ball's center when it reaches the row.
+     */
+    public double getArrivalX() {
+        return this.arrivalX;
+    }
+
+    /**
+     * @return the y-coordinate of the ball's center when it reaches the row.
+     */
+    public double getArrivalY() {
+        return this.arrivalY;
+    }
+
+    private boolean arrive(double ticks, double x, double y) {
+        this.arrivalTicks = ticks;
+        this.arrivalX = x;
+        this.arrivalY = y;
+        return true;
+    }
+
+    private void record(double ticks, double x, double y, Collidable collidable) {
+        if (this.eventCount == this.eventTicks.length) {
+            int length = this.eventCount * 2;
+            this.eventTicks = Arrays.copyOf(this.eventTicks, length);
+            this.eventX = Arrays.copyOf(this.eventX, length);
+            this.eventY = Arrays.copyOf(this.eventY, length);
+            this.eventCollidables = Arrays.copyOf(this.eventCollidables, length);
+        }
+        this.eventTicks[this.eventCount] = ticks;
+        this.eventX[this.eventCount] = x;
+        this.eventY[this.eventCount] = y;
+        this.eventCollidables[this.eventCount] = collidable;
+        this.eventCount++;
+    }
+
+    private void checkEvent(int i) {
+        if (i < 0 || i >= this.eventCount) {
+            throw new IndexOutOfBoundsException("Event " + i + " of " + this.eventCount);
+        }
+    }
+}
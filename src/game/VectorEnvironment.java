@@ -0,0 +1,166 @@
+package game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * A batch of independent TrainingEnvironments playing the same level, stepped together.
+ * step() takes one action per environment and steps them on the common ForkJoin pool, so a batch
+ * uses every core. The observations, rewards, done flags and truncated flags of the batch go into
+ * arrays that are reused from step to step: environment i's observation starts at
+ * i * observationSize(). An environment whose episode is done or truncated is reset at once, so
+ * the observation it reports with its flag is the first one of its next episode. The seed of each episode is derived from the
+ * seed of the batch, the environment and the number of the episode, so a batch given the same seed
+ * and actions plays the same episodes whether or not it is stepped in parallel.
+ */
+public class VectorEnvironment {
+    private final TrainingEnvironment[] environments;
+    private final int observationSize;
+    private final float[] observations;
+    private final float[] rewards;
+    private final boolean[] dones;
+    private final boolean[] truncateds;
+    private final long[] episodes;
+    private long seed;
+    private boolean parallel;
+    private int[] actions;
+
+    /**
+     * Constructs a batch, stepped in parallel. reset() must be called before the first step.
+     *
+     * @param level    the level every environment plays.
+     * @param count    the number of environments.
+     * @param maxBalls the number of balls an observation has room for.
+     * @param maxTicks the tick budget of an episode.
+     */
+    public VectorEnvironment(LevelDefinition level, int count, int maxBalls, long maxTicks) {
+        if (count < 1) {
+            throw new IllegalArgumentException("A batch needs at least one environment");
+        }
+        this.environments = new TrainingEnvironment[count];
+        for (int i = 0; i < count; i++) {
+            this.environments[i] = new TrainingEnvironment(level, maxBalls, maxTicks);
+        }
+        this.observationSize = this.environments[0].observationSize();
+        this.observations = new float[count * this.observationSize];
+        this.rewards = new float[count];
+        this.dones = new boolean[count];
+        this.truncateds = new boolean[count];
+        this.episodes = new long[count];
+        this.parallel = true;
+    }
+
+    /**
+     * Enables or disables stepping the environments on several cores. A batch is stepped serially
+     * anyway when the common ForkJoin pool has a single worker.
+     *
+     * @param parallel true to step them in parallel.
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * @return the number of environments.
+     */
+    public int size() {
+        return this.environments.length;
+    }
+
+    /**
+     * @return the number of floats the observation of one environment takes.
+     */
+    public int observationSize() {
+        return this.observationSize;
+    }
+
+    /**
+     * @return the observations of all environments, one after another; overwritten by every step.
+     */
+    public float[] observations() {
+        return this.observations;
+    }
+
+    /**
+     * @return the reward each environment got in the last step; overwritten by every step.
+     */
+    public float[] rewards() {
+        return this.rewards;
+    }
+
+    /**
+     * @return which environments ended an episode in the game in the last step; overwritten by every step.
+     */
+    public boolean[] dones() {
+        return this.dones;
+    }
+
+    /**
+     * @return which environments spent the tick budget of an episode in the last step; overwritten
+     * by every step.
+     */
+    public boolean[] truncateds() {
+        return this.truncateds;
+    }
+
+    /**
+     * @param i the number of an environment.
+     * @return the environment.
+     */
+    public TrainingEnvironment get(int i) {
+        return this.environments[i];
+    }
+
+    /**
+     * Starts a new episode in every environment.
+     *
+     * @param seed the seed of the batch, from which the seed of every episode is derived.
+     */
+    public void reset(long seed) {
+        this.seed = seed;
+        for (int i = 0; i < this.environments.length; i++) {
+            this.episodes[i] = 0;
+            this.rewards[i] = 0;
+            this.dones[i] = false;
+            this.truncateds[i] = false;
+            resetOne(i);
+        }
+    }
+
+    /**
+     * Plays one tick in every environment, and resets those whose episode is done or truncated.
+     *
+     * @param actions one action per environment, see TrainingEnvironment.
+     */
+    public void step(int[] actions) {
+        if (actions.length != this.environments.length) {
+            throw new IllegalArgumentException("Expected " + this.environments.length + " actions, got " + actions.length);
+        }
+        this.actions = actions;
+        // With a single worker, handing the environments to it only adds to the cost of a step
+        if (this.parallel && this.environments.length > 1 && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            IntStream.range(0, this.environments.length).parallel().forEach(this::stepOne);
+        } else {
+            for (int i = 0; i < this.environments.length; i++) {
+                stepOne(i);
+            }
+        }
+        this.actions = null;
+    }
+
+    private void stepOne(int i) {
+        TrainingEnvironment environment = this.environments[i];
+        this.rewards[i] = environment.step(this.actions[i], this.observations, i * this.observationSize);
+        this.dones[i] = environment.isDone();
+        this.truncateds[i] = environment.isTruncated();
+        if (this.dones[i] || this.truncateds[i]) {
+            this.episodes[i]++;
+            resetOne(i);
+        }
+    }
+
+    private void resetOne(int i) {
+        long episodeSeed = StateHash.mix(StateHash.mix(this.seed, i), this.episodes[i]);
+        this.environments[i].reset(episodeSeed, this.observations, i * this.observationSize);
+    }
+}
@@ -35,6 +35,29 @@ public class Velocity {
         double dy = -speed * Math.cos(radians);
         return new Velocity(dx, dy);
     }
+    /**
+     * Changes this velocity in place.
+     *
+     * @param newDx the new horizontal component
+     * @param newDy the new vertical component
+     */
+    public void set(double newDx, double newDy) {
+        this.dx = newDx;
+        this.dy = newDy;
+    }
+
+    /**
+     * Changes this velocity in place to the given angle and speed, like fromAngleAndSpeed.
+     *
+     * @param angle the angle in degrees
+     * @param speed the speed
+     */
+    public void setFromAngleAndSpeed(double angle, double speed) {
+        double radians = Math.toRadians(angle);
+        this.dx = speed * Math.sin(radians);
+        this.dy = -speed * Math.cos(radians);
+    }
+
     /**
      * Applies this velocity to a given point, resulting in a new point.
      *
@@ -0,0 +1,52 @@
+package game;
+
+import biuoop.KeyboardSensor;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A KeyboardSensor that is not attached to a window.
+ * Keys are pressed and released from code, which lets bots and tests drive the paddle
+ * when the game runs without a GUI.
+ */
+public class VirtualKeyboard implements KeyboardSensor {
+    private Set<String> pressedKeys;
+
+    /**
+     * Constructs a virtual keyboard with no keys pressed.
+     */
+    public VirtualKeyboard() {
+        this.pressedKeys = new HashSet<>();
+    }
+
+    /**
+     * Presses the given key until it is released.
+     *
+     * @param key the key to press, for example KeyboardSensor.LEFT_KEY
+     */
+    public void press(String key) {
+        this.pressedKeys.add(key);
+    }
+
+    /**
+     * Releases the given key.
+     *
+     * @param key the key to release
+     */
+    public void release(String key) {
+        this.pressedKeys.remove(key);
+    }
+
+    /**
+     * Releases all keys.
+     */
+    public void releaseAll() {
+        this.pressedKeys.clear();
+    }
+
+    @Override
+    public boolean isPressed(String key) {
+        return this.pressedKeys.contains(key);
+    }
+}
@@ -0,0 +1,53 @@
+package game;
+
+/**
+ * The state of a game at the end of a tick, taken by Game.snapshot() and given back to
+ * Game.restore() to return the game to it, as for rollback, look-ahead search or restarting a level.
+ * The counters and the state of the balls and the paddle are kept in a compact byte buffer. Which
+ * blocks, sprites and collidables are in the game is kept as bit sets over the game's objects,
+ * which are shared with the game and with other snapshots until one of them changes, so a
+ * snapshot taken while nothing was added or removed costs only its byte buffer.
+ * A snapshot refers to the game's own objects, so it can only be restored into the game that took it.
+ */
+public final class WorldSnapshot {
+    final Game owner;
+    // The counters, the version of the environment, then the state of every ball, paddle and ball system in sprite order
+    byte[] state;
+    int stateLength;
+    // Shared, never changed
+    long[] collidables;
+    long[] statics;
+    long[] sprites;
+    int[] spriteOrder;
+    // Set only when the collidables were not in the order they were first added
+    Collidable[] collidableOrder;
+    // The listeners of every block, by collidable slot; shared between snapshots while it doesn't change
+    HitListener[][] listeners;
+
+    /**
+     * Constructs an empty snapshot, filled in by the game.
+     *
+     * @param owner the game that takes the snapshot.
+     */
+    WorldSnapshot(Game owner) {
+        this.owner = owner;
+        this.state = new byte[0];
+    }
+
+    /**
+     * @return the game that took the snapshot.
+     */
+    public Game getGame() {
+        return this.owner;
+    }
+
+    /**
+     * Returns the number of bytes of state the snapshot holds of its own, leaving out the bit sets
+     * and tables it shares with the game and other snapshots.
+     *
+     * @return the size of the byte buffer.
+     */
+    public int getStateSize() {
+        return this.stateLength;
+    }
+}
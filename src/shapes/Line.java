@@ -259,8 +259,12 @@ public class Line {
         double d = Double.MAX_VALUE;
         Point returnPoint = null;
         for (Point p : list) {
-            if (p != null && p.distance(this.start) < d) {
-                d = p.distance(this.start);
+            if (p == null) {
+                continue;
+            }
+            double distance = p.distance(this.start);
+            if (distance < d) {
+                d = distance;
                 returnPoint = p;
             }
         }
@@ -42,6 +42,18 @@ public class Point {
         return Math.abs(this.x - other.x) < EPSILON && Math.abs(this.y - other.y) < EPSILON;
     }
 
+    /**
+     * Moves this point in place. Only for points that are owned by a single object,
+     * like a ball's center, so the physics step doesn't allocate a new point every tick.
+     *
+     * @param newX the new x-coordinate
+     * @param newY the new y-coordinate
+     */
+    public void set(double newX, double newY) {
+        this.x = newX;
+        this.y = newY;
+    }
+
     /**
      * Returns the x-coordinate of this point.
      *
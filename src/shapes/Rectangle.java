@@ -65,13 +65,47 @@ public class Rectangle {
 
         Line[] lines = {line1, line2, line3, line4};
         for (Line l : lines) {
-            if (l.intersectionWith(line) != null) {
-                list.add(l.intersectionWith(line));
+            Point intersection = l.intersectionWith(line);
+            if (intersection != null) {
+                list.add(intersection);
             }
         }
         return list;
     }
 
+    /**
+     * Returns the parameter t in [0, 1] of the first point where the segment
+     * (x0 + t * dx, y0 + t * dy) meets the boundary of this rectangle, without allocating.
+     *
+     * @param x0 the x-coordinate of the start of the segment
+     * @param y0 the y-coordinate of the start of the segment
+     * @param dx the x-extent of the segment
+     * @param dy the y-extent of the segment
+     * @return the parameter of the first boundary point, or SlabIntersection.NO_HIT if there is none
+     */
+    public double firstHit(double x0, double y0, double dx, double dy) {
+        double x = this.upperLeft.getX();
+        double y = this.upperLeft.getY();
+        return SlabIntersection.firstHit(x0, y0, dx, dy, x, y, x + this.width, y + this.height);
+    }
+
+    /**
+     * Returns the parameter t in [0, 1] at which a circle of radius r, whose center moves along
+     * (x0 + t * dx, y0 + t * dy), first touches this rectangle.
+     *
+     * @param x0 the x-coordinate of the center at the start
+     * @param y0 the y-coordinate of the center at the start
+     * @param dx the x-extent of the motion
+     * @param dy the y-extent of the motion
+     * @param r  the radius of the circle
+     * @return the parameter of the first contact, or SweptCircle.NO_HIT if there is none
+     */
+    public double sweptHit(double x0, double y0, double dx, double dy, double r) {
+        double x = this.upperLeft.getX();
+        double y = this.upperLeft.getY();
+        return SweptCircle.firstHit(x0, y0, dx, dy, r, x, y, x + this.width, y + this.height);
+    }
+
     /**
      * Returns the width of the rectangle.
      *
@@ -100,6 +134,16 @@ public class Rectangle {
         return this.upperLeft;
     }
 
+    /**
+     * Moves the rectangle in place so its upper-left corner is at (x, y).
+     *
+     * @param x the new x-coordinate of the upper-left corner
+     * @param y the new y-coordinate of the upper-left corner
+     */
+    public void moveTo(double x, double y) {
+        this.upperLeft.set(x, y);
+    }
+
     /**
      * Sets the maximum x-coordinate of the rectangle.
      *
@@ -173,9 +217,17 @@ public class Rectangle {
      * @return True if the point is inside the rectangle or False otherwise.
      */
     public boolean isInside(Point p) {
-        // Get the x and y coordinates of the point
-        double x = p.getX();
-        double y = p.getY();
+        return isInside(p.getX(), p.getY());
+    }
+
+    /**
+     * This method checks if the point (x, y) is inside the rectangle.
+     *
+     * @param x the x-coordinate of the point
+     * @param y the y-coordinate of the point
+     * @return True if the point is inside the rectangle or False otherwise.
+     */
+    public boolean isInside(double x, double y) {
         // Get the x and y coordinates of the upper left corner of the rectangle
         double rectX = this.upperLeft.getX();
         double rectY = this.upperLeft.getY();
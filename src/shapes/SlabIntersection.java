@@ -0,0 +1,72 @@
+package shapes;
+
+/**
+ * Segment versus axis-aligned box intersection using the slab method.
+ * Works on raw coordinates and allocates nothing, so it can be used on the collision hot path
+ * instead of building Point and Line objects for every edge.
+ */
+public final class SlabIntersection {
+    /**
+     * The value returned when the segment does not touch the box.
+     */
+    public static final double NO_HIT = -1;
+
+    private SlabIntersection() {
+    }
+
+    /**
+     * Returns the parameter t in [0, 1] of the first point where the segment
+     * (x0 + t * dx, y0 + t * dy) meets the boundary of the box.
+     * If the segment starts outside the box this is the entry point; if it starts inside,
+     * it is the point where the segment leaves the box.
+     *
+     * @param x0   the x-coordinate of the start of the segment
+     * @param y0   the y-coordinate of the start of the segment
+     * @param dx   the x-extent of the segment
+     * @param dy   the y-extent of the segment
+     * @param minX the minimum x-coordinate of the box
+     * @param minY the minimum y-coordinate of the box
+     * @param maxX the maximum x-coordinate of the box
+     * @param maxY the maximum y-coordinate of the box
+     * @return the parameter of the first boundary point, or NO_HIT if there is none
+     */
+    public static double firstHit(double x0, double y0, double dx, double dy,
+                                  double minX, double minY, double maxX, double maxY) {
+        double tNear = Double.NEGATIVE_INFINITY;
+        double tFar = Double.POSITIVE_INFINITY;
+
+        // The x slab
+        if (dx == 0) {
+            if (x0 < minX || x0 > maxX) {
+                return NO_HIT;
+            }
+        } else {
+            double t1 = (minX - x0) / dx;
+            double t2 = (maxX - x0) / dx;
+            tNear = Math.min(t1, t2);
+            tFar = Math.max(t1, t2);
+        }
+
+        // The y slab
+        if (dy == 0) {
+            if (y0 < minY || y0 > maxY) {
+                return NO_HIT;
+            }
+        } else {
+            double t1 = (minY - y0) / dy;
+            double t2 = (maxY - y0) / dy;
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+
+        if (tNear > tFar || tFar < 0) {
+            return NO_HIT;
+        }
+        // The segment starts outside the box (or on its boundary)
+        if (tNear >= 0) {
+            return tNear <= 1 ? tNear : NO_HIT;
+        }
+        // The segment starts inside the box, so the first boundary point is the exit
+        return tFar <= 1 ? tFar : NO_HIT;
+    }
+}
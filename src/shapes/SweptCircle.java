@@ -0,0 +1,136 @@
+package shapes;
+
+/**
+ * Continuous collision of a moving circle with an axis-aligned box.
+ * The circle's center moves along (x0 + t * dx, y0 + t * dy), and the first contact is found by
+ * tracing the center against the box grown by the radius (the box's Minkowski sum with the circle):
+ * two boxes, one grown sideways and one grown up and down, and a circle around every corner.
+ * Works on raw coordinates and allocates nothing.
+ */
+public final class SweptCircle {
+    /**
+     * The value returned when the circle does not touch the box.
+     */
+    public static final double NO_HIT = -1;
+
+    private SweptCircle() {
+    }
+
+    /**
+     * Returns the parameter t in [0, 1] at which the moving circle first touches the box.
+     * A circle that already overlaps the box reports a hit at t = 0 while it moves further in,
+     * and no hit while it moves out, so it is never trapped.
+     *
+     * @param x0   the x-coordinate of the center at t = 0
+     * @param y0   the y-coordinate of the center at t = 0
+     * @param dx   the x-extent of the center's motion
+     * @param dy   the y-extent of the center's motion
+     * @param r    the radius of the circle
+     * @param minX the minimum x-coordinate of the box
+     * @param minY the minimum y-coordinate of the box
+     * @param maxX the maximum x-coordinate of the box
+     * @param maxY the maximum y-coordinate of the box
+     * @return the parameter of the first contact, or NO_HIT if there is none
+     */
+    public static double firstHit(double x0, double y0, double dx, double dy, double r,
+                                  double minX, double minY, double maxX, double maxY) {
+        // Already overlapping: only a hit when moving deeper
+        double qx = clamp(x0, minX, maxX);
+        double qy = clamp(y0, minY, maxY);
+        double ox = x0 - qx;
+        double oy = y0 - qy;
+        if (ox * ox + oy * oy < r * r) {
+            if (ox == 0 && oy == 0) {
+                // The center is inside the box itself, let it move out
+                return NO_HIT;
+            }
+            return ox * dx + oy * dy < 0 ? 0 : NO_HIT;
+        }
+
+        double best = NO_HIT;
+        best = earliest(best, boxEntry(x0, y0, dx, dy, minX - r, minY, maxX + r, maxY));
+        best = earliest(best, boxEntry(x0, y0, dx, dy, minX, minY - r, maxX, maxY + r));
+        best = earliest(best, circleEntry(x0, y0, dx, dy, minX, minY, r));
+        best = earliest(best, circleEntry(x0, y0, dx, dy, maxX, minY, r));
+        best = earliest(best, circleEntry(x0, y0, dx, dy, minX, maxY, r));
+        best = earliest(best, circleEntry(x0, y0, dx, dy, maxX, maxY, r));
+        return best;
+    }
+
+    /**
+     * Returns the value between min and max closest to the given one.
+     * Clamping a center to a box gives the point of the box that a circle there touches.
+     *
+     * @param value the value
+     * @param min   the minimum
+     * @param max   the maximum
+     * @return the clamped value
+     */
+    public static double clamp(double value, double min, double max) {
+        return value < min ? min : (value > max ? max : value);
+    }
+
+    private static double earliest(double best, double t) {
+        if (t == NO_HIT) {
+            return best;
+        }
+        return best == NO_HIT || t < best ? t : best;
+    }
+
+    /**
+     * Entry of a point that starts outside the box, or NO_HIT.
+     */
+    private static double boxEntry(double x0, double y0, double dx, double dy,
+                                   double minX, double minY, double maxX, double maxY) {
+        double tNear = Double.NEGATIVE_INFINITY;
+        double tFar = Double.POSITIVE_INFINITY;
+        if (dx == 0) {
+            if (x0 < minX || x0 > maxX) {
+                return NO_HIT;
+            }
+        } else {
+            double t1 = (minX - x0) / dx;
+            double t2 = (maxX - x0) / dx;
+            tNear = Math.min(t1, t2);
+            tFar = Math.max(t1, t2);
+        }
+        if (dy == 0) {
+            if (y0 < minY || y0 > maxY) {
+                return NO_HIT;
+            }
+        } else {
+            double t1 = (minY - y0) / dy;
+            double t2 = (maxY - y0) / dy;
+            tNear = Math.max(tNear, Math.min(t1, t2));
+            tFar = Math.min(tFar, Math.max(t1, t2));
+        }
+        if (tNear > tFar || tNear < 0 || tNear > 1) {
+            return NO_HIT;
+        }
+        return tNear;
+    }
+
+    /**
+     * Entry of a point that starts outside the circle, or NO_HIT.
+     */
+    private static double circleEntry(double x0, double y0, double dx, double dy,
+                                      double cx, double cy, double r) {
+        double a = dx * dx + dy * dy;
+        if (a == 0) {
+            return NO_HIT;
+        }
+        double fx = x0 - cx;
+        double fy = y0 - cy;
+        double b = fx * dx + fy * dy;
+        double c = fx * fx + fy * fy - r * r;
+        if (c < 0 || b >= 0) {
+            return NO_HIT;
+        }
+        double discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return NO_HIT;
+        }
+        double t = (-b - Math.sqrt(discriminant)) / a;
+        return t >= 0 && t <= 1 ? t : NO_HIT;
+    }
+}